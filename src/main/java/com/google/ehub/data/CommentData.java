@@ -23,6 +23,18 @@ public class CommentData {
     this.email = email;
   }
 
+  public String getComment() {
+    return comment;
+  }
+
+  public String getUsername() {
+    return username;
+  }
+
+  public long getCommentId() {
+    return commentId;
+  }
+
    public boolean getBelongsToUser() {
     return this.belongsToUser;
   }
@@ -3,35 +3,71 @@ package com.google.ehub.data;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
-import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.PropertyProjection;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Query.FilterOperator;
 import com.google.appengine.api.datastore.Query.FilterPredicate;
 import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
+import com.google.common.collect.Lists;
+import com.google.ehub.data.CommentPageCache.CachedComment;
+import com.google.ehub.data.CommentPageCache.CachedPage;
 import com.google.ehub.data.ProfileDatastore;
 import com.google.ehub.data.UserProfile;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 /**
  * Class that manages CommentData that is kept in the Datastore
  */
 public class CommentDataManager {
+  /** Orders in which the comments of an item can be retrieved. */
+  public enum CommentOrder { NEWEST_FIRST, OLDEST_FIRST }
+
   private static final String COMMENT_KIND_KEY = "comment";
   public static final String ITEM_ID_PROPERTY_KEY = "itemId";
   public static final String COMMENT_PROPERTY_KEY = "comment";
+  // Shown for comments whose user has no profile and no username stored with the comment.
+  public static final String MISSING_PROFILE_USERNAME = "Unknown user";
   private static final String TIMESTAMP_PROPERTY_KEY = "timestampMillis";
   private static final String EMAIL_PROPERTY_KEY = "email";
+  private static final String USERNAME_PROPERTY_KEY = "username";
   private static final String COMMENT_ID_PROPERTY_KEY = "commentId";
+  private static final int UPDATE_BATCH_SIZE = 500;
+  private static final String COMMENT_COUNTER_SHARD_KIND = "commentCounterShard";
+  private static final int NUM_COMMENT_COUNTER_SHARDS = 10;
+  private static final int MAX_TRANSACTION_ATTEMPTS = 5;
+
+  // Shared by every instance, so the cached counts are invalidated for every request.
+  private static final ShardedCounter commentCounter =
+      new ShardedCounter(COMMENT_COUNTER_SHARD_KIND, NUM_COMMENT_COUNTER_SHARDS);
+
   private final UserService userService = UserServiceFactory.getUserService();
   private final ProfileDatastore profileData = new ProfileDatastore();
+  private final CommentPageCache commentPageCache = CommentPageCache.getInstance();
+  private final Map<String, UserProfile> userProfiles = new HashMap<>();
+  // Also holds the emails that have no profile, so they are not looked up again.
+  private final Set<String> resolvedEmails = new HashSet<>();
 
   /**
-   * Method that adds comment information into Datastore by ItemId
+   * Method that adds comment information into Datastore by ItemId together with the update to the
+   * comment counter of the item. The username of the user is stored with the comment, so reading
+   * comments doesn't need to look up profiles.
    *
    * @param itemId The unique ID referencing an Entertainment item. Generated by Datastore
    * @param comment The message/comment that the user inputs
@@ -44,53 +80,346 @@ public class CommentDataManager {
     commentEntity.setProperty(COMMENT_PROPERTY_KEY, comment);
     commentEntity.setProperty(TIMESTAMP_PROPERTY_KEY, timestampMillis);
     commentEntity.setProperty(EMAIL_PROPERTY_KEY, email);
-    
+
+    // Users without a profile get their username when the comment is read.
+    UserProfile userProfile = profileData.getUserProfile(email);
+    if (userProfile != null) {
+      commentEntity.setProperty(USERNAME_PROPERTY_KEY, userProfile.getUsername());
+    }
+
+    // The comment and its counter shard are in different Entity groups.
     DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    return datastore.put(commentEntity);
+    Key commentKey;
+
+    for (int attempt = 1;; attempt++) {
+      Transaction transaction = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+
+      try {
+        // The key allocated by the first attempt is reused by the next attempts.
+        commentKey = datastore.put(transaction, commentEntity);
+        commentCounter.increment(transaction, getCommentCounterName(itemId), 1);
+        transaction.commit();
+        break;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == MAX_TRANSACTION_ATTEMPTS) {
+          throw e;
+        }
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+
+    commentCounter.invalidateCachedCount(getCommentCounterName(itemId));
+    commentPageCache.addComment(itemId, new CachedComment(commentKey.getId(), timestampMillis,
+        email, (String) commentEntity.getProperty(USERNAME_PROPERTY_KEY), comment));
+
+    return commentKey;
   }
 
   /**
-   * Method that retrieves comment information from Datastore by ItemId
+   * Gets the number of comments of an item from its sharded comment counter.
+   *
+   * @param itemId The unique ID referencing an Entertainment item. Generated by Datastore
+   * @return number of comments of the item
+   */
+  public long queryCommentCount(long itemId) {
+    return commentCounter.getCount(getCommentCounterName(itemId));
+  }
+
+  /**
+   * Gets the number of comments of each of the given items, the comment counters of all the items
+   * are read with batched gets.
+   *
+   * @param itemIds the unique IDs of the items
+   * @return map from item ID to the number of comments of the item
+   */
+  public Map<Long, Long> queryCommentCounts(Collection<Long> itemIds) {
+    Set<String> counterNames = new HashSet<>();
+
+    for (Long itemId : itemIds) {
+      counterNames.add(getCommentCounterName(itemId));
+    }
+
+    Map<String, Long> countsByCounterName = commentCounter.getCounts(counterNames);
+    Map<Long, Long> commentCounts = new HashMap<>();
+
+    for (Long itemId : itemIds) {
+      commentCounts.put(itemId, countsByCounterName.get(getCommentCounterName(itemId)));
+    }
+
+    return commentCounts;
+  }
+
+  /**
+   * Recomputes the comment counter of every item from the comment Entities, used to backfill the
+   * counters of comments that were added before the counters existed.
+   *
+   * @return number of comment counters that were written
+   */
+  public int recountComments() {
+    Map<Long, Long> commentCounts = new HashMap<>();
+
+    Query itemIdQuery = new Query(COMMENT_KIND_KEY)
+        .addProjection(new PropertyProjection(ITEM_ID_PROPERTY_KEY, Long.class));
+
+    for (Entity entity : DatastoreServiceFactory.getDatastoreService()
+                             .prepare(itemIdQuery)
+                             .asIterable(FetchOptions.Builder.withChunkSize(UPDATE_BATCH_SIZE))) {
+      commentCounts.merge((Long) entity.getProperty(ITEM_ID_PROPERTY_KEY), 1L, Long::sum);
+    }
+
+    for (Map.Entry<Long, Long> commentCount : commentCounts.entrySet()) {
+      commentCounter.setCount(
+          getCommentCounterName(commentCount.getKey()), commentCount.getValue());
+    }
+
+    return commentCounts.size();
+  }
+
+  /**
+   * Discards the comment counts cached by every instance.
+   */
+  public static void invalidateCachedCommentCounts() {
+    commentCounter.invalidateCachedCounts();
+  }
+
+  /**
+   * Method that retrieves every comment of an item from Datastore, oldest first.
    *
    * @param itemId The unique ID referencing an Entertainment item. Generated by Datastore
    * @return A list of comments.
    */
   public List<CommentData> retrieveComments(long itemId) {
-    List<CommentData> results = new ArrayList<>();
+    return retrieveComments(itemId, FetchOptions.Builder.withDefaults(), CommentOrder.OLDEST_FIRST)
+        .getComments();
+  }
+
+  /**
+   * Method that retrieves a page of the comments of an item from Datastore. The profiles of the
+   * users that posted the comments are resolved with a batched lookup after the page is loaded,
+   * comments of users without a profile are shown with a placeholder username.
+   * The first page in the default order and page size is served from CommentPageCache.
+   *
+   * @param itemId The unique ID referencing an Entertainment item. Generated by Datastore
+   * @param fetchOptions the options holding the page size and the cursor of the page
+   * @param order the order of the comments by timestamp
+   * @return A page of comments with the cursor of the next page, which is null if the page is
+   *     the last one.
+   */
+  public CommentList retrieveComments(long itemId, FetchOptions fetchOptions, CommentOrder order) {
+    boolean isCachedPage = order == CommentOrder.OLDEST_FIRST
+        && fetchOptions.getStartCursor() == null && fetchOptions.getOffset() == null
+        && fetchOptions.getLimit() != null
+        && fetchOptions.getLimit() == CommentPageCache.CACHED_PAGE_SIZE;
+
+    if (isCachedPage) {
+      Optional<CachedPage> cachedPage = commentPageCache.getPage(itemId);
+
+      if (cachedPage.isPresent()) {
+        return createCommentList(itemId, cachedPage.get());
+      }
+    }
+
     Query itemCommentQuery =
         new Query(COMMENT_KIND_KEY)
             .setFilter(new FilterPredicate(ITEM_ID_PROPERTY_KEY, FilterOperator.EQUAL, itemId))
-            .addSort(TIMESTAMP_PROPERTY_KEY, SortDirection.ASCENDING);
+            .addSort(TIMESTAMP_PROPERTY_KEY,
+                order == CommentOrder.NEWEST_FIRST
+                    ? SortDirection.DESCENDING
+                    : SortDirection.ASCENDING);
     DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    PreparedQuery comments = datastore.prepare(itemCommentQuery);
-    for (Entity entity : comments.asIterable()) {
+    QueryResultList<Entity> commentEntities =
+        datastore.prepare(itemCommentQuery).asQueryResultList(fetchOptions);
+
+    // Only comments stored before usernames were added to them need a profile lookup.
+    Set<String> legacyEmails = new HashSet<>();
+    for (Entity entity : commentEntities) {
+      if (entity.getProperty(USERNAME_PROPERTY_KEY) == null) {
+        legacyEmails.add((String) entity.getProperty(EMAIL_PROPERTY_KEY));
+      }
+    }
+    Map<String, UserProfile> userProfiles = getUserProfiles(legacyEmails);
+
+    List<CachedComment> comments = new ArrayList<>();
+    for (Entity entity : commentEntities) {
       String storedEmail = (String) entity.getProperty(EMAIL_PROPERTY_KEY);
-      UserProfile userProfile = profileData.getUserProfile(storedEmail);
-      if (userProfile == null) {
-        continue;
+      String username = (String) entity.getProperty(USERNAME_PROPERTY_KEY);
+      if (username == null) {
+        UserProfile userProfile = userProfiles.get(storedEmail);
+        username = userProfile == null ? MISSING_PROFILE_USERNAME : userProfile.getUsername();
+      }
+      comments.add(new CachedComment(entity.getKey().getId(),
+          (Long) entity.getProperty(TIMESTAMP_PROPERTY_KEY), storedEmail, username,
+          (String) entity.getProperty(COMMENT_PROPERTY_KEY)));
+    }
+
+    // A page with fewer comments than the limit is the last one.
+    boolean hasMoreComments = fetchOptions.getLimit() != null
+        && commentEntities.size() == fetchOptions.getLimit();
+    CachedPage page = new CachedPage(comments, commentEntities.size(),
+        hasMoreComments ? commentEntities.getCursor().toWebSafeString() : null);
+
+    if (isCachedPage) {
+      commentPageCache.putPage(itemId, page);
+    }
+
+    return createCommentList(itemId, page);
+  }
+
+  private CommentList createCommentList(long itemId, CachedPage page) {
+    String currentEmail =
+        userService.isUserLoggedIn() ? userService.getCurrentUser().getEmail() : null;
+    List<CommentData> results = new ArrayList<>();
+
+    for (CachedComment comment : page.getComments()) {
+      boolean belongsToUser = comment.getEmail().equals(currentEmail);
+      results.add(new CommentData(itemId, comment.getComment(), comment.getTimestampMillis(),
+          comment.getUsername(), comment.getCommentId(), belongsToUser, comment.getEmail()));
+    }
+
+    return new CommentList(results, page.getPageCursor());
+  }
+
+  /**
+   * Copies the current username of a user to every comment posted by the user, used after the
+   * username is changed.
+   *
+   * @param email the email of the user
+   * @return number of comments that were updated
+   */
+  public int updateCommentUsernames(String email) {
+    UserProfile userProfile = profileData.getUserProfile(email);
+    if (userProfile == null) {
+      return 0;
+    }
+
+    Query userCommentQuery = new Query(COMMENT_KIND_KEY).setFilter(
+        new FilterPredicate(EMAIL_PROPERTY_KEY, FilterOperator.EQUAL, email));
+    List<Entity> updatedEntities = new ArrayList<>();
+
+    for (Entity entity : DatastoreServiceFactory.getDatastoreService()
+                             .prepare(userCommentQuery)
+                             .asIterable(FetchOptions.Builder.withChunkSize(UPDATE_BATCH_SIZE))) {
+      if (!userProfile.getUsername().equals(entity.getProperty(USERNAME_PROPERTY_KEY))) {
+        entity.setProperty(USERNAME_PROPERTY_KEY, userProfile.getUsername());
+        updatedEntities.add(entity);
       }
-      String comment = (String) entity.getProperty(COMMENT_PROPERTY_KEY);
-      long timestampMillis = (Long) entity.getProperty(TIMESTAMP_PROPERTY_KEY);
-
-      String username = userProfile.getUsername();
-      long commentId = entity.getKey().getId();
-      String currentEmail =
-          userService.isUserLoggedIn() ? userService.getCurrentUser().getEmail() : null;
-      boolean belongsToUser = storedEmail.equals(currentEmail);
-      results.add(
-          new CommentData(itemId, comment, timestampMillis, username, commentId, belongsToUser, storedEmail));
-    }
-    return results;
+    }
+
+    int updatedCount = putInBatches(updatedEntities);
+    for (Entity entity : updatedEntities) {
+      commentPageCache.invalidatePage((Long) entity.getProperty(ITEM_ID_PROPERTY_KEY));
+    }
+
+    return updatedCount;
+  }
+
+  /**
+   * Stores the username of the user on every comment that was posted before usernames were
+   * stored with comments.
+   *
+   * @return number of comments that were updated
+   */
+  public int backfillCommentUsernames() {
+    List<Entity> legacyEntities = new ArrayList<>();
+
+    for (Entity entity : DatastoreServiceFactory.getDatastoreService()
+                             .prepare(new Query(COMMENT_KIND_KEY))
+                             .asIterable(FetchOptions.Builder.withChunkSize(UPDATE_BATCH_SIZE))) {
+      if (entity.getProperty(USERNAME_PROPERTY_KEY) == null) {
+        legacyEntities.add(entity);
+      }
+    }
+
+    Set<String> legacyEmails = new HashSet<>();
+    for (Entity entity : legacyEntities) {
+      legacyEmails.add((String) entity.getProperty(EMAIL_PROPERTY_KEY));
+    }
+    Map<String, UserProfile> userProfiles = profileData.getUserProfiles(legacyEmails);
+
+    List<Entity> updatedEntities = new ArrayList<>();
+    for (Entity entity : legacyEntities) {
+      UserProfile userProfile = userProfiles.get((String) entity.getProperty(EMAIL_PROPERTY_KEY));
+      if (userProfile != null) {
+        entity.setProperty(USERNAME_PROPERTY_KEY, userProfile.getUsername());
+        updatedEntities.add(entity);
+      }
+    }
+
+    int updatedCount = putInBatches(updatedEntities);
+    commentPageCache.invalidateAll();
+
+    return updatedCount;
+  }
+
+  private static int putInBatches(List<Entity> entities) {
+    DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+    for (List<Entity> entityBatch : Lists.partition(entities, UPDATE_BATCH_SIZE)) {
+      datastore.put(entityBatch);
+    }
+
+    return entities.size();
+  }
+
+  /**
+   * Finds the profiles of the given emails. Profiles are remembered by this instance, which
+   * servlets create for every request, so each profile is only looked up once per request.
+   */
+  private Map<String, UserProfile> getUserProfiles(Set<String> emails) {
+    Set<String> unresolvedEmails = new HashSet<>(emails);
+    unresolvedEmails.removeAll(resolvedEmails);
+
+    if (!unresolvedEmails.isEmpty()) {
+      userProfiles.putAll(profileData.getUserProfiles(unresolvedEmails));
+      resolvedEmails.addAll(unresolvedEmails);
+    }
+
+    return userProfiles;
   }
   
   
   /**
-   * Method that deletes comment from Datastore by commentId
+   * Method that deletes comment from Datastore by commentId together with the update to the
+   * comment counter of its item. The comment is read first to find its item, whose cached first
+   * page is discarded.
    *
    * @param commentId The unique ID referencing an comment. Generated by Datastore
    */
   public void deleteComment(long commentId) {
     DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-    datastore.delete(KeyFactory.createKey(COMMENT_KIND_KEY, commentId));
+    Key commentKey = KeyFactory.createKey(COMMENT_KIND_KEY, commentId);
+
+    for (int attempt = 1;; attempt++) {
+      Transaction transaction = datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+
+      try {
+        long itemId =
+            (Long) datastore.get(transaction, commentKey).getProperty(ITEM_ID_PROPERTY_KEY);
+        datastore.delete(transaction, commentKey);
+        commentCounter.increment(transaction, getCommentCounterName(itemId), -1);
+        transaction.commit();
+
+        commentCounter.invalidateCachedCount(getCommentCounterName(itemId));
+        commentPageCache.invalidatePage(itemId);
+        return;
+      } catch (EntityNotFoundException e) {
+        // The comment was already deleted, so its counter and cached page are up to date.
+        return;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == MAX_TRANSACTION_ATTEMPTS) {
+          throw e;
+        }
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+  }
+
+  private static String getCommentCounterName(long itemId) {
+    return String.valueOf(itemId);
   }
 }
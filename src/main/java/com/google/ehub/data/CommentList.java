@@ -0,0 +1,25 @@
+package com.google.ehub.data;
+
+import java.util.List;
+
+/**
+ * Stores a page of the comments of an item together with the cursor of the next page, the cursor
+ * is null when there are no more comments.
+ */
+public final class CommentList {
+  private final List<CommentData> comments;
+  private final String pageCursor;
+
+  public CommentList(List<CommentData> comments, String pageCursor) {
+    this.comments = comments;
+    this.pageCursor = pageCursor;
+  }
+
+  public List<CommentData> getComments() {
+    return comments;
+  }
+
+  public String getPageCursor() {
+    return pageCursor;
+  }
+}
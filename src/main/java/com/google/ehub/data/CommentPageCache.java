@@ -0,0 +1,293 @@
+package com.google.ehub.data;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Singleton class that caches the first page of comments of items, in the default order (oldest
+ * first) and page size. Pages are kept in a compact binary form, and whether a comment belongs
+ * to the user that reads it is decided when the page is read, so a cached page can be shared by
+ * every user. Each instance has its own cache and only sees the comments added, edited or deleted
+ * through it, so pages expire after a few seconds to bound how long other instances serve them.
+ */
+public final class CommentPageCache {
+  /** Number of comments in the pages that get cached. */
+  public static final int CACHED_PAGE_SIZE = 20;
+
+  private static final long MAX_CACHED_BYTES = 16 * 1024 * 1024;
+  private static final long CACHED_PAGE_EXPIRATION_SECONDS = 10;
+
+  private static CommentPageCache instance;
+
+  /*
+   * Comment queries are eventually consistent, so a page can miss a comment that was just
+   * added, and changes made through other instances don't invalidate this cache. The expiration
+   * bounds how long such a page is served.
+   */
+  private final Cache<Long, byte[]> pageCache =
+      CacheBuilder.newBuilder()
+          .maximumWeight(MAX_CACHED_BYTES)
+          .<Long, byte[]>weigher((itemId, encodedPage) -> encodedPage.length)
+          .expireAfterWrite(CACHED_PAGE_EXPIRATION_SECONDS, TimeUnit.SECONDS)
+          .recordStats()
+          .build();
+
+  private CommentPageCache() {}
+
+  /**
+   * Gives access to the single instance of the class, and creates this instance
+   * if it was not initialized previously.
+   *
+   * @return single instance of the class
+   */
+  public static CommentPageCache getInstance() {
+    if (instance == null) {
+      instance = new CommentPageCache();
+    }
+
+    return instance;
+  }
+
+  /**
+   * Finds the cached first page of comments of an item.
+   *
+   * @param itemId the unique id of the item
+   * @return the cached page wrapped in an {@link Optional}, or an empty {@link Optional} if the
+   *     page is not cached
+   */
+  public Optional<CachedPage> getPage(long itemId) {
+    byte[] encodedPage = pageCache.getIfPresent(itemId);
+
+    return encodedPage == null ? Optional.empty() : Optional.of(decode(encodedPage));
+  }
+
+  /**
+   * Caches the first page of comments of an item.
+   *
+   * @param itemId the unique id of the item
+   * @param page the first page of comments of the item
+   */
+  public void putPage(long itemId, CachedPage page) {
+    pageCache.put(itemId, encode(page));
+  }
+
+  /**
+   * Updates the cached first page of an item with a comment that was just added. A page that is
+   * not full gets the comment appended, and a full page is unchanged since the comment is newer
+   * than the comments in it. Pages that can't be updated reliably are discarded.
+   *
+   * @param itemId the unique id of the item
+   * @param comment the comment that was added
+   */
+  public void addComment(long itemId, CachedComment comment) {
+    Optional<CachedPage> optionalPage = getPageWithoutStats(itemId);
+
+    if (!optionalPage.isPresent()) {
+      return;
+    }
+
+    CachedPage page = optionalPage.get();
+    List<CachedComment> comments = page.getComments();
+    boolean isNewest = comments.isEmpty()
+        || comment.getTimestampMillis() > comments.get(comments.size() - 1).getTimestampMillis();
+
+    if (!isNewest || comment.getUsername() == null) {
+      // Comments with equal timestamps are ordered by key, and comments without a username need
+      // a profile lookup, so the page is loaded again from Datastore.
+      pageCache.invalidate(itemId);
+    } else if (page.getPageCursor() == null) {
+      if (page.getEntityCount() + 1 == CACHED_PAGE_SIZE) {
+        // The page becomes full, which needs the cursor of the next page from Datastore.
+        pageCache.invalidate(itemId);
+      } else {
+        List<CachedComment> updatedComments = new ArrayList<>(comments);
+        updatedComments.add(comment);
+        putPage(itemId, new CachedPage(updatedComments, page.getEntityCount() + 1, null));
+      }
+    }
+  }
+
+  /**
+   * Discards the cached first page of an item.
+   *
+   * @param itemId the unique id of the item
+   */
+  public void invalidatePage(long itemId) {
+    pageCache.invalidate(itemId);
+  }
+
+  /**
+   * Discards every cached page. Needed when comments are written to Datastore without going
+   * through CommentDataManager.
+   */
+  public void invalidateAll() {
+    pageCache.invalidateAll();
+  }
+
+  /**
+   * Gives access to the hit, miss and eviction counters of the page cache.
+   *
+   * @return snapshot of the page cache statistics
+   */
+  public CacheStats getStats() {
+    return pageCache.stats();
+  }
+
+  // Write-through updates read the cache with asMap(), so they don't count as hits or misses.
+  private Optional<CachedPage> getPageWithoutStats(long itemId) {
+    byte[] encodedPage = pageCache.asMap().get(itemId);
+
+    return encodedPage == null ? Optional.empty() : Optional.of(decode(encodedPage));
+  }
+
+  static byte[] encode(CachedPage page) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeInt(page.getEntityCount());
+      writeNullableString(output, page.getPageCursor());
+      output.writeInt(page.getComments().size());
+
+      for (CachedComment comment : page.getComments()) {
+        output.writeLong(comment.getCommentId());
+        output.writeLong(comment.getTimestampMillis());
+        writeNullableString(output, comment.getEmail());
+        writeNullableString(output, comment.getUsername());
+        writeNullableString(output, comment.getComment());
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    return bytes.toByteArray();
+  }
+
+  static CachedPage decode(byte[] encodedPage) {
+    try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(encodedPage))) {
+      int entityCount = input.readInt();
+      String pageCursor = readNullableString(input);
+      int commentCount = input.readInt();
+      List<CachedComment> comments = new ArrayList<>(commentCount);
+
+      for (int i = 0; i < commentCount; i++) {
+        long commentId = input.readLong();
+        long timestampMillis = input.readLong();
+        String email = readNullableString(input);
+        String username = readNullableString(input);
+        String comment = readNullableString(input);
+        comments.add(new CachedComment(commentId, timestampMillis, email, username, comment));
+      }
+
+      return new CachedPage(comments, entityCount, pageCursor);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // Strings are written with their byte length instead of writeUTF, which is limited to 64KB.
+  private static void writeNullableString(DataOutputStream output, String value)
+      throws IOException {
+    if (value == null) {
+      output.writeInt(-1);
+      return;
+    }
+
+    byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(valueBytes.length);
+    output.write(valueBytes);
+  }
+
+  private static String readNullableString(DataInputStream input) throws IOException {
+    int length = input.readInt();
+
+    if (length < 0) {
+      return null;
+    }
+
+    byte[] valueBytes = new byte[length];
+    input.readFully(valueBytes);
+
+    return new String(valueBytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * First page of comments of an item. The entity count is the number of comment entities the
+   * page was loaded from.
+   */
+  public static final class CachedPage {
+    private final List<CachedComment> comments;
+    private final int entityCount;
+    private final String pageCursor;
+
+    public CachedPage(List<CachedComment> comments, int entityCount, String pageCursor) {
+      this.comments = Collections.unmodifiableList(comments);
+      this.entityCount = entityCount;
+      this.pageCursor = pageCursor;
+    }
+
+    public List<CachedComment> getComments() {
+      return comments;
+    }
+
+    public int getEntityCount() {
+      return entityCount;
+    }
+
+    public String getPageCursor() {
+      return pageCursor;
+    }
+  }
+
+  /**
+   * Comment of a cached page, holding the fields that don't depend on the user that reads it.
+   */
+  public static final class CachedComment {
+    private final long commentId;
+    private final long timestampMillis;
+    private final String email;
+    private final String username;
+    private final String comment;
+
+    public CachedComment(
+        long commentId, long timestampMillis, String email, String username, String comment) {
+      this.commentId = commentId;
+      this.timestampMillis = timestampMillis;
+      this.email = email;
+      this.username = username;
+      this.comment = comment;
+    }
+
+    public long getCommentId() {
+      return commentId;
+    }
+
+    public long getTimestampMillis() {
+      return timestampMillis;
+    }
+
+    public String getEmail() {
+      return email;
+    }
+
+    public String getUsername() {
+      return username;
+    }
+
+    public String getComment() {
+      return comment;
+    }
+  }
+}
@@ -3,27 +3,48 @@ package com.google.ehub.data;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
 import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.Filter;
 import com.google.appengine.api.datastore.Query.FilterOperator;
 import com.google.appengine.api.datastore.Query.FilterPredicate;
 import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.datastore.QueryResultIterator;
 import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Lists;
+import com.google.ehub.data.ItemFacets.Facet;
 import com.google.ehub.utility.Utils;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Singleton class that manages EntertainmentItems stored in Datastore.
  */
 public final class EntertainmentItemDatastore {
+  static final String TITLE_PREFIXES_BACKFILLED_PROPERTY_KEY = "ehub.titlePrefixesBackfilled";
+
   private static final String ENTERTAINMENT_ITEM_KIND = "entertainmentItem";
   private static final String DISPLAY_TITLE_PROPERTY_KEY = "displayTitle";
   private static final String NORMALIZED_TITLE_PROPERTY_KEY = "normalizedTitle";
+  private static final String TITLE_PREFIXES_PROPERTY_KEY = "titlePrefixes";
   private static final String DESCRIPTION_PROPERTY_KEY = "description";
   private static final String IMAGE_URL_PROPERTY_KEY = "imageUrl";
   private static final String RELEASE_DATE_TIMESTAMP_MILLIS_PROPERTY_KEY =
@@ -34,12 +55,40 @@ public final class EntertainmentItemDatastore {
   private static final String WRITERS_PROPERTY_KEY = "writers";
   private static final String ACTORS_PROPERTY_KEY = "actors";
   private static final String OMDB_ID_PROPERTY_KEY = "omdbId";
+  private static final String GENRES_PROPERTY_KEY = "genres";
+  private static final String RELEASE_YEAR_PROPERTY_KEY = "releaseYear";
+  private static final String RUNTIME_MINUTES_PROPERTY_KEY = "runtimeMinutes";
+  private static final String RUNTIME_RANGE_PROPERTY_KEY = "runtimeRange";
 
   private static final String RELEASE_DATE_FORMAT = "dd MMM yyyy";
 
+  private static final int UPDATE_BATCH_SIZE = 500;
+
+  // Longer prefixes are matched by their first characters and filtered in memory.
+  private static final int MAX_INDEXED_PREFIX_LENGTH = 30;
+  private static final int MAX_SCANNED_ENTITIES_PER_PAGE = 500;
+  private static final int MAX_TRANSACTION_ATTEMPTS = 5;
+
+  private static final long MAX_CACHED_ITEMS = 10000;
+  private static final long CACHED_ITEM_EXPIRATION_MINUTES = 30;
+
   private static EntertainmentItemDatastore instance;
 
   private final DatastoreService datastoreService = DatastoreServiceFactory.getDatastoreService();
+  private final AtomicLong prefixQueryCount = new AtomicLong();
+  private final AtomicLong prefixQueryScannedEntities = new AtomicLong();
+  private final AtomicLong prefixQueryReturnedEntities = new AtomicLong();
+
+  /*
+   * Items are not modified after they get added to Datastore, so lookups by unique id are served
+   * from this cache whenever possible. Only items that were found get cached.
+   */
+  private final Cache<Long, EntertainmentItem> itemCache =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_ITEMS)
+          .expireAfterWrite(CACHED_ITEM_EXPIRATION_MINUTES, TimeUnit.MINUTES)
+          .recordStats()
+          .build();
 
   private EntertainmentItemDatastore() {}
 
@@ -58,7 +107,8 @@ public final class EntertainmentItemDatastore {
   }
 
   /**
-   * Adds an EntertainmentItem Entity to Datastore.
+   * Adds an EntertainmentItem Entity to Datastore together with its facet fields and the updates
+   * to the facet counters, and adds the item to the search and typeahead indexes.
    *
    * @param item the EntertainmentItem being added to Datastore
    * @return uniqueId generated by datastore
@@ -68,7 +118,9 @@ public final class EntertainmentItemDatastore {
 
     // Unique Id is created by Datastore so it's not added as a property.
     itemEntity.setProperty(DISPLAY_TITLE_PROPERTY_KEY, item.getTitle());
-    itemEntity.setProperty(NORMALIZED_TITLE_PROPERTY_KEY, item.getTitle().toLowerCase());
+    itemEntity.setProperty(NORMALIZED_TITLE_PROPERTY_KEY, Utils.normalizeText(item.getTitle()));
+    itemEntity.setProperty(
+        TITLE_PREFIXES_PROPERTY_KEY, getTitlePrefixes(Utils.normalizeText(item.getTitle())));
     itemEntity.setProperty(DESCRIPTION_PROPERTY_KEY, item.getDescription());
     itemEntity.setProperty(IMAGE_URL_PROPERTY_KEY, item.getImageUrl());
     itemEntity.setProperty(RELEASE_DATE_TIMESTAMP_MILLIS_PROPERTY_KEY,
@@ -80,7 +132,41 @@ public final class EntertainmentItemDatastore {
     itemEntity.setProperty(ACTORS_PROPERTY_KEY, item.getActors());
     itemEntity.setProperty(OMDB_ID_PROPERTY_KEY, item.getOmdbId());
 
-    return datastoreService.put(itemEntity);
+    ItemFacets itemFacets = createItemFacets(itemEntity);
+    setFacetProperties(itemEntity, itemFacets);
+
+    // The item and the counter shards of its facet values are in different Entity groups.
+    ItemFacetDatastore itemFacetDatastore = ItemFacetDatastore.getInstance();
+    Key itemKey;
+
+    for (int attempt = 1;; attempt++) {
+      Transaction transaction =
+          datastoreService.beginTransaction(TransactionOptions.Builder.withXG(true));
+
+      try {
+        // The key allocated by the first attempt is reused by the next attempts.
+        itemKey = datastoreService.put(transaction, itemEntity);
+        itemFacetDatastore.incrementFacetCounts(transaction, itemFacets);
+        transaction.commit();
+        break;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == MAX_TRANSACTION_ATTEMPTS) {
+          throw e;
+        }
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+
+    itemFacetDatastore.invalidateCachedFacetCounts(itemFacets);
+    itemCache.invalidate(itemKey.getId());
+    EntertainmentItem storedItem = createItemFromEntity(itemEntity);
+    ItemSearchIndex.getInstance().indexItem(storedItem);
+    TypeaheadIndex.getInstance().addItem(storedItem);
+
+    return itemKey;
   }
 
   /**
@@ -93,8 +179,80 @@ public final class EntertainmentItemDatastore {
    * optional object will be empty if the EntertainmentItem Entity was not found
    */
   public Optional<EntertainmentItem> queryItem(long uniqueId) {
-    return queryItemByProperty(
-        Entity.KEY_RESERVED_PROPERTY, KeyFactory.createKey(ENTERTAINMENT_ITEM_KIND, uniqueId));
+    EntertainmentItem cachedItem = itemCache.getIfPresent(uniqueId);
+
+    if (cachedItem != null) {
+      return Optional.of(cachedItem);
+    }
+
+    Entity itemEntity;
+
+    try {
+      itemEntity = datastoreService.get(createItemKey(uniqueId));
+    } catch (EntityNotFoundException e) {
+      return Optional.empty();
+    }
+
+    EntertainmentItem item = createItemFromEntity(itemEntity);
+    itemCache.put(uniqueId, item);
+
+    return Optional.of(item);
+  }
+
+  /**
+   * Finds the entertainment items with the given unique ids. Items that are not cached are fetched
+   * with batch gets by key, split in chunks when there are too many keys for a single batch.
+   *
+   * @param uniqueIds ids used to identify the EntertainmentItem Entities in the Datastore
+   * @return map from unique id to the EntertainmentItem found in Datastore, ids that don't map to
+   *     an item are not included in the map
+   */
+  public Map<Long, EntertainmentItem> queryItemsById(Collection<Long> uniqueIds) {
+    Map<Long, EntertainmentItem> items = new HashMap<>(itemCache.getAllPresent(uniqueIds));
+    List<Key> uncachedKeys = new ArrayList<>();
+
+    for (Long uniqueId : uniqueIds) {
+      if (!items.containsKey(uniqueId)) {
+        uncachedKeys.add(createItemKey(uniqueId));
+      }
+    }
+
+    if (uncachedKeys.isEmpty()) {
+      return items;
+    }
+
+    for (List<Key> keyBatch : Lists.partition(uncachedKeys, Utils.MAX_KEYS_PER_BATCH)) {
+      for (Entity itemEntity : datastoreService.get(keyBatch).values()) {
+        EntertainmentItem item = createItemFromEntity(itemEntity);
+
+        items.put(itemEntity.getKey().getId(), item);
+        itemCache.put(itemEntity.getKey().getId(), item);
+      }
+    }
+
+    return items;
+  }
+
+  /**
+   * Finds the entertainment items with the given unique ids and keeps the order of the ids.
+   *
+   * @param uniqueIds ids used to identify the EntertainmentItem Entities in the Datastore
+   * @return list with the EntertainmentItems found in Datastore in the same order as the given ids,
+   *     ids that don't map to an item are skipped
+   */
+  public List<EntertainmentItem> queryItems(Collection<Long> uniqueIds) {
+    Map<Long, EntertainmentItem> itemsById = queryItemsById(uniqueIds);
+    List<EntertainmentItem> items = new ArrayList<>();
+
+    for (Long uniqueId : uniqueIds) {
+      EntertainmentItem item = itemsById.get(uniqueId);
+
+      if (item != null) {
+        items.add(item);
+      }
+    }
+
+    return items;
   }
 
   /**
@@ -133,19 +291,43 @@ public final class EntertainmentItemDatastore {
    */
   public EntertainmentItemList queryItemsByTitlePrefix(
       FetchOptions fetchOptions, String titlePrefix, SortDirection sortDirection) {
+    return queryItemsByTitlePrefix(
+        fetchOptions, titlePrefix, Collections.emptyMap(), sortDirection);
+  }
+
+  /**
+   * Queries entertainment items with the specified title prefix, facet values and sorting
+   * direction.
+   *
+   * @param fetchOptions the fetch options used by the resulting query
+   * @param titlePrefix the title prefix used to filter the query
+   * @param facetFilters map from facet to the value the items need to have
+   * @param sortDirection the sort direction used to order the entertainment
+   *     items based on title
+   * @return list with the entertainment items that match the title prefix, facet values and
+   *     sorting direction, the list will be empty if no items were found
+   */
+  public EntertainmentItemList queryItemsByTitlePrefix(FetchOptions fetchOptions,
+      String titlePrefix, Map<Facet, String> facetFilters, SortDirection sortDirection) {
     Query query =
         new Query(ENTERTAINMENT_ITEM_KIND).addSort(NORMALIZED_TITLE_PROPERTY_KEY, sortDirection);
+    List<Filter> filters = createFacetFilters(facetFilters);
 
     if (!titlePrefix.isEmpty()) {
-      query = query.setFilter(
-          Utils.getPrefixFilter(NORMALIZED_TITLE_PROPERTY_KEY, titlePrefix.toLowerCase()));
+      filters.add(
+          Utils.getPrefixFilter(NORMALIZED_TITLE_PROPERTY_KEY, Utils.normalizeText(titlePrefix)));
     }
 
-    return createItemListFromQuery(fetchOptions, query);
+    return createItemListFromQuery(fetchOptions, setFilters(query, filters));
   }
 
   /**
-   * Queries entertainment items based on recent release date.
+   * Queries entertainment items based on recent release date. Items filtered by title prefix are
+   * found through their list of title prefixes, so they keep the release date order. Prefixes
+   * longer than the indexed ones are checked against the normalized title of the scanned items,
+   * which can make pages shorter than the limit. Until the ehub.titlePrefixesBackfilled system
+   * property is set, items filtered by title prefix are ordered by title first instead, since
+   * items stored before the prefixes existed can't be found through them.
    *
    * @param fetchOptions the fetch options used by the resulting query
    * @param titlePrefix the title prefix used to filter the query
@@ -156,18 +338,206 @@ public final class EntertainmentItemDatastore {
    */
   public EntertainmentItemList queryItemsByReleaseDate(
       FetchOptions fetchOptions, String titlePrefix, SortDirection sortDirection) {
-    Query query = new Query(ENTERTAINMENT_ITEM_KIND);
+    return queryItemsByReleaseDate(
+        fetchOptions, titlePrefix, Collections.emptyMap(), sortDirection);
+  }
 
-    // Filtering by title is allowed, but will override the release date sort (Datastore limitation)
-    if (!titlePrefix.isEmpty()) {
-      query = query
-                  .setFilter(Utils.getPrefixFilter(
-                      NORMALIZED_TITLE_PROPERTY_KEY, titlePrefix.toLowerCase()))
-                  .addSort(NORMALIZED_TITLE_PROPERTY_KEY, SortDirection.ASCENDING);
+  /**
+   * Queries entertainment items with the specified facet values based on recent release date,
+   * filtered by title prefix the same way as {@link #queryItemsByReleaseDate(FetchOptions,
+   * String, SortDirection)}.
+   *
+   * @param fetchOptions the fetch options used by the resulting query
+   * @param titlePrefix the title prefix used to filter the query
+   * @param facetFilters map from facet to the value the items need to have
+   * @param sortDirection the sort direction used to order the entertainment
+   *     items based on release date
+   * @return list with the entertainment items that match the facet values in the given release
+   *     date ordering, the list will be empty if no items were found
+   */
+  public EntertainmentItemList queryItemsByReleaseDate(FetchOptions fetchOptions,
+      String titlePrefix, Map<Facet, String> facetFilters, SortDirection sortDirection) {
+    Query query = new Query(ENTERTAINMENT_ITEM_KIND)
+                      .addSort(RELEASE_DATE_TIMESTAMP_MILLIS_PROPERTY_KEY, sortDirection);
+    String normalizedPrefix = Utils.normalizeText(titlePrefix);
+    List<Filter> filters = createFacetFilters(facetFilters);
+
+    if (normalizedPrefix.isEmpty()) {
+      return createItemListFromQuery(fetchOptions, setFilters(query, filters));
+    }
+
+    if (!Boolean.getBoolean(TITLE_PREFIXES_BACKFILLED_PROPERTY_KEY)) {
+      return queryItemsByNormalizedTitle(fetchOptions, normalizedPrefix, filters, sortDirection);
+    }
+
+    List<String> indexedPrefixes = getTitlePrefixes(normalizedPrefix);
+    filters.add(new FilterPredicate(TITLE_PREFIXES_PROPERTY_KEY, FilterOperator.EQUAL,
+        indexedPrefixes.get(indexedPrefixes.size() - 1)));
+    setFilters(query, filters);
+
+    FetchOptions scanOptions = FetchOptions.Builder.withLimit(MAX_SCANNED_ENTITIES_PER_PAGE);
+
+    if (fetchOptions.getStartCursor() != null) {
+      scanOptions.startCursor(fetchOptions.getStartCursor());
     }
 
-    return createItemListFromQuery(
-        fetchOptions, query.addSort(RELEASE_DATE_TIMESTAMP_MILLIS_PROPERTY_KEY, sortDirection));
+    int pageSize =
+        fetchOptions.getLimit() == null ? MAX_SCANNED_ENTITIES_PER_PAGE : fetchOptions.getLimit();
+    QueryResultIterator<Entity> entityIterator =
+        datastoreService.prepare(query).asQueryResultIterator(scanOptions);
+    List<EntertainmentItem> itemList = new ArrayList<>();
+    int scannedEntities = 0;
+
+    // The cursor is taken right after the last scanned entity, so the next page starts after it.
+    while (itemList.size() < pageSize && entityIterator.hasNext()) {
+      Entity itemEntity = entityIterator.next();
+      String normalizedTitle = (String) itemEntity.getProperty(NORMALIZED_TITLE_PROPERTY_KEY);
+      scannedEntities++;
+
+      if (normalizedTitle != null && normalizedTitle.startsWith(normalizedPrefix)) {
+        itemList.add(createItemFromEntity(itemEntity));
+      }
+    }
+
+    prefixQueryCount.incrementAndGet();
+    prefixQueryScannedEntities.addAndGet(scannedEntities);
+    prefixQueryReturnedEntities.addAndGet(itemList.size());
+
+    return new EntertainmentItemList(itemList, entityIterator.getCursor().toWebSafeString());
+  }
+
+  /**
+   * Queries entertainment items by release date with a range filter on their normalized title,
+   * used until the NORMALIZE_TITLES maintenance task has stored the title prefixes of existing
+   * items. Filtering by title overrides the release date sort (Datastore limitation), so the items
+   * are ordered by title first. With facet filters the release date sort is left out, so the
+   * (facet, normalizedTitle) indexes serve the query.
+   */
+  private EntertainmentItemList queryItemsByNormalizedTitle(FetchOptions fetchOptions,
+      String normalizedPrefix, List<Filter> filters, SortDirection sortDirection) {
+    Query query = new Query(ENTERTAINMENT_ITEM_KIND)
+                      .addSort(NORMALIZED_TITLE_PROPERTY_KEY, SortDirection.ASCENDING);
+
+    if (filters.isEmpty()) {
+      query.addSort(RELEASE_DATE_TIMESTAMP_MILLIS_PROPERTY_KEY, sortDirection);
+    }
+
+    filters.add(Utils.getPrefixFilter(NORMALIZED_TITLE_PROPERTY_KEY, normalizedPrefix));
+
+    return createItemListFromQuery(fetchOptions, setFilters(query, filters));
+  }
+
+  /**
+   * Gives access to the number of entities scanned and returned by release date queries filtered
+   * by title prefix, which differ when the prefix is longer than the indexed prefixes.
+   *
+   * @return snapshot of the prefix query counters
+   */
+  public PrefixQueryStats getPrefixQueryStats() {
+    return new PrefixQueryStats(prefixQueryCount.get(), prefixQueryScannedEntities.get(),
+        prefixQueryReturnedEntities.get());
+  }
+
+  /**
+   * Recomputes the normalized title and title prefixes of every item, needed for items that were
+   * stored before titles were normalized with {@link Utils#normalizeText(String)} or before the
+   * prefixes were stored. Only items whose values change are written back.
+   *
+   * @return number of items that were updated
+   */
+  public int normalizeTitles() {
+    List<Entity> updatedEntities = new ArrayList<>();
+
+    for (Entity itemEntity :
+        datastoreService.prepare(new Query(ENTERTAINMENT_ITEM_KIND))
+            .asIterable(FetchOptions.Builder.withChunkSize(UPDATE_BATCH_SIZE))) {
+      String normalizedTitle =
+          Utils.normalizeText((String) itemEntity.getProperty(DISPLAY_TITLE_PROPERTY_KEY));
+
+      if (normalizedTitle == null || normalizedTitle.isEmpty()) {
+        continue;
+      }
+
+      List<String> titlePrefixes = getTitlePrefixes(normalizedTitle);
+
+      if (!normalizedTitle.equals(itemEntity.getProperty(NORMALIZED_TITLE_PROPERTY_KEY))
+          || !titlePrefixes.equals(itemEntity.getProperty(TITLE_PREFIXES_PROPERTY_KEY))) {
+        itemEntity.setProperty(NORMALIZED_TITLE_PROPERTY_KEY, normalizedTitle);
+        itemEntity.setProperty(TITLE_PREFIXES_PROPERTY_KEY, titlePrefixes);
+        updatedEntities.add(itemEntity);
+      }
+    }
+
+    for (List<Entity> entityBatch : Lists.partition(updatedEntities, UPDATE_BATCH_SIZE)) {
+      datastoreService.put(entityBatch);
+    }
+
+    return updatedEntities.size();
+  }
+
+  /**
+   * Extracts the facet fields of every item from its genre, release date and runtime, and
+   * recounts the facet counters from them. Needed for items that were stored before facets were
+   * extracted, only items whose facet fields change are written back.
+   *
+   * @return number of items that were updated
+   */
+  public int backfillItemFacets() {
+    List<Entity> updatedEntities = new ArrayList<>();
+    List<ItemFacets> allItemFacets = new ArrayList<>();
+
+    for (Entity itemEntity :
+        datastoreService.prepare(new Query(ENTERTAINMENT_ITEM_KIND))
+            .asIterable(FetchOptions.Builder.withChunkSize(UPDATE_BATCH_SIZE))) {
+      ItemFacets itemFacets = createItemFacets(itemEntity);
+      Map<String, Object> storedProperties = new HashMap<>(itemEntity.getProperties());
+      setFacetProperties(itemEntity, itemFacets);
+      allItemFacets.add(itemFacets);
+
+      if (!storedProperties.equals(itemEntity.getProperties())) {
+        updatedEntities.add(itemEntity);
+      }
+    }
+
+    for (List<Entity> entityBatch : Lists.partition(updatedEntities, UPDATE_BATCH_SIZE)) {
+      datastoreService.put(entityBatch);
+    }
+
+    ItemFacetDatastore.getInstance().recountFacets(allItemFacets);
+
+    return updatedEntities.size();
+  }
+
+  /**
+   * Extracts the facets of an item that was read from Datastore.
+   *
+   * @param item the item to get the facets of
+   * @return facets of the item
+   */
+  public ItemFacets getItemFacets(EntertainmentItem item) {
+    Long releaseDateTimestampMillis = item.getReleaseDate() == null
+        ? null
+        : Utils.getTimestampMillisFromDate(item.getReleaseDate(), RELEASE_DATE_FORMAT);
+
+    return ItemFacets.create(item.getGenre(), releaseDateTimestampMillis, item.getRuntime());
+  }
+
+  /**
+   * Gives access to the hit, miss and eviction counters of the item cache used by {@link
+   * #queryItem(long)}.
+   *
+   * @return snapshot of the item cache statistics
+   */
+  public CacheStats getItemCacheStats() {
+    return itemCache.stats();
+  }
+
+  /**
+   * Discards every cached item. Needed when items are written to Datastore without going through
+   * this class.
+   */
+  public void invalidateItemCache() {
+    itemCache.invalidateAll();
   }
 
   private Optional<EntertainmentItem> queryItemByProperty(
@@ -186,6 +556,92 @@ public final class EntertainmentItemDatastore {
     return Optional.of(createItemFromEntity(itemEntity));
   }
 
+  /**
+   * Gets the prefixes of a normalized title that are indexed, from one code point up to
+   * MAX_INDEXED_PREFIX_LENGTH code points.
+   */
+  private static List<String> getTitlePrefixes(String normalizedTitle) {
+    List<String> titlePrefixes = new ArrayList<>();
+
+    if (normalizedTitle == null) {
+      return titlePrefixes;
+    }
+
+    int endIndex = 0;
+
+    while (endIndex < normalizedTitle.length()
+        && titlePrefixes.size() < MAX_INDEXED_PREFIX_LENGTH) {
+      endIndex = normalizedTitle.offsetByCodePoints(endIndex, 1);
+      titlePrefixes.add(normalizedTitle.substring(0, endIndex));
+    }
+
+    return titlePrefixes;
+  }
+
+  private static ItemFacets createItemFacets(Entity itemEntity) {
+    return ItemFacets.create((String) itemEntity.getProperty(GENRE_PROPERTY_KEY),
+        (Long) itemEntity.getProperty(RELEASE_DATE_TIMESTAMP_MILLIS_PROPERTY_KEY),
+        (String) itemEntity.getProperty(RUNTIME_PROPERTY_KEY));
+  }
+
+  // Unknown facets are removed, so the Entity doesn't match filters on them.
+  private static void setFacetProperties(Entity itemEntity, ItemFacets itemFacets) {
+    setOrRemoveProperty(itemEntity, GENRES_PROPERTY_KEY,
+        itemFacets.getGenres().isEmpty() ? null : itemFacets.getGenres());
+    setOrRemoveProperty(itemEntity, RELEASE_YEAR_PROPERTY_KEY, itemFacets.getReleaseYear());
+    setOrRemoveProperty(itemEntity, RUNTIME_MINUTES_PROPERTY_KEY, itemFacets.getRuntimeMinutes());
+    setOrRemoveProperty(itemEntity, RUNTIME_RANGE_PROPERTY_KEY,
+        itemFacets.getRuntimeRange() == null ? null : itemFacets.getRuntimeRange().name());
+  }
+
+  private static void setOrRemoveProperty(Entity entity, String propertyName, Object value) {
+    if (value == null) {
+      entity.removeProperty(propertyName);
+    } else {
+      entity.setProperty(propertyName, value);
+    }
+  }
+
+  private static List<Filter> createFacetFilters(Map<Facet, String> facetFilters) {
+    List<Filter> filters = new ArrayList<>();
+
+    for (Map.Entry<Facet, String> facetFilter : facetFilters.entrySet()) {
+      switch (facetFilter.getKey()) {
+        case GENRE:
+          filters.add(new FilterPredicate(
+              GENRES_PROPERTY_KEY, FilterOperator.EQUAL, facetFilter.getValue()));
+          break;
+        case RELEASE_YEAR:
+          filters.add(new FilterPredicate(RELEASE_YEAR_PROPERTY_KEY, FilterOperator.EQUAL,
+              Long.parseLong(facetFilter.getValue())));
+          break;
+        case RUNTIME_RANGE:
+          filters.add(new FilterPredicate(
+              RUNTIME_RANGE_PROPERTY_KEY, FilterOperator.EQUAL, facetFilter.getValue()));
+          break;
+        default:
+          throw new IllegalArgumentException(
+              "EntertainmentItemDatastore: Unknown facet " + facetFilter.getKey());
+      }
+    }
+
+    return filters;
+  }
+
+  private static Query setFilters(Query query, List<Filter> filters) {
+    if (filters.size() == 1) {
+      query.setFilter(filters.get(0));
+    } else if (filters.size() > 1) {
+      query.setFilter(CompositeFilterOperator.and(filters));
+    }
+
+    return query;
+  }
+
+  private static Key createItemKey(long uniqueId) {
+    return KeyFactory.createKey(ENTERTAINMENT_ITEM_KIND, uniqueId);
+  }
+
   private EntertainmentItemList createItemListFromQuery(FetchOptions fetchOptions, Query query) {
     PreparedQuery queryResults = datastoreService.prepare(query);
 
@@ -229,4 +685,31 @@ public final class EntertainmentItemDatastore {
         .setOmdbId(omdbId)
         .build();
   }
+
+  /**
+   * Counters of the release date queries filtered by title prefix.
+   */
+  public static final class PrefixQueryStats {
+    private final long queryCount;
+    private final long scannedEntities;
+    private final long returnedEntities;
+
+    public PrefixQueryStats(long queryCount, long scannedEntities, long returnedEntities) {
+      this.queryCount = queryCount;
+      this.scannedEntities = scannedEntities;
+      this.returnedEntities = returnedEntities;
+    }
+
+    public long getQueryCount() {
+      return queryCount;
+    }
+
+    public long getScannedEntities() {
+      return scannedEntities;
+    }
+
+    public long getReturnedEntities() {
+      return returnedEntities;
+    }
+  }
 }
@@ -1,18 +1,37 @@
 package com.google.ehub.data;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Stores data used by DashboardServlet to send information about the list of
- * Entertainment Items and the current page cursor.
+ * Entertainment Items and the current page cursor. The like and comment counts of the items and
+ * the items liked by the current user are only included when they are requested.
  */
 public final class EntertainmentItemList {
   private final List<EntertainmentItem> items;
   private final String pageCursor;
+  private final Map<Long, Long> likeCounts;
+  private final Set<Long> likedItemIds;
+  private final Map<Long, Long> commentCounts;
 
   public EntertainmentItemList(List<EntertainmentItem> items, String pageCursor) {
+    this(items, pageCursor, null, null);
+  }
+
+  public EntertainmentItemList(List<EntertainmentItem> items, String pageCursor,
+      Map<Long, Long> likeCounts, Set<Long> likedItemIds) {
+    this(items, pageCursor, likeCounts, likedItemIds, null);
+  }
+
+  public EntertainmentItemList(List<EntertainmentItem> items, String pageCursor,
+      Map<Long, Long> likeCounts, Set<Long> likedItemIds, Map<Long, Long> commentCounts) {
     this.items = items;
     this.pageCursor = pageCursor;
+    this.likeCounts = likeCounts;
+    this.likedItemIds = likedItemIds;
+    this.commentCounts = commentCounts;
   }
 
   public List<EntertainmentItem> getItems() {
@@ -22,4 +41,16 @@ public final class EntertainmentItemList {
   public String getPageCursor() {
     return pageCursor;
   }
+
+  public Map<Long, Long> getLikeCounts() {
+    return likeCounts;
+  }
+
+  public Set<Long> getLikedItemIds() {
+    return likedItemIds;
+  }
+
+  public Map<Long, Long> getCommentCounts() {
+    return commentCounts;
+  }
 }
@@ -1,15 +1,34 @@
 package com.google.ehub.data;
 
+import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
-import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
 import com.google.appengine.api.datastore.Query.FilterOperator;
 import com.google.appengine.api.datastore.Query.FilterPredicate;
-import java.util.Set;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.ehub.utility.BackgroundTaskScheduler;
+import com.google.ehub.utility.BackgroundTaskScheduler.Task;
+import com.google.ehub.utility.RecommendationConfig;
+import com.google.ehub.utility.Utils;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Singleton class that manages the addition and querying of FavoriteItems stored in Datastore.
@@ -19,9 +38,33 @@ public final class FavoriteItemDatastore {
   private static final String USER_EMAIL_PROPERTY_KEY = "userEmail";
   private static final String ITEM_ID_PROPERTY_KEY = "itemId";
 
+  // Favorites of every user and likers of every item as last applied to the recommendation data,
+  // so the next update only applies what changed since then.
+  private static final String PROCESSED_FAVORITES_KIND = "processedFavorites";
+  private static final String ITEM_IDS_PROPERTY_KEY = "itemIds";
+  private static final String PROCESSED_LIKERS_KIND = "processedLikers";
+  private static final String EMAILS_PROPERTY_KEY = "emails";
+
+  private static final String LIKE_COUNTER_SHARD_KIND = "favoriteItemCounterShard";
+  private static final int NUM_LIKE_COUNTER_SHARDS = 20;
+
+  private static final int MAX_TRANSACTION_ATTEMPTS = 5;
+  private static final int MIGRATION_BATCH_SIZE = 500;
+
+  private static final int MAX_CONCURRENT_QUERIES = 10;
+
   private static FavoriteItemDatastore instance;
 
   private final DatastoreService datastoreService = DatastoreServiceFactory.getDatastoreService();
+  private final AsyncDatastoreService asyncDatastoreService =
+      DatastoreServiceFactory.getAsyncDatastoreService();
+  private final ShardedCounter likeCounter =
+      new ShardedCounter(LIKE_COUNTER_SHARD_KIND, NUM_LIKE_COUNTER_SHARDS);
+  private final UserSimilarityDatastore userSimilarityDatastore =
+      UserSimilarityDatastore.getInstance();
+  private final UserSignatureDatastore userSignatureDatastore =
+      UserSignatureDatastore.getInstance();
+  private final RelatedItemDatastore relatedItemDatastore = RelatedItemDatastore.getInstance();
 
   private FavoriteItemDatastore() {}
 
@@ -40,37 +83,84 @@ public final class FavoriteItemDatastore {
   }
 
   /**
-   * Adds a favorite item Entity to Datastore if it doesn't exist yet.
+   * Adds a favorite item Entity to Datastore if it doesn't exist yet, and increases the like
+   * counter of the item in the same transaction. The Entity is stored under a key derived from
+   * the user email and the item id.
    *
    * @param userEmail The email of the user that liked the item
    * @param itemId the id of the item that was liked
    */
   public void addFavoriteItem(String userEmail, Long itemId) {
-    if (doesFavoriteItemExist(userEmail, itemId)) {
-      return;
-    }
-
-    Entity favoriteItemEntity = new Entity(FAVORITE_ITEM_KIND);
-    favoriteItemEntity.setProperty(USER_EMAIL_PROPERTY_KEY, userEmail);
-    favoriteItemEntity.setProperty(ITEM_ID_PROPERTY_KEY, itemId);
-
-    datastoreService.put(favoriteItemEntity);
+    updateFavoriteItem(userEmail, itemId, /* isFavorite */ true);
   }
 
   /**
-   * Removes a favorite item Entity from Datastore if it exists.
+   * Removes a favorite item Entity from Datastore if it exists, and decreases the like counter of
+   * the item in the same transaction.
    *
    * @param userEmail The email of the user that liked the item
    * @param itemId the id of the item that was liked
    */
   public void removeFavoriteItem(String userEmail, Long itemId) {
-    Entity favoriteItemEntity = getFavoriteItemEntity(userEmail, itemId);
+    updateFavoriteItem(userEmail, itemId, /* isFavorite */ false);
+  }
 
-    if (favoriteItemEntity == null) {
-      return;
+  /**
+   * Gets the number of users that liked a given item from its sharded like counter.
+   *
+   * @param itemId the Id of the item
+   * @return number of users that liked the item
+   */
+  public long queryLikeCount(Long itemId) {
+    return likeCounter.getCount(getLikeCounterName(itemId));
+  }
+
+  /**
+   * Gets the number of users that liked each of the given items, the like counters of all the
+   * items are read with batched gets.
+   *
+   * @param itemIds the Ids of the items
+   * @return map from item Id to the number of users that liked the item
+   */
+  public Map<Long, Long> queryLikeCounts(Collection<Long> itemIds) {
+    Set<String> counterNames = new HashSet<>();
+
+    for (Long itemId : itemIds) {
+      counterNames.add(getLikeCounterName(itemId));
     }
 
-    datastoreService.delete(favoriteItemEntity.getKey());
+    Map<String, Long> countsByCounterName = likeCounter.getCounts(counterNames);
+    Map<Long, Long> likeCounts = new HashMap<>();
+
+    for (Long itemId : itemIds) {
+      likeCounts.put(itemId, countsByCounterName.get(getLikeCounterName(itemId)));
+    }
+
+    return likeCounts;
+  }
+
+  /**
+   * Discards the like counts cached by this instance.
+   */
+  public void invalidateCachedLikeCounts() {
+    likeCounter.invalidateCachedCounts();
+  }
+
+  /**
+   * Checks if a favorite item relation exists in Datastore with a get by key.
+   *
+   * @param userEmail the email that liked the item
+   * @param itemId the item that was liked by the user
+   * @return true if the favorite item exists in Datastore, otherwise false
+   */
+  public boolean doesFavoriteItemExist(String userEmail, Long itemId) {
+    try {
+      datastoreService.get(createFavoriteItemKey(userEmail, itemId));
+    } catch (EntityNotFoundException e) {
+      return false;
+    }
+
+    return true;
   }
 
   /**
@@ -94,6 +184,30 @@ public final class FavoriteItemDatastore {
     return favoriteIds;
   }
 
+  /**
+   * Finds which of the given items were liked by a user with a batch get of the favorite item
+   * keys, so the cost depends on the number of items given instead of the number of favorites.
+   *
+   * @param userEmail the email of the user
+   * @param itemIds the Ids of the items to check
+   * @return set holding the given item Ids that the user has liked
+   */
+  public Set<Long> queryFavoriteIds(String userEmail, Collection<Long> itemIds) {
+    List<Key> favoriteItemKeys = new ArrayList<>();
+
+    for (Long itemId : itemIds) {
+      favoriteItemKeys.add(createFavoriteItemKey(userEmail, itemId));
+    }
+
+    Set<Long> favoriteIds = new HashSet<>();
+
+    for (Entity favoriteItemEntity : datastoreService.get(favoriteItemKeys).values()) {
+      favoriteIds.add((Long) favoriteItemEntity.getProperty(ITEM_ID_PROPERTY_KEY));
+    }
+
+    return favoriteIds;
+  }
+
   /**
    * Queries the emails that have liked a given item.
    *
@@ -116,23 +230,522 @@ public final class FavoriteItemDatastore {
   }
 
   /**
-   * Uses a query to check if a favorite item relation already exists in Datastore.
+   * Queries the emails that have liked each of the given items. Items are grouped into IN queries,
+   * and a bounded number of those queries run concurrently, so the number of round trips grows
+   * slowly with the number of items.
    *
-   * @param userEmail the email that liked the item
-   * @param itemId the item that was liked by the user
-   * @return true if the favorite item exists in Datastore, otherwise false
+   * @param itemIds the Ids of the items that the users to search for have liked
+   * @return map from every given item Id to the set of emails that have liked it
    */
-  private boolean doesFavoriteItemExist(String userEmail, Long itemId) {
-    return getFavoriteItemEntity(userEmail, itemId) != null;
+  public Map<Long, Set<String>> queryEmails(Collection<Long> itemIds) {
+    Map<Long, Set<String>> emailsByItemId = new HashMap<>();
+
+    for (Long itemId : itemIds) {
+      emailsByItemId.put(itemId, new HashSet<>());
+    }
+
+    List<List<Long>> itemIdGroups =
+        Lists.partition(new ArrayList<>(emailsByItemId.keySet()), Utils.MAX_VALUES_PER_IN_FILTER);
+
+    for (List<List<Long>> concurrentGroups :
+        Lists.partition(itemIdGroups, MAX_CONCURRENT_QUERIES)) {
+      List<Iterator<Entity>> queryResults = new ArrayList<>();
+
+      // Every query is started before reading any results so that their RPCs overlap.
+      for (List<Long> itemIdGroup : concurrentGroups) {
+        Query query = new Query(FAVORITE_ITEM_KIND)
+                          .setFilter(new FilterPredicate(
+                              ITEM_ID_PROPERTY_KEY, FilterOperator.IN, itemIdGroup));
+        queryResults.add(asyncDatastoreService.prepare(query).asIterator());
+      }
+
+      for (Iterator<Entity> favoriteItemEntities : queryResults) {
+        while (favoriteItemEntities.hasNext()) {
+          Entity favoriteItemEntity = favoriteItemEntities.next();
+
+          emailsByItemId.get((Long) favoriteItemEntity.getProperty(ITEM_ID_PROPERTY_KEY))
+              .add((String) favoriteItemEntity.getProperty(USER_EMAIL_PROPERTY_KEY));
+        }
+      }
+    }
+
+    return emailsByItemId;
   }
 
-  private Entity getFavoriteItemEntity(String userEmail, Long itemId) {
-    Query query =
-        new Query(FAVORITE_ITEM_KIND)
-            .setFilter(CompositeFilterOperator.and(
-                new FilterPredicate(USER_EMAIL_PROPERTY_KEY, FilterOperator.EQUAL, userEmail),
-                new FilterPredicate(ITEM_ID_PROPERTY_KEY, FilterOperator.EQUAL, itemId)));
+  /**
+   * Rewrites the favorite item Entities that were stored with a Datastore generated id so they
+   * use the key derived from the user email and the item id.
+   *
+   * @return number of favorite item Entities that were migrated
+   */
+  public int migrateLegacyFavoriteItems() {
+    PreparedQuery queryResults = datastoreService.prepare(new Query(FAVORITE_ITEM_KIND));
+
+    List<Entity> migratedEntities = new ArrayList<>();
+    List<Key> legacyKeys = new ArrayList<>();
+    int migratedCount = 0;
+
+    for (Entity favoriteItemEntity :
+        queryResults.asIterable(FetchOptions.Builder.withChunkSize(MIGRATION_BATCH_SIZE))) {
+      if (favoriteItemEntity.getKey().getName() != null) {
+        continue;
+      }
+
+      migratedEntities.add(createFavoriteItemEntity(
+          (String) favoriteItemEntity.getProperty(USER_EMAIL_PROPERTY_KEY),
+          (Long) favoriteItemEntity.getProperty(ITEM_ID_PROPERTY_KEY)));
+      legacyKeys.add(favoriteItemEntity.getKey());
+
+      if (legacyKeys.size() == MIGRATION_BATCH_SIZE) {
+        migratedCount += replaceEntities(migratedEntities, legacyKeys);
+      }
+    }
+
+    return migratedCount + replaceEntities(migratedEntities, legacyKeys);
+  }
+
+  /**
+   * Recomputes the like counter of every item from the favorite item Entities, used to backfill
+   * the counters of favorites that were added before the counters existed.
+   *
+   * @return number of like counters that were written
+   */
+  public int recountLikes() {
+    PreparedQuery queryResults = datastoreService.prepare(new Query(FAVORITE_ITEM_KIND));
+    Map<Long, Long> likeCounts = new HashMap<>();
+
+    for (Entity favoriteItemEntity :
+        queryResults.asIterable(FetchOptions.Builder.withChunkSize(MIGRATION_BATCH_SIZE))) {
+      likeCounts.merge((Long) favoriteItemEntity.getProperty(ITEM_ID_PROPERTY_KEY), 1L, Long::sum);
+    }
+
+    for (Map.Entry<Long, Long> likeCount : likeCounts.entrySet()) {
+      likeCounter.setCount(getLikeCounterName(likeCount.getKey()), likeCount.getValue());
+    }
+
+    return likeCounts.size();
+  }
+
+  /**
+   * Applies the favorites a user added or removed since the last update to the data used for
+   * recommendations: the common likes with the other users that like the same items, unless the
+   * items are pruned, the items liked together, and the MinHash signature of the user.
+   * Runs in the background, so a burst of likes of the same user is applied at once. The favorites
+   * are read with a query, a favorite the query doesn't return yet is applied by the next update.
+   *
+   * <p>Each changed item is first recorded as processed in a transaction, and only the update that
+   * commits the record applies the change, so concurrent updates never apply it twice. The change
+   * is lost instead if the update fails after the commit, and concurrent changes of the same pair
+   * can be lost as well, so the data drifts slowly from the favorites. The REBUILD_RELATED_ITEMS
+   * and REBUILD_USER_SIMILARITIES maintenance tasks recompute it and should be run periodically.
+   *
+   * @param userEmail the email of the user whose favorites changed
+   */
+  public void updateRecommendationData(String userEmail) {
+    Set<Long> favoriteIds = queryFavoriteIds(userEmail);
+    Set<Long> changedIds = new HashSet<>(
+        Sets.symmetricDifference(favoriteIds, queryProcessedFavoriteIds(null, userEmail)));
+
+    if (changedIds.isEmpty()) {
+      return;
+    }
+
+    Set<Long> prunedIds = userSimilarityDatastore.queryPrunedItemIds(changedIds);
+    List<Long> addedIds = new ArrayList<>();
+    boolean hasRemovedIds = false;
 
-    return datastoreService.prepare(query).asSingleEntity();
+    // Changes are applied one item at a time, so each pair of items is counted exactly once.
+    for (Long itemId : changedIds) {
+      ProcessedChange change = recordProcessedChange(userEmail, itemId, prunedIds.contains(itemId));
+
+      if (change == null) {
+        continue;
+      }
+
+      relatedItemDatastore.updateCooccurrences(
+          itemId, change.otherFavoriteIds, change.isFavorite ? 1 : -1);
+
+      if (!prunedIds.contains(itemId)) {
+        updateSimilarities(userEmail, itemId, change);
+      }
+
+      if (change.isFavorite) {
+        addedIds.add(itemId);
+      } else {
+        hasRemovedIds = true;
+      }
+    }
+
+    if (hasRemovedIds) {
+      userSignatureDatastore.updateSignature(userEmail, favoriteIds);
+    } else {
+      for (Long itemId : addedIds) {
+        userSignatureDatastore.addFavoriteItem(userEmail, itemId);
+      }
+    }
+  }
+
+  /**
+   * Recomputes the common likes between every pair of users from the favorite item Entities, used
+   * to backfill the user similarities of favorites that were added before they existed.
+   *
+   * @return number of user similarity Entities that were written
+   */
+  public int rebuildUserSimilarities() {
+    Map<String, Set<Long>> favoriteIdsByEmail = queryAllFavoriteIds();
+    Map<Long, Set<String>> itemLikes = new HashMap<>();
+
+    for (Map.Entry<String, Set<Long>> favoriteIds : favoriteIdsByEmail.entrySet()) {
+      for (Long itemId : favoriteIds.getValue()) {
+        itemLikes.computeIfAbsent(itemId, id -> new HashSet<>()).add(favoriteIds.getKey());
+      }
+    }
+
+    replaceProcessedFavoriteIds(favoriteIdsByEmail);
+
+    return userSimilarityDatastore.rebuildSimilarities(
+        itemLikes, RecommendationConfig.getMaxItemLikers());
+  }
+
+  /**
+   * Recomputes the MinHash signature of every user from the favorite item Entities, used to
+   * backfill the signatures of favorites that were added before they existed.
+   *
+   * @return number of user signature Entities that were written
+   */
+  public int rebuildUserSignatures() {
+    return userSignatureDatastore.rebuildSignatures(queryAllFavoriteIds());
+  }
+
+  /**
+   * Recomputes the items liked together by the same users and the related items of every item
+   * from the favorite item Entities, used to backfill the related items of favorites that were
+   * added before they existed.
+   *
+   * @return number of item co-occurrence and related items Entities that were written
+   */
+  public int rebuildRelatedItems() {
+    Map<String, Set<Long>> favoriteIdsByEmail = queryAllFavoriteIds();
+    replaceProcessedFavoriteIds(favoriteIdsByEmail);
+
+    return relatedItemDatastore.rebuildRelatedItems(favoriteIdsByEmail);
+  }
+
+  /**
+   * Adds or removes a favorite item Entity together with the update to the like counter, the
+   * counter is only updated if the favorite item relation actually changed. Once the transaction
+   * is committed, the like count used by the typeahead suggestions is updated and the update of
+   * the data used for user recommendations is scheduled.
+   */
+  private void updateFavoriteItem(String userEmail, Long itemId, boolean isFavorite) {
+    Key favoriteItemKey = createFavoriteItemKey(userEmail, itemId);
+
+    for (int attempt = 1;; attempt++) {
+      Transaction transaction =
+          datastoreService.beginTransaction(TransactionOptions.Builder.withXG(true));
+
+      try {
+        if (doesEntityExist(transaction, favoriteItemKey) == isFavorite) {
+          return;
+        }
+
+        if (isFavorite) {
+          datastoreService.put(transaction, createFavoriteItemEntity(userEmail, itemId));
+        } else {
+          datastoreService.delete(transaction, favoriteItemKey);
+        }
+
+        likeCounter.increment(transaction, getLikeCounterName(itemId), isFavorite ? 1 : -1);
+        transaction.commit();
+        break;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == MAX_TRANSACTION_ATTEMPTS) {
+          throw e;
+        }
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+
+    // The favorite is committed at this point, so failures below must not retry the transaction.
+    likeCounter.invalidateCachedCount(getLikeCounterName(itemId));
+    TypeaheadIndex.getInstance().addLikes(itemId, isFavorite ? 1 : -1);
+    BackgroundTaskScheduler.getInstance().schedule(Task.UPDATE_RECOMMENDATION_DATA, userEmail);
+  }
+
+  /**
+   * Updates the common likes between the user and the other processed likers of an item. A like
+   * that gives the item too many likers prunes it instead, which also keeps the processed likers
+   * of the item from growing any further.
+   */
+  private void updateSimilarities(String userEmail, Long itemId, ProcessedChange change) {
+    if (change.isFavorite
+        && change.otherLikerEmails.size() + 1 > RecommendationConfig.getMaxItemLikers()) {
+      userSimilarityDatastore.pruneItem(itemId);
+    } else {
+      userSimilarityDatastore.updateSimilarities(
+          userEmail, change.otherLikerEmails, change.isFavorite ? 1 : -1);
+    }
+  }
+
+  /**
+   * Records in a transaction that the current state of a favorite is applied to the recommendation
+   * data, in the processed favorites of the user and, unless the item is pruned, the processed
+   * likers of the item. The favorite is read in the same transaction, so the record matches it
+   * even if the query that found the change is stale.
+   *
+   * @return the change that was recorded and must be applied, null if it was already recorded
+   */
+  private ProcessedChange recordProcessedChange(String userEmail, Long itemId, boolean isPruned) {
+    Key favoriteItemKey = createFavoriteItemKey(userEmail, itemId);
+
+    for (int attempt = 1;; attempt++) {
+      Transaction transaction =
+          datastoreService.beginTransaction(TransactionOptions.Builder.withXG(true));
+
+      try {
+        boolean isFavorite = doesEntityExist(transaction, favoriteItemKey);
+        Set<Long> processedIds = queryProcessedFavoriteIds(transaction, userEmail);
+
+        if (processedIds.contains(itemId) == isFavorite) {
+          return null;
+        }
+
+        Set<String> likerEmails =
+            isPruned ? new HashSet<>() : queryProcessedLikerEmails(transaction, itemId);
+        processedIds.remove(itemId);
+        likerEmails.remove(userEmail);
+
+        ProcessedChange change = new ProcessedChange(
+            isFavorite, new HashSet<>(processedIds), new HashSet<>(likerEmails));
+
+        if (isFavorite) {
+          processedIds.add(itemId);
+          likerEmails.add(userEmail);
+        }
+
+        putOrDelete(transaction, createProcessedFavoritesEntity(userEmail, processedIds),
+            ITEM_IDS_PROPERTY_KEY);
+
+        if (!isPruned) {
+          putOrDelete(transaction, createProcessedLikersEntity(itemId, likerEmails),
+              EMAILS_PROPERTY_KEY);
+        }
+
+        transaction.commit();
+
+        return change;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == MAX_TRANSACTION_ATTEMPTS) {
+          throw e;
+        }
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Set<Long> queryProcessedFavoriteIds(Transaction transaction, String userEmail) {
+    try {
+      Collection<Long> itemIds = (Collection<Long>) datastoreService
+                                     .get(transaction, createProcessedFavoritesKey(userEmail))
+                                     .getProperty(ITEM_IDS_PROPERTY_KEY);
+
+      return itemIds == null ? new HashSet<>() : new HashSet<>(itemIds);
+    } catch (EntityNotFoundException e) {
+      return new HashSet<>();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Set<String> queryProcessedLikerEmails(Transaction transaction, Long itemId) {
+    try {
+      Collection<String> emails = (Collection<String>) datastoreService
+                                      .get(transaction, createProcessedLikersKey(itemId))
+                                      .getProperty(EMAILS_PROPERTY_KEY);
+
+      return emails == null ? new HashSet<>() : new HashSet<>(emails);
+    } catch (EntityNotFoundException e) {
+      return new HashSet<>();
+    }
+  }
+
+  /**
+   * Stores an Entity holding a list property, or deletes it if the list is empty.
+   */
+  private void putOrDelete(Transaction transaction, Entity entity, String listPropertyKey) {
+    if (((Collection<?>) entity.getProperty(listPropertyKey)).isEmpty()) {
+      datastoreService.delete(transaction, entity.getKey());
+    } else {
+      datastoreService.put(transaction, entity);
+    }
+  }
+
+  /**
+   * Replaces the processed favorites of every user and the processed likers of every item with
+   * the given favorites, used by the rebuilds of the recommendation data so that later updates
+   * start from the rebuilt data. Items that are pruned or have too many likers get no processed
+   * likers, since their likes are not counted.
+   */
+  private void replaceProcessedFavoriteIds(Map<String, Set<Long>> favoriteIdsByEmail) {
+    List<Entity> processedFavoritesEntities = new ArrayList<>();
+    Map<Long, Set<String>> likerEmailsByItemId = new HashMap<>();
+
+    for (Map.Entry<String, Set<Long>> favoriteIds : favoriteIdsByEmail.entrySet()) {
+      processedFavoritesEntities.add(
+          createProcessedFavoritesEntity(favoriteIds.getKey(), favoriteIds.getValue()));
+
+      for (Long itemId : favoriteIds.getValue()) {
+        likerEmailsByItemId.computeIfAbsent(itemId, id -> new HashSet<>())
+            .add(favoriteIds.getKey());
+      }
+    }
+
+    Set<Long> prunedIds = userSimilarityDatastore.queryPrunedItemIds(likerEmailsByItemId.keySet());
+    List<Entity> processedLikersEntities = new ArrayList<>();
+
+    for (Map.Entry<Long, Set<String>> likerEmails : likerEmailsByItemId.entrySet()) {
+      if (!prunedIds.contains(likerEmails.getKey())
+          && likerEmails.getValue().size() <= RecommendationConfig.getMaxItemLikers()) {
+        processedLikersEntities.add(
+            createProcessedLikersEntity(likerEmails.getKey(), likerEmails.getValue()));
+      }
+    }
+
+    replaceAllEntities(PROCESSED_FAVORITES_KIND, processedFavoritesEntities);
+    replaceAllEntities(PROCESSED_LIKERS_KIND, processedLikersEntities);
+  }
+
+  /**
+   * Replaces every stored Entity of a kind with the given Entities of the same kind.
+   */
+  private void replaceAllEntities(String kind, List<Entity> entities) {
+    Set<Key> newKeys = new HashSet<>();
+
+    for (Entity entity : entities) {
+      newKeys.add(entity.getKey());
+    }
+
+    PreparedQuery storedEntities = datastoreService.prepare(new Query(kind).setKeysOnly());
+    List<Key> staleKeys = new ArrayList<>();
+
+    for (Entity storedEntity :
+        storedEntities.asIterable(FetchOptions.Builder.withChunkSize(MIGRATION_BATCH_SIZE))) {
+      if (!newKeys.contains(storedEntity.getKey())) {
+        staleKeys.add(storedEntity.getKey());
+      }
+    }
+
+    for (List<Key> keyBatch : Lists.partition(staleKeys, MIGRATION_BATCH_SIZE)) {
+      datastoreService.delete(keyBatch);
+    }
+
+    for (List<Entity> entityBatch : Lists.partition(entities, MIGRATION_BATCH_SIZE)) {
+      datastoreService.put(entityBatch);
+    }
+  }
+
+  private Map<String, Set<Long>> queryAllFavoriteIds() {
+    PreparedQuery queryResults = datastoreService.prepare(new Query(FAVORITE_ITEM_KIND));
+    Map<String, Set<Long>> favoriteIdsByEmail = new HashMap<>();
+
+    for (Entity favoriteItemEntity :
+        queryResults.asIterable(FetchOptions.Builder.withChunkSize(MIGRATION_BATCH_SIZE))) {
+      favoriteIdsByEmail
+          .computeIfAbsent((String) favoriteItemEntity.getProperty(USER_EMAIL_PROPERTY_KEY),
+              userEmail -> new HashSet<>())
+          .add((Long) favoriteItemEntity.getProperty(ITEM_ID_PROPERTY_KEY));
+    }
+
+    return favoriteIdsByEmail;
+  }
+
+  private boolean doesEntityExist(Transaction transaction, Key key) {
+    try {
+      datastoreService.get(transaction, key);
+    } catch (EntityNotFoundException e) {
+      return false;
+    }
+
+    return true;
+  }
+
+  private int replaceEntities(List<Entity> newEntities, List<Key> oldKeys) {
+    int replacedCount = oldKeys.size();
+
+    if (replacedCount > 0) {
+      datastoreService.put(newEntities);
+      datastoreService.delete(oldKeys);
+    }
+
+    newEntities.clear();
+    oldKeys.clear();
+
+    return replacedCount;
+  }
+
+  private static Entity createFavoriteItemEntity(String userEmail, Long itemId) {
+    Entity favoriteItemEntity = new Entity(createFavoriteItemKey(userEmail, itemId));
+    favoriteItemEntity.setProperty(USER_EMAIL_PROPERTY_KEY, userEmail);
+    favoriteItemEntity.setProperty(ITEM_ID_PROPERTY_KEY, itemId);
+
+    return favoriteItemEntity;
+  }
+
+  private static Entity createProcessedFavoritesEntity(String userEmail, Set<Long> favoriteIds) {
+    Entity processedFavoritesEntity = new Entity(createProcessedFavoritesKey(userEmail));
+    processedFavoritesEntity.setUnindexedProperty(
+        ITEM_IDS_PROPERTY_KEY, new ArrayList<>(favoriteIds));
+
+    return processedFavoritesEntity;
+  }
+
+  private static Entity createProcessedLikersEntity(Long itemId, Set<String> likerEmails) {
+    Entity processedLikersEntity = new Entity(createProcessedLikersKey(itemId));
+    processedLikersEntity.setUnindexedProperty(EMAILS_PROPERTY_KEY, new ArrayList<>(likerEmails));
+
+    return processedLikersEntity;
+  }
+
+  private static Key createProcessedFavoritesKey(String userEmail) {
+    return KeyFactory.createKey(PROCESSED_FAVORITES_KIND, userEmail);
+  }
+
+  private static Key createProcessedLikersKey(Long itemId) {
+    return KeyFactory.createKey(PROCESSED_LIKERS_KIND, itemId);
+  }
+
+  private static String getLikeCounterName(Long itemId) {
+    return String.valueOf(itemId);
+  }
+
+  /**
+   * Creates the key of a favorite item relation. Item ids are numeric, so the first separator
+   * splits the key name unambiguously even if the email contains the separator.
+   */
+  private static Key createFavoriteItemKey(String userEmail, Long itemId) {
+    return KeyFactory.createKey(FAVORITE_ITEM_KIND, itemId + ":" + userEmail);
+  }
+
+  /**
+   * Change of a favorite recorded by recordProcessedChange, with the processed data it must be
+   * applied against.
+   */
+  private static final class ProcessedChange {
+    private final boolean isFavorite;
+    private final Set<Long> otherFavoriteIds;
+    private final Set<String> otherLikerEmails;
+
+    private ProcessedChange(
+        boolean isFavorite, Set<Long> otherFavoriteIds, Set<String> otherLikerEmails) {
+      this.isFavorite = isFavorite;
+      this.otherFavoriteIds = otherFavoriteIds;
+      this.otherLikerEmails = otherLikerEmails;
+    }
   }
 }
@@ -0,0 +1,67 @@
+package com.google.ehub.data;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rebuilds an in-memory index when it gets too old. The rebuild runs on the thread of the request
+ * that finds the index stale first, since App Engine services can't be used by threads that
+ * outlive their request. Only one rebuild runs at a time, and the other requests that find the
+ * index stale keep using the current one meanwhile instead of waiting for the rebuild or starting
+ * rebuilds of their own. A failed rebuild is retried after a delay, so a Datastore outage doesn't
+ * turn every request into a new attempt.
+ */
+final class IndexRebuilder {
+  private static final long RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private final String indexName;
+  private final long maxIndexAgeMillis;
+  private final Runnable rebuild;
+  private final AtomicBoolean isRebuilding = new AtomicBoolean();
+  private volatile long builtTimestampMillis;
+  private volatile long failedTimestampMillis;
+
+  /**
+   * Creates a rebuilder for an index.
+   *
+   * @param indexName the name of the index, used in logs
+   * @param maxIndexAgeMillis the age after which the index is rebuilt
+   * @param rebuild the work that builds the index and replaces the current one
+   */
+  IndexRebuilder(String indexName, long maxIndexAgeMillis, Runnable rebuild) {
+    this.indexName = indexName;
+    this.maxIndexAgeMillis = maxIndexAgeMillis;
+    this.rebuild = rebuild;
+  }
+
+  /**
+   * Records that the index was replaced with a new one.
+   */
+  void markBuilt() {
+    builtTimestampMillis = System.currentTimeMillis();
+  }
+
+  /**
+   * Rebuilds the index in the calling thread if it is too old, unless a rebuild is already
+   * running or the last one failed recently. A failed rebuild is logged, so the caller can keep
+   * using the current index.
+   */
+  void rebuildIfStale() {
+    long nowMillis = System.currentTimeMillis();
+
+    if (nowMillis - builtTimestampMillis <= maxIndexAgeMillis
+        || nowMillis - failedTimestampMillis <= RETRY_DELAY_MILLIS
+        || !isRebuilding.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      rebuild.run();
+    } catch (RuntimeException e) {
+      failedTimestampMillis = System.currentTimeMillis();
+      System.err.println("IndexRebuilder: Failed to rebuild " + indexName + ": " + e);
+    } finally {
+      isRebuilding.set(false);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package com.google.ehub.data;
+
+import com.google.appengine.api.datastore.Transaction;
+import com.google.ehub.data.ItemFacets.Facet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.EnumUtils;
+
+/**
+ * Singleton class that keeps the number of items with every facet value in sharded counters, so
+ * facet counts are read without scanning the items. Counters are updated together with the items
+ * by EntertainmentItemDatastore.
+ */
+public final class ItemFacetDatastore {
+  private static final String FACET_COUNTER_SHARD_KIND = "facetCounterShard";
+  private static final int NUM_FACET_COUNTER_SHARDS = 10;
+
+  private static ItemFacetDatastore instance;
+
+  private final ShardedCounter facetCounter =
+      new ShardedCounter(FACET_COUNTER_SHARD_KIND, NUM_FACET_COUNTER_SHARDS);
+
+  private ItemFacetDatastore() {}
+
+  /**
+   * Gives access to the single instance of the class, and creates this instance
+   * if it was not initialized previously.
+   *
+   * @return single instance of the class
+   */
+  public static ItemFacetDatastore getInstance() {
+    if (instance == null) {
+      instance = new ItemFacetDatastore();
+    }
+
+    return instance;
+  }
+
+  /**
+   * Adds an item to the counters of its facet values as part of the given transaction, which
+   * needs to allow cross-group writes.
+   *
+   * @param transaction the transaction that stores the item
+   * @param itemFacets the facets of the item
+   */
+  public void incrementFacetCounts(Transaction transaction, ItemFacets itemFacets) {
+    for (String counterName : getCounterNames(itemFacets)) {
+      facetCounter.increment(transaction, counterName, 1);
+    }
+  }
+
+  /**
+   * Discards the cached counts of the facet values of an item, should be called after the
+   * transaction that incremented them is committed.
+   *
+   * @param itemFacets the facets of the item
+   */
+  public void invalidateCachedFacetCounts(ItemFacets itemFacets) {
+    for (String counterName : getCounterNames(itemFacets)) {
+      facetCounter.invalidateCachedCount(counterName);
+    }
+  }
+
+  /**
+   * Discards every cached facet count.
+   */
+  public void invalidateCachedFacetCounts() {
+    facetCounter.invalidateCachedCounts();
+  }
+
+  /**
+   * Gets the number of items with every facet value.
+   *
+   * @return map from facet to the counts of its values, values are ordered by descending count and
+   *     then by value, and values without items are left out
+   */
+  public Map<Facet, Map<String, Long>> queryFacetCounts() {
+    List<String> counterNames = facetCounter.queryCounterNames();
+    Map<String, Long> counts = facetCounter.getCounts(counterNames);
+    Map<Facet, Map<String, Long>> facetCounts = new EnumMap<>(Facet.class);
+
+    for (Facet facet : Facet.values()) {
+      facetCounts.put(facet, new LinkedHashMap<>());
+    }
+
+    List<String> sortedCounterNames = new ArrayList<>(counterNames);
+    sortedCounterNames.sort((first, second) -> {
+      int countComparison = Long.compare(counts.get(second), counts.get(first));
+
+      return countComparison != 0 ? countComparison : first.compareTo(second);
+    });
+
+    for (String counterName : sortedCounterNames) {
+      int separatorIndex = counterName.indexOf(':');
+      String facet = counterName.substring(0, Math.max(separatorIndex, 0));
+
+      if (counts.get(counterName) > 0 && EnumUtils.isValidEnum(Facet.class, facet)) {
+        facetCounts.get(Facet.valueOf(facet))
+            .put(counterName.substring(separatorIndex + 1), counts.get(counterName));
+      }
+    }
+
+    return facetCounts;
+  }
+
+  /**
+   * Overwrites every facet counter with counts computed from the facets of all the items, used
+   * to backfill the counters. Counters of values that no item has anymore are set to zero. This
+   * is not safe to run while items are being added.
+   *
+   * @param allItemFacets the facets of every item
+   * @return number of counters that were written
+   */
+  public int recountFacets(Collection<ItemFacets> allItemFacets) {
+    Map<String, Long> counts = new HashMap<>();
+
+    for (String counterName : facetCounter.queryCounterNames()) {
+      counts.put(counterName, 0L);
+    }
+
+    for (ItemFacets itemFacets : allItemFacets) {
+      for (String counterName : getCounterNames(itemFacets)) {
+        counts.merge(counterName, 1L, Long::sum);
+      }
+    }
+
+    for (Map.Entry<String, Long> count : counts.entrySet()) {
+      facetCounter.setCount(count.getKey(), count.getValue());
+    }
+
+    return counts.size();
+  }
+
+  // Facet names don't contain colons, so the first colon separates the facet from the value.
+  private static List<String> getCounterNames(ItemFacets itemFacets) {
+    List<String> counterNames = new ArrayList<>();
+
+    for (Map.Entry<Facet, List<String>> facetValues : itemFacets.getFacetValues().entrySet()) {
+      for (String value : facetValues.getValue()) {
+        counterNames.add(facetValues.getKey().name() + ":" + value);
+      }
+    }
+
+    return counterNames;
+  }
+}
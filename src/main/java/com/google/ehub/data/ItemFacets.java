@@ -0,0 +1,156 @@
+package com.google.ehub.data;
+
+import com.google.common.base.Splitter;
+import com.google.ehub.utility.Utils;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Structured fields of an entertainment item used for faceted browsing, extracted from the free
+ * form genre, release date and runtime of the item.
+ */
+public final class ItemFacets {
+  /**
+   * Fields that items can be filtered and counted by.
+   */
+  public enum Facet { GENRE, RELEASE_YEAR, RUNTIME_RANGE }
+
+  /**
+   * Ranges of runtimes, SHORT is under 90 minutes, MEDIUM is from 90 to 120 minutes and LONG is
+   * over 120 minutes.
+   */
+  public enum RuntimeRange { SHORT, MEDIUM, LONG }
+
+  // Every facet value is a counter updated in the transaction that adds the item, which limits
+  // the number of Entity groups.
+  private static final int MAX_GENRES = 10;
+  private static final int MAX_SHORT_RUNTIME_MINUTES = 89;
+  private static final int MAX_MEDIUM_RUNTIME_MINUTES = 120;
+
+  private static final String MISSING_VALUE = "N/A";
+  private static final Pattern RUNTIME_MINUTES = Pattern.compile("^\\s*(\\d{1,4})\\s*min");
+
+  private final List<String> genres;
+  private final Long releaseYear;
+  private final Long runtimeMinutes;
+
+  private ItemFacets(List<String> genres, Long releaseYear, Long runtimeMinutes) {
+    this.genres = Collections.unmodifiableList(genres);
+    this.releaseYear = releaseYear;
+    this.runtimeMinutes = runtimeMinutes;
+  }
+
+  /**
+   * Extracts the facets of an item.
+   * Ex: ("Action, Sci-Fi", timestamp of "25 May 1977", "121 min") => ([Action, Sci-Fi], 1977, 121)
+   *
+   * @param genre the comma separated genres of the item, values that are missing or "N/A" are
+   *     ignored
+   * @param releaseDateTimestampMillis the release date of the item in milliseconds, can be null
+   * @param runtime the runtime of the item in the format used by OMDb eg. ("121 min"), runtimes in
+   *     other formats are ignored
+   * @return facets of the item
+   */
+  public static ItemFacets create(String genre, Long releaseDateTimestampMillis, String runtime) {
+    Set<String> genres = new LinkedHashSet<>();
+
+    if (genre != null) {
+      for (String value : Splitter.on(',').trimResults().omitEmptyStrings().split(genre)) {
+        if (!value.equalsIgnoreCase(MISSING_VALUE) && genres.size() < MAX_GENRES) {
+          genres.add(value);
+        }
+      }
+    }
+
+    Long releaseYear = null;
+
+    if (releaseDateTimestampMillis != null) {
+      releaseYear =
+          Long.parseLong(Utils.getDateFromTimestampMillis(releaseDateTimestampMillis, "yyyy"));
+    }
+
+    Long runtimeMinutes = null;
+
+    if (runtime != null) {
+      Matcher runtimeMatcher = RUNTIME_MINUTES.matcher(runtime);
+
+      if (runtimeMatcher.find()) {
+        runtimeMinutes = Long.parseLong(runtimeMatcher.group(1));
+      }
+    }
+
+    return new ItemFacets(new ArrayList<>(genres), releaseYear, runtimeMinutes);
+  }
+
+  public List<String> getGenres() {
+    return genres;
+  }
+
+  public Long getReleaseYear() {
+    return releaseYear;
+  }
+
+  public Long getRuntimeMinutes() {
+    return runtimeMinutes;
+  }
+
+  /**
+   * Gets the runtime range of the item.
+   *
+   * @return the range that contains the runtime of the item, or null if the runtime is unknown
+   */
+  public RuntimeRange getRuntimeRange() {
+    if (runtimeMinutes == null) {
+      return null;
+    } else if (runtimeMinutes <= MAX_SHORT_RUNTIME_MINUTES) {
+      return RuntimeRange.SHORT;
+    } else if (runtimeMinutes <= MAX_MEDIUM_RUNTIME_MINUTES) {
+      return RuntimeRange.MEDIUM;
+    } else {
+      return RuntimeRange.LONG;
+    }
+  }
+
+  /**
+   * Gets the values of every facet as strings, the form used by filters and facet counts.
+   *
+   * @return map from facet to its values, facets that are unknown map to an empty list
+   */
+  public Map<Facet, List<String>> getFacetValues() {
+    Map<Facet, List<String>> facetValues = new EnumMap<>(Facet.class);
+    facetValues.put(Facet.GENRE, genres);
+    facetValues.put(Facet.RELEASE_YEAR, releaseYear == null
+        ? Collections.emptyList()
+        : Collections.singletonList(String.valueOf(releaseYear)));
+    facetValues.put(Facet.RUNTIME_RANGE, getRuntimeRange() == null
+        ? Collections.emptyList()
+        : Collections.singletonList(getRuntimeRange().name()));
+
+    return facetValues;
+  }
+
+  /**
+   * Checks if the item has every value of a filter.
+   *
+   * @param facetFilters map from facet to the value the item needs to have
+   * @return true if the item matches every filter, false otherwise
+   */
+  public boolean matches(Map<Facet, String> facetFilters) {
+    Map<Facet, List<String>> facetValues = getFacetValues();
+
+    for (Map.Entry<Facet, String> facetFilter : facetFilters.entrySet()) {
+      if (!facetValues.get(facetFilter.getKey()).contains(facetFilter.getValue())) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+}
@@ -10,10 +10,32 @@ import java.util.List;
 public class ItemPageData {
   private final EntertainmentItem item;
   private final List<CommentData> comments;
+  private final List<EntertainmentItem> relatedItems;
+  // Cursor of the next page of comments, null when every comment was sent.
+  private final String commentsPageCursor;
+  private final Long commentCount;
 
   public ItemPageData(EntertainmentItem item, List<CommentData> comments) {
+    this(item, comments, new ArrayList<>());
+  }
+
+  public ItemPageData(
+      EntertainmentItem item, List<CommentData> comments, List<EntertainmentItem> relatedItems) {
+    this(item, comments, relatedItems, null);
+  }
+
+  public ItemPageData(EntertainmentItem item, List<CommentData> comments,
+      List<EntertainmentItem> relatedItems, String commentsPageCursor) {
+    this(item, comments, relatedItems, commentsPageCursor, null);
+  }
+
+  public ItemPageData(EntertainmentItem item, List<CommentData> comments,
+      List<EntertainmentItem> relatedItems, String commentsPageCursor, Long commentCount) {
     this.item = item;
     this.comments = comments;
+    this.relatedItems = relatedItems;
+    this.commentsPageCursor = commentsPageCursor;
+    this.commentCount = commentCount;
   }
 
   public EntertainmentItem getItem() {
@@ -23,4 +45,16 @@ public class ItemPageData {
   public List<CommentData> getComments() {
     return comments;
   }
+
+  public List<EntertainmentItem> getRelatedItems() {
+    return relatedItems;
+  }
+
+  public String getCommentsPageCursor() {
+    return commentsPageCursor;
+  }
+
+  public Long getCommentCount() {
+    return commentCount;
+  }
 }
@@ -0,0 +1,299 @@
+package com.google.ehub.data;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.ehub.utility.Utils;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Singleton class that keeps an in-memory inverted index from the words of the title, actors,
+ * directors, writers and genre of every entertainment item to the items that contain them. The
+ * index is built from EntertainmentItemDatastore, and items added through this instance are
+ * indexed right away. Items added by other instances are picked up when the index is rebuilt,
+ * which the first search does once the index is older than a few minutes.
+ */
+public final class ItemSearchIndex {
+  // Words in the title are the strongest signal, and the genre is the weakest one.
+  private static final int TITLE_WEIGHT = 4;
+  private static final int PEOPLE_WEIGHT = 2;
+  private static final int GENRE_WEIGHT = 1;
+
+  private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+  private static final int REBUILD_BATCH_SIZE = 500;
+  private static final long MAX_INDEX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+  private static ItemSearchIndex instance;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  // Sorted by token, so the tokens that start with a prefix are a contiguous range.
+  private NavigableMap<String, Map<Long, Integer>> postings = new TreeMap<>();
+  private Map<Long, String> normalizedTitles = new HashMap<>();
+  // Items indexed while a rebuild runs, which the rebuild adds to the new index before using it.
+  private List<EntertainmentItem> itemsIndexedDuringRebuild;
+  private final IndexRebuilder rebuilder =
+      new IndexRebuilder("ItemSearchIndex", MAX_INDEX_AGE_MILLIS, () -> rebuild());
+
+  private ItemSearchIndex() {}
+
+  /**
+   * Gives access to the single instance of the class, and creates this instance
+   * if it was not initialized previously.
+   *
+   * @return single instance of the class
+   */
+  public static ItemSearchIndex getInstance() {
+    if (instance == null) {
+      instance = new ItemSearchIndex();
+    }
+
+    return instance;
+  }
+
+  /**
+   * Replaces the index with a new one built from every item stored in Datastore. Items indexed
+   * while the rebuild runs are kept. Only one rebuild runs at a time.
+   *
+   * @return number of items in the index
+   */
+  public synchronized int rebuild() {
+    lock.writeLock().lock();
+
+    try {
+      itemsIndexedDuringRebuild = new ArrayList<>();
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    try {
+      return buildIndex();
+    } finally {
+      lock.writeLock().lock();
+
+      try {
+        itemsIndexedDuringRebuild = null;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * Adds an item to the index, used after the item is stored in Datastore.
+   *
+   * @param item the item to index, items without a unique id are ignored
+   */
+  public void indexItem(EntertainmentItem item) {
+    if (!item.getUniqueId().isPresent()) {
+      return;
+    }
+
+    lock.writeLock().lock();
+
+    try {
+      addItem(postings, normalizedTitles, item);
+
+      if (itemsIndexedDuringRebuild != null) {
+        itemsIndexedDuringRebuild.add(item);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private int buildIndex() {
+    NavigableMap<String, Map<Long, Integer>> newPostings = new TreeMap<>();
+    Map<Long, String> newNormalizedTitles = new HashMap<>();
+    EntertainmentItemDatastore itemDatastore = EntertainmentItemDatastore.getInstance();
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(REBUILD_BATCH_SIZE);
+
+    while (true) {
+      EntertainmentItemList itemList = itemDatastore.queryAllItems(fetchOptions);
+
+      for (EntertainmentItem item : itemList.getItems()) {
+        addItem(newPostings, newNormalizedTitles, item);
+      }
+
+      if (itemList.getItems().size() < REBUILD_BATCH_SIZE) {
+        break;
+      }
+
+      fetchOptions = FetchOptions.Builder.withLimit(REBUILD_BATCH_SIZE)
+                         .startCursor(Cursor.fromWebSafeString(itemList.getPageCursor()));
+    }
+
+    lock.writeLock().lock();
+
+    try {
+      for (EntertainmentItem item : itemsIndexedDuringRebuild) {
+        addItem(newPostings, newNormalizedTitles, item);
+      }
+
+      postings = newPostings;
+      normalizedTitles = newNormalizedTitles;
+      rebuilder.markBuilt();
+
+      return newNormalizedTitles.size();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Finds the items that contain every word of the query, the last word also matches the words
+   * that start with it so results show up while the user types. Items are ranked by the sum of
+   * the weights of the fields where the query words appear, ties are ordered by title.
+   *
+   * @param query the words to search for
+   * @param offset the number of ranked results to skip
+   * @param limit the maximum number of results to return
+   * @return page of ranked item ids and the total number of matching items
+   */
+  public SearchResult search(String query, int offset, int limit) {
+    rebuilder.rebuildIfStale();
+
+    List<String> queryTokens = tokenize(query);
+
+    if (queryTokens.isEmpty()) {
+      return new SearchResult(Collections.emptyList(), 0);
+    }
+
+    List<Long> rankedItemIds;
+
+    // The titles are read while sorting, so the sort holds the lock as well.
+    lock.readLock().lock();
+
+    try {
+      Map<Long, Integer> scores =
+          getMatchScores(queryTokens.get(queryTokens.size() - 1), /* isPrefix */ true);
+
+      for (String queryToken : queryTokens.subList(0, queryTokens.size() - 1)) {
+        Map<Long, Integer> tokenScores = getMatchScores(queryToken, /* isPrefix */ false);
+        scores.keySet().retainAll(tokenScores.keySet());
+
+        for (Map.Entry<Long, Integer> score : scores.entrySet()) {
+          score.setValue(score.getValue() + tokenScores.get(score.getKey()));
+        }
+      }
+
+      rankedItemIds = new ArrayList<>(scores.keySet());
+      rankedItemIds.sort((first, second) -> {
+        int scoreComparison = Integer.compare(scores.get(second), scores.get(first));
+
+        if (scoreComparison != 0) {
+          return scoreComparison;
+        }
+
+        int titleComparison = normalizedTitles.getOrDefault(first, "").compareTo(
+            normalizedTitles.getOrDefault(second, ""));
+
+        return titleComparison != 0 ? titleComparison : Long.compare(first, second);
+      });
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    int fromIndex = Math.min(offset, rankedItemIds.size());
+    int toIndex = Math.min(fromIndex + limit, rankedItemIds.size());
+
+    return new SearchResult(
+        new ArrayList<>(rankedItemIds.subList(fromIndex, toIndex)), rankedItemIds.size());
+  }
+
+  /**
+   * Gets the score of every item that contains the token. Needs to be called while holding the
+   * read lock.
+   */
+  private Map<Long, Integer> getMatchScores(String token, boolean isPrefix) {
+    Map<Long, Integer> scores = new HashMap<>();
+    Map<String, Map<Long, Integer>> matchingPostings = isPrefix
+        ? postings.subMap(token, true, token + Character.MAX_VALUE, true)
+        : postings.subMap(token, true, token, true);
+
+    // An item that has several words with the prefix keeps the score of its best match.
+    for (Map<Long, Integer> tokenPostings : matchingPostings.values()) {
+      for (Map.Entry<Long, Integer> posting : tokenPostings.entrySet()) {
+        scores.merge(posting.getKey(), posting.getValue(), Math::max);
+      }
+    }
+
+    return scores;
+  }
+
+  private static void addItem(NavigableMap<String, Map<Long, Integer>> postings,
+      Map<Long, String> normalizedTitles, EntertainmentItem item) {
+    Long itemId = item.getUniqueId().get();
+    Map<String, Integer> tokenWeights = new HashMap<>();
+
+    addTokenWeights(tokenWeights, item.getTitle(), TITLE_WEIGHT);
+    addTokenWeights(tokenWeights, item.getActors(), PEOPLE_WEIGHT);
+    addTokenWeights(tokenWeights, item.getDirectors(), PEOPLE_WEIGHT);
+    addTokenWeights(tokenWeights, item.getWriters(), PEOPLE_WEIGHT);
+    addTokenWeights(tokenWeights, item.getGenre(), GENRE_WEIGHT);
+
+    for (Map.Entry<String, Integer> tokenWeight : tokenWeights.entrySet()) {
+      postings.computeIfAbsent(tokenWeight.getKey(), token -> new HashMap<>())
+          .put(itemId, tokenWeight.getValue());
+    }
+
+    normalizedTitles.put(
+        itemId, item.getTitle() == null ? "" : Utils.normalizeText(item.getTitle()));
+  }
+
+  // A word that appears in several fields is weighted by its strongest field.
+  private static void addTokenWeights(Map<String, Integer> tokenWeights, String text, int weight) {
+    for (String token : tokenize(text)) {
+      tokenWeights.merge(token, weight, Math::max);
+    }
+  }
+
+  private static List<String> tokenize(String text) {
+    List<String> tokens = new ArrayList<>();
+
+    if (text == null) {
+      return tokens;
+    }
+
+    Set<String> seenTokens = new HashSet<>();
+
+    for (String token : TOKEN_SEPARATOR.split(Utils.normalizeText(text))) {
+      if (!token.isEmpty() && seenTokens.add(token)) {
+        tokens.add(token);
+      }
+    }
+
+    return tokens;
+  }
+
+  /**
+   * Page of ranked search results.
+   */
+  public static final class SearchResult {
+    private final List<Long> itemIds;
+    private final int totalCount;
+
+    public SearchResult(List<Long> itemIds, int totalCount) {
+      this.itemIds = itemIds;
+      this.totalCount = totalCount;
+    }
+
+    public List<Long> getItemIds() {
+      return itemIds;
+    }
+
+    public int getTotalCount() {
+      return totalCount;
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package com.google.ehub.data;
 
+import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
@@ -12,8 +13,19 @@ import com.google.appengine.api.datastore.Query.FilterOperator;
 import com.google.appengine.api.datastore.Query.FilterPredicate;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
+import com.google.common.collect.Lists;
 import com.google.ehub.servlets.LoginServlet;
+import com.google.ehub.utility.BackgroundTaskScheduler;
+import com.google.ehub.utility.BackgroundTaskScheduler.Task;
+import com.google.ehub.utility.Utils;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /** Manages the User Profiles stored in Datastore. **/
@@ -25,7 +37,11 @@ public final class ProfileDatastore {
   private static final String NORMALIZED_USERNAME_PROPERTY_KEY = "normalizedUsername";
   private static final String BIO_PROPERTY_KEY = "bio";
 
+  private static final int MAX_CONCURRENT_QUERIES = 10;
+
   private final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  private final AsyncDatastoreService asyncDatastore =
+      DatastoreServiceFactory.getAsyncDatastoreService();
   private static final UserService userService = UserServiceFactory.getUserService();
 
   /**
@@ -86,6 +102,43 @@ public final class ProfileDatastore {
     return createUserProfileFromEntity(userEntity);
   }
 
+  /**
+   * Finds the profiles of many users at once. Emails are grouped into IN queries, and a bounded
+   * number of those queries run concurrently, so the number of round trips grows slowly with the
+   * number of emails.
+   *
+   * @param emails the emails of the users
+   * @return map from email to the UserProfile of the user, emails without a profile are not
+   *     included in the map
+   */
+  public Map<String, UserProfile> getUserProfiles(Collection<String> emails) {
+    List<List<String>> emailGroups =
+        Lists.partition(new ArrayList<>(new HashSet<>(emails)), Utils.MAX_VALUES_PER_IN_FILTER);
+    Map<String, UserProfile> profilesByEmail = new HashMap<>();
+
+    for (List<List<String>> concurrentGroups :
+        Lists.partition(emailGroups, MAX_CONCURRENT_QUERIES)) {
+      List<Iterator<Entity>> queryResults = new ArrayList<>();
+
+      // Every query is started before reading any results so that their RPCs overlap.
+      for (List<String> emailGroup : concurrentGroups) {
+        Query query = new Query(PROFILE_ITEM_KIND)
+                          .setFilter(new FilterPredicate(
+                              EMAIL_PROPERTY_KEY, FilterOperator.IN, emailGroup));
+        queryResults.add(asyncDatastore.prepare(query).asIterator());
+      }
+
+      for (Iterator<Entity> userEntities : queryResults) {
+        while (userEntities.hasNext()) {
+          UserProfile userProfile = createUserProfileFromEntity(userEntities.next());
+          profilesByEmail.put(userProfile.getEmail(), userProfile);
+        }
+      }
+    }
+
+    return profilesByEmail;
+  }
+
   /**
    * Finds a user profile based on unique username.
    *
@@ -107,6 +160,7 @@ public final class ProfileDatastore {
 
   /**
    * Changes the property of the User entity with the new edited values and updates the datastore.
+   * If the username changed, the comments of the user are updated in the background.
    *
    * @param name the new name of the user
    * @param username the new username of the user
@@ -120,11 +174,18 @@ public final class ProfileDatastore {
 
     PreparedQuery queryResults = datastore.prepare(query);
     Entity userEntity = queryResults.asSingleEntity();
+    boolean isUsernameChanged = !username.equals(userEntity.getProperty(USERNAME_PROPERTY_KEY));
 
     userEntity.setProperty(NAME_PROPERTY_KEY, name);
     userEntity.setProperty(USERNAME_PROPERTY_KEY, username);
     userEntity.setProperty(NORMALIZED_USERNAME_PROPERTY_KEY, username.toLowerCase());
     userEntity.setProperty(BIO_PROPERTY_KEY, bio);
     datastore.put(userEntity);
+
+    // Comments store the username of the user that posted them, so they are rewritten in the
+    // background.
+    if (isUsernameChanged) {
+      BackgroundTaskScheduler.getInstance().schedule(Task.UPDATE_COMMENT_USERNAMES, email);
+    }
   }
 }
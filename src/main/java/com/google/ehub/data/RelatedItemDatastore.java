@@ -0,0 +1,364 @@
+package com.google.ehub.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.common.collect.Lists;
+import com.google.ehub.utility.Utils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Singleton class that manages the items that are liked together by the same users. The number of
+ * users that like each pair of items is stored in both directions, and the most co-liked items of
+ * every item are precomputed, so the related items of an item are read with a single get.
+ */
+public final class RelatedItemDatastore {
+  public static final int NUM_RELATED_ITEMS = 10;
+
+  private static final String ITEM_COOCCURRENCE_KIND = "itemCooccurrence";
+  private static final String ITEM_ID_PROPERTY_KEY = "itemId";
+  private static final String OTHER_ITEM_ID_PROPERTY_KEY = "otherItemId";
+  private static final String COMMON_LIKES_PROPERTY_KEY = "commonLikes";
+
+  private static final String RELATED_ITEMS_KIND = "relatedItems";
+  private static final String RELATED_ITEM_IDS_PROPERTY_KEY = "relatedItemIds";
+  private static final String RELATED_ITEM_LIKES_PROPERTY_KEY = "relatedItemLikes";
+
+  // Item ids are numeric, so the separator keeps pair keys unambiguous.
+  private static final String KEY_SEPARATOR = " ";
+
+  private static final Comparator<Map.Entry<Long, Long>> RELATED_ITEM_ORDER =
+      Map.Entry.<Long, Long>comparingByValue(Comparator.reverseOrder())
+          .thenComparing(Map.Entry.comparingByKey());
+
+  private static RelatedItemDatastore instance;
+
+  private final DatastoreService datastoreService = DatastoreServiceFactory.getDatastoreService();
+
+  private RelatedItemDatastore() {}
+
+  /**
+   * Gives access to the single instance of the class, and creates this instance
+   * if it was not initialized previously.
+   *
+   * @return single instance of the class
+   */
+  public static RelatedItemDatastore getInstance() {
+    if (instance == null) {
+      instance = new RelatedItemDatastore();
+    }
+
+    return instance;
+  }
+
+  /**
+   * Adds a delta to the number of users that like an item together with each of the other items,
+   * in both directions, and updates the related items of every item involved. Pairs whose count
+   * drops to zero are deleted. The updates are not transactional, concurrent updates of the same
+   * pair can be lost and are fixed by rebuildRelatedItems.
+   *
+   * @param itemId the id of the item that was liked or unliked
+   * @param otherItemIds the ids of the other items liked by the same user
+   * @param delta the change in the number of common likes, usually 1 or -1
+   */
+  public void updateCooccurrences(Long itemId, Collection<Long> otherItemIds, long delta) {
+    Map<Long, Map<Long, Long>> changedLikes = new HashMap<>();
+
+    // Every other item produces two keys, one for each direction of the pair.
+    for (List<Long> otherItemIdBatch :
+        Lists.partition(new ArrayList<>(otherItemIds), Utils.MAX_KEYS_PER_BATCH / 2)) {
+      List<Key> pairKeys = new ArrayList<>();
+
+      for (Long otherItemId : otherItemIdBatch) {
+        pairKeys.add(createCooccurrenceKey(itemId, otherItemId));
+        pairKeys.add(createCooccurrenceKey(otherItemId, itemId));
+      }
+
+      Map<Key, Entity> pairEntities = new HashMap<>(datastoreService.get(pairKeys));
+      List<Entity> updatedEntities = new ArrayList<>();
+      List<Key> deletedKeys = new ArrayList<>();
+
+      for (Long otherItemId : otherItemIdBatch) {
+        for (Entity pairEntity : Arrays.asList(
+                 addCommonLikes(pairEntities, itemId, otherItemId, delta),
+                 addCommonLikes(pairEntities, otherItemId, itemId, delta))) {
+          long commonLikes = getCommonLikes(pairEntity);
+
+          changedLikes
+              .computeIfAbsent((Long) pairEntity.getProperty(ITEM_ID_PROPERTY_KEY),
+                  id -> new HashMap<>())
+              .put((Long) pairEntity.getProperty(OTHER_ITEM_ID_PROPERTY_KEY), commonLikes);
+
+          if (commonLikes > 0) {
+            updatedEntities.add(pairEntity);
+          } else {
+            deletedKeys.add(pairEntity.getKey());
+          }
+        }
+      }
+
+      datastoreService.put(updatedEntities);
+      datastoreService.delete(deletedKeys);
+    }
+
+    updateRelatedItems(changedLikes);
+  }
+
+  /**
+   * Gets the items most often liked by the users that like a given item with a get by key, in
+   * descending order of common likes. In the case of a tie, the order will use increasing item id.
+   *
+   * @param itemId the id of the item
+   * @return list containing the ids of up to ten related items
+   */
+  public List<Long> queryRelatedItemIds(Long itemId) {
+    try {
+      return new ArrayList<>(
+          getRelatedItems(datastoreService.get(createRelatedItemsKey(itemId))).keySet());
+    } catch (EntityNotFoundException e) {
+      return new ArrayList<>();
+    }
+  }
+
+  /**
+   * Replaces every stored pair and list of related items with ones recomputed from the items liked
+   * by each user, used to backfill the related items of favorites added before they existed.
+   *
+   * @param favoriteIdsByEmail map from user email to the Ids of the items liked by the user
+   * @return number of pair and related items Entities that were written
+   */
+  public int rebuildRelatedItems(Map<String, ? extends Collection<Long>> favoriteIdsByEmail) {
+    Map<Key, Entity> pairEntities = new HashMap<>();
+    Map<Long, Map<Long, Long>> likesByItemId = new HashMap<>();
+
+    for (Collection<Long> favoriteIds : favoriteIdsByEmail.values()) {
+      for (Long itemId : favoriteIds) {
+        for (Long otherItemId : favoriteIds) {
+          if (!itemId.equals(otherItemId)) {
+            likesByItemId.computeIfAbsent(itemId, id -> new HashMap<>())
+                .put(otherItemId,
+                    getCommonLikes(addCommonLikes(pairEntities, itemId, otherItemId, 1)));
+          }
+        }
+      }
+    }
+
+    deleteAllEntities(ITEM_COOCCURRENCE_KIND);
+    deleteAllEntities(RELATED_ITEMS_KIND);
+
+    List<Entity> rebuiltEntities = new ArrayList<>(pairEntities.values());
+
+    for (Map.Entry<Long, Map<Long, Long>> itemLikes : likesByItemId.entrySet()) {
+      rebuiltEntities.add(createRelatedItemsEntity(itemLikes.getKey(), rank(itemLikes.getValue())));
+    }
+
+    for (List<Entity> entityBatch : Lists.partition(rebuiltEntities, Utils.MAX_KEYS_PER_BATCH)) {
+      datastoreService.put(entityBatch);
+    }
+
+    return rebuiltEntities.size();
+  }
+
+  /**
+   * Merges the new common likes of the changed pairs into the stored related items of each item.
+   * A list that is not full holds every pair of its item, so it only has to be refilled from the
+   * pairs when one of its items loses likes while the list is full, since an item that is not in
+   * the list could now rank higher. The refill query is eventually consistent and can still see
+   * old counts of the pairs that were just written, so the stored list and the changed pairs,
+   * which are read by key, are merged over its results. The query returns enough pairs to fill
+   * the list even if all of those pairs are in its results.
+   */
+  private void updateRelatedItems(Map<Long, Map<Long, Long>> changedLikes) {
+    for (List<Long> itemIdBatch :
+        Lists.partition(new ArrayList<>(changedLikes.keySet()), Utils.MAX_KEYS_PER_BATCH)) {
+      List<Key> relatedItemsKeys = new ArrayList<>();
+
+      for (Long itemId : itemIdBatch) {
+        relatedItemsKeys.add(createRelatedItemsKey(itemId));
+      }
+
+      Map<Key, Entity> relatedItemsEntities = datastoreService.get(relatedItemsKeys);
+      List<Entity> updatedEntities = new ArrayList<>();
+      List<Key> deletedKeys = new ArrayList<>();
+
+      for (Long itemId : itemIdBatch) {
+        Entity relatedItemsEntity = relatedItemsEntities.get(createRelatedItemsKey(itemId));
+        Map<Long, Long> relatedItems = relatedItemsEntity == null
+            ? new LinkedHashMap<>()
+            : getRelatedItems(relatedItemsEntity);
+        Map<Long, Long> itemChangedLikes = changedLikes.get(itemId);
+
+        if (needsRefill(relatedItems, itemChangedLikes)) {
+          Map<Long, Long> storedItems = relatedItems;
+          relatedItems =
+              queryMostCommonLikes(itemId, 2 * NUM_RELATED_ITEMS + itemChangedLikes.size());
+          relatedItems.putAll(storedItems);
+        }
+
+        for (Map.Entry<Long, Long> changedLike : itemChangedLikes.entrySet()) {
+          if (changedLike.getValue() > 0) {
+            relatedItems.put(changedLike.getKey(), changedLike.getValue());
+          } else {
+            relatedItems.remove(changedLike.getKey());
+          }
+        }
+
+        if (relatedItems.isEmpty()) {
+          deletedKeys.add(createRelatedItemsKey(itemId));
+        } else {
+          updatedEntities.add(createRelatedItemsEntity(itemId, rank(relatedItems)));
+        }
+      }
+
+      datastoreService.put(updatedEntities);
+      datastoreService.delete(deletedKeys);
+    }
+  }
+
+  private Map<Long, Long> queryMostCommonLikes(Long itemId, int limit) {
+    Query query =
+        new Query(ITEM_COOCCURRENCE_KIND)
+            .setFilter(new FilterPredicate(ITEM_ID_PROPERTY_KEY, FilterOperator.EQUAL, itemId))
+            .addSort(COMMON_LIKES_PROPERTY_KEY, SortDirection.DESCENDING)
+            .addSort(OTHER_ITEM_ID_PROPERTY_KEY, SortDirection.ASCENDING);
+    PreparedQuery queryResults = datastoreService.prepare(query);
+
+    Map<Long, Long> relatedItems = new LinkedHashMap<>();
+
+    for (Entity pairEntity :
+        queryResults.asIterable(FetchOptions.Builder.withLimit(limit))) {
+      relatedItems.put(
+          (Long) pairEntity.getProperty(OTHER_ITEM_ID_PROPERTY_KEY), getCommonLikes(pairEntity));
+    }
+
+    return relatedItems;
+  }
+
+  private static boolean needsRefill(Map<Long, Long> relatedItems, Map<Long, Long> changedLikes) {
+    if (relatedItems.size() < NUM_RELATED_ITEMS) {
+      return false;
+    }
+
+    for (Map.Entry<Long, Long> changedLike : changedLikes.entrySet()) {
+      Long oldLikes = relatedItems.get(changedLike.getKey());
+
+      if (oldLikes != null && changedLike.getValue() < oldLikes) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private void deleteAllEntities(String kind) {
+    PreparedQuery storedEntities = datastoreService.prepare(new Query(kind).setKeysOnly());
+    List<Key> storedKeys = new ArrayList<>();
+
+    for (Entity entity :
+        storedEntities.asIterable(FetchOptions.Builder.withChunkSize(Utils.MAX_KEYS_PER_BATCH))) {
+      storedKeys.add(entity.getKey());
+    }
+
+    for (List<Key> keyBatch : Lists.partition(storedKeys, Utils.MAX_KEYS_PER_BATCH)) {
+      datastoreService.delete(keyBatch);
+    }
+  }
+
+  /**
+   * Sorts related items in descending order of common likes and increasing item id, and keeps
+   * the first ten.
+   */
+  private static List<Map.Entry<Long, Long>> rank(Map<Long, Long> relatedItems) {
+    List<Map.Entry<Long, Long>> rankedItems = new ArrayList<>(relatedItems.entrySet());
+    rankedItems.sort(RELATED_ITEM_ORDER);
+
+    return rankedItems.subList(0, Math.min(NUM_RELATED_ITEMS, rankedItems.size()));
+  }
+
+  private static Entity createRelatedItemsEntity(
+      Long itemId, List<Map.Entry<Long, Long>> rankedItems) {
+    List<Long> relatedItemIds = new ArrayList<>();
+    List<Long> relatedItemLikes = new ArrayList<>();
+
+    for (Map.Entry<Long, Long> relatedItem : rankedItems) {
+      relatedItemIds.add(relatedItem.getKey());
+      relatedItemLikes.add(relatedItem.getValue());
+    }
+
+    Entity relatedItemsEntity = new Entity(createRelatedItemsKey(itemId));
+    relatedItemsEntity.setUnindexedProperty(RELATED_ITEM_IDS_PROPERTY_KEY, relatedItemIds);
+    relatedItemsEntity.setUnindexedProperty(RELATED_ITEM_LIKES_PROPERTY_KEY, relatedItemLikes);
+
+    return relatedItemsEntity;
+  }
+
+  /**
+   * Reads the related items stored in an Entity into a map that keeps their ranked order.
+   */
+  @SuppressWarnings("unchecked")
+  private static Map<Long, Long> getRelatedItems(Entity relatedItemsEntity) {
+    List<Long> relatedItemIds =
+        (List<Long>) relatedItemsEntity.getProperty(RELATED_ITEM_IDS_PROPERTY_KEY);
+    List<Long> relatedItemLikes =
+        (List<Long>) relatedItemsEntity.getProperty(RELATED_ITEM_LIKES_PROPERTY_KEY);
+    Map<Long, Long> relatedItems = new LinkedHashMap<>();
+
+    for (int i = 0; i < relatedItemIds.size(); i++) {
+      relatedItems.put(relatedItemIds.get(i), relatedItemLikes.get(i));
+    }
+
+    return relatedItems;
+  }
+
+  /**
+   * Adds a delta to the common likes of the pair Entity found in the map, the Entity is created
+   * and added to the map if it doesn't exist yet.
+   *
+   * @return the updated pair Entity
+   */
+  private static Entity addCommonLikes(
+      Map<Key, Entity> pairEntities, Long itemId, Long otherItemId, long delta) {
+    Key pairKey = createCooccurrenceKey(itemId, otherItemId);
+    Entity pairEntity = pairEntities.get(pairKey);
+
+    if (pairEntity == null) {
+      pairEntity = new Entity(pairKey);
+      pairEntity.setProperty(ITEM_ID_PROPERTY_KEY, itemId);
+      pairEntity.setProperty(OTHER_ITEM_ID_PROPERTY_KEY, otherItemId);
+      pairEntity.setProperty(COMMON_LIKES_PROPERTY_KEY, 0L);
+      pairEntities.put(pairKey, pairEntity);
+    }
+
+    pairEntity.setProperty(COMMON_LIKES_PROPERTY_KEY, getCommonLikes(pairEntity) + delta);
+
+    return pairEntity;
+  }
+
+  private static long getCommonLikes(Entity pairEntity) {
+    return (Long) pairEntity.getProperty(COMMON_LIKES_PROPERTY_KEY);
+  }
+
+  private static Key createCooccurrenceKey(Long itemId, Long otherItemId) {
+    return KeyFactory.createKey(ITEM_COOCCURRENCE_KIND, itemId + KEY_SEPARATOR + otherItemId);
+  }
+
+  private static Key createRelatedItemsKey(Long itemId) {
+    return KeyFactory.createKey(RELATED_ITEMS_KIND, String.valueOf(itemId));
+  }
+}
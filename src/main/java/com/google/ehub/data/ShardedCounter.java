@@ -0,0 +1,204 @@
+package com.google.ehub.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.ehub.utility.Utils;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manages named counters stored in Datastore. Each counter is split across several shard
+ * Entities so that concurrent updates of the same counter rarely write to the same Entity group,
+ * and reading a counter costs a batch get of its shards no matter how large the count is.
+ */
+public final class ShardedCounter {
+  private static final String COUNTER_NAME_PROPERTY_KEY = "counterName";
+  private static final String COUNT_PROPERTY_KEY = "count";
+
+  private static final long MAX_CACHED_COUNTS = 10000;
+  private static final long CACHED_COUNT_EXPIRATION_SECONDS = 5;
+
+  private final String shardKind;
+  private final int numShards;
+
+  private final DatastoreService datastoreService = DatastoreServiceFactory.getDatastoreService();
+
+  // Counts are cached for a few seconds because counters can be updated by other instances.
+  private final Cache<String, Long> countCache =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_COUNTS)
+          .expireAfterWrite(CACHED_COUNT_EXPIRATION_SECONDS, TimeUnit.SECONDS)
+          .build();
+
+  /**
+   * Creates a group of counters whose shards are stored in Datastore with the given kind.
+   *
+   * @param shardKind the Datastore kind used by the shard Entities
+   * @param numShards the number of shards used by every counter of the group
+   */
+  public ShardedCounter(String shardKind, int numShards) {
+    this.shardKind = shardKind;
+    this.numShards = numShards;
+  }
+
+  /**
+   * Adds a delta to a random shard of a counter as part of the given transaction. The transaction
+   * needs to allow cross-group writes if it modifies other Entity groups.
+   *
+   * @param transaction the transaction that the shard update belongs to
+   * @param counterName the name of the counter to update
+   * @param delta the value added to the counter, can be negative
+   */
+  public void increment(Transaction transaction, String counterName, long delta) {
+    Key shardKey = createShardKey(counterName, ThreadLocalRandom.current().nextInt(numShards));
+    Entity shardEntity;
+
+    try {
+      shardEntity = datastoreService.get(transaction, shardKey);
+    } catch (EntityNotFoundException e) {
+      shardEntity = createShardEntity(shardKey, counterName, 0);
+    }
+
+    shardEntity.setProperty(COUNT_PROPERTY_KEY, getShardCount(shardEntity) + delta);
+    datastoreService.put(transaction, shardEntity);
+  }
+
+  /**
+   * Gets the value of a counter by adding up its shards.
+   *
+   * @param counterName the name of the counter
+   * @return the value of the counter, zero if the counter was never updated
+   */
+  public long getCount(String counterName) {
+    return getCounts(Collections.singletonList(counterName)).get(counterName);
+  }
+
+  /**
+   * Gets the values of many counters by adding up their shards, which are fetched with batch gets.
+   *
+   * @param counterNames the names of the counters
+   * @return map from counter name to its value, counters that were never updated map to zero
+   */
+  public Map<String, Long> getCounts(Collection<String> counterNames) {
+    Map<String, Long> counts = new HashMap<>(countCache.getAllPresent(counterNames));
+    List<Key> shardKeys = new ArrayList<>();
+
+    for (String counterName : counterNames) {
+      if (counts.containsKey(counterName)) {
+        continue;
+      }
+
+      counts.put(counterName, 0L);
+
+      for (int shardIndex = 0; shardIndex < numShards; shardIndex++) {
+        shardKeys.add(createShardKey(counterName, shardIndex));
+      }
+    }
+
+    Map<String, Long> uncachedCounts = new HashMap<>();
+
+    for (List<Key> keyBatch : Lists.partition(shardKeys, Utils.MAX_KEYS_PER_BATCH)) {
+      for (Entity shardEntity : datastoreService.get(keyBatch).values()) {
+        uncachedCounts.merge((String) shardEntity.getProperty(COUNTER_NAME_PROPERTY_KEY),
+            getShardCount(shardEntity), Long::sum);
+      }
+    }
+
+    counts.putAll(uncachedCounts);
+
+    for (String counterName : counterNames) {
+      countCache.put(counterName, counts.get(counterName));
+    }
+
+    return counts;
+  }
+
+  /**
+   * Finds the names of the counters of the group that were updated at least once, with a
+   * distinct projection over the shards.
+   *
+   * @return names of the counters in ascending order
+   */
+  public List<String> queryCounterNames() {
+    Query counterNameQuery =
+        new Query(shardKind)
+            .addProjection(new PropertyProjection(COUNTER_NAME_PROPERTY_KEY, String.class))
+            .addSort(COUNTER_NAME_PROPERTY_KEY)
+            .setDistinct(true);
+    List<String> counterNames = new ArrayList<>();
+
+    for (Entity shardEntity : datastoreService.prepare(counterNameQuery).asIterable()) {
+      counterNames.add((String) shardEntity.getProperty(COUNTER_NAME_PROPERTY_KEY));
+    }
+
+    return counterNames;
+  }
+
+  /**
+   * Overwrites the value of a counter, used to backfill counters from existing data. This is not
+   * safe to run while the counter is being incremented.
+   *
+   * @param counterName the name of the counter
+   * @param count the new value of the counter
+   */
+  public void setCount(String counterName, long count) {
+    List<Key> extraShardKeys = new ArrayList<>();
+
+    for (int shardIndex = 1; shardIndex < numShards; shardIndex++) {
+      extraShardKeys.add(createShardKey(counterName, shardIndex));
+    }
+
+    datastoreService.put(createShardEntity(createShardKey(counterName, 0), counterName, count));
+    datastoreService.delete(extraShardKeys);
+    countCache.invalidate(counterName);
+  }
+
+  /**
+   * Discards the cached value of a counter, should be called after a transaction that incremented
+   * the counter is committed.
+   *
+   * @param counterName the name of the counter
+   */
+  public void invalidateCachedCount(String counterName) {
+    countCache.invalidate(counterName);
+  }
+
+  /**
+   * Discards every cached counter value.
+   */
+  public void invalidateCachedCounts() {
+    countCache.invalidateAll();
+  }
+
+  private Key createShardKey(String counterName, int shardIndex) {
+    return KeyFactory.createKey(shardKind, counterName + "#" + shardIndex);
+  }
+
+  private static Entity createShardEntity(Key shardKey, String counterName, long count) {
+    Entity shardEntity = new Entity(shardKey);
+    shardEntity.setProperty(COUNTER_NAME_PROPERTY_KEY, counterName);
+    shardEntity.setProperty(COUNT_PROPERTY_KEY, count);
+
+    return shardEntity;
+  }
+
+  private static long getShardCount(Entity shardEntity) {
+    return (Long) shardEntity.getProperty(COUNT_PROPERTY_KEY);
+  }
+}
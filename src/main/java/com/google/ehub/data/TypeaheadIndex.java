@@ -0,0 +1,228 @@
+package com.google.ehub.data;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.ehub.utility.TitleSuggestion;
+import com.google.ehub.utility.TitleTrie;
+import com.google.ehub.utility.Utils;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Singleton class that completes title prefixes with the most liked items from an in-memory
+ * TitleTrie. The trie is built from EntertainmentItemDatastore and FavoriteItemDatastore, and
+ * items and likes added through this instance update it right away. Changes made by other
+ * instances are picked up when the trie is rebuilt, which the first lookup does once the trie is
+ * older than a few minutes.
+ */
+public final class TypeaheadIndex {
+  /** Maximum number of suggestions that can be requested for a prefix. */
+  public static final int MAX_SUGGESTIONS = 10;
+
+  private static final int REBUILD_BATCH_SIZE = 500;
+  private static final long MAX_INDEX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+  private static TypeaheadIndex instance;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private TitleTrie titleTrie = new TitleTrie(MAX_SUGGESTIONS);
+  // Changes made while a rebuild runs, which the rebuild applies to the new trie before using it.
+  // Like deltas are only kept for the items whose like counts the rebuild has already read.
+  private List<EntertainmentItem> itemsAddedDuringRebuild;
+  private Map<Long, Long> likesAddedDuringRebuild;
+  private Set<Long> itemIdsCountedByRebuild;
+  private final IndexRebuilder rebuilder =
+      new IndexRebuilder("TypeaheadIndex", MAX_INDEX_AGE_MILLIS, () -> rebuild());
+
+  private TypeaheadIndex() {}
+
+  /**
+   * Gives access to the single instance of the class, and creates this instance
+   * if it was not initialized previously.
+   *
+   * @return single instance of the class
+   */
+  public static TypeaheadIndex getInstance() {
+    if (instance == null) {
+      instance = new TypeaheadIndex();
+    }
+
+    return instance;
+  }
+
+  /**
+   * Replaces the trie with a new one built from every item stored in Datastore and its like
+   * count. Items and likes added while the rebuild runs are kept. Only one rebuild runs at a time.
+   *
+   * @return number of items in the trie
+   */
+  public synchronized int rebuild() {
+    lock.writeLock().lock();
+
+    try {
+      itemsAddedDuringRebuild = new ArrayList<>();
+      likesAddedDuringRebuild = new HashMap<>();
+      itemIdsCountedByRebuild = new HashSet<>();
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    try {
+      return buildTrie();
+    } finally {
+      lock.writeLock().lock();
+
+      try {
+        itemsAddedDuringRebuild = null;
+        likesAddedDuringRebuild = null;
+        itemIdsCountedByRebuild = null;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  private int buildTrie() {
+    TitleTrie newTitleTrie = new TitleTrie(MAX_SUGGESTIONS);
+    EntertainmentItemDatastore itemDatastore = EntertainmentItemDatastore.getInstance();
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(REBUILD_BATCH_SIZE);
+
+    while (true) {
+      EntertainmentItemList itemList = itemDatastore.queryAllItems(fetchOptions);
+      List<Long> itemIds = new ArrayList<>();
+
+      for (EntertainmentItem item : itemList.getItems()) {
+        itemIds.add(item.getUniqueId().get());
+      }
+
+      Map<Long, Long> likeCounts = FavoriteItemDatastore.getInstance().queryLikeCounts(itemIds);
+      markCountedByRebuild(itemIds);
+
+      for (EntertainmentItem item : itemList.getItems()) {
+        insertItem(newTitleTrie, item, likeCounts.get(item.getUniqueId().get()));
+      }
+
+      if (itemList.getItems().size() < REBUILD_BATCH_SIZE) {
+        break;
+      }
+
+      fetchOptions = FetchOptions.Builder.withLimit(REBUILD_BATCH_SIZE)
+                         .startCursor(Cursor.fromWebSafeString(itemList.getPageCursor()));
+    }
+
+    lock.writeLock().lock();
+
+    try {
+      for (EntertainmentItem item : itemsAddedDuringRebuild) {
+        if (newTitleTrie.getLikeCount(item.getUniqueId().orElse(-1L)) < 0) {
+          insertItem(newTitleTrie, item, 0);
+        }
+      }
+
+      for (Map.Entry<Long, Long> likes : likesAddedDuringRebuild.entrySet()) {
+        addLikes(newTitleTrie, likes.getKey(), likes.getValue());
+      }
+
+      titleTrie = newTitleTrie;
+      rebuilder.markBuilt();
+
+      return newTitleTrie.size();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Adds a new item to the trie, used after the item is stored in Datastore.
+   *
+   * @param item the item to add, items without a unique id or title are ignored
+   */
+  public void addItem(EntertainmentItem item) {
+    lock.writeLock().lock();
+
+    try {
+      insertItem(titleTrie, item, 0);
+
+      if (itemsAddedDuringRebuild != null) {
+        itemsAddedDuringRebuild.add(item);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Adds a delta to the like count of an item, used after a like is added or removed.
+   *
+   * @param itemId the Id of the item
+   * @param delta the change of the like count
+   */
+  public void addLikes(long itemId, long delta) {
+    lock.writeLock().lock();
+
+    try {
+      addLikes(titleTrie, itemId, delta);
+
+      if (itemIdsCountedByRebuild != null && itemIdsCountedByRebuild.contains(itemId)) {
+        likesAddedDuringRebuild.merge(itemId, delta, Long::sum);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Finds the most liked items whose titles start with a prefix, ignoring case.
+   *
+   * @param prefix the prefix typed by the user
+   * @param limit the maximum number of suggestions, capped by {@link #MAX_SUGGESTIONS}
+   * @return suggestions in descending order of likes, ties ordered by title
+   */
+  public List<TitleSuggestion> getSuggestions(String prefix, int limit) {
+    rebuilder.rebuildIfStale();
+
+    lock.readLock().lock();
+
+    try {
+      return titleTrie.getSuggestions(normalize(prefix), Math.min(limit, MAX_SUGGESTIONS));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void markCountedByRebuild(List<Long> itemIds) {
+    lock.writeLock().lock();
+
+    try {
+      itemIdsCountedByRebuild.addAll(itemIds);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private static void addLikes(TitleTrie titleTrie, long itemId, long delta) {
+    long likeCount = titleTrie.getLikeCount(itemId);
+
+    if (likeCount >= 0) {
+      titleTrie.updateLikeCount(itemId, Math.max(0, likeCount + delta));
+    }
+  }
+
+  private static void insertItem(TitleTrie titleTrie, EntertainmentItem item, long likeCount) {
+    if (item.getUniqueId().isPresent() && item.getTitle() != null) {
+      titleTrie.insert(
+          normalize(item.getTitle()), item.getUniqueId().get(), item.getTitle(), likeCount);
+    }
+  }
+
+  private static String normalize(String title) {
+    return Utils.normalizeText(title).trim();
+  }
+}
@@ -1,6 +1,7 @@
 package com.google.ehub.data;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Holds user information used to create JSON object for Profile Servlet's Get request response.
@@ -8,10 +9,18 @@ import java.util.List;
 public final class UserData {
   private final UserProfile profile;
   private final List<String> recommendedUsers;
+  // Null while the recommended users have not been computed yet.
+  private final Long recommendationsTimestampMillis;
 
   public UserData(UserProfile profile, List<String> recommendedUsers) {
+    this(profile, recommendedUsers, null);
+  }
+
+  public UserData(
+      UserProfile profile, List<String> recommendedUsers, Long recommendationsTimestampMillis) {
     this.profile = profile;
     this.recommendedUsers = recommendedUsers;
+    this.recommendationsTimestampMillis = recommendationsTimestampMillis;
   }
 
   public UserProfile getProfile() {
@@ -21,4 +30,8 @@ public final class UserData {
   public List<String> getRecommendedUsers() {
     return recommendedUsers;
   }
+
+  public Optional<Long> getRecommendationsTimestampMillis() {
+    return Optional.ofNullable(recommendationsTimestampMillis);
+  }
 }
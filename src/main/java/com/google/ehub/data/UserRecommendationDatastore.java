@@ -0,0 +1,88 @@
+package com.google.ehub.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Singleton class that manages the last computed recommended users of every user, so they can be
+ * read with a get by key instead of being computed while serving a request.
+ */
+public final class UserRecommendationDatastore {
+  private static final String USER_RECOMMENDATIONS_KIND = "userRecommendations";
+  private static final String RECOMMENDED_EMAILS_PROPERTY_KEY = "recommendedEmails";
+  private static final String COMPUTED_TIMESTAMP_MILLIS_PROPERTY_KEY = "computedTimestampMillis";
+
+  private static UserRecommendationDatastore instance;
+
+  private final DatastoreService datastoreService = DatastoreServiceFactory.getDatastoreService();
+
+  private UserRecommendationDatastore() {}
+
+  /**
+   * Gives access to the single instance of the class, and creates this instance
+   * if it was not initialized previously.
+   *
+   * @return single instance of the class
+   */
+  public static UserRecommendationDatastore getInstance() {
+    if (instance == null) {
+      instance = new UserRecommendationDatastore();
+    }
+
+    return instance;
+  }
+
+  /**
+   * Replaces the stored recommended users of a user.
+   *
+   * @param userEmail the email of the user that gets the recommendations
+   * @param recommendedEmails the recommended emails in descending order
+   * @param computedTimestampMillis the time at which the recommendations were computed
+   */
+  public void storeRecommendations(
+      String userEmail, List<String> recommendedEmails, long computedTimestampMillis) {
+    Entity recommendationsEntity = new Entity(createRecommendationsKey(userEmail));
+    recommendationsEntity.setUnindexedProperty(
+        RECOMMENDED_EMAILS_PROPERTY_KEY, new ArrayList<>(recommendedEmails));
+    recommendationsEntity.setUnindexedProperty(
+        COMPUTED_TIMESTAMP_MILLIS_PROPERTY_KEY, computedTimestampMillis);
+
+    datastoreService.put(recommendationsEntity);
+  }
+
+  /**
+   * Gets the last computed recommended users of a user by key.
+   *
+   * @param userEmail the email of the user
+   * @return optional containing the recommendations, empty if they were never computed
+   */
+  @SuppressWarnings("unchecked")
+  public Optional<UserRecommendations> queryRecommendations(String userEmail) {
+    Entity recommendationsEntity;
+
+    try {
+      recommendationsEntity = datastoreService.get(createRecommendationsKey(userEmail));
+    } catch (EntityNotFoundException e) {
+      return Optional.empty();
+    }
+
+    // Datastore stores empty lists as null.
+    List<String> recommendedEmails =
+        (List<String>) recommendationsEntity.getProperty(RECOMMENDED_EMAILS_PROPERTY_KEY);
+
+    return Optional.of(new UserRecommendations(
+        recommendedEmails == null ? new ArrayList<>() : recommendedEmails,
+        (Long) recommendationsEntity.getProperty(COMPUTED_TIMESTAMP_MILLIS_PROPERTY_KEY)));
+  }
+
+  private static Key createRecommendationsKey(String userEmail) {
+    return KeyFactory.createKey(USER_RECOMMENDATIONS_KIND, userEmail);
+  }
+}
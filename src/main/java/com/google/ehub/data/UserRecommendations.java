@@ -0,0 +1,24 @@
+package com.google.ehub.data;
+
+import java.util.List;
+
+/**
+ * Holds the users recommended to a user together with the time at which they were computed.
+ */
+public final class UserRecommendations {
+  private final List<String> recommendedEmails;
+  private final long computedTimestampMillis;
+
+  public UserRecommendations(List<String> recommendedEmails, long computedTimestampMillis) {
+    this.recommendedEmails = recommendedEmails;
+    this.computedTimestampMillis = computedTimestampMillis;
+  }
+
+  public List<String> getRecommendedEmails() {
+    return recommendedEmails;
+  }
+
+  public long getComputedTimestampMillis() {
+    return computedTimestampMillis;
+  }
+}
@@ -0,0 +1,29 @@
+package com.google.ehub.data;
+
+/**
+ * Holds the MinHash signature of the set of items liked by a user, together with the size of the
+ * set, used to estimate how many likes two users have in common.
+ */
+public final class UserSignature {
+  private final String email;
+  private final long[] minHashes;
+  private final long numFavorites;
+
+  public UserSignature(String email, long[] minHashes, long numFavorites) {
+    this.email = email;
+    this.minHashes = minHashes;
+    this.numFavorites = numFavorites;
+  }
+
+  public String getEmail() {
+    return email;
+  }
+
+  public long[] getMinHashes() {
+    return minHashes;
+  }
+
+  public long getNumFavorites() {
+    return numFavorites;
+  }
+}
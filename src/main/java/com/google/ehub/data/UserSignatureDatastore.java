@@ -0,0 +1,260 @@
+package com.google.ehub.data;
+
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Longs;
+import com.google.ehub.utility.MinHashUtils;
+import com.google.ehub.utility.Utils;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Singleton class that manages the MinHash signatures of the items liked by every user. The
+ * locality sensitive hashing bands of each signature are indexed, so users with similar
+ * signatures can be found with a single query.
+ */
+public final class UserSignatureDatastore {
+  private static final String USER_SIGNATURE_KIND = "userSignature";
+  private static final String MIN_HASHES_PROPERTY_KEY = "minHashes";
+  private static final String NUM_FAVORITES_PROPERTY_KEY = "numFavorites";
+  private static final String LSH_BANDS_PROPERTY_KEY = "lshBands";
+
+  private static final int MAX_TRANSACTION_ATTEMPTS = 5;
+  private static final int MAX_CANDIDATES = 500;
+  private static final int MAX_CONCURRENT_QUERIES = 10;
+
+  private static UserSignatureDatastore instance;
+
+  private final DatastoreService datastoreService = DatastoreServiceFactory.getDatastoreService();
+  private final AsyncDatastoreService asyncDatastoreService =
+      DatastoreServiceFactory.getAsyncDatastoreService();
+
+  private UserSignatureDatastore() {}
+
+  /**
+   * Gives access to the single instance of the class, and creates this instance
+   * if it was not initialized previously.
+   *
+   * @return single instance of the class
+   */
+  public static UserSignatureDatastore getInstance() {
+    if (instance == null) {
+      instance = new UserSignatureDatastore();
+    }
+
+    return instance;
+  }
+
+  /**
+   * Updates the signature of a user to include a newly liked item, in a transaction so that
+   * concurrent likes of the same user are not lost.
+   *
+   * @param userEmail the email of the user that liked the item
+   * @param itemId the id of the item that was liked
+   */
+  public void addFavoriteItem(String userEmail, Long itemId) {
+    Key signatureKey = createSignatureKey(userEmail);
+
+    for (int attempt = 1;; attempt++) {
+      Transaction transaction = datastoreService.beginTransaction();
+
+      try {
+        UserSignature signature;
+
+        try {
+          signature = createUserSignature(datastoreService.get(transaction, signatureKey));
+        } catch (EntityNotFoundException e) {
+          signature = new UserSignature(userEmail,
+              MinHashUtils.computeSignature(Collections.emptyList()), /* numFavorites */ 0);
+        }
+
+        long[] minHashes = signature.getMinHashes();
+        MinHashUtils.addItemToSignature(minHashes, itemId);
+
+        datastoreService.put(transaction,
+            createSignatureEntity(userEmail, minHashes, signature.getNumFavorites() + 1));
+        transaction.commit();
+
+        return;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == MAX_TRANSACTION_ATTEMPTS) {
+          throw e;
+        }
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+  }
+
+  /**
+   * Replaces the signature of a user with one computed from all of the items the user likes, used
+   * after an item is unliked since MinHashes can't be updated to exclude an item.
+   *
+   * @param userEmail the email of the user
+   * @param favoriteIds the Ids of every item liked by the user
+   */
+  public void updateSignature(String userEmail, Set<Long> favoriteIds) {
+    if (favoriteIds.isEmpty()) {
+      datastoreService.delete(createSignatureKey(userEmail));
+    } else {
+      datastoreService.put(createSignatureEntity(
+          userEmail, MinHashUtils.computeSignature(favoriteIds), favoriteIds.size()));
+    }
+  }
+
+  /**
+   * Gets the signature of a user by key.
+   *
+   * @param userEmail the email of the user
+   * @return optional containing the signature of the user, empty if the user likes no items
+   */
+  public Optional<UserSignature> querySignature(String userEmail) {
+    try {
+      return Optional.of(createUserSignature(datastoreService.get(createSignatureKey(userEmail))));
+    } catch (EntityNotFoundException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Queries the signatures of the users that share at least one band with the given signature,
+   * the given user is included in the result. Every band is queried separately for keys only, so
+   * the candidates can be ranked by the number of bands they share before the signatures of the
+   * best ones are read with a batch get. In the case of a tie, the order will use increasing
+   * lexicographical order.
+   *
+   * @param signature the signature used to search for similar users
+   * @return list holding the signatures of the candidate users, up to a maximum of 500, in
+   *     descending order of shared bands
+   */
+  public List<UserSignature> queryCandidates(UserSignature signature) {
+    List<Long> bands =
+        new ArrayList<>(new LinkedHashSet<>(MinHashUtils.computeBands(signature.getMinHashes())));
+    Map<Key, Integer> sharedBandsByKey = new HashMap<>();
+
+    for (List<Long> concurrentBands : Lists.partition(bands, MAX_CONCURRENT_QUERIES)) {
+      List<Iterator<Entity>> queryResults = new ArrayList<>();
+
+      // Every query is started before reading any results so that their RPCs overlap.
+      for (Long band : concurrentBands) {
+        Query query =
+            new Query(USER_SIGNATURE_KIND)
+                .setFilter(new FilterPredicate(LSH_BANDS_PROPERTY_KEY, FilterOperator.EQUAL, band))
+                .setKeysOnly();
+        queryResults.add(asyncDatastoreService.prepare(query).asIterator(
+            FetchOptions.Builder.withChunkSize(Utils.MAX_KEYS_PER_BATCH)));
+      }
+
+      for (Iterator<Entity> signatureEntities : queryResults) {
+        while (signatureEntities.hasNext()) {
+          sharedBandsByKey.merge(signatureEntities.next().getKey(), 1, Integer::sum);
+        }
+      }
+    }
+
+    List<Key> candidateKeys = new ArrayList<>(sharedBandsByKey.keySet());
+    candidateKeys.sort((first, second) -> {
+      int sharedBandsComparison =
+          Integer.compare(sharedBandsByKey.get(second), sharedBandsByKey.get(first));
+
+      return sharedBandsComparison != 0
+          ? sharedBandsComparison
+          : first.getName().compareTo(second.getName());
+    });
+    candidateKeys = candidateKeys.subList(0, Math.min(candidateKeys.size(), MAX_CANDIDATES));
+
+    Map<Key, Entity> signatureEntities = datastoreService.get(candidateKeys);
+    List<UserSignature> candidates = new ArrayList<>();
+
+    for (Key candidateKey : candidateKeys) {
+      Entity signatureEntity = signatureEntities.get(candidateKey);
+
+      // Signatures deleted since the queries ran are skipped.
+      if (signatureEntity != null) {
+        candidates.add(createUserSignature(signatureEntity));
+      }
+    }
+
+    return candidates;
+  }
+
+  /**
+   * Replaces every stored signature with signatures computed from the items liked by each user,
+   * used to backfill the signatures of favorites added before signatures existed.
+   *
+   * @param favoriteIdsByEmail map from user email to the Ids of the items liked by the user
+   * @return number of signature Entities that were written
+   */
+  public int rebuildSignatures(Map<String, ? extends Collection<Long>> favoriteIdsByEmail) {
+    PreparedQuery storedSignatures =
+        datastoreService.prepare(new Query(USER_SIGNATURE_KIND).setKeysOnly());
+    List<Key> storedKeys = new ArrayList<>();
+
+    for (Entity signatureEntity :
+        storedSignatures.asIterable(FetchOptions.Builder.withChunkSize(Utils.MAX_KEYS_PER_BATCH))) {
+      storedKeys.add(signatureEntity.getKey());
+    }
+
+    for (List<Key> keyBatch : Lists.partition(storedKeys, Utils.MAX_KEYS_PER_BATCH)) {
+      datastoreService.delete(keyBatch);
+    }
+
+    List<Entity> rebuiltEntities = new ArrayList<>();
+
+    for (Map.Entry<String, ? extends Collection<Long>> favoriteIds :
+        favoriteIdsByEmail.entrySet()) {
+      rebuiltEntities.add(createSignatureEntity(favoriteIds.getKey(),
+          MinHashUtils.computeSignature(favoriteIds.getValue()), favoriteIds.getValue().size()));
+    }
+
+    for (List<Entity> entityBatch : Lists.partition(rebuiltEntities, Utils.MAX_KEYS_PER_BATCH)) {
+      datastoreService.put(entityBatch);
+    }
+
+    return rebuiltEntities.size();
+  }
+
+  private static Entity createSignatureEntity(
+      String userEmail, long[] minHashes, long numFavorites) {
+    Entity signatureEntity = new Entity(createSignatureKey(userEmail));
+    signatureEntity.setUnindexedProperty(MIN_HASHES_PROPERTY_KEY, Longs.asList(minHashes));
+    signatureEntity.setUnindexedProperty(NUM_FAVORITES_PROPERTY_KEY, numFavorites);
+    signatureEntity.setProperty(LSH_BANDS_PROPERTY_KEY, MinHashUtils.computeBands(minHashes));
+
+    return signatureEntity;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static UserSignature createUserSignature(Entity signatureEntity) {
+    return new UserSignature(signatureEntity.getKey().getName(),
+        Longs.toArray((List<Long>) signatureEntity.getProperty(MIN_HASHES_PROPERTY_KEY)),
+        (Long) signatureEntity.getProperty(NUM_FAVORITES_PROPERTY_KEY));
+  }
+
+  private static Key createSignatureKey(String userEmail) {
+    return KeyFactory.createKey(USER_SIGNATURE_KIND, userEmail);
+  }
+}
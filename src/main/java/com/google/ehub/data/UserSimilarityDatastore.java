@@ -0,0 +1,263 @@
+package com.google.ehub.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.common.collect.Lists;
+import com.google.ehub.utility.Utils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Singleton class that manages the number of items liked in common by every pair of users. Each
+ * pair is stored twice, once for each direction, so the users most similar to a given user can be
+ * read with a single query instead of being recomputed from their favorite items. Items that had
+ * too many likers at some point are marked as pruned and their likes are not counted.
+ */
+public final class UserSimilarityDatastore {
+  private static final String USER_SIMILARITY_KIND = "userSimilarity";
+  private static final String EMAIL_PROPERTY_KEY = "email";
+  private static final String OTHER_EMAIL_PROPERTY_KEY = "otherEmail";
+  private static final String COMMON_LIKES_PROPERTY_KEY = "commonLikes";
+
+  private static final String PRUNED_ITEM_KIND = "prunedItem";
+
+  // Emails can't contain unquoted spaces, so the separator keeps pair keys unambiguous.
+  private static final String KEY_SEPARATOR = " ";
+
+  private static UserSimilarityDatastore instance;
+
+  private final DatastoreService datastoreService = DatastoreServiceFactory.getDatastoreService();
+
+  private UserSimilarityDatastore() {}
+
+  /**
+   * Gives access to the single instance of the class, and creates this instance
+   * if it was not initialized previously.
+   *
+   * @return single instance of the class
+   */
+  public static UserSimilarityDatastore getInstance() {
+    if (instance == null) {
+      instance = new UserSimilarityDatastore();
+    }
+
+    return instance;
+  }
+
+  /**
+   * Adds a delta to the number of common likes between a user and each of the other users, in
+   * both directions. Pairs whose count drops to zero are deleted. The updates are not
+   * transactional, concurrent updates of the same pair can be lost and are fixed by
+   * rebuildSimilarities.
+   *
+   * @param userEmail the email of the user that liked or unliked an item
+   * @param otherEmails the emails of the other users that like the same item
+   * @param delta the change in the number of common likes, usually 1 or -1
+   */
+  public void updateSimilarities(String userEmail, Collection<String> otherEmails, long delta) {
+    // Every other email produces two keys, one for each direction of the pair.
+    for (List<String> emailBatch :
+        Lists.partition(new ArrayList<>(otherEmails), Utils.MAX_KEYS_PER_BATCH / 2)) {
+      List<Key> pairKeys = new ArrayList<>();
+
+      for (String otherEmail : emailBatch) {
+        pairKeys.add(createSimilarityKey(userEmail, otherEmail));
+        pairKeys.add(createSimilarityKey(otherEmail, userEmail));
+      }
+
+      Map<Key, Entity> pairEntities = new HashMap<>(datastoreService.get(pairKeys));
+      List<Entity> updatedEntities = new ArrayList<>();
+      List<Key> deletedKeys = new ArrayList<>();
+
+      for (String otherEmail : emailBatch) {
+        for (Entity pairEntity : Arrays.asList(
+                 addCommonLikes(pairEntities, userEmail, otherEmail, delta),
+                 addCommonLikes(pairEntities, otherEmail, userEmail, delta))) {
+          if (getCommonLikes(pairEntity) > 0) {
+            updatedEntities.add(pairEntity);
+          } else {
+            deletedKeys.add(pairEntity.getKey());
+          }
+        }
+      }
+
+      datastoreService.put(updatedEntities);
+      datastoreService.delete(deletedKeys);
+    }
+  }
+
+  /**
+   * Finds which of the given items are pruned with batch gets.
+   *
+   * @param itemIds the Ids of the items to check
+   * @return set holding the given item Ids whose likes are not counted
+   */
+  public Set<Long> queryPrunedItemIds(Collection<Long> itemIds) {
+    List<Key> prunedItemKeys = new ArrayList<>();
+
+    for (Long itemId : itemIds) {
+      prunedItemKeys.add(createPrunedItemKey(itemId));
+    }
+
+    Set<Long> prunedIds = new HashSet<>();
+
+    for (List<Key> keyBatch : Lists.partition(prunedItemKeys, Utils.MAX_KEYS_PER_BATCH)) {
+      for (Key prunedItemKey : datastoreService.get(keyBatch).keySet()) {
+        prunedIds.add(Long.parseLong(prunedItemKey.getName()));
+      }
+    }
+
+    return prunedIds;
+  }
+
+  /**
+   * Marks an item as pruned, which happens once per item, when it gets more likers than the
+   * configured maximum. Later likes and unlikes of the item are not counted. The common likes it
+   * added before are left in place, since removing them here would update every pair of its
+   * likers, and are removed by the next rebuildSimilarities, which keeps the item pruned.
+   *
+   * @param itemId the id of the item
+   */
+  public void pruneItem(Long itemId) {
+    datastoreService.put(new Entity(createPrunedItemKey(itemId)));
+  }
+
+  /**
+   * Queries the users that have the most likes in common with a given user, in descending order
+   * of common likes. In the case of a tie, the order will use increasing lexicographical order.
+   *
+   * @param userEmail the email of the user
+   * @param limit the maximum number of emails returned
+   * @return list containing the most similar emails in descending order
+   */
+  public List<String> queryMostSimilarEmails(String userEmail, int limit) {
+    Query query =
+        new Query(USER_SIMILARITY_KIND)
+            .setFilter(new FilterPredicate(EMAIL_PROPERTY_KEY, FilterOperator.EQUAL, userEmail))
+            .addSort(COMMON_LIKES_PROPERTY_KEY, SortDirection.DESCENDING)
+            .addSort(OTHER_EMAIL_PROPERTY_KEY, SortDirection.ASCENDING);
+    PreparedQuery queryResults = datastoreService.prepare(query);
+
+    List<String> similarEmails = new ArrayList<>();
+
+    for (Entity pairEntity : queryResults.asIterable(FetchOptions.Builder.withLimit(limit))) {
+      similarEmails.add((String) pairEntity.getProperty(OTHER_EMAIL_PROPERTY_KEY));
+    }
+
+    return similarEmails;
+  }
+
+  /**
+   * Replaces every stored pair with counts recomputed from the emails that liked each item, used
+   * to backfill the pairs of favorites added before the pairs existed. Items that are pruned or
+   * have more likers than the maximum are skipped, and the latter are marked as pruned, the same
+   * way as when favorites are updated.
+   *
+   * @param itemLikes map from item Id to the emails that liked the item
+   * @param maxItemLikers the maximum number of likers of the items that are counted
+   * @return number of pair Entities that were written
+   */
+  public int rebuildSimilarities(
+      Map<Long, ? extends Collection<String>> itemLikes, long maxItemLikers) {
+    Set<Long> prunedIds = queryPrunedItemIds(itemLikes.keySet());
+    List<Entity> prunedItemEntities = new ArrayList<>();
+    Map<Key, Entity> pairEntities = new HashMap<>();
+
+    for (Map.Entry<Long, ? extends Collection<String>> likes : itemLikes.entrySet()) {
+      if (prunedIds.contains(likes.getKey())) {
+        continue;
+      }
+
+      Collection<String> emails = likes.getValue();
+
+      if (emails.size() > maxItemLikers) {
+        prunedItemEntities.add(new Entity(createPrunedItemKey(likes.getKey())));
+        continue;
+      }
+
+      for (String email : emails) {
+        for (String otherEmail : emails) {
+          if (!email.equals(otherEmail)) {
+            addCommonLikes(pairEntities, email, otherEmail, 1);
+          }
+        }
+      }
+    }
+
+    PreparedQuery storedPairs =
+        datastoreService.prepare(new Query(USER_SIMILARITY_KIND).setKeysOnly());
+    List<Key> storedKeys = new ArrayList<>();
+
+    for (Entity pairEntity :
+        storedPairs.asIterable(FetchOptions.Builder.withChunkSize(Utils.MAX_KEYS_PER_BATCH))) {
+      storedKeys.add(pairEntity.getKey());
+    }
+
+    for (List<Key> keyBatch : Lists.partition(storedKeys, Utils.MAX_KEYS_PER_BATCH)) {
+      datastoreService.delete(keyBatch);
+    }
+
+    List<Entity> rebuiltEntities = new ArrayList<>(pairEntities.values());
+
+    for (List<Entity> entityBatch : Lists.partition(rebuiltEntities, Utils.MAX_KEYS_PER_BATCH)) {
+      datastoreService.put(entityBatch);
+    }
+
+    for (List<Entity> entityBatch : Lists.partition(prunedItemEntities, Utils.MAX_KEYS_PER_BATCH)) {
+      datastoreService.put(entityBatch);
+    }
+
+    return rebuiltEntities.size();
+  }
+
+  /**
+   * Adds a delta to the common likes of the pair Entity found in the map, the Entity is created
+   * and added to the map if it doesn't exist yet.
+   *
+   * @return the updated pair Entity
+   */
+  private static Entity addCommonLikes(
+      Map<Key, Entity> pairEntities, String email, String otherEmail, long delta) {
+    Key pairKey = createSimilarityKey(email, otherEmail);
+    Entity pairEntity = pairEntities.get(pairKey);
+
+    if (pairEntity == null) {
+      pairEntity = new Entity(pairKey);
+      pairEntity.setProperty(EMAIL_PROPERTY_KEY, email);
+      pairEntity.setProperty(OTHER_EMAIL_PROPERTY_KEY, otherEmail);
+      pairEntity.setProperty(COMMON_LIKES_PROPERTY_KEY, 0L);
+      pairEntities.put(pairKey, pairEntity);
+    }
+
+    pairEntity.setProperty(COMMON_LIKES_PROPERTY_KEY, getCommonLikes(pairEntity) + delta);
+
+    return pairEntity;
+  }
+
+  private static long getCommonLikes(Entity pairEntity) {
+    return (Long) pairEntity.getProperty(COMMON_LIKES_PROPERTY_KEY);
+  }
+
+  private static Key createPrunedItemKey(Long itemId) {
+    return KeyFactory.createKey(PRUNED_ITEM_KIND, String.valueOf(itemId));
+  }
+
+  private static Key createSimilarityKey(String email, String otherEmail) {
+    return KeyFactory.createKey(USER_SIMILARITY_KIND, email + KEY_SEPARATOR + otherEmail);
+  }
+}
@@ -0,0 +1,45 @@
+package com.google.ehub.servlets;
+
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.ehub.utility.BackgroundTaskScheduler;
+import com.google.ehub.utility.BackgroundTaskScheduler.Task;
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.lang3.EnumUtils;
+
+/**
+ * Handles the POST requests of the task queue that run the tasks of BackgroundTaskScheduler.
+ */
+@WebServlet(BackgroundTaskScheduler.TASK_URL)
+public class BackgroundTaskServlet extends HttpServlet {
+  // App Engine removes this header from external requests, so only the task queue can set it.
+  private static final String QUEUE_NAME_HEADER = "X-AppEngine-QueueName";
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    UserService userService = UserServiceFactory.getUserService();
+    boolean isAdmin = userService.isUserLoggedIn() && userService.isUserAdmin();
+
+    if (request.getHeader(QUEUE_NAME_HEADER) == null && !isAdmin) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN,
+          "BackgroundTaskServlet: Request must come from the task queue!");
+      return;
+    }
+
+    String task = request.getParameter(BackgroundTaskScheduler.TASK_PARAMETER_KEY);
+    String email = request.getParameter(BackgroundTaskScheduler.EMAIL_PARAMETER_KEY);
+
+    if (task == null || !EnumUtils.isValidEnum(Task.class, task) || email == null
+        || email.isEmpty()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          "BackgroundTaskServlet: Post request parameters not specified correctly!");
+      return;
+    }
+
+    BackgroundTaskScheduler.getInstance().run(Task.valueOf(task), email);
+  }
+}
@@ -0,0 +1,61 @@
+package com.google.ehub.servlets;
+
+import com.google.common.cache.CacheStats;
+import com.google.ehub.data.CommentPageCache;
+import com.google.ehub.data.EntertainmentItemDatastore;
+import com.google.ehub.data.EntertainmentItemDatastore.PrefixQueryStats;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Handles GET requests to expose the hit, miss and eviction counters of the in-process caches,
+ * and the scan counters of release date queries filtered by title prefix.
+ */
+@WebServlet("/cache-stats")
+public class CacheStatsServlet extends HttpServlet {
+  private static final String ITEM_CACHE_KEY = "itemCache";
+  private static final String COMMENT_PAGE_CACHE_KEY = "commentPageCache";
+  private static final String HIT_COUNT_KEY = "hitCount";
+  private static final String MISS_COUNT_KEY = "missCount";
+  private static final String EVICTION_COUNT_KEY = "evictionCount";
+  private static final String PREFIX_QUERIES_KEY = "prefixQueries";
+  private static final String QUERY_COUNT_KEY = "queryCount";
+  private static final String SCANNED_ENTITIES_KEY = "scannedEntities";
+  private static final String RETURNED_ENTITIES_KEY = "returnedEntities";
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    JsonObject statsJson = new JsonObject();
+    statsJson.add(ITEM_CACHE_KEY,
+        createCacheStatsJson(EntertainmentItemDatastore.getInstance().getItemCacheStats()));
+    statsJson.add(COMMENT_PAGE_CACHE_KEY,
+        createCacheStatsJson(CommentPageCache.getInstance().getStats()));
+    statsJson.add(PREFIX_QUERIES_KEY,
+        createPrefixQueryStatsJson(EntertainmentItemDatastore.getInstance().getPrefixQueryStats()));
+
+    response.setContentType("application/json");
+    response.getWriter().println(statsJson.toString());
+  }
+
+  private static JsonObject createCacheStatsJson(CacheStats cacheStats) {
+    JsonObject cacheStatsJson = new JsonObject();
+    cacheStatsJson.addProperty(HIT_COUNT_KEY, cacheStats.hitCount());
+    cacheStatsJson.addProperty(MISS_COUNT_KEY, cacheStats.missCount());
+    cacheStatsJson.addProperty(EVICTION_COUNT_KEY, cacheStats.evictionCount());
+
+    return cacheStatsJson;
+  }
+
+  private static JsonObject createPrefixQueryStatsJson(PrefixQueryStats prefixQueryStats) {
+    JsonObject prefixQueryStatsJson = new JsonObject();
+    prefixQueryStatsJson.addProperty(QUERY_COUNT_KEY, prefixQueryStats.getQueryCount());
+    prefixQueryStatsJson.addProperty(SCANNED_ENTITIES_KEY, prefixQueryStats.getScannedEntities());
+    prefixQueryStatsJson.addProperty(RETURNED_ENTITIES_KEY, prefixQueryStats.getReturnedEntities());
+
+    return prefixQueryStatsJson;
+  }
+}
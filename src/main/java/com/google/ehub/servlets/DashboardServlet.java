@@ -3,32 +3,59 @@ package com.google.ehub.servlets;
 import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.ehub.data.CommentDataManager;
 import com.google.ehub.data.EntertainmentItem;
 import com.google.ehub.data.EntertainmentItemDatastore;
 import com.google.ehub.data.EntertainmentItemList;
+import com.google.ehub.data.FavoriteItemDatastore;
+import com.google.ehub.data.ItemFacets.Facet;
+import com.google.ehub.data.ItemFacets.RuntimeRange;
+import com.google.ehub.data.ItemSearchIndex;
+import com.google.ehub.data.ItemSearchIndex.SearchResult;
 import com.google.gson.Gson;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.lang3.EnumUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 
 /*
  * Handles GET requests to retrieve EntertainmentItem entities
  * stored in Datastore and make them available to the Dashboard.
+ * Items can also be filtered by genre, release year and runtime range.
  */
 @WebServlet("/dashboard")
 public class DashboardServlet extends HttpServlet {
   private static final String CURSOR_PARAMETER_KEY = "cursor";
   private static final String SEARCH_VALUE_PARAMETER_KEY = "searchValue";
   private static final String SORT_TYPE_PARAMETER_KEY = "sortType";
+  private static final String INCLUDE_ITEM_STATS_PARAMETER_KEY = "includeItemStats";
+  private static final String GENRE_PARAMETER_KEY = "genre";
+  private static final String RELEASE_YEAR_PARAMETER_KEY = "releaseYear";
+  private static final String RUNTIME_RANGE_PARAMETER_KEY = "runtimeRange";
 
-  private enum SortType { ASCENDING_TITLE, DESCENDING_TITLE, RECENT_RELEASE_DATE };
+  /**
+   * Orders of the items. RELEVANCE ranks the items whose title, people or genre contain the words
+   * of the search value using ItemSearchIndex, the other orders filter by title prefix.
+   */
+  private enum SortType { ASCENDING_TITLE, DESCENDING_TITLE, RECENT_RELEASE_DATE, RELEVANCE };
 
   private static final int PAGE_SIZE = 18;
   private static final int MAX_SEARCH_VALUE_CHARS = 150;
+  private static final int MAX_RELEASE_YEAR_DIGITS = 4;
+  // Bounds the ranked items checked for a page when the ranked items are filtered by facets.
+  private static final int MAX_SCANNED_RANKED_ITEMS = 500;
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -41,20 +68,42 @@ public class DashboardServlet extends HttpServlet {
       return;
     }
 
-    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(PAGE_SIZE);
+    Optional<Map<Facet, String>> facetFilters = getFacetFilters(request);
+
+    if (!facetFilters.isPresent()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          "DashboardServlet: Facet filter parameters not specified correctly!");
+      return;
+    }
+
     String cursorValue = request.getParameter(CURSOR_PARAMETER_KEY);
+    EntertainmentItemList itemList;
 
-    if (cursorValue != null) {
-      try {
-        fetchOptions.startCursor(Cursor.fromWebSafeString(cursorValue));
-      } catch (IllegalArgumentException e) {
-        System.err.println("DashboardServlet: Cursor value is invalid!");
+    if (SortType.valueOf(sortType) == SortType.RELEVANCE && !searchValue.trim().isEmpty()) {
+      // The cursors of ranked pages are offsets, invalid ones start from the first page.
+      itemList = getRankedItemList(
+          searchValue, Math.max(0, NumberUtils.toInt(cursorValue)), facetFilters.get());
+    } else {
+      FetchOptions fetchOptions = FetchOptions.Builder.withLimit(PAGE_SIZE);
+
+      if (cursorValue != null) {
+        try {
+          fetchOptions.startCursor(Cursor.fromWebSafeString(cursorValue));
+        } catch (IllegalArgumentException e) {
+          System.err.println("DashboardServlet: Cursor value is invalid!");
+        }
       }
+
+      itemList = getItemList(
+          fetchOptions, searchValue, SortType.valueOf(sortType), facetFilters.get());
+    }
+
+    if (Boolean.parseBoolean(request.getParameter(INCLUDE_ITEM_STATS_PARAMETER_KEY))) {
+      itemList = addItemStats(itemList);
     }
 
     response.setContentType("application/json");
-    response.getWriter().println(
-        new Gson().toJson(getItemList(fetchOptions, searchValue, SortType.valueOf(sortType))));
+    response.getWriter().println(new Gson().toJson(itemList));
   }
 
   /**
@@ -70,18 +119,139 @@ public class DashboardServlet extends HttpServlet {
         && (sortType != null && EnumUtils.isValidEnum(SortType.class, sortType));
   }
 
-  private static EntertainmentItemList getItemList(
-      FetchOptions fetchOptions, String searchValue, SortType sortType) {
+  /**
+   * Reads the optional facet filters of the Get request, empty values mean that the facet is not
+   * filtered.
+   *
+   * @param request the Get request
+   * @return map from facet to the value the items need to have wrapped in an {@link Optional}, the
+   *     optional will be empty if any of the values is invalid
+   */
+  private static Optional<Map<Facet, String>> getFacetFilters(HttpServletRequest request) {
+    Map<Facet, String> facetFilters = new EnumMap<>(Facet.class);
+    String genre = request.getParameter(GENRE_PARAMETER_KEY);
+    String releaseYear = request.getParameter(RELEASE_YEAR_PARAMETER_KEY);
+    String runtimeRange = request.getParameter(RUNTIME_RANGE_PARAMETER_KEY);
+
+    if (genre != null && !genre.isEmpty()) {
+      if (genre.length() > MAX_SEARCH_VALUE_CHARS) {
+        return Optional.empty();
+      }
+
+      facetFilters.put(Facet.GENRE, genre);
+    }
+
+    if (releaseYear != null && !releaseYear.isEmpty()) {
+      if (!NumberUtils.isDigits(releaseYear) || releaseYear.length() > MAX_RELEASE_YEAR_DIGITS) {
+        return Optional.empty();
+      }
+
+      facetFilters.put(Facet.RELEASE_YEAR, String.valueOf(Long.parseLong(releaseYear)));
+    }
+
+    if (runtimeRange != null && !runtimeRange.isEmpty()) {
+      if (!EnumUtils.isValidEnum(RuntimeRange.class, runtimeRange)) {
+        return Optional.empty();
+      }
+
+      facetFilters.put(Facet.RUNTIME_RANGE, runtimeRange);
+    }
+
+    return Optional.of(facetFilters);
+  }
+
+  private static EntertainmentItemList getItemList(FetchOptions fetchOptions, String searchValue,
+      SortType sortType, Map<Facet, String> facetFilters) {
     EntertainmentItemDatastore itemDatastore = EntertainmentItemDatastore.getInstance();
 
     if (sortType == SortType.ASCENDING_TITLE) {
       return itemDatastore.queryItemsByTitlePrefix(
-          fetchOptions, searchValue, SortDirection.ASCENDING);
+          fetchOptions, searchValue, facetFilters, SortDirection.ASCENDING);
     } else if (sortType == SortType.DESCENDING_TITLE) {
       return itemDatastore.queryItemsByTitlePrefix(
-          fetchOptions, searchValue, SortDirection.DESCENDING);
+          fetchOptions, searchValue, facetFilters, SortDirection.DESCENDING);
+    } else if (sortType == SortType.RECENT_RELEASE_DATE) {
+      return itemDatastore.queryItemsByReleaseDate(
+          fetchOptions, searchValue, facetFilters, SortDirection.DESCENDING);
     } else {
-      return itemDatastore.queryItemsByReleaseDate(fetchOptions, searchValue, SortDirection.DESCENDING);
+      // Ranking needs search words, so every item is listed by title instead.
+      return itemDatastore.queryItemsByTitlePrefix(
+          fetchOptions, searchValue, facetFilters, SortDirection.ASCENDING);
     }
   }
+
+  /**
+   * Finds a page of the items ranked by ItemSearchIndex for the search value. Ranked items are
+   * checked against the facet filters in memory, so a page can be shorter than the page size
+   * when few of the ranked items match.
+   *
+   * @param searchValue the words to search for
+   * @param offset the number of ranked items in the previous pages
+   * @param facetFilters map from facet to the value the items need to have
+   * @return list with the ranked items of the page, its cursor is the offset of the next page
+   */
+  private static EntertainmentItemList getRankedItemList(
+      String searchValue, int offset, Map<Facet, String> facetFilters) {
+    EntertainmentItemDatastore itemDatastore = EntertainmentItemDatastore.getInstance();
+
+    if (facetFilters.isEmpty()) {
+      SearchResult searchResult =
+          ItemSearchIndex.getInstance().search(searchValue, offset, PAGE_SIZE);
+
+      // Ids of items that are no longer in Datastore are skipped.
+      return new EntertainmentItemList(itemDatastore.queryItems(searchResult.getItemIds()),
+          String.valueOf(offset + searchResult.getItemIds().size()));
+    }
+
+    // The window of ranked items is searched and read at once, so the ranking is done once.
+    List<Long> itemIds = ItemSearchIndex.getInstance()
+                             .search(searchValue, offset, MAX_SCANNED_RANKED_ITEMS)
+                             .getItemIds();
+    Map<Long, EntertainmentItem> itemsById = itemDatastore.queryItemsById(itemIds);
+    List<EntertainmentItem> items = new ArrayList<>();
+    int nextOffset = offset;
+
+    // The offset only moves past the ranked items that were checked.
+    for (Long itemId : itemIds) {
+      if (items.size() == PAGE_SIZE) {
+        break;
+      }
+
+      EntertainmentItem item = itemsById.get(itemId);
+      nextOffset++;
+
+      if (item != null && itemDatastore.getItemFacets(item).matches(facetFilters)) {
+        items.add(item);
+      }
+    }
+
+    return new EntertainmentItemList(items, String.valueOf(nextOffset));
+  }
+
+  /**
+   * Adds the like and comment counts of every item in the list, and the items liked by the logged
+   * in user, so the Dashboard doesn't need to fetch them separately.
+   *
+   * @param itemList the list of items that will be sent in the response
+   * @return list with the same items and cursor that includes their like and comment stats
+   */
+  private static EntertainmentItemList addItemStats(EntertainmentItemList itemList) {
+    List<Long> itemIds = new ArrayList<>();
+
+    for (EntertainmentItem item : itemList.getItems()) {
+      if (item.getUniqueId().isPresent()) {
+        itemIds.add(item.getUniqueId().get());
+      }
+    }
+
+    FavoriteItemDatastore favoriteItemDatastore = FavoriteItemDatastore.getInstance();
+    UserService userService = UserServiceFactory.getUserService();
+    Set<Long> likedItemIds = userService.isUserLoggedIn()
+        ? favoriteItemDatastore.queryFavoriteIds(userService.getCurrentUser().getEmail(), itemIds)
+        : Collections.emptySet();
+
+    return new EntertainmentItemList(itemList.getItems(), itemList.getPageCursor(),
+        favoriteItemDatastore.queryLikeCounts(itemIds), likedItemIds,
+        new CommentDataManager().queryCommentCounts(itemIds));
+  }
 }
@@ -0,0 +1,23 @@
+package com.google.ehub.servlets;
+
+import com.google.ehub.data.ItemFacetDatastore;
+import com.google.gson.Gson;
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Handles GET requests to retrieve the number of items with every genre, release year and
+ * runtime range, used by the facet filters of the Dashboard.
+ */
+@WebServlet("/facets")
+public class FacetServlet extends HttpServlet {
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    response.setContentType("application/json");
+    response.getWriter().println(
+        new Gson().toJson(ItemFacetDatastore.getInstance().queryFacetCounts()));
+  }
+}
@@ -1,8 +1,11 @@
 package com.google.ehub.servlets;
 
 import com.google.ehub.data.FavoriteItemDatastore;
+import com.google.ehub.utility.Utils;
 import com.google.gson.Gson;
 import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -10,14 +13,29 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.lang3.math.NumberUtils;
 
 /**
- * Handles Get requests to get the users that liked a specific entertainment item.
+ * Handles Get requests to get the number of users that liked a specific entertainment item, or
+ * many items at once.
  */
 @WebServlet("/favorite-counter")
 public class FavoriteCounterServlet extends HttpServlet {
   private static final String ITEM_ID_PARAMETER_KEY = "itemId";
+  private static final String ITEM_IDS_PARAMETER_KEY = "itemIds";
 
+  private static final int MAX_ITEM_IDS = 1000;
+
+  /**
+   * The response contains the like count of the item given in the itemId parameter. If the
+   * itemIds parameter is given instead, the response contains a map from each of its comma
+   * separated item ids to the like count of the item.
+   */
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String itemIdsParameter = request.getParameter(ITEM_IDS_PARAMETER_KEY);
+    if (itemIdsParameter != null) {
+      sendLikeCounts(response, itemIdsParameter);
+      return;
+    }
+
     String itemId = request.getParameter(ITEM_ID_PARAMETER_KEY);
 
     if (!isGetRequestParameterValid(itemId)) {
@@ -28,7 +46,22 @@ public class FavoriteCounterServlet extends HttpServlet {
 
     response.setContentType("application/json");
     response.getWriter().println(new Gson().toJson(
-        FavoriteItemDatastore.getInstance().queryEmails(Long.parseLong(itemId)).size()));
+        FavoriteItemDatastore.getInstance().queryLikeCount(Long.parseLong(itemId))));
+  }
+
+  private static void sendLikeCounts(HttpServletResponse response, String itemIdsParameter)
+      throws IOException {
+    Optional<List<Long>> itemIds = Utils.parseIds(itemIdsParameter);
+
+    if (!itemIds.isPresent() || itemIds.get().size() > MAX_ITEM_IDS) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          "FavoriteCounterServlet: Get request parameter was not specified correctly!");
+      return;
+    }
+
+    response.setContentType("application/json");
+    response.getWriter().println(new Gson().toJson(
+        FavoriteItemDatastore.getInstance().queryLikeCounts(itemIds.get())));
   }
 
   private static boolean isGetRequestParameterValid(String itemId) {
@@ -0,0 +1,41 @@
+package com.google.ehub.servlets;
+
+import com.google.ehub.data.EntertainmentItemDatastore;
+import com.google.ehub.utility.Utils;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Handles GET requests to retrieve many entertainment items at once.
+ */
+@WebServlet("/items")
+public class ItemBatchServlet extends HttpServlet {
+  private static final String ITEM_IDS_PARAMETER_KEY = "itemIds";
+
+  private static final int MAX_ITEM_IDS = 1000;
+
+  /**
+   * The response of the GET request contains the items found for the comma separated ids given in
+   * the itemIds parameter. Items keep the order of the ids, and ids without an item are skipped.
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Optional<List<Long>> itemIds = Utils.parseIds(request.getParameter(ITEM_IDS_PARAMETER_KEY));
+
+    if (!itemIds.isPresent() || itemIds.get().size() > MAX_ITEM_IDS) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          "ItemBatchServlet: Get request parameter was not specified correctly!");
+      return;
+    }
+
+    response.setContentType("application/json");
+    response.getWriter().println(
+        new Gson().toJson(EntertainmentItemDatastore.getInstance().queryItems(itemIds.get())));
+  }
+}
@@ -14,9 +14,11 @@
 
 package com.google.ehub.servlets;
 
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Query.SortDirection;
@@ -24,9 +26,13 @@ import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
 import com.google.ehub.data.CommentData;
 import com.google.ehub.data.CommentDataManager;
+import com.google.ehub.data.CommentDataManager.CommentOrder;
+import com.google.ehub.data.CommentList;
+import com.google.ehub.data.CommentPageCache;
 import com.google.ehub.data.EntertainmentItem;
 import com.google.ehub.data.EntertainmentItemDatastore;
 import com.google.ehub.data.ItemPageData;
+import com.google.ehub.data.RelatedItemDatastore;
 import com.google.ehub.data.UserProfile;
 import com.google.gson.Gson;
 import java.io.IOException;
@@ -37,24 +43,61 @@ import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.lang3.EnumUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 
 /** Servlet that compiles the data for the item page*/
 @WebServlet("/itempagedata")
 public class ItemPageServlet extends HttpServlet {
+  private static final String COMMENTS_CURSOR_PARAMETER_KEY = "commentsCursor";
+  private static final String COMMENTS_ORDER_PARAMETER_KEY = "commentsOrder";
+  private static final String COMMENTS_PAGE_SIZE_PARAMETER_KEY = "commentsPageSize";
+
+  // The first page in the default page size is cached, see CommentPageCache.
+  private static final int DEFAULT_COMMENTS_PAGE_SIZE = CommentPageCache.CACHED_PAGE_SIZE;
+  private static final int MAX_COMMENTS_PAGE_SIZE = 100;
+
   private final UserService userService = UserServiceFactory.getUserService();
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
     long itemId = Long.parseLong(request.getParameter("itemId"));
+    String commentsOrder = request.getParameter(COMMENTS_ORDER_PARAMETER_KEY);
+    String commentsPageSize = request.getParameter(COMMENTS_PAGE_SIZE_PARAMETER_KEY);
+
+    if ((commentsOrder != null && !EnumUtils.isValidEnum(CommentOrder.class, commentsOrder))
+        || (commentsPageSize != null && !isValidPageSize(commentsPageSize))) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          "ItemPageServlet: Comment parameters not specified correctly!");
+      return;
+    }
+
     Optional<EntertainmentItem> optionalItem =
         EntertainmentItemDatastore.getInstance().queryItem(itemId);
 
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(commentsPageSize == null
+            ? DEFAULT_COMMENTS_PAGE_SIZE
+            : Integer.parseInt(commentsPageSize));
+    String cursorValue = request.getParameter(COMMENTS_CURSOR_PARAMETER_KEY);
+
+    if (cursorValue != null) {
+      try {
+        fetchOptions.startCursor(Cursor.fromWebSafeString(cursorValue));
+      } catch (IllegalArgumentException e) {
+        System.err.println("ItemPageServlet: Cursor value is invalid!");
+      }
+    }
+
     CommentDataManager commentDataManager = new CommentDataManager();
-    List<CommentData> comments = commentDataManager.retrieveComments(itemId);
+    CommentList comments = commentDataManager.retrieveComments(itemId, fetchOptions,
+        commentsOrder == null ? CommentOrder.OLDEST_FIRST : CommentOrder.valueOf(commentsOrder));
 
     if (optionalItem.isPresent()) {
       EntertainmentItem selectedItem = optionalItem.get();
-      ItemPageData itemData = new ItemPageData(selectedItem, comments);
+      List<EntertainmentItem> relatedItems = EntertainmentItemDatastore.getInstance().queryItems(
+          RelatedItemDatastore.getInstance().queryRelatedItemIds(itemId));
+      ItemPageData itemData = new ItemPageData(selectedItem, comments.getComments(), relatedItems,
+          comments.getPageCursor(), commentDataManager.queryCommentCount(itemId));
       response.setContentType("application/json");
       response.getWriter().println(new Gson().toJson(itemData));
     } else {
@@ -100,4 +143,10 @@ public class ItemPageServlet extends HttpServlet {
     CommentDataManager comment = new CommentDataManager();
     comment.deleteComment(commentId);
   }
+
+  private static boolean isValidPageSize(String pageSize) {
+    int parsedPageSize = NumberUtils.toInt(pageSize);
+
+    return parsedPageSize > 0 && parsedPageSize <= MAX_COMMENTS_PAGE_SIZE;
+  }
 }
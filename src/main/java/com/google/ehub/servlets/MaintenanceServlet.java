@@ -0,0 +1,85 @@
+package com.google.ehub.servlets;
+
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.ehub.data.CommentDataManager;
+import com.google.ehub.data.EntertainmentItemDatastore;
+import com.google.ehub.data.FavoriteItemDatastore;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.lang3.EnumUtils;
+
+/**
+ * Handles POST requests from admins to run one-off data migrations and backfills.
+ */
+@WebServlet("/admin/maintenance")
+public class MaintenanceServlet extends HttpServlet {
+  private static final String TASK_PARAMETER_KEY = "task";
+  private static final String UPDATED_ENTITIES_KEY = "updatedEntities";
+
+  private enum MaintenanceTask {
+    MIGRATE_FAVORITE_ITEMS,
+    RECOUNT_LIKES,
+    REBUILD_USER_SIMILARITIES,
+    REBUILD_USER_SIGNATURES,
+    REBUILD_RELATED_ITEMS,
+    BACKFILL_COMMENT_USERNAMES,
+    RECOUNT_COMMENTS,
+    NORMALIZE_TITLES,
+    BACKFILL_ITEM_FACETS
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    UserService userService = UserServiceFactory.getUserService();
+
+    if (!userService.isUserLoggedIn() || !userService.isUserAdmin()) {
+      response.sendError(
+          HttpServletResponse.SC_FORBIDDEN, "MaintenanceServlet: User must be an admin!");
+      return;
+    }
+
+    String task = request.getParameter(TASK_PARAMETER_KEY);
+
+    if (task == null || !EnumUtils.isValidEnum(MaintenanceTask.class, task)) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          "MaintenanceServlet: Post request parameter not specified correctly!");
+      return;
+    }
+
+    JsonObject resultJson = new JsonObject();
+    resultJson.addProperty(UPDATED_ENTITIES_KEY, runTask(MaintenanceTask.valueOf(task)));
+
+    response.setContentType("application/json");
+    response.getWriter().println(resultJson.toString());
+  }
+
+  private static int runTask(MaintenanceTask task) {
+    switch (task) {
+      case MIGRATE_FAVORITE_ITEMS:
+        return FavoriteItemDatastore.getInstance().migrateLegacyFavoriteItems();
+      case RECOUNT_LIKES:
+        return FavoriteItemDatastore.getInstance().recountLikes();
+      case REBUILD_USER_SIMILARITIES:
+        return FavoriteItemDatastore.getInstance().rebuildUserSimilarities();
+      case REBUILD_USER_SIGNATURES:
+        return FavoriteItemDatastore.getInstance().rebuildUserSignatures();
+      case REBUILD_RELATED_ITEMS:
+        return FavoriteItemDatastore.getInstance().rebuildRelatedItems();
+      case BACKFILL_COMMENT_USERNAMES:
+        return new CommentDataManager().backfillCommentUsernames();
+      case RECOUNT_COMMENTS:
+        return new CommentDataManager().recountComments();
+      case NORMALIZE_TITLES:
+        return EntertainmentItemDatastore.getInstance().normalizeTitles();
+      case BACKFILL_ITEM_FACETS:
+        return EntertainmentItemDatastore.getInstance().backfillItemFacets();
+      default:
+        throw new IllegalArgumentException("MaintenanceServlet: Unknown task " + task);
+    }
+  }
+}
@@ -11,20 +11,20 @@ import com.google.appengine.api.datastore.Query.FilterOperator;
 import com.google.appengine.api.datastore.Query.FilterPredicate;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
-import com.google.ehub.data.FavoriteItemDatastore;
 import com.google.ehub.data.ProfileDatastore;
 import com.google.ehub.data.UserData;
 import com.google.ehub.data.UserProfile;
-import com.google.ehub.utility.UserRecommendationUtils;
+import com.google.ehub.data.UserRecommendationDatastore;
+import com.google.ehub.data.UserRecommendations;
+import com.google.ehub.utility.BackgroundTaskScheduler;
+import com.google.ehub.utility.BackgroundTaskScheduler.Task;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.ArrayList;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -44,10 +44,15 @@ public class ProfileServlet extends HttpServlet {
   private static final String EDIT_PARAMETER_KEY = "edit";
   private static final String NEEDS_PROFILE = "NeedsProfile";
 
+  // Recommendations also change when other users like items, so they are refreshed periodically.
+  private static final long MAX_RECOMMENDATIONS_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
   private final UserService userService = UserServiceFactory.getUserService();
   private final ProfileDatastore profileData = new ProfileDatastore();
-  private final FavoriteItemDatastore favoriteItemDatastore = FavoriteItemDatastore.getInstance();
-  private final UserRecommendationUtils recommendationUtils = new UserRecommendationUtils();
+  private final UserRecommendationDatastore userRecommendationDatastore =
+      UserRecommendationDatastore.getInstance();
+  private final BackgroundTaskScheduler backgroundTaskScheduler =
+      BackgroundTaskScheduler.getInstance();
 
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -111,15 +116,33 @@ public class ProfileServlet extends HttpServlet {
       response.setContentType("application/json");
       response.getWriter().println(profileJson);
     } else {
-      Set<Long> itemIdsLikedByUser = favoriteItemDatastore.queryFavoriteIds(userEmail);
-      List<String> recommendedEmails = recommendationUtils.getRecommendedEmails(
-          getUsersWhoLikeLoggedInUserItems(userEmail, itemIdsLikedByUser));
-
       response.setContentType("application/json");
-      response.getWriter().println(new Gson().toJson(new UserData(userProfile, recommendedEmails)));
+      response.getWriter().println(new Gson().toJson(getUserData(userProfile, userEmail)));
     }
   }
 
+  /**
+   * Creates the user data with the last computed recommended users, an update of the
+   * recommendations is scheduled if they are missing or older than an hour.
+   */
+  private UserData getUserData(UserProfile userProfile, String userEmail) {
+    Optional<UserRecommendations> recommendations =
+        userRecommendationDatastore.queryRecommendations(userEmail);
+
+    if (!recommendations.isPresent()
+        || System.currentTimeMillis() - recommendations.get().getComputedTimestampMillis()
+            > MAX_RECOMMENDATIONS_AGE_MILLIS) {
+      backgroundTaskScheduler.schedule(Task.UPDATE_RECOMMENDATIONS, userEmail);
+    }
+
+    if (!recommendations.isPresent()) {
+      return new UserData(userProfile, new ArrayList<>());
+    }
+
+    return new UserData(userProfile, recommendations.get().getRecommendedEmails(),
+        recommendations.get().getComputedTimestampMillis());
+  }
+
   /**
    * Checks if any of the request values are null.
    *
@@ -134,21 +157,6 @@ public class ProfileServlet extends HttpServlet {
         && bio != null && !bio.isEmpty());
   }
 
-  private Map<Long, Set<String>> getUsersWhoLikeLoggedInUserItems(String userEmail, Set<Long> itemIds) {
-    Map<Long, Set<String>> itemLikes = new HashMap<>();
-
-    for (Long itemId : itemIds) {
-      Set<String> emails = favoriteItemDatastore.queryEmails(itemId);
-
-      // Remove the logged in user from the list to ignore it for recommendations.
-      emails.remove(userEmail);
-
-      itemLikes.put(itemId, emails);
-    }
-
-    return itemLikes;
-  }
-
   private void sendUserProfileWithEmail(HttpServletResponse response, String email) throws IOException {
     UserProfile userProfile = profileData.getUserProfile(email);
 
@@ -0,0 +1,28 @@
+package com.google.ehub.servlets;
+
+import com.google.ehub.data.ItemSearchIndex;
+import com.google.ehub.data.TypeaheadIndex;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Builds the in-memory search and typeahead indexes when the instance starts, so the first
+ * searches don't have to wait for them.
+ */
+@WebListener
+public class SearchIndexInitializer implements ServletContextListener {
+  @Override
+  public void contextInitialized(ServletContextEvent event) {
+    try {
+      ItemSearchIndex.getInstance().rebuild();
+      TypeaheadIndex.getInstance().rebuild();
+    } catch (RuntimeException e) {
+      // The indexes are built by the first requests that use them instead.
+      System.err.println("SearchIndexInitializer: Failed to build the search indexes: " + e);
+    }
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent event) {}
+}
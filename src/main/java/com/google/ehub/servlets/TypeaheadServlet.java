@@ -0,0 +1,50 @@
+package com.google.ehub.servlets;
+
+import com.google.ehub.data.TypeaheadIndex;
+import com.google.gson.Gson;
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.lang3.math.NumberUtils;
+
+/**
+ * Handles Get requests to complete what the user is typing in the search box with the titles of
+ * the most liked items, served from memory without touching Datastore.
+ */
+@WebServlet("/typeahead")
+public class TypeaheadServlet extends HttpServlet {
+  private static final String PREFIX_PARAMETER_KEY = "prefix";
+  private static final String LIMIT_PARAMETER_KEY = "limit";
+
+  private static final int DEFAULT_LIMIT = 5;
+  private static final int MAX_PREFIX_CHARS = 150;
+
+  /**
+   * The response contains the suggestions for the prefix given in the prefix parameter, up to the
+   * number given in the optional limit parameter.
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String prefix = request.getParameter(PREFIX_PARAMETER_KEY);
+    String limit = request.getParameter(LIMIT_PARAMETER_KEY);
+
+    if (!areGetRequestParametersValid(prefix, limit)) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          "TypeaheadServlet: Get request parameters were not specified correctly!");
+      return;
+    }
+
+    response.setContentType("application/json");
+    response.getWriter().println(new Gson().toJson(TypeaheadIndex.getInstance().getSuggestions(
+        prefix, limit == null ? DEFAULT_LIMIT : Integer.parseInt(limit))));
+  }
+
+  private static boolean areGetRequestParametersValid(String prefix, String limit) {
+    int parsedLimit = NumberUtils.toInt(limit);
+
+    return prefix != null && prefix.length() <= MAX_PREFIX_CHARS
+        && (limit == null || (parsedLimit > 0 && parsedLimit <= TypeaheadIndex.MAX_SUGGESTIONS));
+  }
+}
@@ -0,0 +1,208 @@
+package com.google.ehub.utility;
+
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskAlreadyExistsException;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.google.appengine.api.utils.SystemProperty;
+import com.google.apphosting.api.ApiProxy;
+import com.google.common.io.BaseEncoding;
+import com.google.ehub.data.CommentDataManager;
+import com.google.ehub.data.FavoriteItemDatastore;
+import com.google.ehub.data.UserRecommendationDatastore;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Singleton class that runs per-user work outside of the requests that trigger it. Tasks of the
+ * same kind and user are debounced, so a burst of changes leads to a single run. In production
+ * the tasks are named tasks of the default task queue handled by BackgroundTaskServlet, in the
+ * development server and in tests they run on a local executor.
+ */
+public final class BackgroundTaskScheduler {
+  public static final String TASK_URL = "/tasks/run";
+  public static final String TASK_PARAMETER_KEY = "task";
+  public static final String EMAIL_PARAMETER_KEY = "email";
+
+  /**
+   * Work that can run in the background. UPDATE_RECOMMENDATIONS recomputes and stores the
+   * recommended users of a user, UPDATE_RECOMMENDATION_DATA applies the favorites a user added or
+   * removed to the data used for recommendations before doing the same, and
+   * UPDATE_COMMENT_USERNAMES copies the current username of a user to the comments the user
+   * posted.
+   */
+  public enum Task {
+    UPDATE_RECOMMENDATIONS,
+    UPDATE_RECOMMENDATION_DATA,
+    UPDATE_COMMENT_USERNAMES
+  }
+
+  private static final long DEBOUNCE_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  private static BackgroundTaskScheduler instance;
+
+  private final UserRecommendationDatastore userRecommendationDatastore =
+      UserRecommendationDatastore.getInstance();
+  private final ScheduledExecutorService localExecutor =
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "background-task-scheduler");
+        thread.setDaemon(true);
+
+        return thread;
+      });
+  private final Map<String, ScheduledFuture<?>> pendingLocalTasks = new ConcurrentHashMap<>();
+
+  private BackgroundTaskScheduler() {}
+
+  /**
+   * Gives access to the single instance of the class, and creates this instance
+   * if it was not initialized previously.
+   *
+   * @return single instance of the class
+   */
+  public static BackgroundTaskScheduler getInstance() {
+    if (instance == null) {
+      instance = new BackgroundTaskScheduler();
+    }
+
+    return instance;
+  }
+
+  /**
+   * Schedules a task for a user, unless the same task of the same user is already waiting to
+   * run.
+   *
+   * @param task the work to run
+   * @param userEmail the email of the user the work is about
+   */
+  public void schedule(Task task, String userEmail) {
+    if (SystemProperty.environment.value() == SystemProperty.Environment.Value.Production) {
+      scheduleQueueTask(task, userEmail);
+    } else {
+      scheduleLocalTask(task, userEmail);
+    }
+  }
+
+  /**
+   * Runs a task for a user in the calling thread.
+   *
+   * @param task the work to run
+   * @param userEmail the email of the user the work is about
+   */
+  public void run(Task task, String userEmail) {
+    switch (task) {
+      case UPDATE_RECOMMENDATION_DATA:
+        FavoriteItemDatastore.getInstance().updateRecommendationData(userEmail);
+        // Fall through, the recommendations of the user depend on the updated data.
+      case UPDATE_RECOMMENDATIONS:
+        userRecommendationDatastore.storeRecommendations(userEmail,
+            new UserRecommender().getRecommendedEmails(userEmail), System.currentTimeMillis());
+        break;
+      case UPDATE_COMMENT_USERNAMES:
+        new CommentDataManager().updateCommentUsernames(userEmail);
+        break;
+      default:
+        throw new IllegalArgumentException("BackgroundTaskScheduler: Unknown task " + task);
+    }
+  }
+
+  /**
+   * Runs the tasks waiting on the local executor in the calling thread, used by tests so they
+   * don't depend on the debounce delay.
+   *
+   * @return number of tasks that were run
+   */
+  public int runPendingLocalTasks() {
+    List<String> taskKeys = new ArrayList<>(pendingLocalTasks.keySet());
+    int taskCount = 0;
+
+    for (String taskKey : taskKeys) {
+      ScheduledFuture<?> pendingTask = pendingLocalTasks.remove(taskKey);
+
+      if (pendingTask != null && pendingTask.cancel(/* mayInterruptIfRunning */ false)) {
+        run(getTask(taskKey), getUserEmail(taskKey));
+        taskCount++;
+      }
+    }
+
+    return taskCount;
+  }
+
+  /**
+   * Discards the tasks waiting on the local executor.
+   */
+  public void cancelPendingLocalTasks() {
+    for (ScheduledFuture<?> pendingTask : pendingLocalTasks.values()) {
+      pendingTask.cancel(/* mayInterruptIfRunning */ false);
+    }
+
+    pendingLocalTasks.clear();
+  }
+
+  /**
+   * Adds a task that runs once the current debounce window ends. The task name is derived from
+   * the task, the user and the window, so the task queue rejects the other tasks of the same
+   * window.
+   */
+  private static void scheduleQueueTask(Task task, String userEmail) {
+    long nowMillis = System.currentTimeMillis();
+    long debounceWindow = nowMillis / DEBOUNCE_MILLIS;
+    String taskName = task.name().replace('_', '-') + "-"
+        + BaseEncoding.base64Url().omitPadding().encode(
+            userEmail.getBytes(StandardCharsets.UTF_8))
+        + "-" + debounceWindow;
+
+    try {
+      QueueFactory.getDefaultQueue().add(
+          TaskOptions.Builder.withUrl(TASK_URL)
+              .taskName(taskName)
+              .param(TASK_PARAMETER_KEY, task.name())
+              .param(EMAIL_PARAMETER_KEY, userEmail)
+              .countdownMillis((debounceWindow + 1) * DEBOUNCE_MILLIS - nowMillis));
+    } catch (TaskAlreadyExistsException e) {
+      // The task of this window is already scheduled.
+    }
+  }
+
+  /**
+   * Schedules a task on the local executor. The API environment of the request is copied to the
+   * worker thread so that it can use the App Engine services.
+   */
+  private void scheduleLocalTask(Task task, String userEmail) {
+    ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+
+    pendingLocalTasks.computeIfAbsent(createTaskKey(task, userEmail),
+        taskKey -> localExecutor.schedule(() -> {
+          // Changes made while the task runs schedule a new task.
+          pendingLocalTasks.remove(taskKey);
+          ApiProxy.setEnvironmentForCurrentThread(environment);
+
+          try {
+            run(task, userEmail);
+          } catch (RuntimeException e) {
+            System.err.println("BackgroundTaskScheduler: " + taskKey + " failed: " + e);
+          } finally {
+            ApiProxy.clearEnvironmentForCurrentThread();
+          }
+        }, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS));
+  }
+
+  // Task names don't contain spaces, so the first space separates the task from the email.
+  private static String createTaskKey(Task task, String userEmail) {
+    return task.name() + " " + userEmail;
+  }
+
+  private static Task getTask(String taskKey) {
+    return Task.valueOf(taskKey.substring(0, taskKey.indexOf(' ')));
+  }
+
+  private static String getUserEmail(String taskKey) {
+    return taskKey.substring(taskKey.indexOf(' ') + 1);
+  }
+}
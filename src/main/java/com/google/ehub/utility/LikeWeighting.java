@@ -0,0 +1,27 @@
+package com.google.ehub.utility;
+
+/**
+ * Decides how much a like shared by two users contributes to their recommendation score.
+ */
+@FunctionalInterface
+public interface LikeWeighting {
+  /**
+   * Every shared like adds one to the score, so the score is the number of common likes.
+   */
+  LikeWeighting UNIFORM = (itemId, numLikers) -> 1;
+
+  /**
+   * Shared likes weigh 1 / log(2 + numLikers), an inverse document frequency that doesn't need the
+   * total number of users, so likes of items that few users like count the most.
+   */
+  LikeWeighting INVERSE_LOG_POPULARITY = (itemId, numLikers) -> 1 / Math.log(2 + numLikers);
+
+  /**
+   * Gets the weight of a like of an item shared with the user that gets the recommendations.
+   *
+   * @param itemId the Id of the item liked by both users
+   * @param numLikers the number of other users that like the item
+   * @return weight added to the score of every other user that likes the item
+   */
+  double getWeight(long itemId, int numLikers);
+}
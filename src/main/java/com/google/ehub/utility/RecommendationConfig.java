@@ -0,0 +1,56 @@
+package com.google.ehub.utility;
+
+import org.apache.commons.lang3.EnumUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+/**
+ * Reads the configuration of user recommendations from the system properties set in
+ * appengine-web.xml. Missing or invalid values fall back to defaults.
+ */
+public final class RecommendationConfig {
+  static final String ENGINE_PROPERTY_KEY = "ehub.recommendationEngine";
+  static final String SCORING_PROPERTY_KEY = "ehub.recommendationScoring";
+  static final String MAX_ITEM_LIKERS_PROPERTY_KEY = "ehub.recommendationMaxItemLikers";
+
+  private static final long DEFAULT_MAX_ITEM_LIKERS = 1000;
+
+  private RecommendationConfig() {}
+
+  /**
+   * Gets the engine used to find recommended users.
+   *
+   * @return the configured engine, EXACT by default
+   */
+  public static UserRecommender.Engine getEngine() {
+    String engine = System.getProperty(ENGINE_PROPERTY_KEY);
+
+    return EnumUtils.isValidEnum(UserRecommender.Engine.class, engine)
+        ? UserRecommender.Engine.valueOf(engine)
+        : UserRecommender.Engine.EXACT;
+  }
+
+  /**
+   * Gets how the likes shared with recommended users are scored.
+   *
+   * @return the configured scoring, COMMON_LIKES by default
+   */
+  public static UserRecommender.Scoring getScoring() {
+    String scoring = System.getProperty(SCORING_PROPERTY_KEY);
+
+    return EnumUtils.isValidEnum(UserRecommender.Scoring.class, scoring)
+        ? UserRecommender.Scoring.valueOf(scoring)
+        : UserRecommender.Scoring.COMMON_LIKES;
+  }
+
+  /**
+   * Gets the maximum number of likers an item can have to be used for recommendations. Items
+   * liked by more users say little about the taste of their likers, and finding all of their
+   * likers is the most expensive part of computing recommendations.
+   *
+   * @return the configured maximum number of likers, 1000 by default
+   */
+  public static long getMaxItemLikers() {
+    return NumberUtils.toLong(
+        System.getProperty(MAX_ITEM_LIKERS_PROPERTY_KEY), DEFAULT_MAX_ITEM_LIKERS);
+  }
+}
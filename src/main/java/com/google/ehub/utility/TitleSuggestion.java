@@ -0,0 +1,58 @@
+package com.google.ehub.utility;
+
+import java.util.Objects;
+
+/**
+ * Holds an entertainment item suggested for a title prefix, together with the number of likes
+ * used to rank it among the other suggestions.
+ */
+public final class TitleSuggestion {
+  private final long itemId;
+  private final String title;
+  private final long likeCount;
+
+  public TitleSuggestion(long itemId, String title, long likeCount) {
+    this.itemId = itemId;
+    this.title = title;
+    this.likeCount = likeCount;
+  }
+
+  public long getItemId() {
+    return itemId;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public long getLikeCount() {
+    return likeCount;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+
+    if (!(other instanceof TitleSuggestion)) {
+      return false;
+    }
+
+    TitleSuggestion otherSuggestion = (TitleSuggestion) other;
+
+    return itemId == otherSuggestion.itemId && Objects.equals(title, otherSuggestion.title)
+        && likeCount == otherSuggestion.likeCount;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(itemId, title, likeCount);
+  }
+
+  @Override
+  public String toString() {
+    return "TitleSuggestion{itemId=" + itemId + ", title=" + title + ", likeCount=" + likeCount
+        + "}";
+  }
+}
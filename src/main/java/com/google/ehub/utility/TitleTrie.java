@@ -0,0 +1,239 @@
+package com.google.ehub.utility;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compressed trie (radix tree) of normalized titles, where every node keeps the most liked items
+ * whose titles start with the prefix the node represents. Completing a prefix walks down at most
+ * one node per character of the prefix and reads the list of that node, so it doesn't depend on
+ * the number of titles. The class is not thread safe.
+ */
+public final class TitleTrie {
+  private final int maxSuggestions;
+  private final Node root = new Node("");
+  private final Map<Long, TitleEntry> entries = new HashMap<>();
+
+  // More liked items first, ties are ordered by title and then by item Id.
+  private final Comparator<Long> suggestionOrder = Comparator
+      .comparingLong((Long itemId) -> -entries.get(itemId).likeCount)
+      .thenComparing(itemId -> entries.get(itemId).key)
+      .thenComparingLong(itemId -> itemId);
+
+  /**
+   * Creates an empty trie.
+   *
+   * @param maxSuggestions the number of items each node keeps, which is the maximum number of
+   *     suggestions that can be requested for a prefix
+   */
+  public TitleTrie(int maxSuggestions) {
+    this.maxSuggestions = maxSuggestions;
+  }
+
+  /**
+   * Adds an item to the trie. Items that are already in the trie only get their like count
+   * updated, since titles don't change.
+   *
+   * @param key the normalized title of the item, used for matching prefixes
+   * @param itemId the Id of the item
+   * @param title the title of the item as it is displayed
+   * @param likeCount the number of likes of the item
+   */
+  public void insert(String key, long itemId, String title, long likeCount) {
+    if (entries.containsKey(itemId)) {
+      updateLikeCount(itemId, likeCount);
+      return;
+    }
+
+    entries.put(itemId, new TitleEntry(key, title, likeCount));
+
+    List<Node> path = new ArrayList<>();
+    Node node = root;
+    int position = 0;
+    path.add(node);
+
+    while (position < key.length()) {
+      char edgeChar = key.charAt(position);
+      Node child = node.children.get(edgeChar);
+
+      if (child == null) {
+        child = new Node(key.substring(position));
+        node.children.put(edgeChar, child);
+      } else {
+        int commonLength = getCommonPrefixLength(child.label, key, position);
+
+        // The key leaves the edge halfway, so the edge is split at that point.
+        if (commonLength < child.label.length()) {
+          Node middle = new Node(child.label.substring(0, commonLength));
+          child.label = child.label.substring(commonLength);
+          middle.children.put(child.label.charAt(0), child);
+          middle.topItemIds.addAll(child.topItemIds);
+          node.children.put(edgeChar, middle);
+          child = middle;
+        }
+      }
+
+      position += child.label.length();
+      node = child;
+      path.add(node);
+    }
+
+    node.itemIds.add(itemId);
+    refreshTopItems(path);
+  }
+
+  /**
+   * Changes the like count of an item and reorders the suggestions of its prefixes.
+   *
+   * @param itemId the Id of the item
+   * @param likeCount the new number of likes of the item
+   * @return true if the item is in the trie, false otherwise
+   */
+  public boolean updateLikeCount(long itemId, long likeCount) {
+    TitleEntry entry = entries.get(itemId);
+
+    if (entry == null) {
+      return false;
+    }
+
+    if (entry.likeCount != likeCount) {
+      entry.likeCount = likeCount;
+      refreshTopItems(findPath(entry.key));
+    }
+
+    return true;
+  }
+
+  /**
+   * Gets the like count of an item.
+   *
+   * @param itemId the Id of the item
+   * @return the like count of the item, or -1 if the item is not in the trie
+   */
+  public long getLikeCount(long itemId) {
+    TitleEntry entry = entries.get(itemId);
+
+    return entry == null ? -1 : entry.likeCount;
+  }
+
+  /**
+   * Finds the most liked items whose normalized titles start with a prefix.
+   *
+   * @param prefix the normalized prefix to complete
+   * @param limit the maximum number of suggestions, capped by the size of the node lists
+   * @return suggestions in descending order of likes, ties ordered by title
+   */
+  public List<TitleSuggestion> getSuggestions(String prefix, int limit) {
+    Node node = root;
+    int position = 0;
+
+    while (position < prefix.length()) {
+      node = node.children.get(prefix.charAt(position));
+
+      if (node == null) {
+        return Collections.emptyList();
+      }
+
+      int matchLength = Math.min(node.label.length(), prefix.length() - position);
+
+      if (!node.label.regionMatches(0, prefix, position, matchLength)) {
+        return Collections.emptyList();
+      }
+
+      position += matchLength;
+    }
+
+    List<TitleSuggestion> suggestions = new ArrayList<>();
+
+    for (Long itemId : node.topItemIds.subList(0, Math.min(limit, node.topItemIds.size()))) {
+      TitleEntry entry = entries.get(itemId);
+      suggestions.add(new TitleSuggestion(itemId, entry.title, entry.likeCount));
+    }
+
+    return suggestions;
+  }
+
+  /**
+   * Gets the number of items in the trie.
+   *
+   * @return number of items added to the trie
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  private List<Node> findPath(String key) {
+    List<Node> path = new ArrayList<>();
+    Node node = root;
+    int position = 0;
+    path.add(node);
+
+    while (position < key.length()) {
+      node = node.children.get(key.charAt(position));
+      position += node.label.length();
+      path.add(node);
+    }
+
+    return path;
+  }
+
+  /**
+   * Recomputes the top items of the nodes of a path from the bottom up. The top items of a node
+   * are the best of its own items and the top items of its children, which are up to date
+   * because only the nodes on the path changed.
+   */
+  private void refreshTopItems(List<Node> path) {
+    for (int i = path.size() - 1; i >= 0; i--) {
+      Node node = path.get(i);
+      List<Long> candidates = new ArrayList<>(node.itemIds);
+
+      for (Node child : node.children.values()) {
+        candidates.addAll(child.topItemIds);
+      }
+
+      candidates.sort(suggestionOrder);
+      node.topItemIds.clear();
+      node.topItemIds.addAll(candidates.subList(0, Math.min(maxSuggestions, candidates.size())));
+    }
+  }
+
+  private static int getCommonPrefixLength(String label, String key, int keyPosition) {
+    int length = 0;
+
+    while (length < label.length() && keyPosition + length < key.length()
+        && label.charAt(length) == key.charAt(keyPosition + length)) {
+      length++;
+    }
+
+    return length;
+  }
+
+  private static final class Node {
+    // Characters of the edge that leads to this node, empty for the root.
+    private String label;
+    private final Map<Character, Node> children = new HashMap<>();
+    // Items whose whole normalized title ends at this node.
+    private final List<Long> itemIds = new ArrayList<>(1);
+    private final List<Long> topItemIds = new ArrayList<>(1);
+
+    private Node(String label) {
+      this.label = label;
+    }
+  }
+
+  private static final class TitleEntry {
+    private final String key;
+    private final String title;
+    private long likeCount;
+
+    private TitleEntry(String key, String title, long likeCount) {
+      this.key = key;
+      this.title = title;
+      this.likeCount = likeCount;
+    }
+  }
+}
@@ -1,75 +1,247 @@
 package com.google.ehub.utility;
 
-import com.google.common.collect.MinMaxPriorityQueue;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * Utility class that implements the algorithm used to recommend the users that have the most common
- * number of shared likes.
+ * number of shared likes. Shared likes can be weighted, and the ranking is deterministic so that
+ * the same likes always produce the same recommendations.
  */
 public final class UserRecommendationUtils {
-  private static final int MAX_NUMBER_OF_RECOMMENDATIONS = 10;
+  public static final int DEFAULT_NUM_RECOMMENDATIONS = 10;
+
+  private final int numRecommendations;
+  private final LikeWeighting likeWeighting;
+
+  /**
+   * Creates a recommender of up to ten users that are scored by their number of common likes.
+   */
+  public UserRecommendationUtils() {
+    this(DEFAULT_NUM_RECOMMENDATIONS, LikeWeighting.UNIFORM);
+  }
 
   /**
-   * Finds the most recommended emails up to a maximum of ten recommendations in descending order.
-   * In the case of a tie, the order will use increasing lexicographical order.
+   * Creates a recommender of the users with the highest scores.
+   *
+   * @param numRecommendations the maximum number of recommended users, can't be negative
+   * @param likeWeighting the weighting of the likes shared with other users
+   */
+  public UserRecommendationUtils(int numRecommendations, LikeWeighting likeWeighting) {
+    if (numRecommendations < 0) {
+      throw new IllegalArgumentException(
+          "UserRecommendationUtils: Negative number of recommendations " + numRecommendations);
+    }
+
+    this.numRecommendations = numRecommendations;
+    this.likeWeighting = likeWeighting;
+  }
+
+  /**
+   * Finds the most recommended emails in descending order of score. In the case of a tie, the
+   * order will use increasing lexicographical order.
    *
    * @param itemLikes map with the key representing an itemId and the value representing the emails
    *     that liked that item
    * @return list containing the most recommended emails in descending order
    */
   public List<String> getRecommendedEmails(Map<Long, Set<String>> itemLikes) {
-    Map<String, Integer> emailFreqs = getEmailFreqs(itemLikes);
-    MinMaxPriorityQueue<Map.Entry<String, Integer>> emailPriorityQueue =
-        getEmailPriorityQueue(emailFreqs);
+    List<String> recommendedEmails = new ArrayList<>();
+
+    for (UserScore userScore : getTopScores(itemLikes)) {
+      recommendedEmails.add(userScore.getEmail());
+    }
 
-    return getRecommendedEmailsInDescendingOrder(emailPriorityQueue);
+    return recommendedEmails;
   }
 
-  private Map<String, Integer> getEmailFreqs(Map<Long, Set<String>> itemLikes) {
-    Map<String, Integer> emailFreqs = new HashMap<String, Integer>();
+  /**
+   * Scores every email with the sum of the weights of its likes, and finds the highest scores in
+   * descending order. In the case of a tie, the order will use increasing lexicographical order.
+   *
+   * @param itemLikes map with the key representing an itemId and the value representing the emails
+   *     that liked that item
+   * @return list containing the highest scores in descending order
+   */
+  public List<UserScore> getTopScores(Map<Long, Set<String>> itemLikes) {
+    int totalLikes = 0;
+
+    for (Set<String> emails : itemLikes.values()) {
+      totalLikes += emails.size();
+    }
+
+    // The total number of likes is an upper bound of the number of distinct emails, so the table
+    // is sized once and never fills up while scoring.
+    EmailScoreTable emailScores = new EmailScoreTable(totalLikes);
+
+    // Weights are added in the order of the item Ids, since floating point sums depend on the
+    // order of their terms and the map iteration order can change between nodes.
+    long[] itemIds = new long[itemLikes.size()];
+    int itemIndex = 0;
+
+    for (Long itemId : itemLikes.keySet()) {
+      itemIds[itemIndex++] = itemId;
+    }
 
-    for (Map.Entry<Long, Set<String>> emailGroup : itemLikes.entrySet()) {
-      for (String email : emailGroup.getValue()) {
-        emailFreqs.merge(email, 1, (oldFreq, deltaFreq) -> oldFreq + deltaFreq);
+    Arrays.sort(itemIds);
+
+    for (long itemId : itemIds) {
+      Set<String> emails = itemLikes.get(itemId);
+      double weight = likeWeighting.getWeight(itemId, emails.size());
+
+      for (String email : emails) {
+        emailScores.add(email, weight);
       }
     }
 
-    return emailFreqs;
+    return emailScores.getTopScores(numRecommendations);
   }
 
-  private MinMaxPriorityQueue<Map.Entry<String, Integer>> getEmailPriorityQueue(
-      Map<String, Integer> emailFreqs) {
-    MinMaxPriorityQueue<Map.Entry<String, Integer>> emailPriorityQueue =
-        MinMaxPriorityQueue
-            .orderedBy((Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) -> {
-              // If the counts are tied, then compare emails lexicographically.
-              if (a.getValue() == b.getValue()) {
-                return a.getKey().compareTo(b.getKey());
-              }
+  /**
+   * Scores emails in an open addressing hash table made of parallel arrays, so scoring doesn't
+   * allocate a boxed score or a map entry per email. The table is not resized, so it must be
+   * created with an upper bound of the number of emails added to it.
+   */
+  private static final class EmailScoreTable {
+    private static final int MIN_CAPACITY = 16;
+
+    private final String[] emails;
+    private final double[] scores;
+    private final int[] commonLikes;
+    private int size;
+
+    EmailScoreTable(int maxEmails) {
+      // Capacity is the smallest power of two that keeps the table at most half full.
+      int capacity =
+          Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, maxEmails * 2 - 1)) << 1);
 
-              return Integer.compare(b.getValue(), a.getValue());
-            })
-            .maximumSize(MAX_NUMBER_OF_RECOMMENDATIONS)
-            .create();
+      emails = new String[capacity];
+      scores = new double[capacity];
+      commonLikes = new int[capacity];
+    }
 
-    emailPriorityQueue.addAll(emailFreqs.entrySet());
+    void add(String email, double weight) {
+      int slot = findSlot(emails, email);
 
-    return emailPriorityQueue;
-  }
+      if (emails[slot] == null) {
+        emails[slot] = email;
+        size++;
+      }
+
+      scores[slot] += weight;
+      commonLikes[slot]++;
+    }
+
+    /**
+     * Selects the highest scores with a bounded heap of slot indexes whose root is the lowest
+     * ranked email kept so far.
+     *
+     * @param limit the maximum number of scores returned
+     * @return list containing the highest scores in descending order, ties are ordered in
+     *     increasing lexicographical order of the emails
+     */
+    List<UserScore> getTopScores(int limit) {
+      int[] heap = new int[Math.min(limit, size)];
+      int heapSize = 0;
+
+      for (int slot = 0; slot < emails.length && heap.length > 0; slot++) {
+        if (emails[slot] == null) {
+          continue;
+        }
 
-  private List<String> getRecommendedEmailsInDescendingOrder(
-      MinMaxPriorityQueue<Map.Entry<String, Integer>> emailPriorityQueue) {
-    List<String> recommendedEmails = new ArrayList<String>();
+        if (heapSize < heap.length) {
+          heap[heapSize] = slot;
+          siftUp(heap, heapSize++);
+        } else if (ranksHigher(slot, heap[0])) {
+          heap[0] = slot;
+          siftDown(heap, heapSize);
+        }
+      }
+
+      UserScore[] topScores = new UserScore[heapSize];
+
+      // Removing the root repeatedly yields the emails from the lowest to the highest rank.
+      while (heapSize > 0) {
+        int slot = heap[0];
+        topScores[--heapSize] = new UserScore(emails[slot], scores[slot], commonLikes[slot]);
+        heap[0] = heap[heapSize];
+        siftDown(heap, heapSize);
+      }
 
-    while (!emailPriorityQueue.isEmpty()) {
-      recommendedEmails.add(emailPriorityQueue.poll().getKey());
+      return new ArrayList<>(Arrays.asList(topScores));
     }
 
-    return recommendedEmails;
+    private boolean ranksHigher(int slot, int otherSlot) {
+      int scoreComparison = Double.compare(scores[slot], scores[otherSlot]);
+
+      if (scoreComparison != 0) {
+        return scoreComparison > 0;
+      }
+
+      return emails[slot].compareTo(emails[otherSlot]) < 0;
+    }
+
+    private void siftUp(int[] heap, int index) {
+      while (index > 0) {
+        int parent = (index - 1) / 2;
+
+        if (!ranksHigher(heap[parent], heap[index])) {
+          return;
+        }
+
+        swap(heap, parent, index);
+        index = parent;
+      }
+    }
+
+    private void siftDown(int[] heap, int heapSize) {
+      int index = 0;
+
+      while (true) {
+        int lowest = index;
+        int left = 2 * index + 1;
+        int right = left + 1;
+
+        if (left < heapSize && ranksHigher(heap[lowest], heap[left])) {
+          lowest = left;
+        }
+
+        if (right < heapSize && ranksHigher(heap[lowest], heap[right])) {
+          lowest = right;
+        }
+
+        if (lowest == index) {
+          return;
+        }
+
+        swap(heap, index, lowest);
+        index = lowest;
+      }
+    }
+
+    /**
+     * Finds the slot holding an email with linear probing, or the empty slot where it belongs.
+     */
+    private static int findSlot(String[] emails, String email) {
+      int mask = emails.length - 1;
+      int hash = email.hashCode();
+      // Spreads the high bits of the hash since the mask only keeps the low bits.
+      int slot = (hash ^ (hash >>> 16)) & mask;
+
+      while (emails[slot] != null && !emails[slot].equals(email)) {
+        slot = (slot + 1) & mask;
+      }
+
+      return slot;
+    }
+
+    private static void swap(int[] heap, int index, int otherIndex) {
+      int slot = heap[index];
+      heap[index] = heap[otherIndex];
+      heap[otherIndex] = slot;
+    }
   }
 }
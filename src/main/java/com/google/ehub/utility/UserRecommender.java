@@ -0,0 +1,130 @@
+package com.google.ehub.utility;
+
+import com.google.ehub.data.FavoriteItemDatastore;
+import com.google.ehub.data.UserSignature;
+import com.google.ehub.data.UserSignatureDatastore;
+import com.google.ehub.data.UserSimilarityDatastore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Recommends the users that have the most likes in common with a given user. The engine used to
+ * find them is configured in RecommendationConfig.
+ */
+public final class UserRecommender {
+  /**
+   * Engines that can be used to find the recommended users. EXACT recomputes the common likes from
+   * the favorite items on every request, PRECOMPUTED reads the common likes that are kept up to
+   * date in UserSimilarityDatastore, and MINHASH estimates the common likes from the signatures in
+   * UserSignatureDatastore, which is approximate but doesn't depend on the popularity of the items.
+   * EXACT ignores the items that currently have too many likers, while PRECOMPUTED keeps ignoring
+   * an item once it had too many likers, after the next rebuild of the user similarities.
+   */
+  public enum Engine { EXACT, PRECOMPUTED, MINHASH }
+
+  /**
+   * Ways of scoring the likes shared with other users, only used by the EXACT engine. COMMON_LIKES
+   * counts every shared like as one, and INVERSE_POPULARITY weighs each shared like by the inverse
+   * logarithm of the number of users that like the item, so that likes of popular items count
+   * less than likes of niche items. The other engines always count every shared like as one, since
+   * the weight of a like changes with the popularity of the item after it is stored.
+   */
+  public enum Scoring { COMMON_LIKES, INVERSE_POPULARITY }
+
+  private final Engine engine;
+  private final long maxItemLikers;
+  private final FavoriteItemDatastore favoriteItemDatastore = FavoriteItemDatastore.getInstance();
+  private final UserRecommendationUtils recommendationUtils;
+
+  /**
+   * Creates a recommender that uses the configured engine and scoring.
+   */
+  public UserRecommender() {
+    this(RecommendationConfig.getEngine());
+  }
+
+  public UserRecommender(Engine engine) {
+    this(engine, RecommendationConfig.getScoring(), RecommendationConfig.getMaxItemLikers());
+  }
+
+  /**
+   * Creates a recommender with the given configuration.
+   *
+   * @param engine the engine used to find the recommended users
+   * @param scoring the scoring of the likes shared with other users
+   * @param maxItemLikers items liked by more users than this are ignored by the EXACT engine
+   */
+  public UserRecommender(Engine engine, Scoring scoring, long maxItemLikers) {
+    this.engine = engine;
+    this.maxItemLikers = maxItemLikers;
+    this.recommendationUtils = new UserRecommendationUtils(
+        UserRecommendationUtils.DEFAULT_NUM_RECOMMENDATIONS,
+        scoring == Scoring.INVERSE_POPULARITY
+            ? LikeWeighting.INVERSE_LOG_POPULARITY
+            : LikeWeighting.UNIFORM);
+  }
+
+  public Engine getEngine() {
+    return engine;
+  }
+
+  /**
+   * Finds the most recommended emails for a user up to a maximum of ten recommendations in
+   * descending order of common likes. In the case of a tie, the order will use increasing
+   * lexicographical order.
+   *
+   * @param userEmail the email of the user that gets the recommendations
+   * @return list containing the most recommended emails in descending order
+   */
+  public List<String> getRecommendedEmails(String userEmail) {
+    switch (engine) {
+      case PRECOMPUTED:
+        return UserSimilarityDatastore.getInstance().queryMostSimilarEmails(
+            userEmail, UserRecommendationUtils.DEFAULT_NUM_RECOMMENDATIONS);
+      case MINHASH:
+        return getRecommendedEmailsFromSignatures(userEmail);
+      case EXACT:
+      default:
+        return recommendationUtils.getRecommendedEmails(getUsersWhoLikeUserItems(userEmail));
+    }
+  }
+
+  private Map<Long, Set<String>> getUsersWhoLikeUserItems(String userEmail) {
+    Map<Long, Long> likeCounts =
+        favoriteItemDatastore.queryLikeCounts(favoriteItemDatastore.queryFavoriteIds(userEmail));
+    List<Long> itemIds = new ArrayList<>();
+
+    // Items with too many likers are pruned before their likers are queried.
+    for (Map.Entry<Long, Long> likeCount : likeCounts.entrySet()) {
+      if (likeCount.getValue() <= maxItemLikers) {
+        itemIds.add(likeCount.getKey());
+      }
+    }
+
+    Map<Long, Set<String>> itemLikes = favoriteItemDatastore.queryEmails(itemIds);
+
+    for (Set<String> emails : itemLikes.values()) {
+      // Remove the user from the list to ignore it for recommendations.
+      emails.remove(userEmail);
+    }
+
+    return itemLikes;
+  }
+
+  private List<String> getRecommendedEmailsFromSignatures(String userEmail) {
+    UserSignatureDatastore userSignatureDatastore = UserSignatureDatastore.getInstance();
+    Optional<UserSignature> signature = userSignatureDatastore.querySignature(userEmail);
+
+    if (!signature.isPresent()) {
+      return Collections.emptyList();
+    }
+
+    return MinHashUtils.getMostSimilarEmails(signature.get(),
+        userSignatureDatastore.queryCandidates(signature.get()),
+        UserRecommendationUtils.DEFAULT_NUM_RECOMMENDATIONS);
+  }
+}
@@ -0,0 +1,57 @@
+package com.google.ehub.utility;
+
+import java.util.Objects;
+
+/**
+ * Holds the recommendation score of a user, together with the number of likes the user has in
+ * common with the user that gets the recommendations.
+ */
+public final class UserScore {
+  private final String email;
+  private final double score;
+  private final int commonLikes;
+
+  public UserScore(String email, double score, int commonLikes) {
+    this.email = email;
+    this.score = score;
+    this.commonLikes = commonLikes;
+  }
+
+  public String getEmail() {
+    return email;
+  }
+
+  public double getScore() {
+    return score;
+  }
+
+  public int getCommonLikes() {
+    return commonLikes;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+
+    if (!(other instanceof UserScore)) {
+      return false;
+    }
+
+    UserScore otherScore = (UserScore) other;
+
+    return email.equals(otherScore.email) && Double.compare(score, otherScore.score) == 0
+        && commonLikes == otherScore.commonLikes;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(email, score, commonLikes);
+  }
+
+  @Override
+  public String toString() {
+    return "UserScore{email=" + email + ", score=" + score + ", commonLikes=" + commonLikes + "}";
+  }
+}
@@ -5,62 +5,114 @@ import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
 import com.google.appengine.api.datastore.Query.Filter;
 import com.google.appengine.api.datastore.Query.FilterOperator;
 import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.common.base.Splitter;
+import java.text.Normalizer;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.regex.Pattern;
 
 /**
  * Utility class holding miscellaneous methods used across the codebase.
  */
 public final class Utils {
+  // Maximum number of keys Datastore accepts in a single batch operation.
+  public static final int MAX_KEYS_PER_BATCH = 1000;
+
+  // Datastore limits the number of values of an IN filter to 30.
+  public static final int MAX_VALUES_PER_IN_FILTER = 30;
+
+  private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
   private Utils() {}
 
   /**
-   * Creates the filter used for prefix searches in Datastore.
+   * Creates the filter used for prefix searches in Datastore. The filter matches exactly the
+   * strings that start with the prefix, since Datastore orders strings by code point.
    *
    * @param prefixProperty the name of the property used to filter by the query
    * @param normalizedPrefix the prefix value used to search by the filter
    * @return filter operator used for prefix search in Datastore
    */
   public static Filter getPrefixFilter(String prefixProperty, String normalizedPrefix) {
-    return CompositeFilterOperator.and(
-        new FilterPredicate(prefixProperty, FilterOperator.GREATER_THAN_OR_EQUAL, normalizedPrefix),
-        new FilterPredicate(
-            prefixProperty, FilterOperator.LESS_THAN, getNextHigherString(normalizedPrefix)));
+    Filter lowerBoundFilter = new FilterPredicate(
+        prefixProperty, FilterOperator.GREATER_THAN_OR_EQUAL, normalizedPrefix);
+    String upperBound = getNextHigherString(normalizedPrefix);
+
+    // Prefixes made only of the highest code point have no upper bound.
+    if (upperBound.isEmpty()) {
+      return lowerBoundFilter;
+    }
+
+    return CompositeFilterOperator.and(lowerBoundFilter,
+        new FilterPredicate(prefixProperty, FilterOperator.LESS_THAN, upperBound));
   }
 
   /**
-   * Finds the next higher lexicographic string.
-   * Ex: "a" => "b", "yellow" => "yellox", "zzz" => "zzza"
+   * Finds the smallest string that is higher than every string starting with the given one, in
+   * code point order.
+   * Ex: "a" => "b", "yellow" => "yellox", "zzz" => "zz{", "caf\u00e9" => "caf\u00ea"
    *
-   * @param str the string used to find the next higher lexicographic string
-   * @return the next lexicographic string in increasing order, if the string is empty or null then
-   *     an empty string will be returned
+   * @param str the string used to find the next higher string
+   * @return the next higher string, if the string is empty, null or only made of the highest code
+   *     point then an empty string will be returned
    */
   public static String getNextHigherString(String str) {
     if (str == null || str.isEmpty()) {
       return "";
     }
 
-    int lastNonMaxCharIndex = str.length() - 1;
+    int pivotIndex = str.length();
+    int pivotCodePoint;
+
+    // Strings that start with the highest code point can't be bounded by increasing it, so the
+    // pivot is the last code point that can be increased.
+    do {
+      if (pivotIndex == 0) {
+        return "";
+      }
 
-    // TODO: Handle non-english chars.
-    while (lastNonMaxCharIndex >= 0 && str.charAt(lastNonMaxCharIndex) == 'z') {
-      --lastNonMaxCharIndex;
+      pivotCodePoint = str.codePointBefore(pivotIndex);
+      pivotIndex -= Character.charCount(pivotCodePoint);
+    } while (pivotCodePoint == Character.MAX_CODE_POINT);
+
+    int nextHigherPivotCodePoint = pivotCodePoint + 1;
+
+    // Surrogates are not code points of their own, the next code point is after them.
+    if (nextHigherPivotCodePoint >= Character.MIN_SURROGATE
+        && nextHigherPivotCodePoint <= Character.MAX_SURROGATE) {
+      nextHigherPivotCodePoint = Character.MAX_SURROGATE + 1;
     }
 
-    if (lastNonMaxCharIndex == -1) {
-      // The whole string is filled with max chars, so adding a new min char yields the next higher
-      // string eg. "zzzz" < "zzzza"
-      return str + 'a';
-    } else {
-      // Increasing the last non-max char yields the next higher string eg. "abbbzzz" < "abbczzz"
-      char nextHigherPivotChar = (char) ((int) str.charAt(lastNonMaxCharIndex) + 1);
-      // Next higher string shares same chars as original one except for the pivot char that got
-      // increased.
-      return str.substring(0, lastNonMaxCharIndex) + nextHigherPivotChar
-          + str.substring(lastNonMaxCharIndex + 1);
+    return new StringBuilder(str.substring(0, pivotIndex))
+        .appendCodePoint(nextHigherPivotCodePoint)
+        .toString();
+  }
+
+  /**
+   * Normalizes text so that searches ignore case, accents and compatibility variants of
+   * characters. Case is folded in the root locale, so the result doesn't depend on the default
+   * locale of the server.
+   * Ex: "Am\u00e9lie" => "amelie", "Stra\u00dfe" => "strasse", "\uff21\uff22" => "ab"
+   *
+   * @param text the text to normalize
+   * @return the normalized text, or null if the text is null
+   */
+  public static String normalizeText(String text) {
+    if (text == null) {
+      return null;
     }
+
+    // Upper casing first folds characters like the sharp s that have no single lower case form.
+    String caseFoldedText = text.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+
+    return COMBINING_MARKS
+        .matcher(Normalizer.normalize(caseFoldedText, Normalizer.Form.NFKD))
+        .replaceAll("");
   }
 
   /**
@@ -129,4 +181,31 @@ public final class Utils {
 
     return dateFormatter.format(date);
   }
+
+  /**
+   * Parses a list of comma separated ids, whitespace around the ids and empty values are ignored.
+   * Ex: "12, 4,,7" => [12, 4, 7]
+   *
+   * @param commaSeparatedIds the ids to parse
+   * @return list with the parsed ids in the same order wrapped in an {@link Optional}, the optional
+   *     will be empty if the value is null or any of the ids is not a number
+   */
+  public static Optional<List<Long>> parseIds(String commaSeparatedIds) {
+    if (commaSeparatedIds == null) {
+      return Optional.empty();
+    }
+
+    List<Long> ids = new ArrayList<>();
+
+    try {
+      for (String id :
+          Splitter.on(',').trimResults().omitEmptyStrings().split(commaSeparatedIds)) {
+        ids.add(Long.parseLong(id));
+      }
+    } catch (NumberFormatException e) {
+      return Optional.empty();
+    }
+
+    return Optional.of(ids);
+  }
 }
@@ -13,6 +13,7 @@ function loadDashboardPage() {
       initializeNavBarProfileSection();
       initializeSearchInput();
       initializeSortSelector();
+      initializeFacetSelectors();
       initializeDashboard();
     });
   });
@@ -71,52 +72,139 @@ function initializeSortSelector() {
 }
 
 /**
- * Fetches for the entertainment items from DashboardServlet and the favorite
- * item ids from FavoriteItemServlet to initialize the dashboard with items that
- * have correct like button state.
+ * Fetches the number of items of every genre, release year and runtime range
+ * to fill the facet selectors, and loads their stored values from
+ * sessionStorage.
  */
-function initializeDashboard() {
-  Promise
-      .allSettled([
-        fetch(
-            '/dashboard?searchValue=' + $('#searchValue').val() +
-            '&sortType=' + $('#sortType').val())
-            .then((response) => response.json()),
-        fetch('/favorite-item').then((response) => response.json())
-      ])
-      .then((results) => {
-        dashboardResult = results[0];
-        favResult = results[1];
-
-        if (dashboardResult.status === 'rejected') {
-          console.log(
-              'Failed to fetch Entertainment Items from DashboardServlet: ' +
-              dashboardResult.reason);
-          return;
-        }
+function initializeFacetSelectors() {
+  const runtimeRangeLabels = {
+    SHORT: 'Under 90 min',
+    MEDIUM: '90 to 120 min',
+    LONG: 'Over 120 min',
+  };
+
+  fetch('/facets')
+      .then((response) => response.json())
+      .then((facetCounts) => {
+        fillFacetSelector($('#genreFilter'), facetCounts.GENRE);
+        fillFacetSelector($('#releaseYearFilter'), facetCounts.RELEASE_YEAR);
+        fillFacetSelector(
+            $('#runtimeRangeFilter'), facetCounts.RUNTIME_RANGE,
+            runtimeRangeLabels);
+      })
+      .catch((error) => {
+        console.log('Failed to fetch facet counts: ' + error);
+      });
+}
 
-        const entertainmentItems = dashboardResult.value;
-        const favoriteItemIds =
-            favResult.status === 'fulfilled' ? favResult.value : [];
+/**
+ * Adds an option with its item count for every value of a facet, eg.
+ * "Drama (1,204)", and selects the value stored in sessionStorage.
+ *
+ * @param { jQuery } facetSelector - the select element of the facet
+ * @param { Object } valueCounts - maps the values of the facet to their
+ *     number of items
+ * @param { Object } valueLabels - maps values of the facet to the text shown
+ *     for them, values without a label are shown as they are
+ */
+function fillFacetSelector(facetSelector, valueCounts, valueLabels = {}) {
+  Object.keys(valueCounts).forEach((value) => {
+    const label = valueLabels[value] !== undefined ? valueLabels[value] : value;
 
-        setupSeachInputCallback(favoriteItemIds);
-        setupSortSelectorCallback(favoriteItemIds);
-        updateDashboardItems(entertainmentItems, favoriteItemIds);
-      });
+    facetSelector.append($('<option>').attr('value', value).text(
+        label + ' (' + valueCounts[value].toLocaleString() + ')'));
+  });
+
+  const storedValue = sessionStorage.getItem(facetSelector.attr('id'));
+
+  // Values without items anymore are not offered, so they stop filtering.
+  if (storedValue !== null && storedValue in valueCounts) {
+    facetSelector.val(storedValue);
+  } else {
+    sessionStorage.removeItem(facetSelector.attr('id'));
+  }
 }
 
 /**
- * Adds an input value callback to the search input for it to update its value
- * to sessionStorage and fetch for new items.
+ * Fetches for the entertainment items from DashboardServlet, together with
+ * their like counts and the items liked by the user, to initialize the
+ * dashboard with items that have correct like button state.
+ */
+function initializeDashboard() {
+  // Holds the liked item Ids of every loaded page, the like buttons update it
+  // when the user likes or unlikes an item.
+  const favoriteItemIds = [];
+
+  setupSeachInputCallback(favoriteItemIds);
+  setupSortSelectorCallback(favoriteItemIds);
+  setupFacetSelectorCallback(favoriteItemIds);
+  getEntertainmentItems(favoriteItemIds);
+}
+
+/**
+ * Adds callbacks to the search input for it to update its value to
+ * sessionStorage and the title suggestions while the user types. New items
+ * are only fetched when the search is submitted with enter, the input loses
+ * focus or is cleared, or a suggestion is picked, so typing doesn't query the
+ * dashboard on every keystroke.
  *
  * @param { Array } favoriteItemIds - the list of entertainment item Ids that
  *     have been liked by the logged in user
  */
 function setupSeachInputCallback(favoriteItemIds) {
-  $('#searchValue').on('input', function() {
+  // Delay after the last keystroke before the title suggestions are fetched.
+  const suggestionDelayMillis = 150;
+  const searchInput = $('#searchValue');
+  let searchedValue = searchInput.val();
+  let suggestionTimeout = null;
+
+  const searchIfChanged = () => {
+    if (searchInput.val() !== searchedValue) {
+      searchedValue = searchInput.val();
+      getEntertainmentItems(favoriteItemIds);
+    }
+  };
+
+  searchInput.on('input', function(event) {
     sessionStorage.setItem('searchVal', $(this).val());
-    getEntertainmentItems(favoriteItemIds);
+
+    // Picking a suggestion or clearing the input is not typed, so it searches
+    // right away.
+    if (event.originalEvent.inputType === undefined ||
+        event.originalEvent.inputType === 'insertReplacementText') {
+      searchIfChanged();
+      return;
+    }
+
+    clearTimeout(suggestionTimeout);
+    suggestionTimeout = setTimeout(
+        () => updateTitleSuggestions(searchInput.val()),
+        suggestionDelayMillis);
   });
+
+  searchInput.on('change', searchIfChanged);
+}
+
+/**
+ * Fetches the titles of the most liked items that start with what the user
+ * typed, and shows them as suggestions of the search input.
+ *
+ * @param { string } prefix - the current value of the search input
+ */
+function updateTitleSuggestions(prefix) {
+  fetch('/typeahead?prefix=' + encodeURIComponent(prefix))
+      .then((response) => response.json())
+      .then((suggestions) => {
+        const suggestionList = $('#title-suggestions');
+        suggestionList.empty();
+
+        suggestions.forEach((suggestion) => {
+          suggestionList.append($('<option>').attr('value', suggestion.title));
+        });
+      })
+      .catch((error) => {
+        console.log('Failed to fetch title suggestions: ' + error);
+      });
 }
 
 /**
@@ -133,11 +221,25 @@ function setupSortSelectorCallback(favoriteItemIds) {
   });
 }
 
+/**
+ * Adds a change value callback to the facet selectors for them to update their
+ * values to sessionStorage and fetch for new items.
+ *
+ * @param { Array } favoriteItemIds - the list of entertainment item Ids that
+ *     have been liked by the logged in user
+ */
+function setupFacetSelectorCallback(favoriteItemIds) {
+  $('.facet-filter').change(function() {
+    sessionStorage.setItem($(this).attr('id'), $(this).val());
+    getEntertainmentItems(favoriteItemIds);
+  });
+}
+
 /**
  * Updates the dashboard with the new items that are given.
  *
  * @param { JSON } entertainmentItems - the entertainment items JSON object
- *     obtained by fetching the DashboardServlet
+ *     obtained by fetching the DashboardServlet with the item stats included
  * @param { Array } favoriteItemIds - the list of entertainment item Ids that
  *     have been liked by the logged in user
  * @param { boolean } clearCurrentItems - clears and loads the entertainment
@@ -153,7 +255,17 @@ function updateDashboardItems(
     itemContainer.empty();
   }
 
-  populateItemGrid(itemContainer, entertainmentItems.items, favoriteItemIds);
+  // The liked items of the page are merged into the list so that the like
+  // buttons of items loaded in previous pages keep their state.
+  entertainmentItems.likedItemIds.forEach((itemId) => {
+    if (!favoriteItemIds.includes(itemId)) {
+      favoriteItemIds.push(itemId);
+    }
+  });
+
+  populateItemGrid(
+      itemContainer, entertainmentItems.items, favoriteItemIds,
+      entertainmentItems.likeCounts, entertainmentItems.commentCounts);
   updatePagination(favoriteItemIds, entertainmentItems.pageCursor);
 }
 
@@ -172,7 +284,11 @@ function getEntertainmentItems(
     favoriteItemIds, pageCursor = '', clearCurrentItems = true) {
   fetch(
       '/dashboard?cursor=' + pageCursor + '&searchValue=' +
-      $('#searchValue').val() + '&sortType=' + $('#sortType').val())
+      $('#searchValue').val() + '&sortType=' + $('#sortType').val() +
+      '&genre=' + encodeURIComponent(getStoredFacetValue('genreFilter')) +
+      '&releaseYear=' + getStoredFacetValue('releaseYearFilter') +
+      '&runtimeRange=' + getStoredFacetValue('runtimeRangeFilter') +
+      '&includeItemStats=true')
       .then((response) => response.json())
       .then((entertainmentItems) => {
         updateDashboardItems(
@@ -185,6 +301,21 @@ function getEntertainmentItems(
       });
 }
 
+/**
+ * Gets the value of a facet selector from sessionStorage, the options of the
+ * selectors can still be loading when the first items are fetched.
+ *
+ * @param { string } facetSelectorId - the id of the select element of the
+ *     facet
+ * @returns { string } the stored value, or an empty string if the facet is not
+ *     filtered
+ */
+function getStoredFacetValue(facetSelectorId) {
+  const storedValue = sessionStorage.getItem(facetSelectorId);
+
+  return storedValue !== null ? storedValue : '';
+}
+
 /**
  * Populates the item grid used in the Dashboard with all the entertainment
  * items on the list.
@@ -195,9 +326,14 @@ function getEntertainmentItems(
  *     add to the grid
  * @param { Array } favoriteItemIds - the list of entertainment item Ids that
  *     have been liked by the logged in user
+ * @param { Object } likeCounts - maps the entertainment item Ids to their
+ *     number of likes
+ * @param { Object } commentCounts - maps the entertainment item Ids to their
+ *     number of comments
  */
 function populateItemGrid(
-    entertainmentItemsContainer, entertainmentItems, favoriteItemIds) {
+    entertainmentItemsContainer, entertainmentItems, favoriteItemIds,
+    likeCounts, commentCounts) {
   let currItemIndex = 0;
 
   while (currItemIndex < entertainmentItems.length) {
@@ -221,7 +357,9 @@ function populateItemGrid(
       }
 
       const colElem = $('<div class="col-md-4 mb-3"</div>');
-      colElem.append(createEntertainmentItemCard(item, favoriteItemIds));
+      colElem.append(createEntertainmentItemCard(
+          item, favoriteItemIds, likeCounts[item.uniqueId.value],
+          commentCounts[item.uniqueId.value]));
 
       rowElem.append(colElem);
     }
@@ -240,9 +378,14 @@ function populateItemGrid(
  *     data will be displayed in the card element
  * @param { Array } favoriteItemIds - the list of entertainment item Ids that
  *     have been liked by the logged in user
+ * @param { number } likeCount - the number of likes the entertainment item
+ *     has, it gets fetched separately if it is undefined
+ * @param { number } commentCount - the number of comments the entertainment
+ *     item has
  * @returns { jQuery } card element representing the entertainment item
  */
-function createEntertainmentItemCard(entertainmentItem, favoriteItemIds) {
+function createEntertainmentItemCard(
+    entertainmentItem, favoriteItemIds, likeCount, commentCount) {
   const card = $('<div class="card bg-light border-dark"></div>');
   card.append(
       $('<img class="card-img-top" src="' + entertainmentItem.imageUrl + '">'));
@@ -257,8 +400,11 @@ function createEntertainmentItemCard(entertainmentItem, favoriteItemIds) {
   cardBody.append(
       $('<p class="card-text text-center">' + entertainmentItem.description +
         '</p>'));
+  cardBody.append(createLikeButton(
+      favoriteItemIds, entertainmentItem.uniqueId.value, likeCount));
   cardBody.append(
-      createLikeButton(favoriteItemIds, entertainmentItem.uniqueId.value));
+      $('<span class="badge badge-secondary ml-2">' + commentCount +
+        ' comments</span>'));
 
   card.append(cardBody);
 
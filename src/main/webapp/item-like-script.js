@@ -6,10 +6,12 @@
  *     have been liked by the logged in user
  * @param { number } itemId - the Id of the item that is going to be connected
  *     to the like button
+ * @param { number } likeCount - optional number of likes the item has, the
+ *     counter is fetched separately if it is not given
  * @returns { jQuery } a new button ready to be displayed in the entertainment
  *     item card
  */
-function createLikeButton(favoriteItemIds, itemId) {
+function createLikeButton(favoriteItemIds, itemId, likeCount) {
   const likeButton = $('<button class="btn">Like</button>');
 
   const likeCounter = $('<span class="badge badge-light ml-2"></span>');
@@ -21,7 +23,11 @@ function createLikeButton(favoriteItemIds, itemId) {
     switchToLikeButton(favoriteItemIds, itemId, likeButton, likeCounter);
   }
 
-  updateLikeCounter(itemId, likeCounter);
+  if (likeCount === undefined) {
+    updateLikeCounter(itemId, likeCounter);
+  } else {
+    likeCounter.text(likeCount);
+  }
 
   return likeButton;
 }
@@ -17,7 +17,11 @@ function loadItemPage() {
                 .then((response) => response.json())
                 .then((loginResponse) => {
                   createSelectedItemCard(itemPageData.item);
+                  getRelatedItems(itemPageData.relatedItems);
                   getItemPageComments(itemPageData.comments);
+                  $('#comment-count').text(itemPageData.commentCount);
+                  updateLoadMoreComments(
+                      itemId, itemPageData.commentsPageCursor);
 
                   if (!loginResponse.isUserLoggedIn) {
                     hideCommentBox();
@@ -93,6 +97,45 @@ async function createSelectedItemCard(entertainmentItem) {
   itemContainer.append(card);
 }
 
+/**
+ * Displays the items that are most often liked by the users who like the
+ * selected item, the section is hidden when there are none.
+ *
+ * @param { Array } relatedItems - list of related entertainment items
+ */
+function getRelatedItems(relatedItems) {
+  if (relatedItems.length === 0) {
+    return;
+  }
+
+  const relatedItemsContainer = $('#related-items-container');
+  relatedItems.forEach((relatedItem) => {
+    relatedItemsContainer.append(createRelatedItemElement(relatedItem));
+  });
+
+  $('#related-items').show();
+}
+
+/**
+ * Creates list element linking to the page of a related item.
+ *
+ * @param { JSON } relatedItem - the related item to display
+ * @returns { jQuery } list element displaying the related item
+ */
+function createRelatedItemElement(relatedItem) {
+  const relatedItemElem =
+      $('<li class="list-group-item border d-flex align-items-center"></li>');
+  relatedItemElem.append(
+      $('<img class="mr-2" src="' + relatedItem.imageUrl +
+        '" width="32" height="48">'));
+  relatedItemElem.append($('<p class="mb-0">' + relatedItem.title + '</p>'));
+  relatedItemElem.append(
+      $('<a class="stretched-link" href="item-page.html?itemId=' +
+        relatedItem.uniqueId.value + '"></a>'));
+
+  return relatedItemElem;
+}
+
 /**
  * Submits a new comment to the ItemPageServlet
  */
@@ -122,6 +165,37 @@ function getItemPageComments(comments) {
   });
 }
 
+/**
+ * Shows the button that loads the next page of comments, or hides it when
+ * every comment was already loaded.
+ *
+ * @param { string } itemId - the id of the item whose comments are displayed
+ * @param { string } commentsPageCursor - opaque key representing the cursor
+ *     for the next page of comments, undefined if there are no more comments
+ */
+function updateLoadMoreComments(itemId, commentsPageCursor) {
+  const loadMoreButton = $('#load-more-comments');
+
+  if (commentsPageCursor === undefined) {
+    loadMoreButton.hide();
+    return;
+  }
+
+  loadMoreButton.show();
+  loadMoreButton.off('click').one('click', () => {
+    fetch(`/itempagedata?itemId=${itemId}&commentsCursor=${
+              encodeURIComponent(commentsPageCursor)}`)
+        .then((response) => response.json())
+        .then((itemPageData) => {
+          getItemPageComments(itemPageData.comments);
+          updateLoadMoreComments(itemId, itemPageData.commentsPageCursor);
+        })
+        .catch((error) => {
+          console.log('Failed to load more comments: ' + error);
+        });
+  });
+}
+
 /**
  * Sends delete request to servlet for a specific comment.
  *
@@ -20,7 +20,8 @@ function loadSelfProfilePage() {
         $('#avatar').attr('src', getProfileImageUrl(profile.email));
 
         loadFavItems(profile.email);
-        loadRecommendedUsers(userData.recommendedUsers);
+        loadRecommendedUsers(
+            userData.recommendedUsers, userData.recommendationsTimestampMillis);
       })
       .catch((error) => {
         console.log('Fetching profile data servlet failed: ' + error);
@@ -75,34 +76,41 @@ function loadFavItems(userEmail) {
 }
 
 /**
- * Creates and populates a grid with item cards.
+ * Creates and populates a grid with item cards. The items are fetched in
+ * chunks, so the request URLs stay short and within the number of ids
+ * accepted by ItemBatchServlet.
  *
  * @param { Array } favoriteItems - the array of item ids
  */
 function populateFavoriteItemGrid(favoriteItems) {
-  const itemPromises = [];
+  const MAX_IDS_PER_REQUEST = 100;
+  const itemRequests = [];
+
+  for (let i = 0; i < favoriteItems.length; i += MAX_IDS_PER_REQUEST) {
+    const itemIds = favoriteItems.slice(i, i + MAX_IDS_PER_REQUEST);
 
-  favoriteItems.forEach((itemId) => {
-    itemPromises.push(fetch('/itempagedata?itemId=' + itemId)
+    itemRequests.push(fetch('/items?itemIds=' + itemIds.join(','))
                           .then((response) => response.json()));
-  });
+  }
 
-  Promise.all(itemPromises)
-      .then((results) => {
+  Promise.all(itemRequests)
+      .then((itemChunks) => [].concat(...itemChunks))
+      .then((entertainmentItems) => {
         const favItemContainer = $('#item-container');
 
         const MAX_CELLS_PER_ROW = 3;
         let currItemIndex = 0;
 
-        while (currItemIndex < favoriteItems.length) {
+        while (currItemIndex < entertainmentItems.length) {
           const rowElem = $('<div class="row mb-3"></div>');
 
-          for (let cell = 0;
-               cell < MAX_CELLS_PER_ROW && currItemIndex < favoriteItems.length;
+          for (let cell = 0; cell < MAX_CELLS_PER_ROW &&
+               currItemIndex < entertainmentItems.length;
                cell++, currItemIndex++) {
             const colElem = $('<div class="col-md-4"></div>');
 
-            colElem.append(createFavoriteItemCard(results[currItemIndex].item));
+            colElem.append(
+                createFavoriteItemCard(entertainmentItems[currItemIndex]));
             rowElem.append(colElem);
           }
 
@@ -143,10 +151,22 @@ function createFavoriteItemCard(entertainmentItem) {
  *
  * @param { Array } recommendedUsers - list with the recommended users in
  *     descending order.
+ * @param { number } timestampMillis - the time when the recommended users were
+ *     computed, undefined if they are still being computed
  */
-function loadRecommendedUsers(recommendedUsers) {
+function loadRecommendedUsers(recommendedUsers, timestampMillis) {
   const usersContainer = $('#recommendedUsersContainer');
 
+  if (timestampMillis === undefined) {
+    usersContainer.append(
+        $('<p class="lead text-center">Your recommended users are being' +
+          ' computed, check back in a moment.</p>'));
+    return;
+  }
+
+  $('#recommendedUsersTimestamp')
+      .text('Updated ' + new Date(timestampMillis).toLocaleString());
+
   if (recommendedUsers.length === 0) {
     usersContainer.append(
         $('<p class="lead text-center">Like some items to see if there are' +
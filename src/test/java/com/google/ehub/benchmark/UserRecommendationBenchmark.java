@@ -0,0 +1,133 @@
+package com.google.ehub.benchmark;
+
+import com.google.ehub.data.UserSignature;
+import com.google.ehub.utility.MinHashUtils;
+import com.google.ehub.utility.UserRecommendationUtils;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the latency of the exact and MinHash user recommendations over one million synthetic
+ * favorites held in memory, so only the algorithms are measured and not Datastore. Every user
+ * likes a few blockbuster items, which is the case that makes exact co-like counting expensive.
+ *
+ * <p>Run the main method with the test classpath after mvn test-compile, for example with the
+ * classpath written by mvn dependency:build-classpath -Dmdep.includeScope=test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserRecommendationBenchmark {
+  private static final int NUM_USERS = 20000;
+  private static final int FAVORITES_PER_USER = 50;
+  private static final int NUM_BLOCKBUSTER_ITEMS = 20;
+  private static final int BLOCKBUSTER_LIKES_PER_USER = 5;
+  private static final int NUM_TASTE_GROUPS = 500;
+  private static final int ITEMS_PER_TASTE_GROUP = 200;
+  private static final int MAX_RECOMMENDED_USERS = 10;
+
+  private final Map<String, Set<Long>> favoritesByEmail = new HashMap<>();
+  private final Map<Long, Set<String>> emailsByItemId = new HashMap<>();
+  private final Map<String, UserSignature> signaturesByEmail = new HashMap<>();
+  private final Map<Long, List<String>> emailsByBand = new HashMap<>();
+  private final UserRecommendationUtils recommendationUtils = new UserRecommendationUtils();
+
+  private int nextUser;
+
+  @Setup(Level.Trial)
+  public void createFavorites() {
+    Random random = new Random(/* seed */ 42);
+
+    for (int user = 0; user < NUM_USERS; user++) {
+      String email = "user" + user + "@gmail.com";
+      long firstGroupItemId =
+          NUM_BLOCKBUSTER_ITEMS + (long) random.nextInt(NUM_TASTE_GROUPS) * ITEMS_PER_TASTE_GROUP;
+      Set<Long> favoriteIds = new HashSet<>();
+
+      while (favoriteIds.size() < BLOCKBUSTER_LIKES_PER_USER) {
+        favoriteIds.add((long) random.nextInt(NUM_BLOCKBUSTER_ITEMS));
+      }
+
+      while (favoriteIds.size() < FAVORITES_PER_USER) {
+        favoriteIds.add(firstGroupItemId + random.nextInt(ITEMS_PER_TASTE_GROUP));
+      }
+
+      favoritesByEmail.put(email, favoriteIds);
+
+      for (Long itemId : favoriteIds) {
+        emailsByItemId.computeIfAbsent(itemId, id -> new HashSet<>()).add(email);
+      }
+
+      long[] minHashes = MinHashUtils.computeSignature(favoriteIds);
+      signaturesByEmail.put(email, new UserSignature(email, minHashes, favoriteIds.size()));
+
+      for (Long band : MinHashUtils.computeBands(minHashes)) {
+        emailsByBand.computeIfAbsent(band, b -> new ArrayList<>()).add(email);
+      }
+    }
+  }
+
+  @Benchmark
+  public List<String> exactRecommendations() {
+    String email = nextEmail();
+    Map<Long, Set<String>> itemLikes = new HashMap<>();
+
+    for (Long itemId : favoritesByEmail.get(email)) {
+      Set<String> emails = new HashSet<>(emailsByItemId.get(itemId));
+      emails.remove(email);
+      itemLikes.put(itemId, emails);
+    }
+
+    return recommendationUtils.getRecommendedEmails(itemLikes);
+  }
+
+  @Benchmark
+  public List<String> minHashRecommendations() {
+    UserSignature signature = signaturesByEmail.get(nextEmail());
+    Set<UserSignature> candidates = new HashSet<>();
+
+    // Stands in for the IN query on the indexed bands of the stored signatures.
+    for (Long band : MinHashUtils.computeBands(signature.getMinHashes())) {
+      for (String candidateEmail : emailsByBand.get(band)) {
+        candidates.add(signaturesByEmail.get(candidateEmail));
+      }
+    }
+
+    return MinHashUtils.getMostSimilarEmails(signature, candidates, MAX_RECOMMENDED_USERS);
+  }
+
+  private String nextEmail() {
+    nextUser = (nextUser + 1) % NUM_USERS;
+    return "user" + nextUser + "@gmail.com";
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+                   .include(UserRecommendationBenchmark.class.getSimpleName())
+                   .build())
+        .run();
+  }
+}
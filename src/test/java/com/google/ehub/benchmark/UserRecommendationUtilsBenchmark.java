@@ -0,0 +1,116 @@
+package com.google.ehub.benchmark;
+
+import com.google.common.collect.MinMaxPriorityQueue;
+import com.google.ehub.utility.UserRecommendationUtils;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the throughput and allocation rate of UserRecommendationUtils with the previous
+ * implementation that counted boxed Integers in a HashMap and selected the top emails with a
+ * MinMaxPriorityQueue of map entries. The allocation rate is reported by the gc profiler, which
+ * the main method enables.
+ *
+ * <p>Run the main method with the test classpath after mvn test-compile, for example with the
+ * classpath written by mvn dependency:build-classpath -Dmdep.includeScope=test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserRecommendationUtilsBenchmark {
+  private static final int NUM_ITEMS = 50;
+  private static final int MAX_NUMBER_OF_RECOMMENDATIONS = 10;
+
+  @Param({"10000", "100000", "1000000"})
+  public int numCoLikers;
+
+  private final Map<Long, Set<String>> itemLikes = new HashMap<>();
+  private final UserRecommendationUtils recommendationUtils = new UserRecommendationUtils();
+
+  @Setup(Level.Trial)
+  public void createItemLikes() {
+    Random random = new Random(/* seed */ 42);
+
+    // Every co-liker likes one random item, and a tenth of them like a second one.
+    for (int coLiker = 0; coLiker < numCoLikers; coLiker++) {
+      String email = "user" + coLiker + "@gmail.com";
+
+      itemLikes.computeIfAbsent((long) random.nextInt(NUM_ITEMS), id -> new HashSet<>()).add(email);
+
+      if (coLiker % 10 == 0) {
+        itemLikes.computeIfAbsent((long) random.nextInt(NUM_ITEMS), id -> new HashSet<>())
+            .add(email);
+      }
+    }
+  }
+
+  @Benchmark
+  public List<String> primitiveRecommendations() {
+    return recommendationUtils.getRecommendedEmails(itemLikes);
+  }
+
+  @Benchmark
+  public List<String> boxedRecommendations() {
+    Map<String, Integer> emailFreqs = new HashMap<>();
+
+    for (Set<String> emails : itemLikes.values()) {
+      for (String email : emails) {
+        emailFreqs.merge(email, 1, (oldFreq, deltaFreq) -> oldFreq + deltaFreq);
+      }
+    }
+
+    MinMaxPriorityQueue<Map.Entry<String, Integer>> emailPriorityQueue =
+        MinMaxPriorityQueue
+            .orderedBy((Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) -> {
+              if (a.getValue().equals(b.getValue())) {
+                return a.getKey().compareTo(b.getKey());
+              }
+
+              return Integer.compare(b.getValue(), a.getValue());
+            })
+            .maximumSize(MAX_NUMBER_OF_RECOMMENDATIONS)
+            .create();
+
+    emailPriorityQueue.addAll(emailFreqs.entrySet());
+
+    List<String> recommendedEmails = new ArrayList<>();
+
+    while (!emailPriorityQueue.isEmpty()) {
+      recommendedEmails.add(emailPriorityQueue.poll().getKey());
+    }
+
+    return recommendedEmails;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+                   .include(UserRecommendationUtilsBenchmark.class.getSimpleName())
+                   .addProfiler("gc")
+                   .build())
+        .run();
+  }
+}
@@ -0,0 +1,87 @@
+package com.google.ehub.data;
+
+import com.google.ehub.data.CommentPageCache.CachedComment;
+import com.google.ehub.data.CommentPageCache.CachedPage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CommentPageCacheTest {
+  private static final long ITEM_ID = 12345;
+  private static final String EMAIL = "bryan@gmail.com";
+  private static final String USERNAME = "bryan";
+
+  private final CommentPageCache commentPageCache = CommentPageCache.getInstance();
+
+  @Before
+  public void init() {
+    commentPageCache.invalidateAll();
+  }
+
+  @Test
+  public void encodeAndDecodePage_fieldsArePreserved() {
+    CachedPage page = new CachedPage(
+        Arrays.asList(new CachedComment(1L, 100L, EMAIL, USERNAME, "Señor 🎬"),
+            new CachedComment(2L, 200L, EMAIL, USERNAME, "")),
+        3, "cursor");
+
+    CachedPage decodedPage = CommentPageCache.decode(CommentPageCache.encode(page));
+
+    Assert.assertEquals(3, decodedPage.getEntityCount());
+    Assert.assertEquals("cursor", decodedPage.getPageCursor());
+    Assert.assertEquals(2, decodedPage.getComments().size());
+    Assert.assertEquals(1L, decodedPage.getComments().get(0).getCommentId());
+    Assert.assertEquals(100L, decodedPage.getComments().get(0).getTimestampMillis());
+    Assert.assertEquals(EMAIL, decodedPage.getComments().get(0).getEmail());
+    Assert.assertEquals(USERNAME, decodedPage.getComments().get(0).getUsername());
+    Assert.assertEquals("Señor 🎬", decodedPage.getComments().get(0).getComment());
+    Assert.assertEquals("", decodedPage.getComments().get(1).getComment());
+  }
+
+  @Test
+  public void encodeAndDecodeLastPage_cursorIsNull() {
+    CachedPage page = new CachedPage(new ArrayList<>(), 0, null);
+
+    Assert.assertNull(CommentPageCache.decode(CommentPageCache.encode(page)).getPageCursor());
+  }
+
+  @Test
+  public void addCommentToUncachedPage_pageIsNotCached() {
+    commentPageCache.addComment(ITEM_ID, new CachedComment(1L, 100L, EMAIL, USERNAME, "Hi"));
+
+    Assert.assertFalse(commentPageCache.getPage(ITEM_ID).isPresent());
+  }
+
+  @Test
+  public void addOlderCommentToCachedPage_pageIsInvalidated() {
+    commentPageCache.putPage(ITEM_ID, new CachedPage(
+        Arrays.asList(new CachedComment(1L, 100L, EMAIL, USERNAME, "Hi")), 1, null));
+
+    commentPageCache.addComment(ITEM_ID, new CachedComment(2L, 50L, EMAIL, USERNAME, "Hey"));
+
+    Assert.assertFalse(commentPageCache.getPage(ITEM_ID).isPresent());
+  }
+
+  @Test
+  public void addNewerCommentToFullPage_pageIsUnchanged() {
+    List<CachedComment> comments = new ArrayList<>();
+
+    for (long commentId = 0; commentId < CommentPageCache.CACHED_PAGE_SIZE; commentId++) {
+      comments.add(new CachedComment(commentId, commentId, EMAIL, USERNAME, "Hi"));
+    }
+    commentPageCache.putPage(
+        ITEM_ID, new CachedPage(comments, CommentPageCache.CACHED_PAGE_SIZE, "cursor"));
+
+    commentPageCache.addComment(ITEM_ID, new CachedComment(100L, 100L, EMAIL, USERNAME, "Hey"));
+
+    CachedPage page = commentPageCache.getPage(ITEM_ID).get();
+    Assert.assertEquals(CommentPageCache.CACHED_PAGE_SIZE, page.getComments().size());
+    Assert.assertEquals("cursor", page.getPageCursor());
+  }
+}
@@ -1,16 +1,21 @@
 package com.google.ehub.data;
 
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
 import com.google.ehub.utility.Utils;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import org.junit.After;
 import org.junit.Assert;
@@ -62,10 +67,12 @@ public class EntertainmentItemDatastoreTest {
   @Before
   public void init() {
     helper.setUp();
+    entertainmentItemDatastore.invalidateItemCache();
   }
 
   @After
   public void tearDown() {
+    System.clearProperty(EntertainmentItemDatastore.TITLE_PREFIXES_BACKFILLED_PROPERTY_KEY);
     helper.tearDown();
   }
 
@@ -190,6 +197,62 @@ public class EntertainmentItemDatastoreTest {
         new String[] {TITLES_IN_ASCENDING_ORDER[3], TITLES_IN_ASCENDING_ORDER[2]}, actual);
   }
 
+  @Test
+  public void queryWithAccentedTitlePrefix_ItemsWithAndWithoutAccentsAreSelected() {
+    for (String title : new String[] {"Am\u00e9lie", "Amelia", "American Beauty", "Alien"}) {
+      entertainmentItemDatastore.addItemToDatastore(
+          new EntertainmentItem.Builder().setTitle(title).build());
+    }
+
+    EntertainmentItemList itemList = entertainmentItemDatastore.queryItemsByTitlePrefix(
+        FetchOptions.Builder.withDefaults(), "AM\u00c9L", SortDirection.ASCENDING);
+    List<String> actual = new ArrayList<>();
+
+    for (EntertainmentItem item : itemList.getItems()) {
+      actual.add(item.getTitle());
+    }
+
+    Assert.assertEquals(Arrays.asList("Amelia", "Am\u00e9lie"), actual);
+  }
+
+  @Test
+  public void queryWithTitlePrefixEndingInZ_ItemsAfterPrefixAreSelected() {
+    for (String title : new String[] {"Zz", "Zzz", "Zzzb", "Zz{"}) {
+      entertainmentItemDatastore.addItemToDatastore(
+          new EntertainmentItem.Builder().setTitle(title).build());
+    }
+
+    EntertainmentItemList itemList = entertainmentItemDatastore.queryItemsByTitlePrefix(
+        FetchOptions.Builder.withDefaults(), "zzz", SortDirection.ASCENDING);
+    List<String> actual = new ArrayList<>();
+
+    for (EntertainmentItem item : itemList.getItems()) {
+      actual.add(item.getTitle());
+    }
+
+    Assert.assertEquals(Arrays.asList("Zzz", "Zzzb"), actual);
+  }
+
+  @Test
+  public void normalizeTitlesWithLegacyItems_onlyOutdatedTitlesAreUpdated() {
+    Entity legacyEntity = new Entity(ENTERTAINMENT_ITEM_KIND);
+    legacyEntity.setProperty(DISPLAY_TITLE_PROPERTY_KEY, "\u00c9cole");
+    legacyEntity.setProperty(NORMALIZED_TITLE_PROPERTY_KEY, "\u00e9cole");
+    datastoreService.put(legacyEntity);
+
+    entertainmentItemDatastore.addItemToDatastore(
+        new EntertainmentItem.Builder().setTitle("Eclipse").build());
+
+    Assert.assertEquals(1, entertainmentItemDatastore.normalizeTitles());
+    Assert.assertEquals(2,
+        entertainmentItemDatastore
+            .queryItemsByTitlePrefix(
+                FetchOptions.Builder.withDefaults(), "ec", SortDirection.ASCENDING)
+            .getItems()
+            .size());
+    Assert.assertEquals(0, entertainmentItemDatastore.normalizeTitles());
+  }
+
   @Test
   public void queryWithRecentReleaseDate_ItemListIsCorrectlyOrdered() {
     for (int i = 0; i < RELASE_DATE_IN_DESCENDING_ORDER.length; i++) {
@@ -209,4 +272,204 @@ public class EntertainmentItemDatastoreTest {
 
     Assert.assertArrayEquals(RELASE_DATE_IN_DESCENDING_ORDER, actual);
   }
+
+  @Test
+  public void queryWithRecentReleaseDateAndTitlePrefix_ItemListIsOrderedByReleaseDate() {
+    System.setProperty(EntertainmentItemDatastore.TITLE_PREFIXES_BACKFILLED_PROPERTY_KEY, "true");
+    String[] titles = {"Star Trek", "Shrek", "Star Wars", "Stardust", "Alien"};
+
+    for (int i = 0; i < titles.length; i++) {
+      entertainmentItemDatastore.addItemToDatastore(new EntertainmentItem.Builder()
+                                                        .setTitle(titles[i])
+                                                        .setReleaseDate(
+                                                            RELASE_DATE_IN_DESCENDING_ORDER[i])
+                                                        .build());
+    }
+
+    EntertainmentItemList firstPage = entertainmentItemDatastore.queryItemsByReleaseDate(
+        FetchOptions.Builder.withLimit(2), "STAR", SortDirection.DESCENDING);
+    EntertainmentItemList secondPage = entertainmentItemDatastore.queryItemsByReleaseDate(
+        FetchOptions.Builder.withLimit(2).startCursor(
+            Cursor.fromWebSafeString(firstPage.getPageCursor())),
+        "STAR", SortDirection.DESCENDING);
+
+    Assert.assertEquals(Arrays.asList("Star Trek", "Star Wars"), getTitles(firstPage));
+    Assert.assertEquals(Arrays.asList("Stardust"), getTitles(secondPage));
+  }
+
+  @Test
+  public void queryWithRecentReleaseDateAndLongTitlePrefix_OnlyMatchingItemsAreReturned() {
+    System.setProperty(EntertainmentItemDatastore.TITLE_PREFIXES_BACKFILLED_PROPERTY_KEY, "true");
+    String sharedPrefix = "The Lord of the Rings The Return of the King";
+    String[] titles = {sharedPrefix + " Extended", "The Lord of the Rings The Return of the Ring",
+        sharedPrefix, "The Lord of the Rings The Return of Sauron"};
+
+    for (int i = 0; i < titles.length; i++) {
+      entertainmentItemDatastore.addItemToDatastore(new EntertainmentItem.Builder()
+                                                        .setTitle(titles[i])
+                                                        .setReleaseDate(
+                                                            RELASE_DATE_IN_DESCENDING_ORDER[i])
+                                                        .build());
+    }
+
+    EntertainmentItemDatastore.PrefixQueryStats initialStats =
+        entertainmentItemDatastore.getPrefixQueryStats();
+    EntertainmentItemList itemList = entertainmentItemDatastore.queryItemsByReleaseDate(
+        FetchOptions.Builder.withLimit(10), sharedPrefix, SortDirection.DESCENDING);
+    EntertainmentItemDatastore.PrefixQueryStats stats =
+        entertainmentItemDatastore.getPrefixQueryStats();
+
+    Assert.assertEquals(Arrays.asList(titles[0], titles[2]), getTitles(itemList));
+    Assert.assertEquals(1, stats.getQueryCount() - initialStats.getQueryCount());
+    Assert.assertEquals(4, stats.getScannedEntities() - initialStats.getScannedEntities());
+    Assert.assertEquals(2, stats.getReturnedEntities() - initialStats.getReturnedEntities());
+  }
+
+  @Test
+  public void queryWithRecentReleaseDateBeforeNormalizeTitles_LegacyItemsAreFoundByTitle() {
+    Entity legacyEntity = new Entity(ENTERTAINMENT_ITEM_KIND);
+    legacyEntity.setProperty(DISPLAY_TITLE_PROPERTY_KEY, "Star Wars");
+    legacyEntity.setProperty(NORMALIZED_TITLE_PROPERTY_KEY, "star wars");
+    legacyEntity.setProperty(
+        RELEASE_DATE_TIMESTAMP_MILLIS_PROPERTY_KEY, RELEASE_DATE_TIMESTAMP_MILLIS);
+    datastoreService.put(legacyEntity);
+    entertainmentItemDatastore.addItemToDatastore(
+        new EntertainmentItem.Builder().setTitle("Star Trek").setReleaseDate(RELEASE_DATE).build());
+
+    Assert.assertEquals(Arrays.asList("Star Trek", "Star Wars"),
+        getTitles(entertainmentItemDatastore.queryItemsByReleaseDate(
+            FetchOptions.Builder.withDefaults(), "star", SortDirection.DESCENDING)));
+  }
+
+  @Test
+  public void queryWithRecentReleaseDateAfterNormalizeTitles_LegacyItemsAreFound() {
+    System.setProperty(EntertainmentItemDatastore.TITLE_PREFIXES_BACKFILLED_PROPERTY_KEY, "true");
+    Entity legacyEntity = new Entity(ENTERTAINMENT_ITEM_KIND);
+    legacyEntity.setProperty(DISPLAY_TITLE_PROPERTY_KEY, "Star Wars");
+    legacyEntity.setProperty(NORMALIZED_TITLE_PROPERTY_KEY, "star wars");
+    legacyEntity.setProperty(
+        RELEASE_DATE_TIMESTAMP_MILLIS_PROPERTY_KEY, RELEASE_DATE_TIMESTAMP_MILLIS);
+    datastoreService.put(legacyEntity);
+
+    Assert.assertEquals(1, entertainmentItemDatastore.normalizeTitles());
+    Assert.assertEquals(Arrays.asList("Star Wars"),
+        getTitles(entertainmentItemDatastore.queryItemsByReleaseDate(
+            FetchOptions.Builder.withDefaults(), "star w", SortDirection.DESCENDING)));
+    Assert.assertEquals(0, entertainmentItemDatastore.normalizeTitles());
+  }
+
+  @Test
+  public void queryExistentItemTwice_SecondQueryIsServedFromCache() {
+    Key itemKey = entertainmentItemDatastore.addItemToDatastore(
+        new EntertainmentItem.Builder().setTitle(TITLES_IN_ASCENDING_ORDER[0]).build());
+    long initialHitCount = entertainmentItemDatastore.getItemCacheStats().hitCount();
+
+    entertainmentItemDatastore.queryItem(itemKey.getId());
+
+    // Deleting the entity proves the second query doesn't reach Datastore.
+    datastoreService.delete(itemKey);
+
+    Optional<EntertainmentItem> item = entertainmentItemDatastore.queryItem(itemKey.getId());
+
+    Assert.assertTrue(item.isPresent());
+    Assert.assertEquals(TITLES_IN_ASCENDING_ORDER[0], item.get().getTitle());
+    Assert.assertEquals(
+        initialHitCount + 1, entertainmentItemDatastore.getItemCacheStats().hitCount());
+  }
+
+  @Test
+  public void queryNonExistentItemTwice_MissesAreNotCached() {
+    long initialMissCount = entertainmentItemDatastore.getItemCacheStats().missCount();
+
+    entertainmentItemDatastore.queryItem(/* Non-Existent Id */ 23114121);
+    entertainmentItemDatastore.queryItem(/* Non-Existent Id */ 23114121);
+
+    Assert.assertEquals(
+        initialMissCount + 2, entertainmentItemDatastore.getItemCacheStats().missCount());
+  }
+
+  @Test
+  public void invalidateItemCache_ItemIsQueriedFromDatastoreAgain() {
+    Entity itemEntity = new Entity(ENTERTAINMENT_ITEM_KIND);
+    datastoreService.put(itemEntity);
+
+    entertainmentItemDatastore.queryItem(itemEntity.getKey().getId());
+    datastoreService.delete(itemEntity.getKey());
+    entertainmentItemDatastore.invalidateItemCache();
+
+    Assert.assertFalse(
+        entertainmentItemDatastore.queryItem(itemEntity.getKey().getId()).isPresent());
+  }
+
+  @Test
+  public void queryItemsByIdWithExistentAndNonExistentIds_MapOnlyHasExistentItems() {
+    Key firstKey = entertainmentItemDatastore.addItemToDatastore(
+        new EntertainmentItem.Builder().setTitle(TITLES_IN_ASCENDING_ORDER[0]).build());
+    Key secondKey = entertainmentItemDatastore.addItemToDatastore(
+        new EntertainmentItem.Builder().setTitle(TITLES_IN_ASCENDING_ORDER[1]).build());
+
+    Map<Long, EntertainmentItem> items = entertainmentItemDatastore.queryItemsById(
+        Arrays.asList(firstKey.getId(), /* Non-Existent Id */ 23114121L, secondKey.getId()));
+
+    Assert.assertEquals(2, items.size());
+    Assert.assertEquals(TITLES_IN_ASCENDING_ORDER[0], items.get(firstKey.getId()).getTitle());
+    Assert.assertEquals(TITLES_IN_ASCENDING_ORDER[1], items.get(secondKey.getId()).getTitle());
+  }
+
+  @Test
+  public void queryItemsByIdWithCachedItem_CachedItemIsIncluded() {
+    Key itemKey = entertainmentItemDatastore.addItemToDatastore(
+        new EntertainmentItem.Builder().setTitle(TITLES_IN_ASCENDING_ORDER[0]).build());
+
+    entertainmentItemDatastore.queryItem(itemKey.getId());
+    datastoreService.delete(itemKey);
+
+    Assert.assertTrue(entertainmentItemDatastore.queryItemsById(Arrays.asList(itemKey.getId()))
+                          .containsKey(itemKey.getId()));
+  }
+
+  @Test
+  public void queryItemsWithNonExistentIds_ListKeepsInputOrderAndSkipsMissingIds() {
+    Long[] ids = new Long[TITLES_IN_ASCENDING_ORDER.length];
+
+    for (int i = 0; i < TITLES_IN_ASCENDING_ORDER.length; i++) {
+      ids[i] = entertainmentItemDatastore
+                   .addItemToDatastore(new EntertainmentItem.Builder()
+                                           .setTitle(TITLES_IN_ASCENDING_ORDER[i])
+                                           .build())
+                   .getId();
+    }
+
+    List<EntertainmentItem> items = entertainmentItemDatastore.queryItems(
+        Arrays.asList(ids[3], /* Non-Existent Id */ 23114121L, ids[0], ids[4]));
+
+    Assert.assertEquals(3, items.size());
+    Assert.assertEquals(TITLES_IN_ASCENDING_ORDER[3], items.get(0).getTitle());
+    Assert.assertEquals(TITLES_IN_ASCENDING_ORDER[0], items.get(1).getTitle());
+    Assert.assertEquals(TITLES_IN_ASCENDING_ORDER[4], items.get(2).getTitle());
+  }
+
+  @Test
+  public void queryItemsWithMoreIdsThanSingleBatch_AllItemsAreFound() {
+    final int itemsAdded = 1200;
+    List<Long> ids = new ArrayList<>();
+
+    for (int i = 0; i < itemsAdded; i++) {
+      Entity itemEntity = new Entity(ENTERTAINMENT_ITEM_KIND);
+      datastoreService.put(itemEntity);
+      ids.add(itemEntity.getKey().getId());
+    }
+
+    Assert.assertEquals(itemsAdded, entertainmentItemDatastore.queryItems(ids).size());
+  }
+
+  private static List<String> getTitles(EntertainmentItemList itemList) {
+    List<String> titles = new ArrayList<>();
+
+    for (EntertainmentItem item : itemList.getItems()) {
+      titles.add(item.getTitle());
+    }
+
+    return titles;
+  }
 }
@@ -8,9 +8,15 @@ import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
-import java.util.Set;
-import java.util.List;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.ehub.utility.BackgroundTaskScheduler;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -35,10 +41,12 @@ public class FavoriteItemDatastoreTest {
   @Before
   public void init() {
     helper.setUp();
+    favoriteItemDatastore.invalidateCachedLikeCounts();
   }
 
   @After
   public void tearDown() {
+    BackgroundTaskScheduler.getInstance().cancelPendingLocalTasks();
     helper.tearDown();
   }
 
@@ -57,12 +65,7 @@ public class FavoriteItemDatastoreTest {
 
   @Test
   public void addFavoriteItemToDatastoreWithDuplicateItems_onlyOneEntityGetsAdded() {
-    Entity favoriteItemEntity = new Entity(FAVORITE_ITEM_KIND);
-    favoriteItemEntity.setProperty(USER_EMAIL_PROPERTY_KEY, USER_EMAIL);
-    favoriteItemEntity.setProperty(ITEM_ID_PROPERTY_KEY, ITEM_ID);
-
-    datastoreService.put(favoriteItemEntity);
-
+    favoriteItemDatastore.addFavoriteItem(USER_EMAIL, ITEM_ID);
     favoriteItemDatastore.addFavoriteItem(USER_EMAIL, ITEM_ID);
 
     Query query = new Query(FAVORITE_ITEM_KIND);
@@ -74,11 +77,7 @@ public class FavoriteItemDatastoreTest {
 
   @Test
   public void removeFavoriteItemFromDatastore_entityGetsDeleted() {
-    Entity favoriteItemEntity = new Entity(FAVORITE_ITEM_KIND);
-    favoriteItemEntity.setProperty(USER_EMAIL_PROPERTY_KEY, USER_EMAIL);
-    favoriteItemEntity.setProperty(ITEM_ID_PROPERTY_KEY, ITEM_ID);
-
-    datastoreService.put(favoriteItemEntity);
+    favoriteItemDatastore.addFavoriteItem(USER_EMAIL, ITEM_ID);
 
     favoriteItemDatastore.removeFavoriteItem(USER_EMAIL, ITEM_ID);
 
@@ -108,6 +107,92 @@ public class FavoriteItemDatastoreTest {
     Assert.assertTrue(actualIds.equals(favoriteIds));
   }
 
+  @Test
+  public void addAndRemoveFavoriteItems_relatedItemsAreUpdated() {
+    RelatedItemDatastore relatedItemDatastore = RelatedItemDatastore.getInstance();
+
+    favoriteItemDatastore.addFavoriteItem(USER_EMAIL, 1L);
+    favoriteItemDatastore.addFavoriteItem(USER_EMAIL, 2L);
+    favoriteItemDatastore.addFavoriteItem(USER_EMAIL, 3L);
+    favoriteItemDatastore.addFavoriteItem("eric@gmail.com", 1L);
+    favoriteItemDatastore.addFavoriteItem("eric@gmail.com", 3L);
+
+    Assert.assertTrue(relatedItemDatastore.queryRelatedItemIds(1L).isEmpty());
+    Assert.assertEquals(2, BackgroundTaskScheduler.getInstance().runPendingLocalTasks());
+    Assert.assertEquals(Arrays.asList(3L, 2L), relatedItemDatastore.queryRelatedItemIds(1L));
+
+    favoriteItemDatastore.removeFavoriteItem(USER_EMAIL, 1L);
+    BackgroundTaskScheduler.getInstance().runPendingLocalTasks();
+
+    Assert.assertEquals(Arrays.asList(3L), relatedItemDatastore.queryRelatedItemIds(1L));
+    Assert.assertEquals(Arrays.asList(3L), relatedItemDatastore.queryRelatedItemIds(2L));
+  }
+
+  @Test
+  public void addAndRemoveFavoriteItemsBetweenUpdates_recommendationDataMatchesRebuild() {
+    RelatedItemDatastore relatedItemDatastore = RelatedItemDatastore.getInstance();
+    UserSimilarityDatastore userSimilarityDatastore = UserSimilarityDatastore.getInstance();
+
+    favoriteItemDatastore.addFavoriteItem(USER_EMAIL, 1L);
+    favoriteItemDatastore.addFavoriteItem(USER_EMAIL, 2L);
+    favoriteItemDatastore.addFavoriteItem("eric@gmail.com", 1L);
+    BackgroundTaskScheduler.getInstance().runPendingLocalTasks();
+
+    // Every change of a user between two updates is applied once by the next update.
+    favoriteItemDatastore.addFavoriteItem(USER_EMAIL, 3L);
+    favoriteItemDatastore.removeFavoriteItem(USER_EMAIL, 2L);
+    favoriteItemDatastore.addFavoriteItem(USER_EMAIL, 4L);
+    favoriteItemDatastore.addFavoriteItem("eric@gmail.com", 3L);
+    favoriteItemDatastore.addFavoriteItem("eric@gmail.com", 2L);
+    favoriteItemDatastore.removeFavoriteItem("eric@gmail.com", 2L);
+    BackgroundTaskScheduler.getInstance().runPendingLocalTasks();
+
+    List<List<Long>> relatedItemIds = new ArrayList<>();
+
+    for (Long itemId = 1L; itemId <= 4; itemId++) {
+      relatedItemIds.add(relatedItemDatastore.queryRelatedItemIds(itemId));
+    }
+
+    Assert.assertEquals(Arrays.asList(Arrays.asList(3L, 4L), Arrays.asList(),
+                            Arrays.asList(1L, 4L), Arrays.asList(1L, 3L)),
+        relatedItemIds);
+    Assert.assertEquals(Arrays.asList("eric@gmail.com"),
+        userSimilarityDatastore.queryMostSimilarEmails(USER_EMAIL, 10));
+
+    favoriteItemDatastore.rebuildRelatedItems();
+    favoriteItemDatastore.rebuildUserSimilarities();
+
+    for (int i = 0; i < relatedItemIds.size(); i++) {
+      Assert.assertEquals(relatedItemIds.get(i), relatedItemDatastore.queryRelatedItemIds(i + 1L));
+    }
+
+    // A rebuild leaves nothing for the next update to apply.
+    favoriteItemDatastore.updateRecommendationData(USER_EMAIL);
+
+    Assert.assertEquals(Arrays.asList(3L, 4L), relatedItemDatastore.queryRelatedItemIds(1L));
+  }
+
+  @Test
+  public void addFavoriteItemAfterRebuild_likersStoredByRebuildAreCounted() {
+    UserSimilarityDatastore userSimilarityDatastore = UserSimilarityDatastore.getInstance();
+    favoriteItemDatastore.addFavoriteItem(USER_EMAIL, ITEM_ID);
+    BackgroundTaskScheduler.getInstance().cancelPendingLocalTasks();
+    favoriteItemDatastore.rebuildUserSimilarities();
+
+    favoriteItemDatastore.addFavoriteItem("eric@gmail.com", ITEM_ID);
+    BackgroundTaskScheduler.getInstance().runPendingLocalTasks();
+
+    Assert.assertEquals(Arrays.asList(USER_EMAIL),
+        userSimilarityDatastore.queryMostSimilarEmails("eric@gmail.com", 10));
+
+    // Applying the same favorites again changes nothing.
+    favoriteItemDatastore.updateRecommendationData("eric@gmail.com");
+    favoriteItemDatastore.rebuildUserSimilarities();
+
+    Assert.assertEquals(Arrays.asList("eric@gmail.com"),
+        userSimilarityDatastore.queryMostSimilarEmails(USER_EMAIL, 10));
+  }
+
   @Test
   public void queryEmailsWithNonExistemItemId_setIsEmpty() {
     Assert.assertTrue(favoriteItemDatastore.queryEmails(ITEM_ID).isEmpty());
@@ -129,4 +214,116 @@ public class FavoriteItemDatastoreTest {
 
     Assert.assertTrue(actualEmails.equals(emails));
   }
+
+  @Test
+  public void doesFavoriteItemExist_onlyTrueForAddedFavoriteItems() {
+    favoriteItemDatastore.addFavoriteItem(USER_EMAIL, ITEM_ID);
+
+    Assert.assertTrue(favoriteItemDatastore.doesFavoriteItemExist(USER_EMAIL, ITEM_ID));
+    Assert.assertFalse(favoriteItemDatastore.doesFavoriteItemExist(USER_EMAIL, ITEM_ID + 1));
+    Assert.assertFalse(favoriteItemDatastore.doesFavoriteItemExist("a" + USER_EMAIL, ITEM_ID));
+  }
+
+  @Test
+  public void migrateLegacyFavoriteItems_entitiesGetRewrittenWithDerivedKeys() {
+    for (Long itemId = 0L; itemId < 5; itemId++) {
+      Entity favoriteItemEntity = new Entity(FAVORITE_ITEM_KIND);
+      favoriteItemEntity.setProperty(USER_EMAIL_PROPERTY_KEY, USER_EMAIL);
+      favoriteItemEntity.setProperty(ITEM_ID_PROPERTY_KEY, itemId);
+
+      datastoreService.put(favoriteItemEntity);
+    }
+
+    // Duplicates one of the legacy Entities, which should be merged by the migration.
+    favoriteItemDatastore.addFavoriteItem(USER_EMAIL, ITEM_ID);
+
+    Assert.assertEquals(5, favoriteItemDatastore.migrateLegacyFavoriteItems());
+
+    List<Entity> entityList = datastoreService.prepare(new Query(FAVORITE_ITEM_KIND))
+                                  .asList(FetchOptions.Builder.withDefaults());
+
+    Assert.assertEquals(5, entityList.size());
+
+    for (Entity entity : entityList) {
+      Assert.assertNotNull(entity.getKey().getName());
+    }
+
+    favoriteItemDatastore.removeFavoriteItem(USER_EMAIL, 3L);
+
+    Assert.assertFalse(favoriteItemDatastore.queryFavoriteIds(USER_EMAIL).contains(3L));
+    Assert.assertEquals(0, favoriteItemDatastore.migrateLegacyFavoriteItems());
+  }
+
+  @Test
+  public void queryLikeCountWithDuplicateAddsAndRemoves_countOnlyTracksActualChanges() {
+    favoriteItemDatastore.addFavoriteItem(USER_EMAIL, ITEM_ID);
+    favoriteItemDatastore.addFavoriteItem(USER_EMAIL, ITEM_ID);
+    favoriteItemDatastore.addFavoriteItem("a" + USER_EMAIL, ITEM_ID);
+    favoriteItemDatastore.removeFavoriteItem("b" + USER_EMAIL, ITEM_ID);
+
+    Assert.assertEquals(2, favoriteItemDatastore.queryLikeCount(ITEM_ID));
+
+    favoriteItemDatastore.removeFavoriteItem(USER_EMAIL, ITEM_ID);
+    favoriteItemDatastore.removeFavoriteItem(USER_EMAIL, ITEM_ID);
+
+    Assert.assertEquals(1, favoriteItemDatastore.queryLikeCount(ITEM_ID));
+    Assert.assertEquals(0, favoriteItemDatastore.queryLikeCount(ITEM_ID + 1));
+  }
+
+  @Test
+  public void recountLikesWithLegacyFavoriteItems_countsMatchFavoriteItems() {
+    for (int i = 0; i < 3; i++) {
+      Entity favoriteItemEntity = new Entity(FAVORITE_ITEM_KIND);
+      favoriteItemEntity.setProperty(USER_EMAIL_PROPERTY_KEY, USER_EMAIL + i);
+      favoriteItemEntity.setProperty(ITEM_ID_PROPERTY_KEY, ITEM_ID);
+
+      datastoreService.put(favoriteItemEntity);
+    }
+
+    favoriteItemDatastore.addFavoriteItem(USER_EMAIL, ITEM_ID + 1);
+
+    Assert.assertEquals(0, favoriteItemDatastore.queryLikeCount(ITEM_ID));
+    Assert.assertEquals(2, favoriteItemDatastore.recountLikes());
+    Assert.assertEquals(3, favoriteItemDatastore.queryLikeCount(ITEM_ID));
+    Assert.assertEquals(1, favoriteItemDatastore.queryLikeCount(ITEM_ID + 1));
+  }
+
+  @Test
+  public void queryLikeCountsWithManyItems_mapHasCountOfEveryItem() {
+    favoriteItemDatastore.addFavoriteItem(USER_EMAIL, ITEM_ID);
+    favoriteItemDatastore.addFavoriteItem("a" + USER_EMAIL, ITEM_ID);
+    favoriteItemDatastore.addFavoriteItem(USER_EMAIL, ITEM_ID + 1);
+
+    Map<Long, Long> likeCounts =
+        favoriteItemDatastore.queryLikeCounts(Arrays.asList(ITEM_ID, ITEM_ID + 1, ITEM_ID + 2));
+
+    Assert.assertEquals(ImmutableMap.of(ITEM_ID, 2L, ITEM_ID + 1, 1L, ITEM_ID + 2, 0L), likeCounts);
+  }
+
+  @Test
+  public void queryEmailsWithManyItems_mapHasLikersOfEveryItem() {
+    // Enough items to need several IN queries and more than one group of concurrent queries.
+    int numItems = 350;
+
+    for (long itemId = 0; itemId < numItems; itemId++) {
+      favoriteItemDatastore.addFavoriteItem(USER_EMAIL, itemId);
+
+      if (itemId % 2 == 0) {
+        favoriteItemDatastore.addFavoriteItem("a" + USER_EMAIL, itemId);
+      }
+    }
+
+    List<Long> itemIds = new ArrayList<>();
+
+    for (long itemId = 0; itemId <= numItems; itemId++) {
+      itemIds.add(itemId);
+    }
+
+    Map<Long, Set<String>> emailsByItemId = favoriteItemDatastore.queryEmails(itemIds);
+
+    Assert.assertEquals(numItems + 1, emailsByItemId.size());
+    Assert.assertEquals(ImmutableSet.of(USER_EMAIL, "a" + USER_EMAIL), emailsByItemId.get(0L));
+    Assert.assertEquals(ImmutableSet.of(USER_EMAIL), emailsByItemId.get(1L));
+    Assert.assertEquals(ImmutableSet.of(), emailsByItemId.get((long) numItems));
+  }
 }
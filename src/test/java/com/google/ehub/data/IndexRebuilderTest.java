@@ -0,0 +1,97 @@
+package com.google.ehub.data;
+
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class IndexRebuilderTest {
+  private static final long MAX_INDEX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+  private static final long TIMEOUT_SECONDS = 10;
+
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper();
+
+  @Before
+  public void init() {
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void rebuildIfStale_rebuildRunsInCallingThread() {
+    Thread[] rebuildThread = new Thread[1];
+    IndexRebuilder[] rebuilder = new IndexRebuilder[1];
+
+    rebuilder[0] = new IndexRebuilder("testIndex", MAX_INDEX_AGE_MILLIS, () -> {
+      rebuildThread[0] = Thread.currentThread();
+      rebuilder[0].markBuilt();
+    });
+
+    rebuilder[0].rebuildIfStale();
+
+    Assert.assertEquals(Thread.currentThread(), rebuildThread[0]);
+  }
+
+  @Test
+  public void rebuildIfStaleWhileRebuilding_onlyOneRebuildRuns() throws InterruptedException {
+    CountDownLatch rebuildStarted = new CountDownLatch(1);
+    CountDownLatch rebuildReleased = new CountDownLatch(1);
+    AtomicInteger rebuildCount = new AtomicInteger();
+    IndexRebuilder[] rebuilder = new IndexRebuilder[1];
+
+    rebuilder[0] = new IndexRebuilder("testIndex", MAX_INDEX_AGE_MILLIS, () -> {
+      rebuildCount.incrementAndGet();
+      rebuildStarted.countDown();
+      awaitUninterruptibly(rebuildReleased);
+      rebuilder[0].markBuilt();
+    });
+
+    Thread rebuildingRequest = new Thread(() -> rebuilder[0].rebuildIfStale());
+    rebuildingRequest.start();
+    Assert.assertTrue(rebuildStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+    // The index is still stale, but this request keeps the current index instead of waiting.
+    rebuilder[0].rebuildIfStale();
+    rebuildReleased.countDown();
+    rebuildingRequest.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+
+    // The rebuilt index is fresh.
+    rebuilder[0].rebuildIfStale();
+
+    Assert.assertFalse(rebuildingRequest.isAlive());
+    Assert.assertEquals(1, rebuildCount.get());
+  }
+
+  @Test
+  public void rebuildIfStaleAfterFailedRebuild_rebuildIsNotRetriedRightAway() {
+    AtomicInteger rebuildCount = new AtomicInteger();
+    IndexRebuilder rebuilder = new IndexRebuilder("testIndex", MAX_INDEX_AGE_MILLIS, () -> {
+      rebuildCount.incrementAndGet();
+      throw new IllegalStateException("Datastore is unavailable");
+    });
+
+    rebuilder.rebuildIfStale();
+    rebuilder.rebuildIfStale();
+
+    Assert.assertEquals(1, rebuildCount.get());
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    try {
+      latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
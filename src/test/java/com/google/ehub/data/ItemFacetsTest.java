@@ -0,0 +1,68 @@
+package com.google.ehub.data;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.ehub.data.ItemFacets.Facet;
+import com.google.ehub.data.ItemFacets.RuntimeRange;
+import com.google.ehub.utility.Utils;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ItemFacetsTest {
+  private static final String RELEASE_DATE_FORMAT = "dd MMM yyyy";
+
+  @Test
+  public void createWithOmdbValues_facetsAreExtracted() {
+    ItemFacets itemFacets = ItemFacets.create(" Action,Adventure, Sci-Fi,Action ",
+        Utils.getTimestampMillisFromDate("25 May 1977", RELEASE_DATE_FORMAT), "121 min");
+
+    Assert.assertEquals(Arrays.asList("Action", "Adventure", "Sci-Fi"), itemFacets.getGenres());
+    Assert.assertEquals(Long.valueOf(1977), itemFacets.getReleaseYear());
+    Assert.assertEquals(Long.valueOf(121), itemFacets.getRuntimeMinutes());
+    Assert.assertEquals(RuntimeRange.LONG, itemFacets.getRuntimeRange());
+  }
+
+  @Test
+  public void createWithMissingValues_facetsAreUnknown() {
+    ItemFacets itemFacets = ItemFacets.create("N/A", null, "N/A");
+
+    Assert.assertEquals(Collections.emptyList(), itemFacets.getGenres());
+    Assert.assertNull(itemFacets.getReleaseYear());
+    Assert.assertNull(itemFacets.getRuntimeMinutes());
+    Assert.assertNull(itemFacets.getRuntimeRange());
+    Assert.assertEquals(ImmutableMap.of(Facet.GENRE, Collections.emptyList(),
+                            Facet.RELEASE_YEAR, Collections.emptyList(),
+                            Facet.RUNTIME_RANGE, Collections.emptyList()),
+        itemFacets.getFacetValues());
+  }
+
+  @Test
+  public void getRuntimeRangeAtBoundaries_rangesAreInclusive() {
+    Assert.assertEquals(
+        RuntimeRange.SHORT, ItemFacets.create(null, null, "89 min").getRuntimeRange());
+    Assert.assertEquals(
+        RuntimeRange.MEDIUM, ItemFacets.create(null, null, "90 min").getRuntimeRange());
+    Assert.assertEquals(
+        RuntimeRange.MEDIUM, ItemFacets.create(null, null, "120 min").getRuntimeRange());
+    Assert.assertEquals(
+        RuntimeRange.LONG, ItemFacets.create(null, null, "121 min").getRuntimeRange());
+    Assert.assertNull(ItemFacets.create(null, null, "2 hours").getRuntimeRange());
+  }
+
+  @Test
+  public void matchesWithFacetFilters_everyFilterNeedsToMatch() {
+    ItemFacets itemFacets = ItemFacets.create("Comedy, Drama",
+        Utils.getTimestampMillisFromDate("25 Apr 2001", RELEASE_DATE_FORMAT), "122 min");
+
+    Assert.assertTrue(itemFacets.matches(Collections.emptyMap()));
+    Assert.assertTrue(
+        itemFacets.matches(ImmutableMap.of(Facet.GENRE, "Drama", Facet.RELEASE_YEAR, "2001")));
+    Assert.assertFalse(
+        itemFacets.matches(ImmutableMap.of(Facet.GENRE, "Drama", Facet.RUNTIME_RANGE, "SHORT")));
+    Assert.assertFalse(itemFacets.matches(ImmutableMap.of(Facet.GENRE, "drama")));
+  }
+}
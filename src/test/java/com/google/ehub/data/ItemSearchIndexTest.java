@@ -0,0 +1,129 @@
+package com.google.ehub.data;
+
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.ehub.data.ItemSearchIndex.SearchResult;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ItemSearchIndexTest {
+  private static final String ENTERTAINMENT_ITEM_KIND = "entertainmentItem";
+  private static final String DISPLAY_TITLE_PROPERTY_KEY = "displayTitle";
+  private static final String GENRE_PROPERTY_KEY = "genre";
+
+  private final ItemSearchIndex searchIndex = ItemSearchIndex.getInstance();
+  private final EntertainmentItemDatastore itemDatastore = EntertainmentItemDatastore.getInstance();
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Before
+  public void init() {
+    helper.setUp();
+    itemDatastore.invalidateItemCache();
+    searchIndex.rebuild();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void searchWordInMiddleOfTitle_itemIsFound() {
+    long itemId = addItem(new EntertainmentItem.Builder().setTitle("The Matrix").build());
+
+    Assert.assertEquals(Arrays.asList(itemId), search("Matrix"));
+  }
+
+  @Test
+  public void searchPrefixOfLastWord_itemsWithWordsStartingWithPrefixAreFound() {
+    long itemId = addItem(new EntertainmentItem.Builder().setTitle("The Matrix").build());
+    addItem(new EntertainmentItem.Builder().setTitle("Mad Max").build());
+
+    Assert.assertEquals(Arrays.asList(itemId), search("the mat"));
+  }
+
+  @Test
+  public void searchSeveralWords_onlyItemsWithEveryWordAreFound() {
+    long bothId = addItem(new EntertainmentItem.Builder()
+                              .setTitle("Star Wars")
+                              .setDirectors("George Lucas")
+                              .build());
+    addItem(new EntertainmentItem.Builder().setTitle("Star Trek").build());
+    addItem(new EntertainmentItem.Builder().setTitle("American Graffiti")
+                .setDirectors("George Lucas")
+                .build());
+
+    Assert.assertEquals(Arrays.asList(bothId), search("star lucas"));
+  }
+
+  @Test
+  public void searchWordInDifferentFields_titleMatchesRankFirst() {
+    long genreId = addItem(
+        new EntertainmentItem.Builder().setTitle("Alien").setGenre("Horror, Drama").build());
+    long actorId = addItem(
+        new EntertainmentItem.Builder().setTitle("Speed").setActors("Drama Queen").build());
+    long titleId = addItem(new EntertainmentItem.Builder().setTitle("Drama").build());
+
+    Assert.assertEquals(Arrays.asList(titleId, actorId, genreId), search("drama"));
+  }
+
+  @Test
+  public void searchWithEqualScores_itemsAreOrderedByTitle() {
+    long secondId = addItem(new EntertainmentItem.Builder().setTitle("Zodiac").setGenre("Crime")
+                                .build());
+    long firstId = addItem(new EntertainmentItem.Builder().setTitle("Heat").setGenre("Crime")
+                               .build());
+
+    Assert.assertEquals(Arrays.asList(firstId, secondId), search("crime"));
+  }
+
+  @Test
+  public void searchWithOffsetAndLimit_pageOfRankedItemsIsReturned() {
+    for (int item = 0; item < 5; item++) {
+      addItem(new EntertainmentItem.Builder().setTitle("Movie " + item).build());
+    }
+
+    SearchResult searchResult = searchIndex.search("movie", 3, 10);
+
+    Assert.assertEquals(5, searchResult.getTotalCount());
+    Assert.assertEquals(2, searchResult.getItemIds().size());
+  }
+
+  @Test
+  public void searchWithoutWords_noItemsAreFound() {
+    addItem(new EntertainmentItem.Builder().setTitle("The Matrix").build());
+
+    Assert.assertEquals(Collections.emptyList(), search(" ,. "));
+  }
+
+  @Test
+  public void rebuildIndex_itemsStoredWithoutDatastoreClassAreFound() {
+    Entity itemEntity = new Entity(ENTERTAINMENT_ITEM_KIND);
+    itemEntity.setProperty(DISPLAY_TITLE_PROPERTY_KEY, "Blade Runner");
+    itemEntity.setProperty(GENRE_PROPERTY_KEY, "Sci-Fi");
+    long itemId = DatastoreServiceFactory.getDatastoreService().put(itemEntity).getId();
+
+    Assert.assertEquals(Collections.emptyList(), search("runner"));
+    Assert.assertEquals(1, searchIndex.rebuild());
+    Assert.assertEquals(Arrays.asList(itemId), search("sci fi"));
+  }
+
+  private long addItem(EntertainmentItem item) {
+    return itemDatastore.addItemToDatastore(item).getId();
+  }
+
+  private List<Long> search(String query) {
+    return searchIndex.search(query, 0, 10).getItemIds();
+  }
+}
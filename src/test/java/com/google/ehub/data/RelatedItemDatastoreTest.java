@@ -0,0 +1,195 @@
+package com.google.ehub.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RelatedItemDatastoreTest {
+  private static final String ITEM_COOCCURRENCE_KIND = "itemCooccurrence";
+  private static final String RELATED_ITEMS_KIND = "relatedItems";
+
+  private final RelatedItemDatastore relatedItemDatastore = RelatedItemDatastore.getInstance();
+  private final DatastoreService datastoreService = DatastoreServiceFactory.getDatastoreService();
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Before
+  public void init() {
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void queryRelatedItemIdsWithNoPairs_returnsEmptyList() {
+    Assert.assertTrue(relatedItemDatastore.queryRelatedItemIds(1L).isEmpty());
+  }
+
+  @Test
+  public void updateCooccurrences_relatedItemsAreStoredInBothDirections() {
+    relatedItemDatastore.updateCooccurrences(1L, Arrays.asList(2L, 3L), 1);
+
+    Assert.assertEquals(Arrays.asList(2L, 3L), relatedItemDatastore.queryRelatedItemIds(1L));
+    Assert.assertEquals(Arrays.asList(1L), relatedItemDatastore.queryRelatedItemIds(2L));
+    Assert.assertEquals(Arrays.asList(1L), relatedItemDatastore.queryRelatedItemIds(3L));
+  }
+
+  @Test
+  public void queryRelatedItemIds_returnsIdsInDescendingOrderOfCommonLikes() {
+    relatedItemDatastore.updateCooccurrences(1L, Arrays.asList(2L, 3L), 1);
+    relatedItemDatastore.updateCooccurrences(1L, Arrays.asList(3L), 1);
+
+    Assert.assertEquals(Arrays.asList(3L, 2L), relatedItemDatastore.queryRelatedItemIds(1L));
+  }
+
+  @Test
+  public void updateCooccurrencesToZero_entitiesAreDeleted() {
+    relatedItemDatastore.updateCooccurrences(1L, Arrays.asList(2L), 1);
+    relatedItemDatastore.updateCooccurrences(1L, Arrays.asList(2L), -1);
+
+    Assert.assertTrue(relatedItemDatastore.queryRelatedItemIds(1L).isEmpty());
+    Assert.assertEquals(0, datastoreService.prepare(new Query(ITEM_COOCCURRENCE_KIND))
+                               .countEntities(FetchOptions.Builder.withDefaults()));
+    Assert.assertEquals(0, datastoreService.prepare(new Query(RELATED_ITEMS_KIND))
+                               .countEntities(FetchOptions.Builder.withDefaults()));
+  }
+
+  @Test
+  public void updateCooccurrencesOfItemInFullList_itemsOutsideListCanTakeItsPlace() {
+    List<Long> otherItemIds = new ArrayList<>();
+
+    for (long itemId = 2; itemId < 2 + RelatedItemDatastore.NUM_RELATED_ITEMS; itemId++) {
+      otherItemIds.add(itemId);
+    }
+
+    long outsideItemId = 2 + RelatedItemDatastore.NUM_RELATED_ITEMS;
+    relatedItemDatastore.updateCooccurrences(1L, otherItemIds, 2);
+    relatedItemDatastore.updateCooccurrences(1L, Arrays.asList(outsideItemId), 1);
+
+    Assert.assertEquals(otherItemIds, relatedItemDatastore.queryRelatedItemIds(1L));
+
+    relatedItemDatastore.updateCooccurrences(1L, Arrays.asList(2L), -2);
+
+    List<Long> expectedItemIds = new ArrayList<>(otherItemIds.subList(1, otherItemIds.size()));
+    expectedItemIds.add(outsideItemId);
+
+    Assert.assertEquals(expectedItemIds, relatedItemDatastore.queryRelatedItemIds(1L));
+  }
+
+  @Test
+  public void updateCooccurrencesOfFullListWithStaleQueries_refillUsesWrittenCounts() {
+    helper.tearDown();
+
+    // Queries don't see the writes that were not followed by a get of the same Entity.
+    LocalServiceTestHelper staleQueryHelper =
+        new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig()
+                                       .setDefaultHighRepJobPolicyUnappliedJobPercentage(100));
+    staleQueryHelper.setUp();
+
+    try {
+      List<Long> otherItemIds = new ArrayList<>();
+
+      for (long itemId = 2; itemId < 2 + RelatedItemDatastore.NUM_RELATED_ITEMS; itemId++) {
+        otherItemIds.add(itemId);
+      }
+
+      relatedItemDatastore.updateCooccurrences(1L, otherItemIds, 2);
+      relatedItemDatastore.updateCooccurrences(1L, Arrays.asList(2L), -1);
+
+      List<Long> expectedItemIds = new ArrayList<>(otherItemIds.subList(1, otherItemIds.size()));
+      expectedItemIds.add(2L);
+
+      Assert.assertEquals(expectedItemIds, relatedItemDatastore.queryRelatedItemIds(1L));
+    } finally {
+      staleQueryHelper.tearDown();
+      helper.setUp();
+    }
+  }
+
+  @Test
+  public void updateCooccurrencesWithRandomLikes_relatedItemsMatchRecomputedRanking() {
+    Random random = new Random(/* seed */ 3);
+    Map<String, Set<Long>> favoriteIdsByEmail = new HashMap<>();
+
+    for (int update = 0; update < 300; update++) {
+      Set<Long> favoriteIds = favoriteIdsByEmail.computeIfAbsent(
+          "user" + random.nextInt(20), email -> new HashSet<>());
+      Long itemId = (long) random.nextInt(30);
+      boolean isFavorite = favoriteIds.add(itemId);
+
+      if (!isFavorite) {
+        favoriteIds.remove(itemId);
+      }
+
+      Set<Long> otherItemIds = new HashSet<>(favoriteIds);
+      otherItemIds.remove(itemId);
+      relatedItemDatastore.updateCooccurrences(itemId, otherItemIds, isFavorite ? 1 : -1);
+    }
+
+    for (long itemId = 0; itemId < 30; itemId++) {
+      Assert.assertEquals(getExpectedRelatedItemIds(favoriteIdsByEmail, itemId),
+          relatedItemDatastore.queryRelatedItemIds(itemId));
+    }
+  }
+
+  @Test
+  public void rebuildRelatedItems_storedEntitiesAreReplaced() {
+    relatedItemDatastore.updateCooccurrences(1L, Arrays.asList(5L), 3);
+
+    int rebuiltCount = relatedItemDatastore.rebuildRelatedItems(
+        ImmutableMap.of("bryan", ImmutableSet.of(1L, 2L), "eric", ImmutableSet.of(1L, 2L, 3L)));
+
+    // Pairs 1-2, 1-3 and 2-3 in both directions, and the related items of items 1, 2 and 3.
+    Assert.assertEquals(9, rebuiltCount);
+    Assert.assertEquals(Arrays.asList(2L, 3L), relatedItemDatastore.queryRelatedItemIds(1L));
+    Assert.assertEquals(Arrays.asList(1L, 2L), relatedItemDatastore.queryRelatedItemIds(3L));
+    Assert.assertEquals(Collections.emptyList(), relatedItemDatastore.queryRelatedItemIds(5L));
+  }
+
+  private static List<Long> getExpectedRelatedItemIds(
+      Map<String, Set<Long>> favoriteIdsByEmail, Long itemId) {
+    Map<Long, Long> commonLikes = new HashMap<>();
+
+    for (Set<Long> favoriteIds : favoriteIdsByEmail.values()) {
+      if (favoriteIds.contains(itemId)) {
+        for (Long otherItemId : favoriteIds) {
+          if (!otherItemId.equals(itemId)) {
+            commonLikes.merge(otherItemId, 1L, Long::sum);
+          }
+        }
+      }
+    }
+
+    List<Long> relatedItemIds = new ArrayList<>(commonLikes.keySet());
+    relatedItemIds.sort((first, second) -> commonLikes.get(first).equals(commonLikes.get(second))
+            ? Long.compare(first, second)
+            : Long.compare(commonLikes.get(second), commonLikes.get(first)));
+
+    return relatedItemIds.subList(
+        0, Math.min(RelatedItemDatastore.NUM_RELATED_ITEMS, relatedItemIds.size()));
+  }
+}
@@ -0,0 +1,107 @@
+package com.google.ehub.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableMap;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ShardedCounterTest {
+  private static final String SHARD_KIND = "testCounterShard";
+  private static final int NUM_SHARDS = 4;
+
+  private static final String FIRST_COUNTER = "first";
+  private static final String SECOND_COUNTER = "second";
+
+  private final DatastoreService datastoreService = DatastoreServiceFactory.getDatastoreService();
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  private ShardedCounter counter;
+
+  @Before
+  public void init() {
+    helper.setUp();
+    counter = new ShardedCounter(SHARD_KIND, NUM_SHARDS);
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void getCountOfUnusedCounter_returnsZero() {
+    Assert.assertEquals(0, counter.getCount(FIRST_COUNTER));
+  }
+
+  @Test
+  public void getCountsAfterIncrements_returnsSumOfAllShards() {
+    for (int i = 0; i < 25; i++) {
+      increment(FIRST_COUNTER, 2);
+    }
+
+    increment(SECOND_COUNTER, 1);
+    increment(SECOND_COUNTER, -1);
+    increment(SECOND_COUNTER, 1);
+
+    Assert.assertEquals(ImmutableMap.of(FIRST_COUNTER, 50L, SECOND_COUNTER, 1L, "third", 0L),
+        counter.getCounts(Arrays.asList(FIRST_COUNTER, SECOND_COUNTER, "third")));
+  }
+
+  @Test
+  public void getCountWithinCacheExpiration_returnsCachedValueUntilInvalidated() {
+    increment(FIRST_COUNTER, 1);
+    Assert.assertEquals(1, counter.getCount(FIRST_COUNTER));
+
+    Transaction transaction = datastoreService.beginTransaction();
+    counter.increment(transaction, FIRST_COUNTER, 1);
+    transaction.commit();
+
+    Assert.assertEquals(1, counter.getCount(FIRST_COUNTER));
+
+    counter.invalidateCachedCount(FIRST_COUNTER);
+
+    Assert.assertEquals(2, counter.getCount(FIRST_COUNTER));
+  }
+
+  @Test
+  public void setCount_overwritesEveryShard() {
+    for (int i = 0; i < 10; i++) {
+      increment(FIRST_COUNTER, 1);
+    }
+
+    counter.setCount(FIRST_COUNTER, 3);
+
+    Assert.assertEquals(3, counter.getCount(FIRST_COUNTER));
+  }
+
+  @Test
+  public void queryCounterNames_returnsEveryUpdatedCounterOnce() {
+    for (int i = 0; i < 10; i++) {
+      increment(SECOND_COUNTER, 1);
+    }
+
+    increment(FIRST_COUNTER, 1);
+
+    Assert.assertEquals(Arrays.asList(FIRST_COUNTER, SECOND_COUNTER), counter.queryCounterNames());
+    Assert.assertEquals(Arrays.asList(),
+        new ShardedCounter("otherCounterShard", NUM_SHARDS).queryCounterNames());
+  }
+
+  private void increment(String counterName, long delta) {
+    Transaction transaction = datastoreService.beginTransaction();
+    counter.increment(transaction, counterName, delta);
+    transaction.commit();
+    counter.invalidateCachedCount(counterName);
+  }
+}
@@ -0,0 +1,95 @@
+package com.google.ehub.data;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableSet;
+import com.google.ehub.utility.MinHashUtils;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class UserSignatureDatastoreTest {
+  private static final int MAX_CANDIDATES = 500;
+
+  private static final String BRYAN = "bryan@gmail.com";
+  private static final String ZOE = "zoe@gmail.com";
+
+  private static final Set<Long> FAVORITE_IDS = ImmutableSet.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L);
+
+  private final UserSignatureDatastore userSignatureDatastore =
+      UserSignatureDatastore.getInstance();
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Before
+  public void init() {
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void queryCandidatesWithMoreThanMaximum_keepsUsersSharingMostBands() {
+    Map<String, Set<Long>> favoriteIdsByEmail = new HashMap<>();
+
+    // Users whose keys sort first, and that share only some of the bands.
+    for (long itemId = 100; favoriteIdsByEmail.size() < MAX_CANDIDATES; itemId++) {
+      Set<Long> partialFavoriteIds = new HashSet<>(FAVORITE_IDS);
+      partialFavoriteIds.add(itemId);
+      int sharedBands = getSharedBands(FAVORITE_IDS, partialFavoriteIds);
+
+      if (sharedBands > 0 && sharedBands < MinHashUtils.NUM_BANDS) {
+        favoriteIdsByEmail.put(String.format("a%04d@gmail.com", itemId), partialFavoriteIds);
+      }
+    }
+
+    favoriteIdsByEmail.put(BRYAN, FAVORITE_IDS);
+    favoriteIdsByEmail.put(ZOE, FAVORITE_IDS);
+    userSignatureDatastore.rebuildSignatures(favoriteIdsByEmail);
+
+    List<String> candidateEmails = getEmails(
+        userSignatureDatastore.queryCandidates(userSignatureDatastore.querySignature(BRYAN).get()));
+
+    Assert.assertEquals(MAX_CANDIDATES, candidateEmails.size());
+    Assert.assertEquals(BRYAN, candidateEmails.get(0));
+    Assert.assertEquals(ZOE, candidateEmails.get(1));
+  }
+
+  private static int getSharedBands(Set<Long> favoriteIds, Set<Long> otherFavoriteIds) {
+    List<Long> bands = MinHashUtils.computeBands(MinHashUtils.computeSignature(favoriteIds));
+    List<Long> otherBands =
+        MinHashUtils.computeBands(MinHashUtils.computeSignature(otherFavoriteIds));
+    int sharedBands = 0;
+
+    for (int band = 0; band < bands.size(); band++) {
+      if (bands.get(band).equals(otherBands.get(band))) {
+        sharedBands++;
+      }
+    }
+
+    return sharedBands;
+  }
+
+  private static List<String> getEmails(List<UserSignature> signatures) {
+    List<String> emails = new ArrayList<>();
+
+    for (UserSignature signature : signatures) {
+      emails.add(signature.getEmail());
+    }
+
+    return emails;
+  }
+}
@@ -0,0 +1,119 @@
+package com.google.ehub.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class UserSimilarityDatastoreTest {
+  private static final String USER_SIMILARITY_KIND = "userSimilarity";
+  private static final int MAX_SIMILAR_EMAILS = 10;
+
+  private static final String BRYAN = "bryan@gmail.com";
+  private static final String ERIC = "eric@gmail.com";
+  private static final String OYIN = "oyin@gmail.com";
+
+  private final UserSimilarityDatastore userSimilarityDatastore =
+      UserSimilarityDatastore.getInstance();
+  private final DatastoreService datastoreService = DatastoreServiceFactory.getDatastoreService();
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Before
+  public void init() {
+    helper.setUp();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void queryMostSimilarEmailsWithNoPairs_returnsEmptyList() {
+    Assert.assertTrue(
+        userSimilarityDatastore.queryMostSimilarEmails(BRYAN, MAX_SIMILAR_EMAILS).isEmpty());
+  }
+
+  @Test
+  public void updateSimilarities_pairsAreStoredInBothDirections() {
+    userSimilarityDatastore.updateSimilarities(BRYAN, Arrays.asList(ERIC, OYIN), 1);
+
+    Assert.assertEquals(Arrays.asList(ERIC, OYIN),
+        userSimilarityDatastore.queryMostSimilarEmails(BRYAN, MAX_SIMILAR_EMAILS));
+    Assert.assertEquals(Arrays.asList(BRYAN),
+        userSimilarityDatastore.queryMostSimilarEmails(ERIC, MAX_SIMILAR_EMAILS));
+  }
+
+  @Test
+  public void queryMostSimilarEmails_returnsEmailsInDescendingOrderOfCommonLikes() {
+    userSimilarityDatastore.updateSimilarities(BRYAN, Arrays.asList(ERIC, OYIN), 1);
+    userSimilarityDatastore.updateSimilarities(BRYAN, Arrays.asList(OYIN), 1);
+
+    Assert.assertEquals(Arrays.asList(OYIN, ERIC),
+        userSimilarityDatastore.queryMostSimilarEmails(BRYAN, MAX_SIMILAR_EMAILS));
+    Assert.assertEquals(Arrays.asList(OYIN),
+        userSimilarityDatastore.queryMostSimilarEmails(BRYAN, /* limit */ 1));
+  }
+
+  @Test
+  public void updateSimilaritiesToZero_pairsAreDeleted() {
+    userSimilarityDatastore.updateSimilarities(BRYAN, Arrays.asList(ERIC), 1);
+    userSimilarityDatastore.updateSimilarities(BRYAN, Arrays.asList(ERIC), -1);
+
+    Assert.assertEquals(0, datastoreService.prepare(new Query(USER_SIMILARITY_KIND))
+                               .countEntities(FetchOptions.Builder.withDefaults()));
+  }
+
+  @Test
+  public void rebuildSimilarities_storedPairsAreReplaced() {
+    userSimilarityDatastore.updateSimilarities(BRYAN, Arrays.asList(OYIN), 5);
+
+    int rebuiltCount = userSimilarityDatastore.rebuildSimilarities(ImmutableMap.of(
+        1L, ImmutableSet.of(BRYAN, ERIC), 2L, ImmutableSet.of(BRYAN, ERIC, OYIN)),
+        /* maxItemLikers */ 3);
+
+    // Bryan-Eric, Bryan-Oyin and Eric-Oyin, stored in both directions.
+    Assert.assertEquals(6, rebuiltCount);
+    Assert.assertEquals(Arrays.asList(ERIC, OYIN),
+        userSimilarityDatastore.queryMostSimilarEmails(BRYAN, MAX_SIMILAR_EMAILS));
+    Assert.assertEquals(Collections.emptyList(),
+        userSimilarityDatastore.queryMostSimilarEmails("nobody@gmail.com", MAX_SIMILAR_EMAILS));
+  }
+
+  @Test
+  public void rebuildSimilaritiesWithPrunedItems_prunedItemsAreNotCounted() {
+    userSimilarityDatastore.updateSimilarities(BRYAN, Arrays.asList(ERIC, OYIN), 1);
+    userSimilarityDatastore.updateSimilarities(ERIC, Arrays.asList(OYIN), 1);
+    userSimilarityDatastore.pruneItem(1L);
+
+    // The common likes of the pruned item are only removed by the rebuild.
+    Assert.assertEquals(ImmutableSet.of(1L),
+        userSimilarityDatastore.queryPrunedItemIds(Arrays.asList(1L, 2L)));
+    Assert.assertEquals(Arrays.asList(ERIC, OYIN),
+        userSimilarityDatastore.queryMostSimilarEmails(BRYAN, MAX_SIMILAR_EMAILS));
+
+    // Item 1 stays pruned with fewer likers, and item 3 is pruned for having too many.
+    userSimilarityDatastore.rebuildSimilarities(ImmutableMap.of(1L, ImmutableSet.of(BRYAN, ERIC),
+        2L, ImmutableSet.of(BRYAN, OYIN), 3L, ImmutableSet.of(BRYAN, ERIC, OYIN)),
+        /* maxItemLikers */ 2);
+
+    Assert.assertEquals(ImmutableSet.of(1L, 3L),
+        userSimilarityDatastore.queryPrunedItemIds(Arrays.asList(1L, 2L, 3L)));
+    Assert.assertEquals(Arrays.asList(OYIN),
+        userSimilarityDatastore.queryMostSimilarEmails(BRYAN, MAX_SIMILAR_EMAILS));
+  }
+}
@@ -0,0 +1,109 @@
+package com.google.ehub.servlets;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalUserServiceTestConfig;
+import com.google.ehub.data.FavoriteItemDatastore;
+import com.google.ehub.data.UserRecommendationDatastore;
+import com.google.ehub.data.UserRecommendations;
+import com.google.ehub.utility.BackgroundTaskScheduler;
+import java.io.IOException;
+import java.util.Arrays;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+@RunWith(JUnit4.class)
+public class BackgroundTaskServletTest {
+  private static final String TASK_PARAMETER_KEY = "task";
+  private static final String EMAIL_PARAMETER_KEY = "email";
+  private static final String QUEUE_NAME_HEADER = "X-AppEngine-QueueName";
+
+  private static final String EMAIL = "bryan@gmail.com";
+  private static final String OTHER_EMAIL = "eric@gmail.com";
+
+  private final BackgroundTaskServlet servlet = new BackgroundTaskServlet();
+  private final UserRecommendationDatastore userRecommendationDatastore =
+      UserRecommendationDatastore.getInstance();
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(
+          new LocalDatastoreServiceTestConfig(), new LocalUserServiceTestConfig())
+          .setEnvIsLoggedIn(false);
+
+  @Mock HttpServletRequest request;
+  @Mock HttpServletResponse response;
+
+  @Before
+  public void init() {
+    MockitoAnnotations.initMocks(this);
+    helper.setUp();
+    FavoriteItemDatastore.getInstance().invalidateCachedLikeCounts();
+  }
+
+  @After
+  public void tearDown() {
+    BackgroundTaskScheduler.getInstance().cancelPendingLocalTasks();
+    helper.tearDown();
+  }
+
+  @Test
+  public void postRequestNotFromTaskQueue_errorIsSent() throws IOException {
+    when(request.getParameter(EMAIL_PARAMETER_KEY)).thenReturn(EMAIL);
+
+    servlet.doPost(request, response);
+
+    verify(response).sendError(eq(HttpServletResponse.SC_FORBIDDEN), anyString());
+    Assert.assertFalse(userRecommendationDatastore.queryRecommendations(EMAIL).isPresent());
+  }
+
+  @Test
+  public void postRequestWithoutEmail_errorIsSent() throws IOException {
+    when(request.getHeader(QUEUE_NAME_HEADER)).thenReturn("default");
+    when(request.getParameter(TASK_PARAMETER_KEY)).thenReturn("UPDATE_RECOMMENDATIONS");
+
+    servlet.doPost(request, response);
+
+    verify(response).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+  }
+
+  @Test
+  public void postRequestWithInvalidTask_errorIsSent() throws IOException {
+    when(request.getHeader(QUEUE_NAME_HEADER)).thenReturn("default");
+    when(request.getParameter(TASK_PARAMETER_KEY)).thenReturn("UNKNOWN_TASK");
+    when(request.getParameter(EMAIL_PARAMETER_KEY)).thenReturn(EMAIL);
+
+    servlet.doPost(request, response);
+
+    verify(response).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+  }
+
+  @Test
+  public void postRequestFromTaskQueue_recommendationsAreStored() throws IOException {
+    FavoriteItemDatastore.getInstance().addFavoriteItem(EMAIL, 1L);
+    FavoriteItemDatastore.getInstance().addFavoriteItem(OTHER_EMAIL, 1L);
+    when(request.getHeader(QUEUE_NAME_HEADER)).thenReturn("default");
+    when(request.getParameter(TASK_PARAMETER_KEY)).thenReturn("UPDATE_RECOMMENDATIONS");
+    when(request.getParameter(EMAIL_PARAMETER_KEY)).thenReturn(EMAIL);
+
+    long startMillis = System.currentTimeMillis();
+    servlet.doPost(request, response);
+
+    UserRecommendations recommendations =
+        userRecommendationDatastore.queryRecommendations(EMAIL).get();
+
+    Assert.assertEquals(Arrays.asList(OTHER_EMAIL), recommendations.getRecommendedEmails());
+    Assert.assertTrue(recommendations.getComputedTimestampMillis() >= startMillis);
+  }
+}
@@ -0,0 +1,155 @@
+package com.google.ehub.servlets;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalUserServiceTestConfig;
+import com.google.ehub.data.CommentDataManager;
+import com.google.ehub.data.CommentDataManager.CommentOrder;
+import com.google.ehub.data.CommentPageCache;
+import com.google.ehub.data.EntertainmentItem;
+import com.google.ehub.data.EntertainmentItemDatastore;
+import com.google.ehub.data.EntertainmentItemDatastore.PrefixQueryStats;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.io.PrintWriter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+@RunWith(JUnit4.class)
+public class CacheStatsServletTest {
+  private static final String JSON_CONTENT_TYPE = "application/json";
+  private static final String ITEM_CACHE_KEY = "itemCache";
+  private static final String COMMENT_PAGE_CACHE_KEY = "commentPageCache";
+  private static final String HIT_COUNT_KEY = "hitCount";
+  private static final String MISS_COUNT_KEY = "missCount";
+  private static final String EVICTION_COUNT_KEY = "evictionCount";
+  private static final String PREFIX_QUERIES_KEY = "prefixQueries";
+  private static final String QUERY_COUNT_KEY = "queryCount";
+  private static final String SCANNED_ENTITIES_KEY = "scannedEntities";
+  private static final String RETURNED_ENTITIES_KEY = "returnedEntities";
+  private static final String TITLE_PREFIXES_BACKFILLED_PROPERTY_KEY =
+      "ehub.titlePrefixesBackfilled";
+
+  private final CacheStatsServlet servlet = new CacheStatsServlet();
+  private final EntertainmentItemDatastore itemDatastore = EntertainmentItemDatastore.getInstance();
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(
+          new LocalDatastoreServiceTestConfig(), new LocalUserServiceTestConfig());
+
+  @Mock HttpServletRequest request;
+  @Mock HttpServletResponse response;
+  @Mock PrintWriter printWriter;
+
+  @Before
+  public void init() {
+    MockitoAnnotations.initMocks(this);
+    helper.setUp();
+    itemDatastore.invalidateItemCache();
+    CommentPageCache.getInstance().invalidateAll();
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty(TITLE_PREFIXES_BACKFILLED_PROPERTY_KEY);
+    helper.tearDown();
+  }
+
+  @Test
+  public void getRequest_responseContainsItemCacheCounters() throws IOException {
+    long itemId =
+        itemDatastore.addItemToDatastore(new EntertainmentItem.Builder().build()).getId();
+    itemDatastore.queryItem(itemId);
+    itemDatastore.queryItem(itemId);
+
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    ArgumentCaptor<String> jsonCaptor = ArgumentCaptor.forClass(String.class);
+    verify(response).setContentType(JSON_CONTENT_TYPE);
+    verify(printWriter).println(jsonCaptor.capture());
+
+    JsonObject itemCacheJson =
+        new JsonParser().parse(jsonCaptor.getValue()).getAsJsonObject().getAsJsonObject(
+            ITEM_CACHE_KEY);
+
+    Assert.assertEquals(itemDatastore.getItemCacheStats().hitCount(),
+        itemCacheJson.get(HIT_COUNT_KEY).getAsLong());
+    Assert.assertEquals(itemDatastore.getItemCacheStats().missCount(),
+        itemCacheJson.get(MISS_COUNT_KEY).getAsLong());
+    Assert.assertEquals(itemDatastore.getItemCacheStats().evictionCount(),
+        itemCacheJson.get(EVICTION_COUNT_KEY).getAsLong());
+  }
+
+  @Test
+  public void getRequest_responseContainsCommentPageCacheCounters() throws IOException {
+    CommentPageCache commentPageCache = CommentPageCache.getInstance();
+    CommentDataManager commentDataManager = new CommentDataManager();
+    FetchOptions firstPage = FetchOptions.Builder.withLimit(CommentPageCache.CACHED_PAGE_SIZE);
+    commentDataManager.retrieveComments(1L, firstPage, CommentOrder.OLDEST_FIRST);
+    commentDataManager.retrieveComments(1L, firstPage, CommentOrder.OLDEST_FIRST);
+
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    ArgumentCaptor<String> jsonCaptor = ArgumentCaptor.forClass(String.class);
+    verify(printWriter).println(jsonCaptor.capture());
+
+    JsonObject commentPageCacheJson =
+        new JsonParser().parse(jsonCaptor.getValue()).getAsJsonObject().getAsJsonObject(
+            COMMENT_PAGE_CACHE_KEY);
+
+    Assert.assertEquals(commentPageCache.getStats().hitCount(),
+        commentPageCacheJson.get(HIT_COUNT_KEY).getAsLong());
+    Assert.assertEquals(commentPageCache.getStats().missCount(),
+        commentPageCacheJson.get(MISS_COUNT_KEY).getAsLong());
+    Assert.assertEquals(commentPageCache.getStats().evictionCount(),
+        commentPageCacheJson.get(EVICTION_COUNT_KEY).getAsLong());
+  }
+
+  @Test
+  public void getRequest_responseContainsPrefixQueryCounters() throws IOException {
+    System.setProperty(TITLE_PREFIXES_BACKFILLED_PROPERTY_KEY, "true");
+    itemDatastore.addItemToDatastore(new EntertainmentItem.Builder()
+                                         .setTitle("Star Wars")
+                                         .setReleaseDate("25 May 1977")
+                                         .build());
+    itemDatastore.queryItemsByReleaseDate(
+        FetchOptions.Builder.withDefaults(), "star", SortDirection.DESCENDING);
+
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    ArgumentCaptor<String> jsonCaptor = ArgumentCaptor.forClass(String.class);
+    verify(printWriter).println(jsonCaptor.capture());
+
+    JsonObject prefixQueriesJson =
+        new JsonParser().parse(jsonCaptor.getValue()).getAsJsonObject().getAsJsonObject(
+            PREFIX_QUERIES_KEY);
+    PrefixQueryStats prefixQueryStats = itemDatastore.getPrefixQueryStats();
+
+    Assert.assertEquals(
+        prefixQueryStats.getQueryCount(), prefixQueriesJson.get(QUERY_COUNT_KEY).getAsLong());
+    Assert.assertEquals(prefixQueryStats.getScannedEntities(),
+        prefixQueriesJson.get(SCANNED_ENTITIES_KEY).getAsLong());
+    Assert.assertEquals(prefixQueryStats.getReturnedEntities(),
+        prefixQueriesJson.get(RETURNED_ENTITIES_KEY).getAsLong());
+  }
+}
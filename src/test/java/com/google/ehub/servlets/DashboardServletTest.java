@@ -1,5 +1,7 @@
 package com.google.ehub.servlets;
 
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -11,13 +13,23 @@ import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.Query.SortDirection;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.ehub.data.CommentDataManager;
 import com.google.ehub.data.EntertainmentItem;
 import com.google.ehub.data.EntertainmentItemDatastore;
 import com.google.ehub.data.EntertainmentItemList;
+import com.google.ehub.data.FavoriteItemDatastore;
+import com.google.ehub.data.ItemSearchIndex;
+import com.google.ehub.utility.BackgroundTaskScheduler;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -27,6 +39,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -34,9 +47,16 @@ import org.mockito.MockitoAnnotations;
 public class DashboardServletTest {
   private static final String SEARCH_VALUE_PARAMETER_KEY = "searchValue";
   private static final String SORT_TYPE_PARAMETER_KEY = "sortType";
+  private static final String INCLUDE_ITEM_STATS_PARAMETER_KEY = "includeItemStats";
   private static final String JSON_CONTENT_TYPE = "application/json";
 
   private static final String ASCENDING_TITLE_PARAMETER_VALUE = "ASCENDING_TITLE";
+  private static final String RELEVANCE_PARAMETER_VALUE = "RELEVANCE";
+  private static final String RECENT_RELEASE_DATE_VALUE = "RECENT_RELEASE_DATE";
+  private static final String GENRE_PARAMETER_KEY = "genre";
+  private static final String RELEASE_YEAR_PARAMETER_KEY = "releaseYear";
+  private static final String RUNTIME_RANGE_PARAMETER_KEY = "runtimeRange";
+  private static final String CURSOR_PARAMETER_KEY = "cursor";
   private static final String INVALID_SORT_PARAMETER_VALUE = "Invalid sort";
 
   private static final String ENTERTAINMENT_ITEM_KIND = "entertainmentItem";
@@ -62,13 +82,17 @@ public class DashboardServletTest {
   private static final String WRITERS = "George Lucas";
   private static final String ACTORS = "Mark Hamill, Harrison Ford";
   private static final String OMDB_ID = "tt23113212";
+  private static final String EMAIL = "bryan@gmail.com";
 
   private static final int PAGE_SIZE = 18;
   private static final int MAX_SEARCH_VALUE_CHARS = 150;
 
   private final DashboardServlet servlet = new DashboardServlet();
   private final LocalServiceTestHelper helper =
-      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig())
+          .setEnvEmail(EMAIL)
+          .setEnvIsLoggedIn(true)
+          .setEnvAuthDomain("gmail.com");
 
   @Mock HttpServletRequest request;
   @Mock HttpServletResponse response;
@@ -78,10 +102,15 @@ public class DashboardServletTest {
   public void init() {
     MockitoAnnotations.initMocks(this);
     helper.setUp();
+    EntertainmentItemDatastore.getInstance().invalidateItemCache();
+    FavoriteItemDatastore.getInstance().invalidateCachedLikeCounts();
+    CommentDataManager.invalidateCachedCommentCounts();
+    ItemSearchIndex.getInstance().rebuild();
   }
 
   @After
   public void tearDown() {
+    BackgroundTaskScheduler.getInstance().cancelPendingLocalTasks();
     helper.tearDown();
   }
 
@@ -176,6 +205,217 @@ public class DashboardServletTest {
             SortDirection.ASCENDING)));
   }
 
+  @Test
+  public void getRequestWithItemStats_countsAndLikedItemsGetSent() throws IOException {
+    long likedItemId = putItemEntity(TITLE);
+    long otherItemId = putItemEntity(TITLE + " II");
+
+    FavoriteItemDatastore favoriteItemDatastore = FavoriteItemDatastore.getInstance();
+    favoriteItemDatastore.addFavoriteItem(EMAIL, likedItemId);
+    favoriteItemDatastore.addFavoriteItem("other" + EMAIL, likedItemId);
+    favoriteItemDatastore.addFavoriteItem("other" + EMAIL, otherItemId);
+    new CommentDataManager().addItemComment(likedItemId, "Nice", 1L, EMAIL);
+
+    when(request.getParameter(SEARCH_VALUE_PARAMETER_KEY)).thenReturn(TITLE);
+    when(request.getParameter(SORT_TYPE_PARAMETER_KEY)).thenReturn(ASCENDING_TITLE_PARAMETER_VALUE);
+    when(request.getParameter(INCLUDE_ITEM_STATS_PARAMETER_KEY)).thenReturn("true");
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    EntertainmentItemList itemList = EntertainmentItemDatastore.getInstance().queryItemsByTitlePrefix(
+        FetchOptions.Builder.withLimit(PAGE_SIZE), TITLE, SortDirection.ASCENDING);
+    EntertainmentItemList expectedItemList = new EntertainmentItemList(itemList.getItems(),
+        itemList.getPageCursor(), ImmutableMap.of(likedItemId, 2L, otherItemId, 1L),
+        ImmutableSet.of(likedItemId), ImmutableMap.of(likedItemId, 1L, otherItemId, 0L));
+
+    verify(response).setContentType(JSON_CONTENT_TYPE);
+    verify(printWriter).println(new Gson().toJson(expectedItemList));
+  }
+
+  @Test
+  public void getRequestWithItemStatsAndUserLoggedOut_noItemsAreLiked() throws IOException {
+    helper.setEnvIsLoggedIn(false);
+
+    long itemId = putItemEntity(TITLE);
+    FavoriteItemDatastore.getInstance().addFavoriteItem(EMAIL, itemId);
+
+    when(request.getParameter(SEARCH_VALUE_PARAMETER_KEY)).thenReturn(TITLE);
+    when(request.getParameter(SORT_TYPE_PARAMETER_KEY)).thenReturn(ASCENDING_TITLE_PARAMETER_VALUE);
+    when(request.getParameter(INCLUDE_ITEM_STATS_PARAMETER_KEY)).thenReturn("true");
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    EntertainmentItemList itemList = EntertainmentItemDatastore.getInstance().queryItemsByTitlePrefix(
+        FetchOptions.Builder.withLimit(PAGE_SIZE), TITLE, SortDirection.ASCENDING);
+    EntertainmentItemList expectedItemList = new EntertainmentItemList(itemList.getItems(),
+        itemList.getPageCursor(), ImmutableMap.of(itemId, 1L), ImmutableSet.of(),
+        ImmutableMap.of(itemId, 0L));
+
+    verify(printWriter).println(new Gson().toJson(expectedItemList));
+  }
+
+  @Test
+  public void getRequestWithRelevanceSort_rankedItemsAreSent() throws IOException {
+    EntertainmentItemDatastore itemDatastore = EntertainmentItemDatastore.getInstance();
+    long titleMatchId = itemDatastore.addItemToDatastore(
+        new EntertainmentItem.Builder().setTitle("The Matrix").build()).getId();
+    long actorMatchId = itemDatastore.addItemToDatastore(
+        new EntertainmentItem.Builder().setTitle("Speed").setActors("Keanu Matrix").build())
+        .getId();
+    itemDatastore.addItemToDatastore(new EntertainmentItem.Builder().setTitle("Alien").build());
+
+    when(request.getParameter(SEARCH_VALUE_PARAMETER_KEY)).thenReturn("matrix");
+    when(request.getParameter(SORT_TYPE_PARAMETER_KEY)).thenReturn(RELEVANCE_PARAMETER_VALUE);
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    EntertainmentItemList expectedItemList = new EntertainmentItemList(
+        itemDatastore.queryItems(Arrays.asList(titleMatchId, actorMatchId)), "2");
+
+    verify(response).setContentType(JSON_CONTENT_TYPE);
+    verify(printWriter).println(new Gson().toJson(expectedItemList));
+  }
+
+  @Test
+  public void getRequestWithRelevanceSortAndOffsetCursor_remainingItemsAreSent()
+      throws IOException {
+    EntertainmentItemDatastore itemDatastore = EntertainmentItemDatastore.getInstance();
+    itemDatastore.addItemToDatastore(
+        new EntertainmentItem.Builder().setTitle("The Matrix").build());
+    long sequelId = itemDatastore.addItemToDatastore(
+        new EntertainmentItem.Builder().setTitle("The Matrix Reloaded").build()).getId();
+
+    when(request.getParameter(SEARCH_VALUE_PARAMETER_KEY)).thenReturn("Matrix");
+    when(request.getParameter(SORT_TYPE_PARAMETER_KEY)).thenReturn(RELEVANCE_PARAMETER_VALUE);
+    when(request.getParameter(CURSOR_PARAMETER_KEY)).thenReturn("1");
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    EntertainmentItemList expectedItemList = new EntertainmentItemList(
+        itemDatastore.queryItems(Arrays.asList(sequelId)), "2");
+
+    verify(printWriter).println(new Gson().toJson(expectedItemList));
+  }
+
+  @Test
+  public void getRequestWithGenreFilter_onlyItemsOfGenreAreSent() throws IOException {
+    addItem("Heat", "Action, Crime, Drama", "13 Dec 1995", "170 min");
+    addItem("Alien", "Horror, Sci-Fi", "22 Jun 1979", "117 min");
+    addItem("Amelie", "Comedy, Drama", "25 Apr 2001", "122 min");
+
+    when(request.getParameter(SEARCH_VALUE_PARAMETER_KEY)).thenReturn("");
+    when(request.getParameter(SORT_TYPE_PARAMETER_KEY)).thenReturn(ASCENDING_TITLE_PARAMETER_VALUE);
+    when(request.getParameter(GENRE_PARAMETER_KEY)).thenReturn("Drama");
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    ArgumentCaptor<String> jsonCaptor = ArgumentCaptor.forClass(String.class);
+    verify(printWriter).println(jsonCaptor.capture());
+
+    Assert.assertEquals(Arrays.asList("Amelie", "Heat"), getTitles(jsonCaptor.getValue()));
+  }
+
+  @Test
+  public void getRequestWithReleaseYearAndRuntimeFilters_matchingItemsAreSentByReleaseDate()
+      throws IOException {
+    addItem("Star Wars", "Sci-Fi", "25 May 1977", "121 min");
+    addItem("Star Trek", "Sci-Fi", "07 Dec 1979", "132 min");
+    addItem("Stardust", "Fantasy", "10 Aug 1977", "85 min");
+    addItem("Star Cops", "Sci-Fi", "01 Dec 1977", "125 min");
+
+    when(request.getParameter(SEARCH_VALUE_PARAMETER_KEY)).thenReturn("star");
+    when(request.getParameter(SORT_TYPE_PARAMETER_KEY)).thenReturn(RECENT_RELEASE_DATE_VALUE);
+    when(request.getParameter(RELEASE_YEAR_PARAMETER_KEY)).thenReturn("1977");
+    when(request.getParameter(RUNTIME_RANGE_PARAMETER_KEY)).thenReturn("LONG");
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    ArgumentCaptor<String> jsonCaptor = ArgumentCaptor.forClass(String.class);
+    verify(printWriter).println(jsonCaptor.capture());
+
+    Assert.assertEquals(
+        Arrays.asList("Star Cops", "Star Wars"), getTitles(jsonCaptor.getValue()));
+  }
+
+  @Test
+  public void getRequestWithRelevanceSortAndGenreFilter_rankedItemsOfGenreAreSent()
+      throws IOException {
+    EntertainmentItemDatastore itemDatastore = EntertainmentItemDatastore.getInstance();
+    addItem("The Matrix", "Action, Sci-Fi", "31 Mar 1999", "136 min");
+    long documentaryId =
+        addItem("The Matrix Revisited", "Documentary", "20 Nov 2001", "123 min");
+
+    when(request.getParameter(SEARCH_VALUE_PARAMETER_KEY)).thenReturn("matrix");
+    when(request.getParameter(SORT_TYPE_PARAMETER_KEY)).thenReturn(RELEVANCE_PARAMETER_VALUE);
+    when(request.getParameter(GENRE_PARAMETER_KEY)).thenReturn("Documentary");
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    EntertainmentItemList expectedItemList = new EntertainmentItemList(
+        itemDatastore.queryItems(Arrays.asList(documentaryId)), "2");
+
+    verify(printWriter).println(new Gson().toJson(expectedItemList));
+  }
+
+  @Test
+  public void getRequestWithInvalidFacetFilter_errorIsSent() throws IOException {
+    when(request.getParameter(SEARCH_VALUE_PARAMETER_KEY)).thenReturn(TITLE);
+    when(request.getParameter(SORT_TYPE_PARAMETER_KEY)).thenReturn(ASCENDING_TITLE_PARAMETER_VALUE);
+    when(request.getParameter(RUNTIME_RANGE_PARAMETER_KEY)).thenReturn("VERY_LONG");
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+    verify(response, never()).getWriter();
+  }
+
+  private static long addItem(String title, String genre, String releaseDate, String runtime) {
+    return EntertainmentItemDatastore.getInstance()
+        .addItemToDatastore(new EntertainmentItem.Builder()
+                                .setTitle(title)
+                                .setGenre(genre)
+                                .setReleaseDate(releaseDate)
+                                .setRuntime(runtime)
+                                .build())
+        .getId();
+  }
+
+  private static long putItemEntity(String title) {
+    Entity itemEntity = new Entity(ENTERTAINMENT_ITEM_KIND);
+    itemEntity.setProperty(DISPLAY_TITLE_PROPERTY_KEY, title);
+    itemEntity.setProperty(NORMALIZED_TITLE_PROPERTY_KEY, title.toLowerCase());
+    itemEntity.setProperty(DESCRIPTION_PROPERTY_KEY, DESCRIPTION);
+    itemEntity.setProperty(IMAGE_URL_PROPERTY_KEY, IMAGE_URL);
+    itemEntity.setProperty(RELEASE_DATE_PROPERTY_KEY, RELEASE_DATE);
+    itemEntity.setProperty(RUNTIME_PROPERTY_KEY, RUNTIME);
+    itemEntity.setProperty(GENRE_PROPERTY_KEY, GENRE);
+    itemEntity.setProperty(DIRECTORS_PROPERTY_KEY, DIRECTORS);
+    itemEntity.setProperty(WRITERS_PROPERTY_KEY, WRITERS);
+    itemEntity.setProperty(ACTORS_PROPERTY_KEY, ACTORS);
+    itemEntity.setProperty(OMDB_ID_PROPERTY_KEY, OMDB_ID);
+
+    DatastoreService datastoreService = DatastoreServiceFactory.getDatastoreService();
+    return datastoreService.put(itemEntity).getId();
+  }
+
+  private static List<String> getTitles(String itemListJson) {
+    List<String> titles = new ArrayList<>();
+
+    for (JsonElement item :
+        new JsonParser().parse(itemListJson).getAsJsonObject().getAsJsonArray("items")) {
+      titles.add(item.getAsJsonObject().get("title").getAsString());
+    }
+
+    return titles;
+  }
+
   private static String getSearchValue(int characterLength) {
     char[] searchValueChars = new char[characterLength];
     Arrays.fill(searchValueChars, 'a');
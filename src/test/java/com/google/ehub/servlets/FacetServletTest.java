@@ -0,0 +1,110 @@
+package com.google.ehub.servlets;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.ehub.data.EntertainmentItem;
+import com.google.ehub.data.EntertainmentItemDatastore;
+import com.google.ehub.data.ItemFacetDatastore;
+import java.io.IOException;
+import java.io.PrintWriter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+@RunWith(JUnit4.class)
+public class FacetServletTest {
+  private static final String JSON_CONTENT_TYPE = "application/json";
+  private static final String ENTERTAINMENT_ITEM_KIND = "entertainmentItem";
+  private static final String DISPLAY_TITLE_PROPERTY_KEY = "displayTitle";
+  private static final String GENRE_PROPERTY_KEY = "genre";
+  private static final String RUNTIME_PROPERTY_KEY = "runtime";
+
+  private final FacetServlet servlet = new FacetServlet();
+  private final EntertainmentItemDatastore itemDatastore = EntertainmentItemDatastore.getInstance();
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Mock HttpServletRequest request;
+  @Mock HttpServletResponse response;
+  @Mock PrintWriter printWriter;
+
+  @Before
+  public void init() {
+    MockitoAnnotations.initMocks(this);
+    helper.setUp();
+    ItemFacetDatastore.getInstance().invalidateCachedFacetCounts();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void getRequestWithoutItems_emptyCountsAreSent() throws IOException {
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    verify(response).setContentType(JSON_CONTENT_TYPE);
+    verify(printWriter).println("{\"GENRE\":{},\"RELEASE_YEAR\":{},\"RUNTIME_RANGE\":{}}");
+  }
+
+  @Test
+  public void getRequestAfterItemsAreAdded_countsOfEveryValueAreSent() throws IOException {
+    addItem("Heat", "Action, Crime, Drama", "13 Dec 1995", "170 min");
+    addItem("Amelie", "Comedy, Drama", "25 Apr 2001", "122 min");
+    addItem("Toy Story", "Animation, Comedy", "22 Nov 1995", "81 min");
+
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    verify(printWriter).println("{\"GENRE\":{\"Comedy\":2,\"Drama\":2,\"Action\":1,"
+        + "\"Animation\":1,\"Crime\":1},\"RELEASE_YEAR\":{\"1995\":2,\"2001\":1},"
+        + "\"RUNTIME_RANGE\":{\"LONG\":2,\"SHORT\":1}}");
+  }
+
+  @Test
+  public void getRequestAfterBackfill_countsOfLegacyItemsAreSent() throws IOException {
+    DatastoreService datastoreService = DatastoreServiceFactory.getDatastoreService();
+    Entity legacyEntity = new Entity(ENTERTAINMENT_ITEM_KIND);
+    legacyEntity.setProperty(DISPLAY_TITLE_PROPERTY_KEY, "Alien");
+    legacyEntity.setProperty(GENRE_PROPERTY_KEY, "Horror, Sci-Fi");
+    legacyEntity.setProperty(RUNTIME_PROPERTY_KEY, "117 min");
+    datastoreService.put(legacyEntity);
+    addItem("Heat", "Action", "13 Dec 1995", "170 min");
+
+    Assert.assertEquals(1, itemDatastore.backfillItemFacets());
+    Assert.assertEquals(0, itemDatastore.backfillItemFacets());
+
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    verify(printWriter).println("{\"GENRE\":{\"Action\":1,\"Horror\":1,\"Sci-Fi\":1},"
+        + "\"RELEASE_YEAR\":{\"1995\":1},\"RUNTIME_RANGE\":{\"LONG\":1,\"MEDIUM\":1}}");
+  }
+
+  private void addItem(String title, String genre, String releaseDate, String runtime) {
+    itemDatastore.addItemToDatastore(new EntertainmentItem.Builder()
+                                         .setTitle(title)
+                                         .setGenre(genre)
+                                         .setReleaseDate(releaseDate)
+                                         .setRuntime(runtime)
+                                         .build());
+  }
+}
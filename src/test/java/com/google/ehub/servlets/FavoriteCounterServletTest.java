@@ -8,9 +8,12 @@ import static org.mockito.Mockito.when;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
 import com.google.ehub.data.FavoriteItemDatastore;
+import com.google.ehub.utility.BackgroundTaskScheduler;
 import com.google.gson.Gson;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.junit.After;
@@ -25,6 +28,7 @@ import org.mockito.MockitoAnnotations;
 @RunWith(JUnit4.class)
 public class FavoriteCounterServletTest {
   private static final String ITEM_ID_PARAMETER_KEY = "itemId";
+  private static final String ITEM_IDS_PARAMETER_KEY = "itemIds";
   private static final String JSON_CONTENT_TYPE = "application/json";
 
   private static final String VALID_ITEM_ID_PARAMETER = "123";
@@ -48,10 +52,12 @@ public class FavoriteCounterServletTest {
   public void init() {
     MockitoAnnotations.initMocks(this);
     helper.setUp();
+    favoriteItemDatastore.invalidateCachedLikeCounts();
   }
 
   @After
   public void tearDown() {
+    BackgroundTaskScheduler.getInstance().cancelPendingLocalTasks();
     helper.tearDown();
   }
 
@@ -109,4 +115,55 @@ public class FavoriteCounterServletTest {
     verify(response).setContentType(JSON_CONTENT_TYPE);
     verify(printWriter).println(new Gson().toJson(EMAILS.length));
   }
+
+  @Test
+  public void getRequestAfterLikesAreRemoved_responseSendsUpdatedCount() throws IOException {
+    for (String email : EMAILS) {
+      favoriteItemDatastore.addFavoriteItem(email, VALID_ITEM_ID);
+    }
+
+    favoriteItemDatastore.removeFavoriteItem(EMAILS[0], VALID_ITEM_ID);
+    favoriteItemDatastore.removeFavoriteItem(EMAILS[0], VALID_ITEM_ID);
+
+    when(request.getParameter(ITEM_ID_PARAMETER_KEY)).thenReturn(VALID_ITEM_ID_PARAMETER);
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    verify(response).setContentType(JSON_CONTENT_TYPE);
+    verify(printWriter).println(new Gson().toJson(EMAILS.length - 1));
+  }
+
+  @Test
+  public void getRequestWithNonParsableItemIdsParam_errorIsSent() throws IOException {
+    when(request.getParameter(ITEM_IDS_PARAMETER_KEY))
+        .thenReturn("12," + NON_PARSABLE_ITEM_ID_PARAMETER);
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+  }
+
+  @Test
+  public void getRequestWithItemIdsParam_responseSendsCountOfEveryItem() throws IOException {
+    for (int i = 0; i < EMAILS.length; i++) {
+      favoriteItemDatastore.addFavoriteItem(EMAILS[i], VALID_ITEM_ID);
+    }
+
+    favoriteItemDatastore.addFavoriteItem(EMAILS[0], VALID_ITEM_ID + 1);
+
+    when(request.getParameter(ITEM_IDS_PARAMETER_KEY))
+        .thenReturn(VALID_ITEM_ID + "," + (VALID_ITEM_ID + 1) + "," + (VALID_ITEM_ID + 2));
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    Map<Long, Long> expectedCounts = new HashMap<>();
+    expectedCounts.put(VALID_ITEM_ID, (long) EMAILS.length);
+    expectedCounts.put(VALID_ITEM_ID + 1, 1L);
+    expectedCounts.put(VALID_ITEM_ID + 2, 0L);
+
+    verify(response).setContentType(JSON_CONTENT_TYPE);
+    verify(printWriter).println(new Gson().toJson(expectedCounts));
+  }
 }
@@ -10,7 +10,10 @@ import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.ehub.data.EntertainmentItemDatastore;
 import com.google.ehub.data.FavoriteItemDatastore;
+import com.google.ehub.data.UserRecommendationDatastore;
+import com.google.ehub.utility.BackgroundTaskScheduler;
 import com.google.gson.Gson;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -56,10 +59,12 @@ public class FavoriteItemServletTest {
   public void init() {
     MockitoAnnotations.initMocks(this);
     helper.setUp();
+    EntertainmentItemDatastore.getInstance().invalidateItemCache();
   }
 
   @After
   public void tearDown() {
+    BackgroundTaskScheduler.getInstance().cancelPendingLocalTasks();
     helper.tearDown();
   }
 
@@ -165,6 +170,26 @@ public class FavoriteItemServletTest {
     Assert.assertEquals(1, FavoriteItemDatastore.getInstance().queryFavoriteIds(EMAIL).size());
   }
 
+  @Test
+  public void postRequestWithValidParamAndItemExists_recommendationsAreUpdatedInBackground()
+      throws IOException {
+    Entity itemEntity = new Entity(ENTERTAINMENT_ITEM_KIND);
+    datastoreService.put(itemEntity);
+
+    when(request.getParameter(FAVORITE_ITEM_ID_PARAMETER_KEY))
+        .thenReturn(String.valueOf(itemEntity.getKey().getId()));
+
+    servlet.doPost(request, response);
+    servlet.doPost(request, response);
+
+    Assert.assertFalse(
+        UserRecommendationDatastore.getInstance().queryRecommendations(EMAIL).isPresent());
+    // Both posts are debounced into a single update.
+    Assert.assertEquals(1, BackgroundTaskScheduler.getInstance().runPendingLocalTasks());
+    Assert.assertTrue(
+        UserRecommendationDatastore.getInstance().queryRecommendations(EMAIL).isPresent());
+  }
+
   @Test
   public void postRequestWithValidParamButUserNotLoggedIn_favoriteItemIsNotAdded()
       throws IOException {
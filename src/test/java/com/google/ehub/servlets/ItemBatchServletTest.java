@@ -0,0 +1,121 @@
+package com.google.ehub.servlets;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.ehub.data.EntertainmentItem;
+import com.google.ehub.data.EntertainmentItemDatastore;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+@RunWith(JUnit4.class)
+public class ItemBatchServletTest {
+  private static final String ITEM_IDS_PARAMETER_KEY = "itemIds";
+  private static final String JSON_CONTENT_TYPE = "application/json";
+
+  private static final String NON_PARSABLE_ITEM_IDS_PARAMETER = "12,jwnfnziwo";
+  private static final String[] TITLES = {"Avengers", "Nemo", "Shrek"};
+
+  private static final int MAX_ITEM_IDS = 1000;
+
+  private final ItemBatchServlet servlet = new ItemBatchServlet();
+  private final EntertainmentItemDatastore itemDatastore = EntertainmentItemDatastore.getInstance();
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Mock HttpServletRequest request;
+  @Mock HttpServletResponse response;
+  @Mock PrintWriter printWriter;
+
+  @Before
+  public void init() {
+    MockitoAnnotations.initMocks(this);
+    helper.setUp();
+    itemDatastore.invalidateItemCache();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void getRequestWithNullParam_errorIsSent() throws IOException {
+    when(request.getParameter(ITEM_IDS_PARAMETER_KEY)).thenReturn(null);
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+  }
+
+  @Test
+  public void getRequestWithNonParsableParam_errorIsSent() throws IOException {
+    when(request.getParameter(ITEM_IDS_PARAMETER_KEY)).thenReturn(NON_PARSABLE_ITEM_IDS_PARAMETER);
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+  }
+
+  @Test
+  public void getRequestWithTooManyIds_errorIsSent() throws IOException {
+    StringBuilder itemIds = new StringBuilder();
+
+    for (int i = 0; i <= MAX_ITEM_IDS; i++) {
+      itemIds.append(i).append(',');
+    }
+
+    when(request.getParameter(ITEM_IDS_PARAMETER_KEY)).thenReturn(itemIds.toString());
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+  }
+
+  @Test
+  public void getRequestWithEmptyParam_responseSendsEmptyList() throws IOException {
+    when(request.getParameter(ITEM_IDS_PARAMETER_KEY)).thenReturn("");
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    verify(response).setContentType(JSON_CONTENT_TYPE);
+    verify(printWriter).println("[]");
+  }
+
+  @Test
+  public void getRequestWithValidParam_responseSendsItemsInRequestedOrder() throws IOException {
+    long[] ids = new long[TITLES.length];
+
+    for (int i = 0; i < TITLES.length; i++) {
+      ids[i] =
+          itemDatastore.addItemToDatastore(new EntertainmentItem.Builder().setTitle(TITLES[i]).build())
+              .getId();
+    }
+
+    when(request.getParameter(ITEM_IDS_PARAMETER_KEY))
+        .thenReturn(ids[2] + ", " + ids[0] + ",23114121," + ids[1]);
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    verify(response).setContentType(JSON_CONTENT_TYPE);
+    verify(printWriter).println(
+        new Gson().toJson(itemDatastore.queryItems(Arrays.asList(ids[2], ids[0], ids[1]))));
+  }
+}
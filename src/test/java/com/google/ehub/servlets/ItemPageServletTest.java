@@ -2,10 +2,13 @@ package com.google.ehub.servlets;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
@@ -17,17 +20,26 @@ import com.google.appengine.api.users.UserServiceFactory;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
 import com.google.appengine.tools.development.testing.LocalUserServiceTestConfig;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.ehub.data.CommentData;
 import com.google.ehub.data.CommentDataManager;
+import com.google.ehub.data.CommentDataManager.CommentOrder;
+import com.google.ehub.data.CommentList;
+import com.google.ehub.data.CommentPageCache;
 import com.google.ehub.data.EntertainmentItem;
 import com.google.ehub.data.EntertainmentItemDatastore;
+import com.google.ehub.data.FavoriteItemDatastore;
 import com.google.ehub.data.ItemPageData;
 import com.google.ehub.data.ProfileDatastore;
 import com.google.ehub.servlets.ItemPageServlet;
+import com.google.ehub.utility.BackgroundTaskScheduler;
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.Object.*;
 import java.util.*;
 import java.util.Optional;
@@ -65,6 +77,8 @@ public class ItemPageServletTest {
   private final ItemPageServlet servlet = new ItemPageServlet();
   private final CommentDataManager commentDataManager = new CommentDataManager();
   private static final String JSON_CONTENT_TYPE = "application/json";
+  private static final FetchOptions FIRST_PAGE =
+      FetchOptions.Builder.withLimit(CommentPageCache.CACHED_PAGE_SIZE);
 
   private LocalServiceTestHelper helper = new LocalServiceTestHelper(
       new LocalDatastoreServiceTestConfig(), new LocalUserServiceTestConfig())
@@ -80,12 +94,15 @@ public class ItemPageServletTest {
   public void init() {
     MockitoAnnotations.initMocks(this);
     helper.setUp();	
+    CommentPageCache.getInstance().invalidateAll();
+    CommentDataManager.invalidateCachedCommentCounts();
     ProfileDatastore profile = new ProfileDatastore();
     profile.addUserProfileToDatastore("Eric", EMAIL, USERNAME, "Hey");
   }
 
   @After
   public void tearDown() {
+    BackgroundTaskScheduler.getInstance().cancelPendingLocalTasks();
     helper.tearDown();
   }
 
@@ -114,7 +131,8 @@ public class ItemPageServletTest {
         itemId.getId(), COMMENT, TIMESTAMP, USERNAME, commentId.getId(), BELONGS_TO_USER, EMAIL);
     Optional<EntertainmentItem> expectedItem =
         EntertainmentItemDatastore.getInstance().queryItem(itemId.getId());
-    ItemPageData itemData = new ItemPageData(expectedItem.get(), Lists.newArrayList(comment));
+    ItemPageData itemData = new ItemPageData(expectedItem.get(), Lists.newArrayList(comment),
+        new ArrayList<>(), /* commentsPageCursor */ null, /* commentCount */ 1L);
 
     verify(response).setContentType(JSON_CONTENT_TYPE);
     verify(printWriter).println(new Gson().toJson(itemData));
@@ -146,7 +164,8 @@ public class ItemPageServletTest {
     servlet.doGet(request, response);
     Optional<EntertainmentItem> expectedItem =
         EntertainmentItemDatastore.getInstance().queryItem(itemId.getId());
-    ItemPageData itemData = new ItemPageData(expectedItem.get(), Lists.newArrayList(comment));
+    ItemPageData itemData = new ItemPageData(expectedItem.get(), Lists.newArrayList(comment),
+        new ArrayList<>(), /* commentsPageCursor */ null, /* commentCount */ 1L);
 
     verify(response).setContentType(JSON_CONTENT_TYPE);
     verify(printWriter).println(new Gson().toJson(itemData));
@@ -178,12 +197,35 @@ public class ItemPageServletTest {
 
     Optional<EntertainmentItem> expectedItem =
       EntertainmentItemDatastore.getInstance().queryItem(itemId.getId());
-    ItemPageData itemData = new ItemPageData(expectedItem.get(), Lists.newArrayList(comment));
+    ItemPageData itemData = new ItemPageData(expectedItem.get(), Lists.newArrayList(comment),
+        new ArrayList<>(), /* commentsPageCursor */ null, /* commentCount */ 1L);
 
     verify(response).setContentType(JSON_CONTENT_TYPE);
     verify(printWriter).println(new Gson().toJson(itemData));
   }
 
+  @Test
+  public void doGetWithLikedItems_itemPageDataHasRelatedItems() throws IOException {
+    EntertainmentItemDatastore itemDatastore = EntertainmentItemDatastore.getInstance();
+    long itemId = itemDatastore.addItemToDatastore(
+        new EntertainmentItem.Builder().setTitle(TITLE).setOmdbId(OMDB_ID).build()).getId();
+    long relatedItemId = itemDatastore.addItemToDatastore(
+        new EntertainmentItem.Builder().setTitle("Alien").setOmdbId("tt0078748").build()).getId();
+    FavoriteItemDatastore.getInstance().addFavoriteItem(EMAIL, itemId);
+    FavoriteItemDatastore.getInstance().addFavoriteItem(EMAIL, relatedItemId);
+    BackgroundTaskScheduler.getInstance().runPendingLocalTasks();
+    when(request.getParameter("itemId")).thenReturn(itemId + "");
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    ItemPageData itemData = new ItemPageData(itemDatastore.queryItem(itemId).get(),
+        new ArrayList<>(), Lists.newArrayList(itemDatastore.queryItem(relatedItemId).get()),
+        /* commentsPageCursor */ null, /* commentCount */ 0L);
+
+    verify(printWriter).println(new Gson().toJson(itemData));
+  }
+
   @Test
   public void doGetMissingEntertainmentItem_ReturnsError() throws IOException {
     when(request.getParameter("itemId")).thenReturn("102930");
@@ -201,6 +243,257 @@ public class ItemPageServletTest {
     Assert.assertEquals(1, commentDataManager.retrieveComments(12345).size());
   }
 
+  @Test
+  public void retrieveCommentsFromManyUsers_profilesAreResolvedForEveryComment() {
+    ProfileDatastore profile = new ProfileDatastore();
+
+    // More users than fit in a single IN filter, and one user without a profile. The comments
+    // are posted before the profiles exist, so they don't store a username.
+    for (int user = 0; user < 40; user++) {
+      commentDataManager.addItemComment(12345, COMMENT, TIMESTAMP + user, user + "@gmail.com");
+      profile.addUserProfileToDatastore("User", user + "@gmail.com", "user" + user, "Hey");
+    }
+    commentDataManager.addItemComment(12345, COMMENT, TIMESTAMP - 1, "noprofile@gmail.com");
+    commentDataManager.addItemComment(12345, COMMENT, TIMESTAMP + 40, EMAIL);
+
+    List<CommentData> comments = new CommentDataManager().retrieveComments(12345);
+
+    Assert.assertEquals(42, comments.size());
+    CommentData expectedComment = new CommentData(12345, COMMENT, TIMESTAMP + 7, "user7",
+        comments.get(8).getCommentId(), DOES_NOT_BELONG_TO_USER, "7@gmail.com");
+    Assert.assertEquals(
+        new Gson().toJson(expectedComment), new Gson().toJson(comments.get(8)));
+    Assert.assertTrue(comments.get(41).getBelongsToUser());
+
+    // The comment of the user without a profile is kept with a placeholder username.
+    Assert.assertEquals(
+        CommentDataManager.MISSING_PROFILE_USERNAME, comments.get(0).getUsername());
+  }
+
+  @Test
+  public void editUsername_commentsShowNewUsernameAfterBackgroundUpdate() {
+    commentDataManager.addItemComment(12345, COMMENT, TIMESTAMP, EMAIL);
+    commentDataManager.addItemComment(12345, COMMENT, TIMESTAMP + 1, EMAIL);
+
+    new ProfileDatastore().editProfile("Eric", "NewUsername", "Hey");
+
+    // The comments keep the username they were posted with until the background task runs.
+    Assert.assertEquals(USERNAME, commentDataManager.retrieveComments(12345).get(0).getUsername());
+    Assert.assertEquals(1, BackgroundTaskScheduler.getInstance().runPendingLocalTasks());
+
+    for (CommentData comment : commentDataManager.retrieveComments(12345)) {
+      Assert.assertEquals("NewUsername", comment.getUsername());
+    }
+  }
+
+  @Test
+  public void backfillCommentUsernames_legacyCommentsStoreUsername() {
+    commentDataManager.addItemComment(12345, COMMENT, TIMESTAMP, "legacy@gmail.com");
+    commentDataManager.addItemComment(12345, COMMENT, TIMESTAMP + 1, EMAIL);
+    new ProfileDatastore().addUserProfileToDatastore("Legacy", "legacy@gmail.com", "old", "Hey");
+
+    Assert.assertEquals(1, commentDataManager.backfillCommentUsernames());
+    Assert.assertEquals(0, commentDataManager.backfillCommentUsernames());
+    Assert.assertEquals("old", commentDataManager.retrieveComments(12345).get(0).getUsername());
+  }
+
+  @Test
+  public void retrieveFirstPageTwice_secondRetrievalIsServedFromCache() {
+    commentDataManager.addItemComment(12345, COMMENT, TIMESTAMP, EMAIL);
+    CommentPageCache commentPageCache = CommentPageCache.getInstance();
+    long initialHitCount = commentPageCache.getStats().hitCount();
+
+    commentDataManager.retrieveComments(12345, FIRST_PAGE, CommentOrder.OLDEST_FIRST);
+    List<CommentData> comments = new CommentDataManager()
+        .retrieveComments(12345, FIRST_PAGE, CommentOrder.OLDEST_FIRST).getComments();
+
+    Assert.assertEquals(initialHitCount + 1, commentPageCache.getStats().hitCount());
+    Assert.assertEquals(1, comments.size());
+    Assert.assertEquals(USERNAME, comments.get(0).getUsername());
+  }
+
+  @Test
+  public void addCommentToCachedPage_pageIsUpdatedWithoutQuery() {
+    commentDataManager.addItemComment(12345, COMMENT, TIMESTAMP, EMAIL);
+    commentDataManager.retrieveComments(12345, FIRST_PAGE, CommentOrder.OLDEST_FIRST);
+
+    commentDataManager.addItemComment(12345, COMMENT + 1, TIMESTAMP + 1, EMAIL);
+    long initialMissCount = CommentPageCache.getInstance().getStats().missCount();
+    List<CommentData> comments = commentDataManager
+        .retrieveComments(12345, FIRST_PAGE, CommentOrder.OLDEST_FIRST).getComments();
+
+    Assert.assertEquals(initialMissCount, CommentPageCache.getInstance().getStats().missCount());
+    Assert.assertEquals(2, comments.size());
+    Assert.assertEquals(COMMENT + 1, comments.get(1).getComment());
+  }
+
+  @Test
+  public void cachedPageForDifferentUsers_belongsToUserIsComputedPerUser() {
+    commentDataManager.addItemComment(12345, COMMENT, TIMESTAMP, EMAIL);
+    commentDataManager.retrieveComments(12345, FIRST_PAGE, CommentOrder.OLDEST_FIRST);
+
+    helper.setEnvEmail(ALT_EMAIL);
+
+    Assert.assertFalse(new CommentDataManager()
+                           .retrieveComments(12345, FIRST_PAGE, CommentOrder.OLDEST_FIRST)
+                           .getComments()
+                           .get(0)
+                           .getBelongsToUser());
+  }
+
+  @Test
+  public void deleteCommentOfCachedPage_commentIsNotRetrieved() {
+    Key commentKey = commentDataManager.addItemComment(12345, COMMENT, TIMESTAMP, EMAIL);
+    commentDataManager.addItemComment(12345, COMMENT + 1, TIMESTAMP + 1, EMAIL);
+    commentDataManager.retrieveComments(12345, FIRST_PAGE, CommentOrder.OLDEST_FIRST);
+
+    commentDataManager.deleteComment(commentKey.getId());
+    List<CommentData> comments = commentDataManager
+        .retrieveComments(12345, FIRST_PAGE, CommentOrder.OLDEST_FIRST).getComments();
+
+    Assert.assertEquals(1, comments.size());
+    Assert.assertEquals(COMMENT + 1, comments.get(0).getComment());
+  }
+
+  @Test
+  public void addCommentThatFillsCachedPage_pageHasCursorOfNextPage() {
+    for (int comment = 0; comment < CommentPageCache.CACHED_PAGE_SIZE - 1; comment++) {
+      commentDataManager.addItemComment(12345, COMMENT, TIMESTAMP + comment, EMAIL);
+    }
+    Assert.assertNull(commentDataManager
+                          .retrieveComments(12345, FIRST_PAGE, CommentOrder.OLDEST_FIRST)
+                          .getPageCursor());
+
+    commentDataManager.addItemComment(12345, COMMENT, TIMESTAMP + 100, EMAIL);
+    commentDataManager.addItemComment(12345, COMMENT + 101, TIMESTAMP + 101, EMAIL);
+    CommentList firstPage =
+        commentDataManager.retrieveComments(12345, FIRST_PAGE, CommentOrder.OLDEST_FIRST);
+    CommentList secondPage = commentDataManager.retrieveComments(12345,
+        FetchOptions.Builder.withLimit(CommentPageCache.CACHED_PAGE_SIZE)
+            .startCursor(Cursor.fromWebSafeString(firstPage.getPageCursor())),
+        CommentOrder.OLDEST_FIRST);
+
+    Assert.assertEquals(CommentPageCache.CACHED_PAGE_SIZE, firstPage.getComments().size());
+    Assert.assertEquals(1, secondPage.getComments().size());
+    Assert.assertEquals(COMMENT + 101, secondPage.getComments().get(0).getComment());
+  }
+
+  @Test
+  public void editUsernameOfCachedComments_cachedPageShowsNewUsername() {
+    commentDataManager.addItemComment(12345, COMMENT, TIMESTAMP, EMAIL);
+    commentDataManager.retrieveComments(12345, FIRST_PAGE, CommentOrder.OLDEST_FIRST);
+
+    new ProfileDatastore().editProfile("Eric", "NewUsername", "Hey");
+    BackgroundTaskScheduler.getInstance().runPendingLocalTasks();
+
+    Assert.assertEquals("NewUsername", commentDataManager
+        .retrieveComments(12345, FIRST_PAGE, CommentOrder.OLDEST_FIRST)
+        .getComments()
+        .get(0)
+        .getUsername());
+  }
+
+  @Test
+  public void addAndDeleteComments_commentCountsAreUpdated() {
+    Key commentKey = commentDataManager.addItemComment(12345, COMMENT, TIMESTAMP, EMAIL);
+    commentDataManager.addItemComment(12345, COMMENT, TIMESTAMP + 1, EMAIL);
+    commentDataManager.addItemComment(54321, COMMENT, TIMESTAMP, EMAIL);
+
+    Assert.assertEquals(2, commentDataManager.queryCommentCount(12345));
+
+    commentDataManager.deleteComment(commentKey.getId());
+    // Deleting a comment that no longer exists doesn't change the count again.
+    commentDataManager.deleteComment(commentKey.getId());
+
+    Assert.assertEquals(ImmutableMap.of(12345L, 1L, 54321L, 1L, 99999L, 0L),
+        new CommentDataManager().queryCommentCounts(Arrays.asList(12345L, 54321L, 99999L)));
+  }
+
+  @Test
+  public void doGetWithComments_itemPageDataHasCommentCount() throws IOException {
+    long itemId = EntertainmentItemDatastore.getInstance()
+                      .addItemToDatastore(new EntertainmentItem.Builder().setTitle(TITLE).build())
+                      .getId();
+    for (int comment = 0; comment < 3; comment++) {
+      commentDataManager.addItemComment(itemId, COMMENT, TIMESTAMP + comment, EMAIL);
+    }
+
+    StringWriter stringWriter = new StringWriter();
+    when(request.getParameter("itemId")).thenReturn(String.valueOf(itemId));
+    when(request.getParameter("commentsPageSize")).thenReturn("2");
+    when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
+
+    servlet.doGet(request, response);
+
+    JsonObject itemPageJson = new JsonParser().parse(stringWriter.toString()).getAsJsonObject();
+    Assert.assertEquals(2, itemPageJson.getAsJsonArray("comments").size());
+    Assert.assertEquals(3, itemPageJson.get("commentCount").getAsLong());
+  }
+
+  @Test
+  public void retrieveCommentsNewestFirstWithCursors_pagesCoverEveryComment() {
+    for (int comment = 0; comment < 5; comment++) {
+      commentDataManager.addItemComment(12345, COMMENT + comment, TIMESTAMP + comment, EMAIL);
+    }
+
+    List<String> commentTexts = new ArrayList<>();
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(2);
+    CommentList page;
+
+    do {
+      page = commentDataManager.retrieveComments(
+          12345, fetchOptions, CommentDataManager.CommentOrder.NEWEST_FIRST);
+      page.getComments().forEach(comment -> commentTexts.add(comment.getComment()));
+
+      if (page.getPageCursor() != null) {
+        fetchOptions.startCursor(Cursor.fromWebSafeString(page.getPageCursor()));
+      }
+    } while (page.getPageCursor() != null);
+
+    Assert.assertEquals(
+        Arrays.asList(COMMENT + 4, COMMENT + 3, COMMENT + 2, COMMENT + 1, COMMENT + 0),
+        commentTexts);
+  }
+
+  @Test
+  public void doGetWithCommentsPageSize_responseHasPageAndCursor() throws IOException {
+    long itemId = EntertainmentItemDatastore.getInstance()
+                      .addItemToDatastore(new EntertainmentItem.Builder()
+                                              .setTitle(TITLE)
+                                              .setOmdbId(OMDB_ID)
+                                              .build())
+                      .getId();
+
+    for (int comment = 0; comment < 3; comment++) {
+      commentDataManager.addItemComment(itemId, COMMENT + comment, TIMESTAMP + comment, EMAIL);
+    }
+
+    StringWriter stringWriter = new StringWriter();
+    when(request.getParameter("itemId")).thenReturn(String.valueOf(itemId));
+    when(request.getParameter("commentsPageSize")).thenReturn("2");
+    when(request.getParameter("commentsOrder")).thenReturn("NEWEST_FIRST");
+    when(response.getWriter()).thenReturn(new PrintWriter(stringWriter));
+
+    servlet.doGet(request, response);
+
+    JsonObject itemPageJson = JsonParser.parseString(stringWriter.toString()).getAsJsonObject();
+
+    Assert.assertEquals(2, itemPageJson.getAsJsonArray("comments").size());
+    Assert.assertEquals(COMMENT + 2, itemPageJson.getAsJsonArray("comments")
+                                         .get(0).getAsJsonObject().get("comment").getAsString());
+    Assert.assertTrue(itemPageJson.has("commentsPageCursor"));
+  }
+
+  @Test
+  public void doGetWithInvalidCommentsOrder_errorIsSent() throws IOException {
+    when(request.getParameter("itemId")).thenReturn("12345");
+    when(request.getParameter("commentsOrder")).thenReturn("RANDOM");
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+  }
+
   @Test
   public void doPostAddsValidComment() throws IOException {
     when(request.getParameter("itemId")).thenReturn("12345");
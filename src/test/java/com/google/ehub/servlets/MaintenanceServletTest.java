@@ -0,0 +1,165 @@
+package com.google.ehub.servlets;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalUserServiceTestConfig;
+import com.google.common.collect.ImmutableMap;
+import com.google.ehub.data.CommentDataManager;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+@RunWith(JUnit4.class)
+public class MaintenanceServletTest {
+  private static final String TASK_PARAMETER_KEY = "task";
+  private static final String JSON_CONTENT_TYPE = "application/json";
+
+  private static final String FAVORITE_ITEM_KIND = "favoriteItem";
+  private static final String USER_EMAIL_PROPERTY_KEY = "userEmail";
+  private static final String ITEM_ID_PROPERTY_KEY = "itemId";
+
+  private static final String MIGRATE_FAVORITE_ITEMS_TASK = "MIGRATE_FAVORITE_ITEMS";
+  private static final String REBUILD_USER_SIMILARITIES_TASK = "REBUILD_USER_SIMILARITIES";
+  private static final String RECOUNT_COMMENTS_TASK = "RECOUNT_COMMENTS";
+  private static final String COMMENT_KIND = "comment";
+  private static final String INVALID_TASK = "DROP_EVERYTHING";
+  private static final String EMAIL = "Bryan@gmail.com";
+
+  private final MaintenanceServlet servlet = new MaintenanceServlet();
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(
+          new LocalDatastoreServiceTestConfig(), new LocalUserServiceTestConfig())
+          .setEnvEmail(EMAIL)
+          .setEnvIsLoggedIn(true)
+          .setEnvIsAdmin(true)
+          .setEnvAuthDomain("gmail.com");
+
+  @Mock HttpServletRequest request;
+  @Mock HttpServletResponse response;
+  @Mock PrintWriter printWriter;
+
+  @Before
+  public void init() {
+    MockitoAnnotations.initMocks(this);
+    helper.setUp();
+    CommentDataManager.invalidateCachedCommentCounts();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void postRequestFromNonAdmin_errorIsSent() throws IOException {
+    helper.setEnvIsAdmin(false);
+    when(request.getParameter(TASK_PARAMETER_KEY)).thenReturn(MIGRATE_FAVORITE_ITEMS_TASK);
+
+    servlet.doPost(request, response);
+
+    verify(response).sendError(eq(HttpServletResponse.SC_FORBIDDEN), anyString());
+  }
+
+  @Test
+  public void postRequestWithLoggedOutUser_errorIsSent() throws IOException {
+    helper.setEnvIsLoggedIn(false);
+    when(request.getParameter(TASK_PARAMETER_KEY)).thenReturn(MIGRATE_FAVORITE_ITEMS_TASK);
+
+    servlet.doPost(request, response);
+
+    verify(response).sendError(eq(HttpServletResponse.SC_FORBIDDEN), anyString());
+  }
+
+  @Test
+  public void postRequestWithInvalidTask_errorIsSent() throws IOException {
+    when(request.getParameter(TASK_PARAMETER_KEY)).thenReturn(INVALID_TASK);
+
+    servlet.doPost(request, response);
+
+    verify(response).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+  }
+
+  @Test
+  public void postRequestWithMigrateFavoriteItemsTask_responseSendsMigratedCount()
+      throws IOException {
+    DatastoreService datastoreService = DatastoreServiceFactory.getDatastoreService();
+
+    for (Long itemId = 0L; itemId < 3; itemId++) {
+      Entity favoriteItemEntity = new Entity(FAVORITE_ITEM_KIND);
+      favoriteItemEntity.setProperty(USER_EMAIL_PROPERTY_KEY, EMAIL);
+      favoriteItemEntity.setProperty(ITEM_ID_PROPERTY_KEY, itemId);
+
+      datastoreService.put(favoriteItemEntity);
+    }
+
+    when(request.getParameter(TASK_PARAMETER_KEY)).thenReturn(MIGRATE_FAVORITE_ITEMS_TASK);
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doPost(request, response);
+
+    verify(response).setContentType(JSON_CONTENT_TYPE);
+    verify(printWriter).println("{\"updatedEntities\":3}");
+  }
+
+  @Test
+  public void postRequestWithRebuildUserSimilaritiesTask_responseSendsRebuiltCount()
+      throws IOException {
+    DatastoreService datastoreService = DatastoreServiceFactory.getDatastoreService();
+
+    for (String email : new String[] {EMAIL, "Eric@gmail.com", "Oyin@gmail.com"}) {
+      Entity favoriteItemEntity = new Entity(FAVORITE_ITEM_KIND);
+      favoriteItemEntity.setProperty(USER_EMAIL_PROPERTY_KEY, email);
+      favoriteItemEntity.setProperty(ITEM_ID_PROPERTY_KEY, 1L);
+
+      datastoreService.put(favoriteItemEntity);
+    }
+
+    when(request.getParameter(TASK_PARAMETER_KEY)).thenReturn(REBUILD_USER_SIMILARITIES_TASK);
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doPost(request, response);
+
+    verify(response).setContentType(JSON_CONTENT_TYPE);
+    verify(printWriter).println("{\"updatedEntities\":6}");
+  }
+
+  @Test
+  public void postRequestWithRecountCommentsTask_commentCountsAreBackfilled()
+      throws IOException {
+    DatastoreService datastoreService = DatastoreServiceFactory.getDatastoreService();
+
+    for (Long itemId : new Long[] {1L, 1L, 2L}) {
+      Entity commentEntity = new Entity(COMMENT_KIND);
+      commentEntity.setProperty(ITEM_ID_PROPERTY_KEY, itemId);
+
+      datastoreService.put(commentEntity);
+    }
+
+    when(request.getParameter(TASK_PARAMETER_KEY)).thenReturn(RECOUNT_COMMENTS_TASK);
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doPost(request, response);
+
+    verify(printWriter).println("{\"updatedEntities\":2}");
+    Assert.assertEquals(ImmutableMap.of(1L, 2L, 2L, 1L, 3L, 0L),
+        new CommentDataManager().queryCommentCounts(Arrays.asList(1L, 2L, 3L)));
+  }
+}
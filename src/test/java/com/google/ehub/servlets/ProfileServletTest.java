@@ -17,7 +17,10 @@ import com.google.appengine.tools.development.testing.LocalUserServiceTestConfig
 import com.google.ehub.data.ProfileDatastore;
 import com.google.ehub.data.UserData;
 import com.google.ehub.data.UserProfile;
+import com.google.ehub.data.UserRecommendationDatastore;
+import com.google.ehub.data.UserRecommendations;
 import com.google.ehub.servlets.LoginServlet;
+import com.google.ehub.utility.BackgroundTaskScheduler;
 import com.google.ehub.utility.UserRecommendationUtils;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
@@ -26,6 +29,7 @@ import com.google.gson.JsonParser;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Set;
 import javax.servlet.http.HttpServletRequest;
@@ -78,6 +82,7 @@ public class ProfileServletTest {
 
   @After
   public void tearDown() throws IOException {
+    BackgroundTaskScheduler.getInstance().cancelPendingLocalTasks();
     helper.tearDown();
   }
 
@@ -222,6 +227,37 @@ public class ProfileServletTest {
             new UserRecommendationUtils().getRecommendedEmails(new HashMap<Long, Set<String>>()))));
   }
 
+  @Test
+  public void getRequestWithStoredRecommendations_sendsThemWithTimestamp() throws IOException {
+    createUserEntity();
+    UserRecommendationDatastore.getInstance().storeRecommendations(
+        EMAIL, Arrays.asList("bryan@gmail.com"), System.currentTimeMillis());
+    UserRecommendations recommendations =
+        UserRecommendationDatastore.getInstance().queryRecommendations(EMAIL).get();
+
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    verify(printWriter)
+        .println(new Gson().toJson(new UserData(new UserProfile(NAME, USERNAME, BIO, EMAIL),
+            Arrays.asList("bryan@gmail.com"), recommendations.getComputedTimestampMillis())));
+    Assert.assertEquals(0, BackgroundTaskScheduler.getInstance().runPendingLocalTasks());
+  }
+
+  @Test
+  public void getRequestWithoutStoredRecommendations_updateIsScheduled() throws IOException {
+    createUserEntity();
+
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    Assert.assertEquals(1, BackgroundTaskScheduler.getInstance().runPendingLocalTasks());
+    Assert.assertTrue(
+        UserRecommendationDatastore.getInstance().queryRecommendations(EMAIL).isPresent());
+  }
+
   @Test
   public void getRequestWithNullUser_validatesJson() throws IOException {
     helper.setEnvIsLoggedIn(true);
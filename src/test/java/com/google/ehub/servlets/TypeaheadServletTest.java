@@ -0,0 +1,119 @@
+package com.google.ehub.servlets;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.ehub.data.EntertainmentItem;
+import com.google.ehub.data.EntertainmentItemDatastore;
+import com.google.ehub.data.FavoriteItemDatastore;
+import com.google.ehub.data.TypeaheadIndex;
+import com.google.ehub.utility.BackgroundTaskScheduler;
+import com.google.ehub.utility.TitleSuggestion;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+@RunWith(JUnit4.class)
+public class TypeaheadServletTest {
+  private static final String PREFIX_PARAMETER_KEY = "prefix";
+  private static final String LIMIT_PARAMETER_KEY = "limit";
+  private static final String JSON_CONTENT_TYPE = "application/json";
+
+  private final TypeaheadServlet servlet = new TypeaheadServlet();
+  private final EntertainmentItemDatastore itemDatastore = EntertainmentItemDatastore.getInstance();
+  private final FavoriteItemDatastore favoriteItemDatastore = FavoriteItemDatastore.getInstance();
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Mock HttpServletRequest request;
+  @Mock HttpServletResponse response;
+  @Mock PrintWriter printWriter;
+
+  @Before
+  public void init() {
+    MockitoAnnotations.initMocks(this);
+    helper.setUp();
+    favoriteItemDatastore.invalidateCachedLikeCounts();
+    TypeaheadIndex.getInstance().rebuild();
+  }
+
+  @After
+  public void tearDown() {
+    BackgroundTaskScheduler.getInstance().cancelPendingLocalTasks();
+    helper.tearDown();
+  }
+
+  @Test
+  public void getRequestWithoutPrefix_errorIsSent() throws IOException {
+    servlet.doGet(request, response);
+
+    verify(response).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+  }
+
+  @Test
+  public void getRequestWithLimitAboveMaximum_errorIsSent() throws IOException {
+    when(request.getParameter(PREFIX_PARAMETER_KEY)).thenReturn("star");
+    when(request.getParameter(LIMIT_PARAMETER_KEY))
+        .thenReturn(String.valueOf(TypeaheadIndex.MAX_SUGGESTIONS + 1));
+
+    servlet.doGet(request, response);
+
+    verify(response).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+  }
+
+  @Test
+  public void getRequestAfterItemsAndLikesAreAdded_mostLikedTitlesAreSent() throws IOException {
+    long warsId = addItem("Star Wars");
+    long trekId = addItem("Star Trek");
+    addItem("Stargate");
+    addItem("Alien");
+    favoriteItemDatastore.addFavoriteItem("bryan@gmail.com", trekId);
+    favoriteItemDatastore.addFavoriteItem("eric@gmail.com", trekId);
+    favoriteItemDatastore.addFavoriteItem("eric@gmail.com", warsId);
+
+    when(request.getParameter(PREFIX_PARAMETER_KEY)).thenReturn("STAR ");
+    when(request.getParameter(LIMIT_PARAMETER_KEY)).thenReturn("2");
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    verify(response).setContentType(JSON_CONTENT_TYPE);
+    verify(printWriter).println(new Gson().toJson(Arrays.asList(
+        new TitleSuggestion(trekId, "Star Trek", 2), new TitleSuggestion(warsId, "Star Wars", 1))));
+  }
+
+  @Test
+  public void getRequestAfterRebuild_likesStoredInDatastoreAreUsed() throws IOException {
+    long firstId = addItem("Heat");
+    long secondId = addItem("Heathers");
+    favoriteItemDatastore.addFavoriteItem("bryan@gmail.com", secondId);
+    TypeaheadIndex.getInstance().rebuild();
+
+    when(request.getParameter(PREFIX_PARAMETER_KEY)).thenReturn("hea");
+    when(response.getWriter()).thenReturn(printWriter);
+
+    servlet.doGet(request, response);
+
+    verify(printWriter).println(new Gson().toJson(Arrays.asList(
+        new TitleSuggestion(secondId, "Heathers", 1), new TitleSuggestion(firstId, "Heat", 0))));
+  }
+
+  private long addItem(String title) {
+    return itemDatastore.addItemToDatastore(new EntertainmentItem.Builder().setTitle(title).build())
+        .getId();
+  }
+}
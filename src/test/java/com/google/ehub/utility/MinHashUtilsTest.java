@@ -0,0 +1,168 @@
+package com.google.ehub.utility;
+
+import com.google.ehub.data.UserSignature;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class MinHashUtilsTest {
+  private static final int MAX_RECOMMENDED_USERS = 10;
+
+  // Synthetic favorites where users mostly like the items of one of several taste groups, plus a
+  // few items that are popular with everyone.
+  private static final int NUM_USERS = 2000;
+  private static final int NUM_TASTE_GROUPS = 50;
+  private static final int ITEMS_PER_TASTE_GROUP = 40;
+  private static final int NUM_POPULAR_ITEMS = 100;
+  private static final int GROUP_LIKES_PER_USER = 16;
+  private static final int POPULAR_LIKES_PER_USER = 4;
+  private static final int NUM_SAMPLED_USERS = 200;
+
+  // Minimum fraction of the common likes of the exact recommendations that the approximate
+  // recommendations need to have.
+  private static final double MIN_COMMON_LIKES_RATIO = 0.9;
+
+  @Test
+  public void computeSignature_matchesSignatureBuiltIncrementally() {
+    long[] signature = MinHashUtils.computeSignature(new ArrayList<>());
+
+    for (long itemId : Arrays.asList(3L, 99L, 12L)) {
+      MinHashUtils.addItemToSignature(signature, itemId);
+    }
+
+    Assert.assertArrayEquals(
+        MinHashUtils.computeSignature(Arrays.asList(12L, 3L, 99L)), signature);
+  }
+
+  @Test
+  public void estimateJaccardOfEqualSets_returnsOne() {
+    long[] signature = MinHashUtils.computeSignature(Arrays.asList(1L, 2L, 3L));
+
+    Assert.assertEquals(1.0, MinHashUtils.estimateJaccard(signature, signature), 0);
+    Assert.assertEquals(
+        MinHashUtils.computeBands(signature), MinHashUtils.computeBands(signature.clone()));
+  }
+
+  @Test
+  public void estimateCommonItemsOfEqualSets_returnsSetSize() {
+    long[] signature = MinHashUtils.computeSignature(Arrays.asList(1L, 2L, 3L, 4L));
+
+    Assert.assertEquals(4.0, MinHashUtils.estimateCommonItems(new UserSignature("a", signature, 4),
+        new UserSignature("b", signature, 4)), 1e-9);
+  }
+
+  @Test
+  public void getMostSimilarEmails_skipsUserAndBreaksTiesLexicographically() {
+    long[] signature = MinHashUtils.computeSignature(Arrays.asList(1L, 2L));
+    UserSignature user = new UserSignature("bryan", signature, 2);
+
+    List<UserSignature> candidates = Arrays.asList(user, new UserSignature("oyin", signature, 2),
+        new UserSignature("eric", signature, 2),
+        new UserSignature("jessica", MinHashUtils.computeSignature(Arrays.asList(7L)), 1));
+
+    Assert.assertEquals(Arrays.asList("eric", "oyin"),
+        MinHashUtils.getMostSimilarEmails(user, candidates, MAX_RECOMMENDED_USERS));
+  }
+
+  @Test
+  public void getMostSimilarEmailsWithLshCandidates_findsMostOfTheExactCommonLikes() {
+    Random random = new Random(/* seed */ 7);
+    Map<String, Set<Long>> favoritesByEmail = new HashMap<>();
+    Map<Long, Set<String>> emailsByItemId = new HashMap<>();
+
+    for (int user = 0; user < NUM_USERS; user++) {
+      String email = "user" + user;
+      int tasteGroup = random.nextInt(NUM_TASTE_GROUPS);
+      Set<Long> favoriteIds = new HashSet<>();
+
+      while (favoriteIds.size() < GROUP_LIKES_PER_USER) {
+        favoriteIds.add(NUM_POPULAR_ITEMS + (long) tasteGroup * ITEMS_PER_TASTE_GROUP
+            + random.nextInt(ITEMS_PER_TASTE_GROUP));
+      }
+
+      while (favoriteIds.size() < GROUP_LIKES_PER_USER + POPULAR_LIKES_PER_USER) {
+        favoriteIds.add((long) random.nextInt(NUM_POPULAR_ITEMS));
+      }
+
+      favoritesByEmail.put(email, favoriteIds);
+
+      for (Long itemId : favoriteIds) {
+        emailsByItemId.computeIfAbsent(itemId, id -> new HashSet<>()).add(email);
+      }
+    }
+
+    Map<String, UserSignature> signaturesByEmail = new HashMap<>();
+    Map<Long, Set<String>> emailsByBand = new HashMap<>();
+
+    for (Map.Entry<String, Set<Long>> favoriteIds : favoritesByEmail.entrySet()) {
+      long[] minHashes = MinHashUtils.computeSignature(favoriteIds.getValue());
+      signaturesByEmail.put(favoriteIds.getKey(),
+          new UserSignature(favoriteIds.getKey(), minHashes, favoriteIds.getValue().size()));
+
+      for (Long band : MinHashUtils.computeBands(minHashes)) {
+        emailsByBand.computeIfAbsent(band, b -> new HashSet<>()).add(favoriteIds.getKey());
+      }
+    }
+
+    UserRecommendationUtils recommendationUtils = new UserRecommendationUtils();
+    long exactCommonLikes = 0;
+    long approximateCommonLikes = 0;
+
+    for (int user = 0; user < NUM_SAMPLED_USERS; user++) {
+      String email = "user" + user;
+      Set<Long> favoriteIds = favoritesByEmail.get(email);
+      Map<Long, Set<String>> itemLikes = new HashMap<>();
+
+      for (Long itemId : favoriteIds) {
+        Set<String> emails = new HashSet<>(emailsByItemId.get(itemId));
+        emails.remove(email);
+        itemLikes.put(itemId, emails);
+      }
+
+      UserSignature signature = signaturesByEmail.get(email);
+      Set<UserSignature> candidates = new HashSet<>();
+
+      for (Long band : MinHashUtils.computeBands(signature.getMinHashes())) {
+        for (String candidateEmail : emailsByBand.get(band)) {
+          candidates.add(signaturesByEmail.get(candidateEmail));
+        }
+      }
+
+      for (String recommendedEmail : recommendationUtils.getRecommendedEmails(itemLikes)) {
+        exactCommonLikes += countCommonLikes(favoriteIds, favoritesByEmail.get(recommendedEmail));
+      }
+
+      for (String recommendedEmail :
+          MinHashUtils.getMostSimilarEmails(signature, candidates, MAX_RECOMMENDED_USERS)) {
+        approximateCommonLikes +=
+            countCommonLikes(favoriteIds, favoritesByEmail.get(recommendedEmail));
+      }
+    }
+
+    Assert.assertTrue("Approximate recommendations found " + approximateCommonLikes + " of "
+            + exactCommonLikes + " common likes",
+        approximateCommonLikes >= MIN_COMMON_LIKES_RATIO * exactCommonLikes);
+  }
+
+  private static long countCommonLikes(Set<Long> favoriteIds, Set<Long> otherFavoriteIds) {
+    long commonLikes = 0;
+
+    for (Long itemId : otherFavoriteIds) {
+      if (favoriteIds.contains(itemId)) {
+        commonLikes++;
+      }
+    }
+
+    return commonLikes;
+  }
+}
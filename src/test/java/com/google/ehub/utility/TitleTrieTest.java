@@ -0,0 +1,129 @@
+package com.google.ehub.utility;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TitleTrieTest {
+  private static final int MAX_SUGGESTIONS = 3;
+
+  private final TitleTrie titleTrie = new TitleTrie(MAX_SUGGESTIONS);
+
+  @Test
+  public void getSuggestionsOfEmptyTrie_returnsEmptyList() {
+    Assert.assertEquals(Collections.emptyList(), titleTrie.getSuggestions("star", 3));
+  }
+
+  @Test
+  public void getSuggestionsWithPrefixEndingInsideEdge_itemsAreFound() {
+    titleTrie.insert("star wars", 1L, "Star Wars", 0);
+
+    Assert.assertEquals(Arrays.asList(new TitleSuggestion(1L, "Star Wars", 0)),
+        titleTrie.getSuggestions("sta", 3));
+    Assert.assertEquals(Collections.emptyList(), titleTrie.getSuggestions("stx", 3));
+    Assert.assertEquals(Collections.emptyList(), titleTrie.getSuggestions("star wars 2", 3));
+  }
+
+  @Test
+  public void getSuggestionsOfSplitEdges_mostLikedItemsComeFirst() {
+    titleTrie.insert("star wars", 1L, "Star Wars", 5);
+    titleTrie.insert("star trek", 2L, "Star Trek", 7);
+    titleTrie.insert("star", 3L, "Star", 1);
+    titleTrie.insert("stargate", 4L, "Stargate", 6);
+
+    Assert.assertEquals(Arrays.asList(new TitleSuggestion(2L, "Star Trek", 7),
+                            new TitleSuggestion(4L, "Stargate", 6),
+                            new TitleSuggestion(1L, "Star Wars", 5)),
+        titleTrie.getSuggestions("star", 3));
+    Assert.assertEquals(Arrays.asList(new TitleSuggestion(2L, "Star Trek", 7),
+                            new TitleSuggestion(1L, "Star Wars", 5)),
+        titleTrie.getSuggestions("star ", 3));
+  }
+
+  @Test
+  public void updateLikeCount_itemMovesIntoTopSuggestions() {
+    titleTrie.insert("alien", 1L, "Alien", 3);
+    titleTrie.insert("aliens", 2L, "Aliens", 2);
+    titleTrie.insert("alien 3", 3L, "Alien 3", 1);
+    titleTrie.insert("alien resurrection", 4L, "Alien Resurrection", 0);
+
+    Assert.assertTrue(titleTrie.updateLikeCount(4L, 10));
+    Assert.assertFalse(titleTrie.updateLikeCount(5L, 10));
+
+    Assert.assertEquals(Arrays.asList(new TitleSuggestion(4L, "Alien Resurrection", 10),
+                            new TitleSuggestion(1L, "Alien", 3)),
+        titleTrie.getSuggestions("al", 2));
+  }
+
+  @Test
+  public void insertAndUpdateRandomTitles_suggestionsMatchBruteForce() {
+    Random random = new Random(/* seed */ 7);
+    Map<Long, String> titles = new HashMap<>();
+    Map<Long, Long> likeCounts = new HashMap<>();
+
+    for (long itemId = 0; itemId < 300; itemId++) {
+      String title = createRandomTitle(random);
+      titles.put(itemId, title);
+      likeCounts.put(itemId, (long) random.nextInt(20));
+      titleTrie.insert(title, itemId, title, likeCounts.get(itemId));
+    }
+
+    for (int update = 0; update < 300; update++) {
+      long itemId = random.nextInt(300);
+      likeCounts.put(itemId, (long) random.nextInt(20));
+      titleTrie.updateLikeCount(itemId, likeCounts.get(itemId));
+    }
+
+    for (int query = 0; query < 200; query++) {
+      String prefix = createRandomTitle(random).substring(0, random.nextInt(4));
+
+      Assert.assertEquals(getExpectedSuggestions(titles, likeCounts, prefix),
+          titleTrie.getSuggestions(prefix, MAX_SUGGESTIONS));
+    }
+  }
+
+  // Titles from a small alphabet share many prefixes, which exercises the edge splits.
+  private static String createRandomTitle(Random random) {
+    StringBuilder title = new StringBuilder();
+    int length = 3 + random.nextInt(5);
+
+    for (int i = 0; i < length; i++) {
+      title.append("ab c".charAt(random.nextInt(4)));
+    }
+
+    return title.toString();
+  }
+
+  private static List<TitleSuggestion> getExpectedSuggestions(
+      Map<Long, String> titles, Map<Long, Long> likeCounts, String prefix) {
+    List<Long> itemIds = new ArrayList<>();
+
+    for (Map.Entry<Long, String> title : titles.entrySet()) {
+      if (title.getValue().startsWith(prefix)) {
+        itemIds.add(title.getKey());
+      }
+    }
+
+    itemIds.sort(Comparator.comparingLong((Long itemId) -> -likeCounts.get(itemId))
+                     .thenComparing(titles::get)
+                     .thenComparingLong(itemId -> itemId));
+
+    List<TitleSuggestion> suggestions = new ArrayList<>();
+
+    for (Long itemId : itemIds.subList(0, Math.min(MAX_SUGGESTIONS, itemIds.size()))) {
+      suggestions.add(new TitleSuggestion(itemId, titles.get(itemId), likeCounts.get(itemId)));
+    }
+
+    return suggestions;
+  }
+}
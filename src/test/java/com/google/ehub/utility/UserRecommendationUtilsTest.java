@@ -3,9 +3,15 @@ package com.google.ehub.utility;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import org.junit.Assert;
 import org.junit.Test;
@@ -63,4 +69,90 @@ public class UserRecommendationUtilsTest {
                             "Horse", "Lion", "Owl"),
         recommendationUtils.getRecommendedEmails(itemLikes));
   }
+
+  @Test
+  public void getRecommendedEmailsFromManyRandomLikes_returnsSameListAsSortingAllEmails() {
+    Random random = new Random(/* seed */ 11);
+    Map<Long, Set<String>> itemLikes = new HashMap<>();
+
+    // Enough emails to resize the frequency table several times, with many tied counts.
+    for (long itemId = 0; itemId < 40; itemId++) {
+      Set<String> emails = new HashSet<>();
+
+      for (int like = 0; like < 2000; like++) {
+        emails.add("user" + random.nextInt(5000) + "@gmail.com");
+      }
+
+      itemLikes.put(itemId, emails);
+    }
+
+    Map<String, Integer> emailFreqs = new HashMap<>();
+
+    for (Set<String> emails : itemLikes.values()) {
+      for (String email : emails) {
+        emailFreqs.merge(email, 1, Integer::sum);
+      }
+    }
+
+    List<String> sortedEmails = new ArrayList<>(emailFreqs.keySet());
+    sortedEmails.sort(Comparator.comparing((String email) -> emailFreqs.get(email))
+                          .reversed()
+                          .thenComparing(Comparator.naturalOrder()));
+
+    Assert.assertEquals(sortedEmails.subList(0, MAX_RECOMMENDED_USERS),
+        recommendationUtils.getRecommendedEmails(itemLikes));
+  }
+
+  @Test
+  public void getRecommendedEmailsWithTiesAboveIntegerCacheRange_returnsTiesInLexicographicOrder() {
+    Map<Long, Set<String>> itemLikes = new HashMap<>();
+
+    // Every user has 200 common likes, above the range of cached Integer instances.
+    for (long itemId = 0; itemId < 200; itemId++) {
+      itemLikes.put(itemId, Sets.newHashSet("Rodrigo", "Bryan", "Oyin", "Eric", "Jessica"));
+    }
+
+    Assert.assertEquals(Arrays.asList("Bryan", "Eric", "Jessica", "Oyin", "Rodrigo"),
+        recommendationUtils.getRecommendedEmails(itemLikes));
+  }
+
+  @Test
+  public void getTopScoresWithConfiguredLimit_returnsScoresUpToLimit() {
+    Map<Long, Set<String>> itemLikes = ImmutableMap.of(1L, Sets.newHashSet("Bryan", "Oyin"), 2L,
+        Sets.newHashSet("Bryan", "Oyin", "Eric"), 3L, Sets.newHashSet("Bryan"));
+
+    UserRecommendationUtils topTwoUtils = new UserRecommendationUtils(2, LikeWeighting.UNIFORM);
+
+    Assert.assertEquals(
+        Arrays.asList(new UserScore("Bryan", 3, 3), new UserScore("Oyin", 2, 2)),
+        topTwoUtils.getTopScores(itemLikes));
+  }
+
+  @Test
+  public void getTopScoresWithWeighting_ranksByWeightedScore() {
+    // The single like of Eric is of an item nobody else likes, so it weighs more than two likes.
+    Map<Long, Set<String>> itemLikes = ImmutableMap.of(1L, Sets.newHashSet("Bryan", "Oyin"), 2L,
+        Sets.newHashSet("Bryan", "Oyin"), 3L, Sets.newHashSet("Eric"));
+    LikeWeighting rareItemWeighting = (itemId, numLikers) -> numLikers == 1 ? 5 : 1;
+
+    UserRecommendationUtils weightedUtils =
+        new UserRecommendationUtils(MAX_RECOMMENDED_USERS, rareItemWeighting);
+
+    Assert.assertEquals(Arrays.asList(new UserScore("Eric", 5, 1), new UserScore("Bryan", 2, 2),
+                            new UserScore("Oyin", 2, 2)),
+        weightedUtils.getTopScores(itemLikes));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void createWithNegativeLimit_throwsIllegalArgumentException() {
+    new UserRecommendationUtils(-1, LikeWeighting.UNIFORM);
+  }
+
+  @Test
+  public void getTopScoresWithZeroLimit_returnsEmptyList() {
+    Map<Long, Set<String>> itemLikes = ImmutableMap.of(1L, Sets.newHashSet("Bryan", "Oyin"));
+
+    Assert.assertEquals(Collections.emptyList(),
+        new UserRecommendationUtils(0, LikeWeighting.UNIFORM).getTopScores(itemLikes));
+  }
 }
@@ -0,0 +1,181 @@
+package com.google.ehub.utility;
+
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.ehub.data.FavoriteItemDatastore;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class UserRecommenderTest {
+  private static final String BRYAN = "bryan@gmail.com";
+  private static final String ERIC = "eric@gmail.com";
+  private static final String OYIN = "oyin@gmail.com";
+  private static final String JESSICA = "jessica@gmail.com";
+
+  private final FavoriteItemDatastore favoriteItemDatastore = FavoriteItemDatastore.getInstance();
+  private final LocalServiceTestHelper helper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Before
+  public void init() {
+    helper.setUp();
+    favoriteItemDatastore.invalidateCachedLikeCounts();
+  }
+
+  @After
+  public void tearDown() {
+    BackgroundTaskScheduler.getInstance().cancelPendingLocalTasks();
+    helper.tearDown();
+    System.clearProperty(RecommendationConfig.ENGINE_PROPERTY_KEY);
+    System.clearProperty(RecommendationConfig.MAX_ITEM_LIKERS_PROPERTY_KEY);
+  }
+
+  @Test
+  public void createRecommenderWithoutConfiguredEngine_usesExactEngine() {
+    Assert.assertEquals(UserRecommender.Engine.EXACT, new UserRecommender().getEngine());
+  }
+
+  @Test
+  public void createRecommenderWithConfiguredEngine_usesConfiguredEngine() {
+    System.setProperty(RecommendationConfig.ENGINE_PROPERTY_KEY, "PRECOMPUTED");
+
+    Assert.assertEquals(UserRecommender.Engine.PRECOMPUTED, new UserRecommender().getEngine());
+  }
+
+  @Test
+  public void getRecommendedEmailsWithExactAndPrecomputedEngines_returnsSameEmails() {
+    favoriteItemDatastore.addFavoriteItem(BRYAN, 1L);
+    favoriteItemDatastore.addFavoriteItem(BRYAN, 2L);
+    favoriteItemDatastore.addFavoriteItem(BRYAN, 3L);
+    favoriteItemDatastore.addFavoriteItem(OYIN, 1L);
+    favoriteItemDatastore.addFavoriteItem(OYIN, 2L);
+    favoriteItemDatastore.addFavoriteItem(ERIC, 2L);
+    favoriteItemDatastore.addFavoriteItem(JESSICA, 3L);
+    favoriteItemDatastore.addFavoriteItem(JESSICA, 4L);
+
+    // Removed favorites should not count for recommendations.
+    favoriteItemDatastore.addFavoriteItem(ERIC, 1L);
+    favoriteItemDatastore.addFavoriteItem(ERIC, 3L);
+    favoriteItemDatastore.removeFavoriteItem(ERIC, 1L);
+    favoriteItemDatastore.removeFavoriteItem(ERIC, 3L);
+    BackgroundTaskScheduler.getInstance().runPendingLocalTasks();
+
+    for (UserRecommender.Engine engine :
+        Arrays.asList(UserRecommender.Engine.EXACT, UserRecommender.Engine.PRECOMPUTED)) {
+      UserRecommender userRecommender = new UserRecommender(engine);
+
+      Assert.assertEquals(
+          Arrays.asList(OYIN, ERIC, JESSICA), userRecommender.getRecommendedEmails(BRYAN));
+      Assert.assertEquals(Arrays.asList(BRYAN), userRecommender.getRecommendedEmails(JESSICA));
+    }
+  }
+
+  @Test
+  public void getRecommendedEmailsWithMinHashEngine_returnsUsersWithSameFavorites() {
+    for (long itemId = 1; itemId <= 5; itemId++) {
+      favoriteItemDatastore.addFavoriteItem(BRYAN, itemId);
+      favoriteItemDatastore.addFavoriteItem(OYIN, itemId);
+    }
+
+    favoriteItemDatastore.addFavoriteItem(ERIC, 6L);
+
+    // The signature of Oyin is recomputed after the removal and matches Bryan's again.
+    favoriteItemDatastore.addFavoriteItem(OYIN, 7L);
+    favoriteItemDatastore.removeFavoriteItem(OYIN, 7L);
+    BackgroundTaskScheduler.getInstance().runPendingLocalTasks();
+
+    UserRecommender userRecommender = new UserRecommender(UserRecommender.Engine.MINHASH);
+
+    Assert.assertEquals(Arrays.asList(OYIN), userRecommender.getRecommendedEmails(BRYAN));
+    Assert.assertEquals(Arrays.asList(), userRecommender.getRecommendedEmails(ERIC));
+    Assert.assertEquals(Arrays.asList(), userRecommender.getRecommendedEmails(JESSICA));
+  }
+
+  @Test
+  public void getRecommendedEmailsWithInversePopularityScoring_ranksNicheLikesHigher() {
+    favoriteItemDatastore.addFavoriteItem(BRYAN, 1L);
+    favoriteItemDatastore.addFavoriteItem(BRYAN, 2L);
+    favoriteItemDatastore.addFavoriteItem(BRYAN, 3L);
+
+    for (String email : Arrays.asList(OYIN, ERIC, JESSICA)) {
+      favoriteItemDatastore.addFavoriteItem(email, 1L);
+    }
+
+    favoriteItemDatastore.addFavoriteItem(OYIN, 2L);
+    favoriteItemDatastore.addFavoriteItem(ERIC, 2L);
+    favoriteItemDatastore.addFavoriteItem(JESSICA, 3L);
+
+    // Everyone shares two likes with Bryan, but only Jessica shares the item nobody else likes.
+    Assert.assertEquals(Arrays.asList(ERIC, JESSICA, OYIN),
+        new UserRecommender(UserRecommender.Engine.EXACT, UserRecommender.Scoring.COMMON_LIKES,
+            Long.MAX_VALUE)
+            .getRecommendedEmails(BRYAN));
+    Assert.assertEquals(Arrays.asList(JESSICA, ERIC, OYIN),
+        new UserRecommender(UserRecommender.Engine.EXACT,
+            UserRecommender.Scoring.INVERSE_POPULARITY, Long.MAX_VALUE)
+            .getRecommendedEmails(BRYAN));
+  }
+
+  @Test
+  public void getRecommendedEmailsWithMaxItemLikers_ignoresItemsWithMoreLikers() {
+    System.setProperty(RecommendationConfig.MAX_ITEM_LIKERS_PROPERTY_KEY, "3");
+
+    for (String email : Arrays.asList(BRYAN, OYIN, ERIC, JESSICA)) {
+      favoriteItemDatastore.addFavoriteItem(email, 1L);
+    }
+
+    favoriteItemDatastore.addFavoriteItem(BRYAN, 2L);
+    favoriteItemDatastore.addFavoriteItem(ERIC, 2L);
+    BackgroundTaskScheduler.getInstance().runPendingLocalTasks();
+
+    Assert.assertEquals(Arrays.asList(ERIC),
+        new UserRecommender(UserRecommender.Engine.EXACT).getRecommendedEmails(BRYAN));
+
+    // The item is pruned once it exceeds the limit, whatever the order of the likes, and the
+    // common likes it added are removed by the rebuild.
+    favoriteItemDatastore.rebuildUserSimilarities();
+
+    UserRecommender precomputedRecommender =
+        new UserRecommender(UserRecommender.Engine.PRECOMPUTED);
+    Assert.assertEquals(Arrays.asList(), precomputedRecommender.getRecommendedEmails(JESSICA));
+    Assert.assertEquals(Arrays.asList(ERIC), precomputedRecommender.getRecommendedEmails(BRYAN));
+
+    // It stays pruned when it drops back under the limit, and the next rebuild agrees.
+    favoriteItemDatastore.removeFavoriteItem(JESSICA, 1L);
+    BackgroundTaskScheduler.getInstance().runPendingLocalTasks();
+
+    Assert.assertEquals(Arrays.asList(ERIC), precomputedRecommender.getRecommendedEmails(BRYAN));
+    Assert.assertEquals(Arrays.asList(BRYAN), precomputedRecommender.getRecommendedEmails(ERIC));
+
+    favoriteItemDatastore.rebuildUserSimilarities();
+
+    Assert.assertEquals(Arrays.asList(ERIC), precomputedRecommender.getRecommendedEmails(BRYAN));
+    Assert.assertEquals(Arrays.asList(BRYAN), precomputedRecommender.getRecommendedEmails(ERIC));
+  }
+
+  @Test
+  public void getRecommendedEmailsWithPrecomputedEngine_inversePopularityScoringIsIgnored() {
+    favoriteItemDatastore.addFavoriteItem(BRYAN, 1L);
+    favoriteItemDatastore.addFavoriteItem(BRYAN, 2L);
+    favoriteItemDatastore.addFavoriteItem(OYIN, 1L);
+    favoriteItemDatastore.addFavoriteItem(ERIC, 1L);
+    favoriteItemDatastore.addFavoriteItem(JESSICA, 2L);
+    BackgroundTaskScheduler.getInstance().runPendingLocalTasks();
+
+    // Jessica shares the niche item, but the precomputed pairs count every common like as one.
+    Assert.assertEquals(Arrays.asList(JESSICA, ERIC, OYIN),
+        new UserRecommender(UserRecommender.Engine.EXACT,
+            UserRecommender.Scoring.INVERSE_POPULARITY, Long.MAX_VALUE)
+            .getRecommendedEmails(BRYAN));
+    Assert.assertEquals(Arrays.asList(ERIC, JESSICA, OYIN),
+        new UserRecommender(UserRecommender.Engine.PRECOMPUTED,
+            UserRecommender.Scoring.INVERSE_POPULARITY, Long.MAX_VALUE)
+            .getRecommendedEmails(BRYAN));
+  }
+}
@@ -1,5 +1,6 @@
 package com.google.ehub.utility;
 
+import java.util.Arrays;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -25,8 +26,27 @@ public final class UtilsTest {
   }
 
   @Test
-  public void getNextHigherStringWithCappedParam_ReturnsCappedParamWithNewAppendedLetter() {
-    Assert.assertEquals("zzzzza", Utils.getNextHigherString("zzzzz"));
+  public void getNextHigherStringWithTrailingZ_ReturnsParamWithIncreasedLastChar() {
+    Assert.assertEquals("zzzz{", Utils.getNextHigherString("zzzzz"));
+  }
+
+  @Test
+  public void getNextHigherStringWithNonAsciiParam_ReturnsParamWithIncreasedLastCodePoint() {
+    Assert.assertEquals("caf\u00ea", Utils.getNextHigherString("caf\u00e9"));
+    Assert.assertEquals("a\ud83d\ude01", Utils.getNextHigherString("a\ud83d\ude00"));
+  }
+
+  @Test
+  public void getNextHigherStringWithLastCodePointBeforeSurrogates_SkipsSurrogates() {
+    Assert.assertEquals("a\ue000", Utils.getNextHigherString("a\ud7ff"));
+  }
+
+  @Test
+  public void getNextHigherStringWithTrailingMaxCodePoints_ReturnsIncreasedPrefix() {
+    String maxCodePoint = new String(Character.toChars(Character.MAX_CODE_POINT));
+
+    Assert.assertEquals("b", Utils.getNextHigherString("a" + maxCodePoint + maxCodePoint));
+    Assert.assertEquals("", Utils.getNextHigherString(maxCodePoint));
   }
 
   @Test
@@ -39,6 +59,18 @@ public final class UtilsTest {
     Assert.assertEquals("", Utils.getNextHigherString(null));
   }
 
+  @Test
+  public void normalizeTextWithAccentsAndMixedCase_ReturnsFoldedText() {
+    Assert.assertEquals("amelie", Utils.normalizeText("Am\u00c9lie"));
+    Assert.assertEquals("strasse", Utils.normalizeText("Stra\u00dfe"));
+    Assert.assertEquals("ab 2", Utils.normalizeText("\uff21\uff42 \u2082"));
+  }
+
+  @Test
+  public void normalizeTextWithNullParam_ReturnsNull() {
+    Assert.assertNull(Utils.normalizeText(null));
+  }
+
   @Test
   public void getTimestampMillisFromDateWithNullDate_ReturnsNull() {
     Assert.assertNull(Utils.getTimestampMillisFromDate(null, DATE_FORMAT));
@@ -85,4 +117,19 @@ public final class UtilsTest {
   public void getDateFromTimestampMillisWithInvalidFormat_ReturnsNull() {
     Assert.assertNull(Utils.getDateFromTimestampMillis(CORRECT_TIMESTAMP, INVALID_DATE_FORMAT));
   }
+
+  @Test
+  public void parseIdsWithNullParam_ReturnsEmptyOptional() {
+    Assert.assertFalse(Utils.parseIds(null).isPresent());
+  }
+
+  @Test
+  public void parseIdsWithNonNumericId_ReturnsEmptyOptional() {
+    Assert.assertFalse(Utils.parseIds("12,abc,4").isPresent());
+  }
+
+  @Test
+  public void parseIdsWithSpacesAndEmptyValues_ReturnsIdsInOrder() {
+    Assert.assertEquals(Arrays.asList(12L, 4L, 7L), Utils.parseIds(" 12, 4,,7 ").get());
+  }
 }